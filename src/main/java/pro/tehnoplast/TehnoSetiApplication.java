@@ -1,7 +1,11 @@
 package pro.tehnoplast;
 
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication
 public class TehnoSetiApplication {
     public static void main(String[] args) {
-//        System.out.println("Hello world!");
+        SpringApplication.run(TehnoSetiApplication.class, args);
     }
 }
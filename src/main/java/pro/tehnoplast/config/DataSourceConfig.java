@@ -0,0 +1,111 @@
+package pro.tehnoplast.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import pro.tehnoplast.service.workload.Workload;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Конфигурация источников данных с разделением чтения и записи.
+ * Транзакции {@code @Transactional(readOnly = true)} (отчеты, упаковочные листы, выгрузки)
+ * идут в отдельный пул чтения, все остальные - в основной пул записи.
+ * Массовая работа ({@link Workload#BULK}: импорт, выгрузки, фоновые задачи) получает
+ * собственную пару пулов того же устройства, поэтому не может занять соединения интерфейса.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    /**
+     * Параметры основного подключения (spring.datasource)
+     */
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource")
+    public DataSourceProperties writeDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    /**
+     * Параметры подключения для чтения (spring.datasource.read) - реплика или та же БД
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.read")
+    public DataSourceProperties readDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    /**
+     * Пул записи, настраивается через spring.datasource.hikari
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource writeDataSource(
+            @Qualifier("writeDataSourceProperties") DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * Пул чтения, настраивается через spring.datasource.read.hikari
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.read.hikari")
+    public HikariDataSource readDataSource(
+            @Qualifier("readDataSourceProperties") DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    /**
+     * Пул записи массовой работы, настраивается через spring.datasource.bulk.hikari
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.bulk.hikari")
+    public HikariDataSource bulkWriteDataSource(
+            @Qualifier("writeDataSourceProperties") DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * Пул чтения массовой работы, настраивается через spring.datasource.read.bulk.hikari
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.read.bulk.hikari")
+    public HikariDataSource bulkReadDataSource(
+            @Qualifier("readDataSourceProperties") DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    /**
+     * Маршрутизирующий источник данных. Пара пулов выбирается по классу нагрузки потока,
+     * а внутри пары физическое соединение берется лениво, после того как транзакция
+     * пометила его read-only, поэтому read-only транзакции получают соединение из пула чтения.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("writeDataSource") DataSource writeDataSource,
+                                 @Qualifier("readDataSource") DataSource readDataSource,
+                                 @Qualifier("bulkWriteDataSource") DataSource bulkWriteDataSource,
+                                 @Qualifier("bulkReadDataSource") DataSource bulkReadDataSource) {
+        WorkloadRoutingDataSource routing = new WorkloadRoutingDataSource();
+        routing.setDefaultTargetDataSource(readWriteProxy(writeDataSource, readDataSource));
+        routing.setTargetDataSources(Map.of(Workload.BULK, readWriteProxy(bulkWriteDataSource, bulkReadDataSource)));
+        return routing;
+    }
+
+    private static DataSource readWriteProxy(DataSource writeDataSource, DataSource readDataSource) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(writeDataSource);
+        proxy.setReadOnlyDataSource(readDataSource);
+        return proxy;
+    }
+}
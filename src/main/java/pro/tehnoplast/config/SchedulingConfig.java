@@ -0,0 +1,25 @@
+package pro.tehnoplast.config;
+
+import org.springframework.boot.task.ThreadPoolTaskSchedulerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import pro.tehnoplast.service.workload.Workload;
+import pro.tehnoplast.service.workload.WorkloadContext;
+
+/**
+ * Включение фоновых задач по расписанию (обслуживание БД, пересчеты)
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+    /**
+     * Задачи по расписанию - массовая работа: они берут соединения из пулов массовой работы, а не интерфейса.
+     * Пульс и возврат задач с истёкшей арендой (JobWorker) в пулы массовой работы не идут.
+     */
+    @Bean
+    public ThreadPoolTaskSchedulerCustomizer bulkWorkloadSchedulerCustomizer() {
+        return scheduler -> scheduler.setTaskDecorator(task -> WorkloadContext.wrap(Workload.BULK, task));
+    }
+}
@@ -0,0 +1,30 @@
+package pro.tehnoplast.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import pro.tehnoplast.controller.WorkloadInterceptor;
+
+/**
+ * Допуск запросов по классам нагрузки для контроллеров и асинхронных выгрузок
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final WorkloadInterceptor workloadInterceptor;
+
+    public WebConfig(WorkloadInterceptor workloadInterceptor) {
+        this.workloadInterceptor = workloadInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(workloadInterceptor);
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerCallableInterceptors(workloadInterceptor);
+    }
+}
@@ -0,0 +1,16 @@
+package pro.tehnoplast.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import pro.tehnoplast.service.workload.WorkloadContext;
+
+/**
+ * Источник данных, выбирающий пулы по классу нагрузки текущего потока;
+ * классы без собственных пулов идут в пулы по умолчанию
+ */
+class WorkloadRoutingDataSource extends AbstractRoutingDataSource {
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return WorkloadContext.current();
+    }
+}
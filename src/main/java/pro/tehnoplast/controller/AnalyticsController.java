@@ -0,0 +1,71 @@
+package pro.tehnoplast.controller;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import pro.tehnoplast.service.analytics.SalesQuery;
+import pro.tehnoplast.service.analytics.SalesQuery.Dimension;
+import pro.tehnoplast.service.analytics.SalesRow;
+import pro.tehnoplast.service.analytics.SalesSnapshotService;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Аналитика продаж по колоночному снимку истории заказов (без запросов к БД)
+ */
+@RestController
+@RequestMapping("/api/analytics")
+public class AnalyticsController {
+
+    private final SalesSnapshotService salesSnapshotService;
+
+    public AnalyticsController(SalesSnapshotService salesSnapshotService) {
+        this.salesSnapshotService = salesSnapshotService;
+    }
+
+    /**
+     * Продажи за период с группировкой (groupBy=product,warehouse,counteragent,week|month) и фильтрами
+     */
+    @GetMapping("/sales")
+    public List<SalesRow> sales(@RequestParam(name = "groupBy", defaultValue = "") List<String> groupBy,
+                                @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                @RequestParam(name = "warehouse", required = false) Set<String> warehouses,
+                                @RequestParam(name = "product", required = false) Set<Long> products,
+                                @RequestParam(name = "counteragent", required = false) Set<String> counteragents) {
+        SalesQuery query;
+        try {
+            List<Dimension> dimensions = new ArrayList<>();
+            for (String name : groupBy) {
+                if (!name.isBlank()) {
+                    dimensions.add(Dimension.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+                }
+            }
+            query = new SalesQuery(dimensions, from, to,
+                    warehouses != null ? warehouses : Set.of(),
+                    products != null ? products : Set.of(),
+                    counteragents != null ? counteragents : Set.of());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        return salesSnapshotService.query(query)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Снимок продаж ещё строится"));
+    }
+
+    /**
+     * Состояние снимка: поколение, размер базового сегмента и дельты, водяной знак изменений
+     */
+    @GetMapping("/status")
+    public SalesSnapshotService.Status status() {
+        return salesSnapshotService.status()
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Снимок продаж ещё строится"));
+    }
+}
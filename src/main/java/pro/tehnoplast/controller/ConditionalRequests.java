@@ -0,0 +1,26 @@
+package pro.tehnoplast.controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.ServletWebRequest;
+import pro.tehnoplast.service.report.ContentVersion;
+
+/**
+ * Условные GET-запросы: ответ 304 по ETag / If-Modified-Since до чтения и отрисовки данных
+ */
+final class ConditionalRequests {
+
+    private ConditionalRequests() {
+    }
+
+    /**
+     * Выставить заголовки версии; true - клиенту отправлен 304 и обработчик должен вернуть null.
+     * Ответ всегда перепроверяется (no-cache), чтобы автообновляемые страницы не показывали устаревшие данные.
+     */
+    static boolean notModified(ServletWebRequest request, ContentVersion version) {
+        if (request.getResponse() != null) {
+            request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+        }
+        return request.checkNotModified(version.etag(), version.lastModified());
+    }
+}
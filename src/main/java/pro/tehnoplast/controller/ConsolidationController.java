@@ -0,0 +1,48 @@
+package pro.tehnoplast.controller;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import pro.tehnoplast.service.pallets.ConsolidationPlan;
+import pro.tehnoplast.service.pallets.PalletConsolidationService;
+import pro.tehnoplast.service.workload.Workload;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Сборные паллеты по складу и дате доставки: предпросмотр плана и его применение
+ */
+@RestController
+@RequestMapping("/api/pallets/consolidation")
+@WorkloadClass(Workload.PLANNING)
+public class ConsolidationController {
+
+    private final PalletConsolidationService consolidationService;
+
+    public ConsolidationController(PalletConsolidationService consolidationService) {
+        this.consolidationService = consolidationService;
+    }
+
+    /**
+     * План сборных паллет на дату (все склады или один) без изменений
+     */
+    @GetMapping("/{date}")
+    public List<ConsolidationPlan> plan(@PathVariable("date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+                                        @RequestParam(name = "warehouse", required = false) String warehouseGln) {
+        return consolidationService.plan(date, warehouseGln);
+    }
+
+    /**
+     * Пересобрать паллеты на дату по плану
+     */
+    @PostMapping("/{date}")
+    public List<ConsolidationPlan> apply(@PathVariable("date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+                                         @RequestParam(name = "warehouse", required = false) String warehouseGln) {
+        return consolidationService.apply(date, warehouseGln);
+    }
+}
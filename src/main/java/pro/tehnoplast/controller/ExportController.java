@@ -0,0 +1,83 @@
+package pro.tehnoplast.controller;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import pro.tehnoplast.service.export.CsvCopyExportService;
+import pro.tehnoplast.service.export.NdjsonExportService;
+import pro.tehnoplast.service.workload.Workload;
+
+import java.time.LocalDate;
+
+/**
+ * Потоковые выгрузки для интеграций (NDJSON)
+ */
+@RestController
+@RequestMapping("/api/export")
+@WorkloadClass(Workload.BULK)
+public class ExportController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final NdjsonExportService exportService;
+    private final CsvCopyExportService csvExportService;
+
+    public ExportController(NdjsonExportService exportService, CsvCopyExportService csvExportService) {
+        this.exportService = exportService;
+        this.csvExportService = csvExportService;
+    }
+
+    /**
+     * Заказы с позициями за период доставки
+     */
+    @GetMapping("/orders")
+    public ResponseEntity<StreamingResponseBody> orders(
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ndjson(out -> exportService.exportOrders(from, to, out));
+    }
+
+    /**
+     * Паллеты с содержимым за период доставки
+     */
+    @GetMapping("/pallets")
+    public ResponseEntity<StreamingResponseBody> pallets(
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ndjson(out -> exportService.exportPallets(from, to, out));
+    }
+
+    /**
+     * Счета за период выставления
+     */
+    @GetMapping("/invoices")
+    public ResponseEntity<StreamingResponseBody> invoices(
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ndjson(out -> exportService.exportInvoices(from, to, out));
+    }
+
+    /**
+     * Позиции заказов с товарами и счетами за период доставки (CSV, gzip) для бухгалтерии
+     */
+    @GetMapping("/order-items.csv.gz")
+    public ResponseEntity<StreamingResponseBody> orderItemsCsv(
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        String fileName = "order-items_" + from + "_" + to + ".csv.gz";
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/gzip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(out -> csvExportService.exportOrderItemsCsvGzip(from, to, out));
+    }
+
+    private ResponseEntity<StreamingResponseBody> ndjson(StreamingResponseBody body) {
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+}
@@ -0,0 +1,51 @@
+package pro.tehnoplast.controller;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+/**
+ * Итератор строк для потоковой отрисовки шаблона: перед первой строкой и затем каждые flushEvery строк
+ * сбрасывает ответ клиенту, чтобы браузер начал показывать страницу, не дожидаясь конца таблицы.
+ * Если клиент закрыл соединение, отрисовка прерывается, а не дочитывает курсор впустую.
+ */
+final class FlushingIterator<T> implements Iterator<T> {
+
+    private final Iterator<T> rows;
+    private final PrintWriter writer;
+    private final int flushEvery;
+    private long returned;
+    private boolean started;
+
+    FlushingIterator(Iterator<T> rows, PrintWriter writer, int flushEvery) {
+        this.rows = rows;
+        this.writer = writer;
+        this.flushEvery = flushEvery;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!started) {
+            started = true;
+            flush();
+        }
+        return rows.hasNext();
+    }
+
+    @Override
+    public T next() {
+        T row = rows.next();
+        if (++returned % flushEvery == 0) {
+            flush();
+        }
+        return row;
+    }
+
+    private void flush() {
+        writer.flush();
+        if (writer.checkError()) {
+            throw new UncheckedIOException(new IOException("Клиент закрыл соединение"));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package pro.tehnoplast.controller;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import pro.tehnoplast.service.OrderParserService;
+import pro.tehnoplast.service.jobs.JobInfo;
+import pro.tehnoplast.service.jobs.JobQueue;
+import pro.tehnoplast.service.jobs.OrderImportJobHandler;
+import pro.tehnoplast.service.workload.Workload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Загрузка файлов заказов
+ */
+@RestController
+@RequestMapping("/api/import")
+@WorkloadClass(Workload.BULK)
+public class ImportController {
+
+    private final OrderParserService orderParserService;
+    private final JobQueue jobQueue;
+    private final int maxAttempts;
+
+    public ImportController(OrderParserService orderParserService,
+                            JobQueue jobQueue,
+                            @Value("${tehnoseti.jobs.max-attempts:5}") int maxAttempts) {
+        this.orderParserService = orderParserService;
+        this.jobQueue = jobQueue;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Поставить файл заказов (XLSX) в очередь на загрузку; состояние - GET /api/jobs/{id},
+     * отчёт об ошибках - файл задачи report.tsv
+     */
+    @PostMapping("/orders")
+    public ResponseEntity<JobInfo> importOrders(@RequestParam("file") MultipartFile file) throws IOException {
+        long id;
+        try (InputStream in = file.getInputStream()) {
+            id = jobQueue.enqueue(OrderImportJobHandler.TYPE, file.getOriginalFilename(), maxAttempts,
+                    OrderImportJobHandler.INPUT_FILE, file.getContentType(), in, file.getSize());
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/jobs/" + id))
+                .body(jobQueue.find(id).orElseThrow());
+    }
+
+    /**
+     * Проверить файл заказов (XLSX) без загрузки; ответ - отчёт об ошибках в TSV
+     */
+    @PostMapping("/orders/validate")
+    public void validateOrders(@RequestParam("file") MultipartFile file, HttpServletResponse response) throws IOException {
+        Path tmp = Files.createTempFile("orders-", ".xlsx");
+        try {
+            file.transferTo(tmp);
+            response.setContentType("text/tab-separated-values;charset=UTF-8");
+            orderParserService.validateOrders(tmp.toFile(), response.getWriter());
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
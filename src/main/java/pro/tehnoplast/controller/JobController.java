@@ -0,0 +1,110 @@
+package pro.tehnoplast.controller;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import pro.tehnoplast.service.archive.OrderArchiver;
+import pro.tehnoplast.service.jobs.InvoiceReconciliationJobHandler;
+import pro.tehnoplast.service.jobs.JobInfo;
+import pro.tehnoplast.service.jobs.JobQueue;
+import pro.tehnoplast.service.jobs.OrderArchiveJobHandler;
+import pro.tehnoplast.service.jobs.OrderItemsExportJobHandler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.LocalDate;
+
+/**
+ * Фоновые задачи: постановка выгрузок и сверок, состояние задач и их файлы
+ */
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+
+    private final JobQueue jobQueue;
+    private final OrderArchiver orderArchiver;
+    private final int maxAttempts;
+
+    public JobController(JobQueue jobQueue,
+                         OrderArchiver orderArchiver,
+                         @Value("${tehnoseti.jobs.max-attempts:5}") int maxAttempts) {
+        this.jobQueue = jobQueue;
+        this.orderArchiver = orderArchiver;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Получить состояние задачи
+     */
+    @GetMapping("/{id}")
+    public JobInfo getJob(@PathVariable("id") long id) {
+        return jobQueue.find(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * Скачать файл задачи (входной файл или результат)
+     */
+    @GetMapping("/{id}/files/{name}")
+    public void getFile(@PathVariable("id") long id, @PathVariable("name") String name,
+                        HttpServletResponse response) throws IOException {
+        String contentType = jobQueue.fileContentType(id, name)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        response.setContentType(contentType != null ? contentType : "application/octet-stream");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + name + "\"");
+        jobQueue.copyFile(id, name, response.getOutputStream());
+    }
+
+    /**
+     * Поставить в очередь выгрузку позиций заказов (CSV, gzip) за период доставки
+     */
+    @PostMapping("/exports/order-items")
+    public ResponseEntity<JobInfo> exportOrderItems(
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        long id = jobQueue.enqueue(OrderItemsExportJobHandler.TYPE,
+                OrderItemsExportJobHandler.payload(from, to), maxAttempts);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/jobs/" + id))
+                .body(jobQueue.find(id).orElseThrow());
+    }
+
+    /**
+     * Поставить в очередь сверку счетов с заказами за период доставки
+     */
+    @PostMapping("/reconciliations/invoices")
+    public ResponseEntity<JobInfo> reconcileInvoices(
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        long id = jobQueue.enqueue(InvoiceReconciliationJobHandler.TYPE,
+                InvoiceReconciliationJobHandler.payload(from, to), maxAttempts);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/jobs/" + id))
+                .body(jobQueue.find(id).orElseThrow());
+    }
+
+    /**
+     * Поставить в очередь архивацию заказов с датой доставки раньше before (по умолчанию - по сроку хранения).
+     * Дата позже срока хранения отклоняется: архивация окончательно удаляет заказы из БД.
+     */
+    @PostMapping("/archives/orders")
+    public ResponseEntity<JobInfo> archiveOrders(
+            @RequestParam(name = "before", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate before) {
+        LocalDate cutoff = orderArchiver.defaultCutoff();
+        if (before != null && before.isAfter(cutoff)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "before не может быть позже " + cutoff);
+        }
+        long id = jobQueue.enqueue(OrderArchiveJobHandler.TYPE, OrderArchiveJobHandler.payload(before), maxAttempts);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/jobs/" + id))
+                .body(jobQueue.find(id).orElseThrow());
+    }
+}
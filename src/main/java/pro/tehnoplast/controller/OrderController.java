@@ -0,0 +1,62 @@
+package pro.tehnoplast.controller;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import pro.tehnoplast.service.report.ContentVersion;
+import pro.tehnoplast.service.report.OrderDetail;
+import pro.tehnoplast.service.report.OrderDetailService;
+import pro.tehnoplast.service.report.OrderRef;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Карточка заказа и поиск заказов, включая архивные
+ */
+@RestController
+@RequestMapping("/api/orders")
+public class OrderController {
+
+    private final OrderDetailService orderDetailService;
+
+    public OrderController(OrderDetailService orderDetailService) {
+        this.orderDetailService = orderDetailService;
+    }
+
+    /**
+     * Получить заказ с позициями; если заказ не менялся, 304 без чтения позиций
+     */
+    @GetMapping("/{id}")
+    public OrderDetail getOrder(@PathVariable("id") long id, ServletWebRequest request) {
+        ContentVersion version = orderDetailService.getVersion(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        if (ConditionalRequests.notModified(request, version)) {
+            return null;
+        }
+        return orderDetailService.getOrder(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * Найти заказы по номеру или дате доставки
+     */
+    @GetMapping
+    public List<OrderRef> findOrders(@RequestParam(name = "number", required = false) String number,
+                                     @RequestParam(name = "deliveryDate", required = false)
+                                     @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate deliveryDate) {
+        if (number != null) {
+            return orderDetailService.findByNumber(number);
+        }
+        if (deliveryDate != null) {
+            return orderDetailService.findByDeliveryDate(deliveryDate);
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Укажите number или deliveryDate");
+    }
+}
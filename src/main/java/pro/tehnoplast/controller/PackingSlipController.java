@@ -0,0 +1,97 @@
+package pro.tehnoplast.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import pro.tehnoplast.service.slips.PackingSlip;
+import pro.tehnoplast.service.slips.PackingSlipCache;
+import pro.tehnoplast.service.slips.PackingSlipCache.OrderVersion;
+import pro.tehnoplast.service.slips.PackingSlipCache.SlipFile;
+import pro.tehnoplast.service.xlsx.XlsxReportService;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Упаковочные листы заказов. Готовый файл отдаётся с диска без копирования через память приложения:
+ * через sendfile коннектора Tomcat, а если он недоступен - через FileChannel.transferTo.
+ */
+@RestController
+@RequestMapping("/api/orders")
+public class PackingSlipController {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final PackingSlipCache packingSlipCache;
+    private final XlsxReportService xlsxReportService;
+
+    public PackingSlipController(PackingSlipCache packingSlipCache, XlsxReportService xlsxReportService) {
+        this.packingSlipCache = packingSlipCache;
+        this.xlsxReportService = xlsxReportService;
+    }
+
+    /**
+     * Получить упаковочный лист заказа (HTML для печати); при неизменной версии заказа - 304
+     */
+    @GetMapping("/{id}/packing-slip")
+    public void getPackingSlip(@PathVariable("id") long id,
+                               ServletWebRequest webRequest,
+                               HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+        OrderVersion version = packingSlipCache.findVersion(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        if (ConditionalRequests.notModified(webRequest, version.contentVersion())) {
+            return;
+        }
+        SlipFile slip = packingSlipCache.get(version)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        try (FileChannel channel = FileChannel.open(slip.path(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            response.setContentType("text/html;charset=UTF-8");
+            response.setContentLengthLong(size);
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                // Tomcat отправит файл после выхода из обработчика; заменённые версии удаляются с задержкой
+                request.setAttribute(SENDFILE_FILENAME, slip.path().toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, 0L);
+                request.setAttribute(SENDFILE_END, size);
+                return;
+            }
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    /**
+     * Упаковочный лист заказа в Excel; при неизменной версии заказа - 304
+     */
+    @GetMapping("/{id}/packing-slip.xlsx")
+    public void getPackingSlipXlsx(@PathVariable("id") long id,
+                                   ServletWebRequest webRequest,
+                                   HttpServletResponse response) throws IOException {
+        OrderVersion version = packingSlipCache.findVersion(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        if (ConditionalRequests.notModified(webRequest, version.contentVersion())) {
+            return;
+        }
+        PackingSlip slip = packingSlipCache.findSlip(version)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        response.setContentType(XlsxReportService.CONTENT_TYPE);
+        response.setHeader("Content-Disposition", "attachment; filename=\"packing-slip-" + id + ".xlsx\"");
+        xlsxReportService.writePackingSlip(slip, response.getOutputStream());
+    }
+}
@@ -0,0 +1,55 @@
+package pro.tehnoplast.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import pro.tehnoplast.service.matching.ProductMatch;
+import pro.tehnoplast.service.matching.ProductMatchingService;
+
+import java.util.List;
+
+/**
+ * Сопоставление нераспознанных товаров покупателя: кандидаты по наименованию и принятие кандидата
+ * (кандидаты для строк импорта - в колонке suggestions отчёта об ошибках)
+ */
+@RestController
+@RequestMapping("/api/products/matches")
+public class ProductMatchController {
+
+    private final ProductMatchingService productMatchingService;
+
+    public ProductMatchController(ProductMatchingService productMatchingService) {
+        this.productMatchingService = productMatchingService;
+    }
+
+    /**
+     * Кандидаты для наименования товара, по убыванию сходства
+     */
+    @GetMapping
+    public List<ProductMatch> suggest(@RequestParam("name") String name,
+                                      @RequestParam(name = "limit", required = false) Integer limit) {
+        return limit != null ? productMatchingService.suggest(name, limit) : productMatchingService.suggest(name);
+    }
+
+    /**
+     * Принять кандидата: артикул и/или штрихкод покупателя сохраняются как коды контрагента
+     * и со следующего импорта находятся точным поиском
+     */
+    @PostMapping("/accept")
+    public ResponseEntity<Void> accept(@RequestParam("inn") String counteragentInn,
+                                       @RequestParam("productId") long productId,
+                                       @RequestParam(name = "sku", required = false) String externalSku,
+                                       @RequestParam(name = "barcode", required = false) String externalBarcode) {
+        try {
+            productMatchingService.acceptMatch(counteragentInn, productId, externalSku, externalBarcode);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,32 @@
+package pro.tehnoplast.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import pro.tehnoplast.service.reconciliation.InvoiceReconciliation;
+import pro.tehnoplast.service.reconciliation.InvoiceReconciliationService;
+
+/**
+ * Результаты сверок; сверка запускается фоновой задачей (POST /api/jobs/reconciliations/invoices)
+ */
+@RestController
+@RequestMapping("/api/reconciliations")
+public class ReconciliationController {
+
+    private final InvoiceReconciliationService reconciliationService;
+
+    public ReconciliationController(InvoiceReconciliationService reconciliationService) {
+        this.reconciliationService = reconciliationService;
+    }
+
+    /**
+     * Сверка счетов с заказами и найденные расхождения
+     */
+    @GetMapping("/invoices/{id}")
+    public InvoiceReconciliation getInvoiceReconciliation(@PathVariable("id") long id) {
+        return reconciliationService.find(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+}
@@ -0,0 +1,33 @@
+package pro.tehnoplast.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import pro.tehnoplast.service.scan.ScanResult;
+import pro.tehnoplast.service.scan.ScanWorkingSets;
+import pro.tehnoplast.service.workload.Workload;
+
+/**
+ * Сканирование штрихкодов при загрузке паллет: позиция текущего заказа и её остаток из рабочего набора в памяти
+ */
+@RestController
+public class ScanController {
+
+    private final ScanWorkingSets scanWorkingSets;
+
+    public ScanController(ScanWorkingSets scanWorkingSets) {
+        this.scanWorkingSets = scanWorkingSets;
+    }
+
+    /**
+     * Позиция заказа по штрихкоду товара (внутреннему или внешнему)
+     */
+    @GetMapping("/api/orders/{id}/scan/{barcode}")
+    @WorkloadClass(value = Workload.INTERACTIVE, limited = false)
+    public ScanResult scan(@PathVariable("id") long id, @PathVariable("barcode") String barcode) {
+        return scanWorkingSets.scan(id, barcode).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                scanWorkingSets.hasOrder(id) ? "Товара со штрихкодом " + barcode + " нет в заказе" : "Заказ не найден"));
+    }
+}
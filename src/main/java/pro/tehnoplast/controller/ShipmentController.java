@@ -0,0 +1,45 @@
+package pro.tehnoplast.controller;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import pro.tehnoplast.service.shipments.Shipment;
+import pro.tehnoplast.service.shipments.ShipmentPlanningService;
+import pro.tehnoplast.service.workload.Workload;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Рейсы дня доставки: распределение паллет по машинам по регионам складов
+ */
+@RestController
+@RequestMapping("/api/shipments")
+public class ShipmentController {
+
+    private final ShipmentPlanningService shipmentPlanningService;
+
+    public ShipmentController(ShipmentPlanningService shipmentPlanningService) {
+        this.shipmentPlanningService = shipmentPlanningService;
+    }
+
+    /**
+     * Сохранённый план рейсов на дату
+     */
+    @GetMapping("/{date}")
+    public List<Shipment> getShipments(@PathVariable("date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return shipmentPlanningService.findByDate(date);
+    }
+
+    /**
+     * Спланировать рейсы на дату заново
+     */
+    @PostMapping("/{date}")
+    @WorkloadClass(Workload.PLANNING)
+    public List<Shipment> plan(@PathVariable("date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return shipmentPlanningService.plan(date);
+    }
+}
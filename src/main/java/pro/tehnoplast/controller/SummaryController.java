@@ -0,0 +1,118 @@
+package pro.tehnoplast.controller;
+
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.WebContext;
+import org.thymeleaf.web.servlet.JakartaServletWebApplication;
+import pro.tehnoplast.service.notify.SummaryChangeNotifier;
+import pro.tehnoplast.service.notify.SummaryEventBroadcaster;
+import pro.tehnoplast.service.report.SummaryReportService;
+import pro.tehnoplast.service.workload.Workload;
+import pro.tehnoplast.service.xlsx.XlsxReportService;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDate;
+
+/**
+ * Сводная таблица по складам и датам доставки с push-обновлением строк
+ */
+@Controller
+@RequestMapping("/summary")
+public class SummaryController {
+
+    private final SummaryReportService summaryReportService;
+    private final SummaryEventBroadcaster broadcaster;
+    private final XlsxReportService xlsxReportService;
+    private final ITemplateEngine templateEngine;
+    private final JakartaServletWebApplication webApplication;
+    private final int flushEvery;
+
+    public SummaryController(SummaryReportService summaryReportService, SummaryEventBroadcaster broadcaster,
+                             XlsxReportService xlsxReportService, ITemplateEngine templateEngine,
+                             ServletContext servletContext,
+                             @Value("${tehnoseti.summary.flush-every:500}") int flushEvery) {
+        this.summaryReportService = summaryReportService;
+        this.broadcaster = broadcaster;
+        this.xlsxReportService = xlsxReportService;
+        this.templateEngine = templateEngine;
+        this.webApplication = JakartaServletWebApplication.buildApplication(servletContext);
+        this.flushEvery = flushEvery;
+    }
+
+    /**
+     * Страница сводки за период; если сводка не менялась, 304 без чтения строк и отрисовки.
+     * Страница отрисовывается прямо в ответ по мере чтения курсора: шапка уходит клиенту сразу,
+     * строки - порциями, память сервера не зависит от размера таблицы
+     */
+    @GetMapping
+    public void summary(@RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                        @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                        ServletWebRequest request,
+                        HttpServletResponse response) throws IOException {
+        LocalDate start = from != null ? from : LocalDate.now();
+        LocalDate end = to != null ? to : start.plusDays(7);
+        if (ConditionalRequests.notModified(request, summaryReportService.getVersion(start, end))) {
+            return;
+        }
+        response.setContentType("text/html;charset=UTF-8");
+        PrintWriter writer = response.getWriter();
+        summaryReportService.streamSummaries(start, end, rows -> {
+            WebContext context = new WebContext(webApplication.buildExchange(request.getRequest(), response),
+                    request.getLocale());
+            context.setVariable("from", start);
+            context.setVariable("to", end);
+            context.setVariable("summaries", new FlushingIterator<>(rows, writer, flushEvery));
+            templateEngine.process("summary", context, writer);
+        });
+    }
+
+    /**
+     * Сводка за период в Excel; если сводка не менялась, 304
+     */
+    @GetMapping("/xlsx")
+    @WorkloadClass(Workload.BULK)
+    public void summaryXlsx(@RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                            @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                            ServletWebRequest request,
+                            HttpServletResponse response) throws IOException {
+        LocalDate start = from != null ? from : LocalDate.now();
+        LocalDate end = to != null ? to : start.plusDays(7);
+        if (ConditionalRequests.notModified(request, summaryReportService.getVersion(start, end))) {
+            return;
+        }
+        response.setContentType(XlsxReportService.CONTENT_TYPE);
+        response.setHeader("Content-Disposition", "attachment; filename=\"summary-" + start + "-" + end + ".xlsx\"");
+        xlsxReportService.writeSummary(start, end, summaryReportService.getSummaries(start, end), response.getOutputStream());
+    }
+
+    /**
+     * Фрагмент со строками для изменившихся ключей ("gln:yyyy-mm-dd,...")
+     */
+    @GetMapping("/rows")
+    public String rows(@RequestParam("keys") String keys, Model model) {
+        model.addAttribute("summaries", summaryReportService.getSummaries(SummaryChangeNotifier.decode(keys)));
+        return "summary :: rows";
+    }
+
+    /**
+     * Поток изменений сводки (Server-Sent Events)
+     */
+    @GetMapping(value = "/events", produces = "text/event-stream")
+    @ResponseBody
+    @WorkloadClass(value = Workload.INTERACTIVE, limited = false)
+    public SseEmitter events() {
+        return broadcaster.subscribe();
+    }
+}
@@ -0,0 +1,25 @@
+package pro.tehnoplast.controller;
+
+import pro.tehnoplast.service.workload.Workload;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Класс нагрузки обработчика (на методе или на всём контроллере); без аннотации - интерактивный
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface WorkloadClass {
+
+    Workload value();
+
+    /**
+     * Занимает ли запрос место в классе. Долгоживущие подписки без работы с БД
+     * (Server-Sent Events) мест не занимают, иначе исчерпали бы лимит простоем;
+     * не занимают и ответы из памяти (сканирование), чтобы не ждать в очереди за тяжёлыми запросами.
+     */
+    boolean limited() default true;
+}
@@ -0,0 +1,93 @@
+package pro.tehnoplast.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import pro.tehnoplast.service.workload.Bulkhead;
+import pro.tehnoplast.service.workload.Workload;
+import pro.tehnoplast.service.workload.WorkloadAdmission;
+import pro.tehnoplast.service.workload.WorkloadContext;
+import pro.tehnoplast.service.workload.WorkloadRejectedException;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Допуск HTTP-запросов по классам нагрузки ({@link WorkloadClass}). Место занимается до вызова
+ * обработчика и освобождается после отправки ответа, в том числе после асинхронной потоковой выгрузки;
+ * при отказе клиент получает 503 с Retry-After. На время обработки поток (и поток асинхронной
+ * выгрузки) помечается классом нагрузки, по которому выбирается пул соединений.
+ */
+@Component
+public class WorkloadInterceptor implements AsyncHandlerInterceptor, CallableProcessingInterceptor {
+
+    private static final String PERMIT = WorkloadInterceptor.class.getName() + ".permit";
+
+    private final WorkloadAdmission admission;
+
+    public WorkloadInterceptor(WorkloadAdmission admission) {
+        this.admission = admission;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod method)) {
+            return true;
+        }
+        WorkloadClass workloadClass = method.getMethodAnnotation(WorkloadClass.class);
+        if (workloadClass == null) {
+            workloadClass = method.getBeanType().getAnnotation(WorkloadClass.class);
+        }
+        Workload workload = workloadClass != null ? workloadClass.value() : Workload.INTERACTIVE;
+        boolean limited = workloadClass == null || workloadClass.limited();
+        // при повторной (асинхронной) диспетчеризации место уже занято
+        if (limited && request.getAttribute(PERMIT) == null) {
+            try {
+                request.setAttribute(PERMIT, admission.admit(workload));
+            } catch (WorkloadRejectedException e) {
+                response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), e);
+            }
+        }
+        WorkloadContext.set(workload);
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        WorkloadContext.clear();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        WorkloadContext.clear();
+        if (request.getAttribute(PERMIT) instanceof Bulkhead.Permit permit) {
+            request.removeAttribute(PERMIT);
+            permit.close();
+        }
+    }
+
+    @Override
+    public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+        if (request.getAttribute(PERMIT, RequestAttributes.SCOPE_REQUEST) instanceof Bulkhead.Permit permit) {
+            WorkloadContext.set(permit.workload());
+        }
+    }
+
+    @Override
+    public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+        WorkloadContext.clear();
+    }
+
+    @Override
+    public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+        WorkloadContext.clear();
+    }
+}
@@ -3,11 +3,14 @@ package pro.tehnoplast.model;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.SQLRestriction;
+import pro.tehnoplast.parser.validation.CheckDigits;
 
 import java.util.List;
 
 @Entity
 @Table(name = "counteragents")
+@SQLRestriction("is_deleted = false")
 @Getter
 @Setter
 public class Counteragent extends BaseEntity {
@@ -40,10 +43,10 @@ public class Counteragent extends BaseEntity {
     }
 
     /**
-     * Проверка валидности ИНН (базовая проверка длины)
+     * Проверка валидности ИНН (длина и контрольные разряды)
      */
     public boolean isValidInn() {
-        return inn != null && (inn.length() == 10 || inn.length() == 12) && inn.matches("\\d+");
+        return CheckDigits.isValidInn(inn);
     }
 
     /**
@@ -79,7 +82,7 @@ public class Counteragent extends BaseEntity {
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof Counteragent that)) return false;
-        return inn != null && inn.equals(that.inn);
+        return inn != null && inn.equals(that.getInn());
     }
 
     @Override
@@ -0,0 +1,80 @@
+package pro.tehnoplast.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+@Entity
+@Table(name = "counteragent_product_codes")
+@Getter
+@Setter
+public class CounteragentProductCode {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "counteragent_inn", nullable = false, length = 12)
+    private String counteragentInn;
+
+    @Column(name = "external_code", nullable = false, length = 50)
+    private String externalCode;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(name = "created_at", insertable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", insertable = false, updatable = false)
+    private LocalDateTime updatedAt;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "counteragent_inn", referencedColumnName = "inn", insertable = false, updatable = false)
+    private Counteragent counteragent;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "product_id", insertable = false, updatable = false)
+    private Product product;
+
+    /**
+     * Конструктор по умолчанию
+     */
+    public CounteragentProductCode() {
+    }
+
+    /**
+     * Конструктор с основными полями
+     */
+    public CounteragentProductCode(String counteragentInn, String externalCode, Long productId) {
+        this.counteragentInn = counteragentInn;
+        this.externalCode = externalCode;
+        this.productId = productId;
+    }
+
+    @Override
+    public String toString() {
+        return "CounteragentProductCode{" +
+                "counteragentInn='" + counteragentInn + "'" +
+                ", externalCode='" + externalCode + "'" +
+                ", productId=" + productId +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CounteragentProductCode that)) return false;
+        return counteragentInn != null && externalCode != null
+                && counteragentInn.equals(that.getCounteragentInn())
+                && externalCode.equals(that.getExternalCode());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(counteragentInn, externalCode);
+    }
+}
@@ -3,11 +3,15 @@ package pro.tehnoplast.model;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.SQLRestriction;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Objects;
 
 @Entity
 @Table(name = "invoices")
+@SQLRestriction("is_deleted = false")
 @Getter
 @Setter
 public class Invoice extends BaseEntity {
@@ -25,9 +29,18 @@ public class Invoice extends BaseEntity {
     @Column(name = "order_id", unique = true)
     private Long orderId;
 
+    @Column(name = "order_delivery_date")
+    private LocalDate orderDeliveryDate;
+
     @Column(name = "counteragent_inn", length = 12)
     private String counteragentInn;
 
+    @Column(name = "order_number", length = 50)
+    private String orderNumber;
+
+    @Column(name = "amount", precision = 12, scale = 2)
+    private BigDecimal amount;
+
     @OneToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "order_id", insertable = false, updatable = false)
     private Order order;
@@ -77,7 +90,7 @@ public class Invoice extends BaseEntity {
      * Получить дату доставки заказа
      */
     public LocalDate getDeliveryDate() {
-        return order != null ? order.getDeliveryDate() : null;
+        return order != null ? order.getDeliveryDate() : orderDeliveryDate;
     }
 
     /**
@@ -130,11 +143,12 @@ public class Invoice extends BaseEntity {
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof Invoice that)) return false;
-        return id != null && id.equals(that.id);
+        return number != null && number.equals(that.getNumber())
+                && Objects.equals(issueDate, that.getIssueDate());
     }
 
     @Override
     public int hashCode() {
-        return getClass().hashCode();
+        return Objects.hash(number, issueDate);
     }
 }
\ No newline at end of file
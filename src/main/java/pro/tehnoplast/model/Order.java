@@ -3,14 +3,18 @@ package pro.tehnoplast.model;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.PartitionKey;
+import org.hibernate.annotations.SQLRestriction;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
 
 @Entity
 @Table(name = "orders")
+@SQLRestriction("is_deleted = false")
 @Getter
 @Setter
 public class Order extends BaseEntity {
@@ -25,6 +29,7 @@ public class Order extends BaseEntity {
     @Column(name = "order_date", nullable = false)
     private LocalDate orderDate;
 
+    @PartitionKey
     @Column(name = "delivery_date", nullable = false)
     private LocalDate deliveryDate;
 
@@ -223,11 +228,13 @@ public class Order extends BaseEntity {
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof Order that)) return false;
-        return id != null && id.equals(that.id);
+        return number != null && number.equals(that.getNumber())
+                && Objects.equals(orderDate, that.getOrderDate())
+                && Objects.equals(deliveryDate, that.getDeliveryDate());
     }
 
     @Override
     public int hashCode() {
-        return getClass().hashCode();
+        return Objects.hash(number, orderDate, deliveryDate);
     }
 }
\ No newline at end of file
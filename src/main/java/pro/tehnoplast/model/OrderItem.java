@@ -3,12 +3,17 @@ package pro.tehnoplast.model;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.PartitionKey;
+import org.hibernate.annotations.SQLRestriction;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Objects;
 
 @Entity
 @Table(name = "order_items")
+@SQLRestriction("is_deleted = false")
 @Getter
 @Setter
 public class OrderItem extends BaseEntity {
@@ -20,6 +25,10 @@ public class OrderItem extends BaseEntity {
     @Column(name = "order_id", nullable = false)
     private Long orderId;
 
+    @PartitionKey
+    @Column(name = "delivery_date", nullable = false)
+    private LocalDate deliveryDate;
+
     @Column(name = "product_id", nullable = false)
     private Long productId;
 
@@ -198,6 +207,13 @@ public class OrderItem extends BaseEntity {
         }
     }
 
+    @PrePersist
+    protected void onCreate() {
+        super.onCreate();
+        if (deliveryDate == null && order != null) {
+            deliveryDate = order.getDeliveryDate();
+        }
+    }
 
     protected void validateQuantity() {
         if (quantity != null && quantity <= 0) {
@@ -228,8 +244,12 @@ public class OrderItem extends BaseEntity {
         return id != null && id.equals(that.id);
     }
 
+    /**
+     * Хеш по заказу и товару: они задаются до сохранения и не меняются, поэтому хеш не зависит
+     * от присвоения id при persist. Равные по id позиции - одна строка, и хеш у них совпадает
+     */
     @Override
     public int hashCode() {
-        return getClass().hashCode();
+        return Objects.hash(orderId, productId);
     }
 }
\ No newline at end of file
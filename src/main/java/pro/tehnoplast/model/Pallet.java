@@ -3,16 +3,26 @@ package pro.tehnoplast.model;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.PartitionKey;
+import org.hibernate.annotations.SQLRestriction;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Objects;
 
 @Entity
 @Table(name = "pallets")
+@SQLRestriction("is_deleted = false")
 @Getter
 @Setter
 public class Pallet extends BaseEntity {
-    
+
+    /**
+     * Вместимость паллеты в условных местах (количество × упаковочный коэффициент)
+     */
+    public static final double CAPACITY_PLACES = 100.0;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -20,6 +30,10 @@ public class Pallet extends BaseEntity {
     @Column(name = "order_id", nullable = false)
     private Long orderId;
 
+    @PartitionKey
+    @Column(name = "delivery_date", nullable = false)
+    private LocalDate deliveryDate;
+
     // Связи с другими сущностями
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "order_id", insertable = false, updatable = false)
@@ -41,6 +55,14 @@ public class Pallet extends BaseEntity {
         this.orderId = orderId;
     }
 
+    /**
+     * Конструктор с заказом и датой доставки (ключ секционирования)
+     */
+    public Pallet(Long orderId, LocalDate deliveryDate) {
+        this.orderId = orderId;
+        this.deliveryDate = deliveryDate;
+    }
+
     /**
      * Получить номер заказа
      */
@@ -51,7 +73,10 @@ public class Pallet extends BaseEntity {
     /**
      * Получить дату доставки заказа
      */
-    public java.time.LocalDate getDeliveryDate() {
+    public LocalDate getDeliveryDate() {
+        if (deliveryDate != null) {
+            return deliveryDate;
+        }
         return order != null ? order.getDeliveryDate() : null;
     }
 
@@ -139,8 +164,7 @@ public class Pallet extends BaseEntity {
                 })
                 .sum();
         
-        // Предполагаем, что паллета вмещает 100 условных мест
-        return Math.min(totalPlaces, 100.0);
+        return Math.min(totalPlaces, CAPACITY_PLACES);
     }
 
     /**
@@ -154,7 +178,7 @@ public class Pallet extends BaseEntity {
      * Проверить, полная ли паллета
      */
     public boolean isFull() {
-        return getFillPercentage() >= 100.0;
+        return getFillPercentage() >= CAPACITY_PLACES;
     }
 
     /**
@@ -170,7 +194,7 @@ public class Pallet extends BaseEntity {
         }
         
         double additionalPlaces = quantity * product.getPackingCoefficient();
-        return (getFillPercentage() + additionalPlaces) <= 100.0;
+        return (getFillPercentage() + additionalPlaces) <= CAPACITY_PLACES;
     }
 
     /**
@@ -282,7 +306,7 @@ public class Pallet extends BaseEntity {
         }
         
         // Создаем новую позицию на паллете
-        PalletItem newItem = new PalletItem(this.id, orderItem.getId(), quantity);
+        PalletItem newItem = new PalletItem(this.id, orderItem.getId(), getDeliveryDate(), quantity);
         if (palletItems == null) {
             palletItems = new java.util.ArrayList<>();
         }
@@ -291,6 +315,14 @@ public class Pallet extends BaseEntity {
         return true;
     }
 
+    @PrePersist
+    protected void onCreate() {
+        super.onCreate();
+        if (deliveryDate == null && order != null) {
+            deliveryDate = order.getDeliveryDate();
+        }
+    }
+
     @Override
     public String toString() {
         return "Pallet{" +
@@ -311,8 +343,13 @@ public class Pallet extends BaseEntity {
         return id != null && id.equals(pallet.id);
     }
 
+    /**
+     * Хеш по заказу: он задаётся до сохранения и не меняется, поэтому хеш не зависит от присвоения
+     * id при persist. Номер паллеты вычисляется по списку паллет заказа и в хеш не входит;
+     * паллет у заказа единицы, так что коллизии внутри заказа дешёвые
+     */
     @Override
     public int hashCode() {
-        return getClass().hashCode();
+        return Objects.hashCode(orderId);
     }
 }
\ No newline at end of file
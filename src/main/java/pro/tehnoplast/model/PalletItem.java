@@ -3,8 +3,10 @@ package pro.tehnoplast.model;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.PartitionKey;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.Objects;
 
 @Entity
@@ -16,6 +18,10 @@ public class PalletItem {
     @EmbeddedId
     private PalletItemId id;
 
+    @PartitionKey
+    @Column(name = "delivery_date", nullable = false)
+    private LocalDate deliveryDate;
+
     @Column(name = "quantity", nullable = false)
     private Integer quantity;
 
@@ -42,6 +48,14 @@ public class PalletItem {
         this.quantity = quantity;
     }
 
+    /**
+     * Конструктор с датой доставки (ключ секционирования)
+     */
+    public PalletItem(Long palletId, Long orderItemId, LocalDate deliveryDate, Integer quantity) {
+        this(palletId, orderItemId, quantity);
+        this.deliveryDate = deliveryDate;
+    }
+
     /**
      * Получить ID паллеты
      */
@@ -210,12 +224,16 @@ public class PalletItem {
             return true;
         }
         
-        String thisGroup = getProductGroup();
-        String otherGroup = other.getProductGroup();
-        
+        return isCompatibleGroups(getProductGroup(), other.getProductGroup());
+    }
+
+    /**
+     * Проверить совместимость групп товаров на одной паллете
+     */
+    public static boolean isCompatibleGroups(String group, String otherGroup) {
         // Товары одной группы совместимы
-        return thisGroup != null && thisGroup.equals(otherGroup);
-        
+        return group != null && group.equals(otherGroup);
+
         // Можно добавить дополнительные правила совместимости
     }
 
@@ -287,6 +305,13 @@ public class PalletItem {
     }
 
     @PrePersist
+    protected void onCreate() {
+        if (deliveryDate == null && pallet != null) {
+            deliveryDate = pallet.getDeliveryDate();
+        }
+        validateQuantity();
+    }
+
     @PreUpdate
     protected void validateQuantity() {
         if (!isValidQuantity()) {
@@ -3,11 +3,14 @@ package pro.tehnoplast.model;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.SQLRestriction;
+import pro.tehnoplast.parser.validation.CheckDigits;
 
 import java.util.List;
 
 @Entity
 @Table(name = "products")
+@SQLRestriction("is_deleted = false")
 @Getter
 @Setter
 public class Product extends BaseEntity {
@@ -100,6 +103,13 @@ public class Product extends BaseEntity {
         return (int) Math.ceil(quantity / packingCoefficient);
     }
 
+    /**
+     * Проверить контрольную цифру внутреннего штрихкода (EAN)
+     */
+    public boolean isValidInternalBarcode() {
+        return CheckDigits.isValidBarcode(internalBarcode);
+    }
+
     /**
      * Проверить валидность упаковочного коэффициента
      */
@@ -138,11 +148,11 @@ public class Product extends BaseEntity {
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof Product that)) return false;
-        return id != null && id.equals(that.id);
+        return internalSku != null && internalSku.equals(that.getInternalSku());
     }
 
     @Override
     public int hashCode() {
-        return getClass().hashCode();
+        return internalSku != null ? internalSku.hashCode() : 0;
     }
 }
\ No newline at end of file
@@ -78,13 +78,12 @@ public class ProductGroup {
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (!(o instanceof ProductGroup)) return false;
-        ProductGroup that = (ProductGroup) o;
-        return id != null && id.equals(that.id);
+        if (!(o instanceof ProductGroup that)) return false;
+        return name != null && name == that.getName();
     }
 
     @Override
     public int hashCode() {
-        return getClass().hashCode();
+        return name != null ? name.getDisplayName().hashCode() : 0;
     }
 }
\ No newline at end of file
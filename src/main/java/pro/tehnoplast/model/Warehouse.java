@@ -3,11 +3,14 @@ package pro.tehnoplast.model;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.SQLRestriction;
+import pro.tehnoplast.parser.validation.CheckDigits;
 
 import java.util.List;
 
 @Entity
 @Table(name = "warehouses")
+@SQLRestriction("is_deleted = false")
 @Getter
 @Setter
 public class Warehouse extends BaseEntity {
@@ -41,10 +44,10 @@ public class Warehouse extends BaseEntity {
     }
 
     /**
-     * Проверка валидности GLN (должен быть 13 цифр)
+     * Проверка валидности GLN (13 цифр и контрольная цифра GS1)
      */
     public boolean isValidGln() {
-        return gln != null && gln.length() == 13 && gln.matches("\\d+");
+        return CheckDigits.isValidGln(gln);
     }
 
     /**
@@ -99,7 +102,7 @@ public class Warehouse extends BaseEntity {
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof Warehouse that)) return false;
-        return gln != null && gln.equals(that.gln);
+        return gln != null && gln.equals(that.getGln());
     }
 
     @Override
@@ -0,0 +1,122 @@
+package pro.tehnoplast.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.Immutable;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Сводка по складу и дате доставки. Заполняется асинхронно по событиям outbox,
+ * из приложения только читается.
+ */
+@Entity
+@Immutable
+@Table(name = "warehouse_daily_summaries")
+@Getter
+@Setter
+public class WarehouseDailySummary {
+
+    @EmbeddedId
+    private SummaryId id;
+
+    @Column(name = "orders_count", nullable = false)
+    private Integer ordersCount;
+
+    @Column(name = "items_count", nullable = false)
+    private Integer itemsCount;
+
+    @Column(name = "total_quantity", nullable = false)
+    private Long totalQuantity;
+
+    @Column(name = "total_amount", nullable = false, precision = 14, scale = 2)
+    private BigDecimal totalAmount;
+
+    @Column(name = "pallet_count", nullable = false)
+    private Integer palletCount;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "warehouse_gln", referencedColumnName = "gln", insertable = false, updatable = false)
+    private Warehouse warehouse;
+
+    /**
+     * Получить GLN склада
+     */
+    public String getWarehouseGln() {
+        return id != null ? id.getWarehouseGln() : null;
+    }
+
+    /**
+     * Получить дату доставки
+     */
+    public LocalDate getDeliveryDate() {
+        return id != null ? id.getDeliveryDate() : null;
+    }
+
+    @Override
+    public String toString() {
+        return "WarehouseDailySummary{" +
+                "warehouseGln='" + getWarehouseGln() + "'" +
+                ", deliveryDate=" + getDeliveryDate() +
+                ", ordersCount=" + ordersCount +
+                ", totalQuantity=" + totalQuantity +
+                ", totalAmount=" + totalAmount +
+                ", palletCount=" + palletCount +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof WarehouseDailySummary that)) return false;
+        return id != null && id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id != null ? id.hashCode() : 0;
+    }
+
+    /**
+     * Составной ключ для таблицы warehouse_daily_summaries
+     */
+    @Embeddable
+    @Getter
+    @Setter
+    public static class SummaryId {
+
+        @Column(name = "warehouse_gln", length = 13)
+        private String warehouseGln;
+
+        @Column(name = "delivery_date")
+        private LocalDate deliveryDate;
+
+        public SummaryId() {
+        }
+
+        public SummaryId(String warehouseGln, LocalDate deliveryDate) {
+            this.warehouseGln = warehouseGln;
+            this.deliveryDate = deliveryDate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SummaryId that)) return false;
+            return Objects.equals(warehouseGln, that.warehouseGln) &&
+                   Objects.equals(deliveryDate, that.deliveryDate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(warehouseGln, deliveryDate);
+        }
+    }
+}
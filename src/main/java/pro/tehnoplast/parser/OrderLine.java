@@ -0,0 +1,330 @@
+package pro.tehnoplast.parser;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Одна строка файла заказа в разобранном виде. Объект переиспользуется для всех строк листа:
+ * текстовые поля лежат в общем буфере символов (смещение + длина), числа и даты - в примитивах.
+ * Строки (String) на каждую ячейку не создаются.
+ */
+public final class OrderLine {
+
+    public static final int COL_ORDER_NUMBER = 0;
+    public static final int COL_ORDER_DATE = 1;
+    public static final int COL_DELIVERY_DATE = 2;
+    public static final int COL_COUNTERAGENT_INN = 3;
+    public static final int COL_WAREHOUSE_GLN = 4;
+    public static final int COL_BARCODE = 5;
+    public static final int COL_QUANTITY = 6;
+    public static final int COL_PRICE = 7;
+    /**
+     * Наименование товара у покупателя - необязательная колонка; по нему подбираются кандидаты,
+     * если товар не найден по штрихкоду
+     */
+    public static final int COL_PRODUCT_NAME = 8;
+    public static final int COLUMN_COUNT = 9;
+
+    /**
+     * Значение даты/числа, которое не удалось разобрать (или ячейка пуста)
+     */
+    public static final int INVALID_INT = Integer.MIN_VALUE;
+    public static final long INVALID_LONG = Long.MIN_VALUE;
+
+    /**
+     * Разница между эпохой Excel (1899-12-30) и эпохой Unix в днях
+     */
+    private static final int EXCEL_EPOCH_OFFSET = 25569;
+
+    private char[] chars = new char[256];
+    private int length;
+    private final int[] start = new int[COLUMN_COUNT];
+    private final int[] len = new int[COLUMN_COUNT];
+
+    private long rowNumber;
+    private int orderDate;
+    private int deliveryDate;
+    private int quantity;
+    private long priceKopecks;
+
+    /**
+     * Очистить строку перед разбором следующей
+     */
+    public void reset(long rowNumber) {
+        this.rowNumber = rowNumber;
+        this.length = 0;
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            start[i] = 0;
+            len[i] = 0;
+        }
+        orderDate = INVALID_INT;
+        deliveryDate = INVALID_INT;
+        quantity = INVALID_INT;
+        priceKopecks = INVALID_LONG;
+    }
+
+    /**
+     * Начать значение колонки (предыдущее значение колонки, если было, отбрасывается)
+     */
+    public void beginField(int column) {
+        start[column] = length;
+        len[column] = 0;
+    }
+
+    /**
+     * Дописать символы к значению колонки
+     */
+    public void append(int column, char[] source, int offset, int count) {
+        ensureCapacity(count);
+        System.arraycopy(source, offset, chars, length, count);
+        length += count;
+        len[column] += count;
+    }
+
+    /**
+     * Дописать символы строки к значению колонки
+     */
+    public void append(int column, String source) {
+        int count = source.length();
+        ensureCapacity(count);
+        source.getChars(0, count, chars, length);
+        length += count;
+        len[column] += count;
+    }
+
+    /**
+     * Преобразовать числовые колонки и даты в примитивы. Вызывается после чтения всех ячеек строки
+     */
+    public void complete() {
+        trim();
+        orderDate = parseDate(COL_ORDER_DATE);
+        deliveryDate = parseDate(COL_DELIVERY_DATE);
+        quantity = parseQuantity();
+        priceKopecks = parseKopecks(COL_PRICE);
+    }
+
+    /**
+     * Проверить, что в строке нет ни одного значения (пустые строки в конце листа)
+     */
+    public boolean isBlank() {
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            if (len[i] > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public char[] chars() {
+        return chars;
+    }
+
+    public int start(int column) {
+        return start[column];
+    }
+
+    public int length(int column) {
+        return len[column];
+    }
+
+    public long rowNumber() {
+        return rowNumber;
+    }
+
+    /**
+     * Дата заказа в днях от 1970-01-01 или {@link #INVALID_INT}
+     */
+    public int orderDate() {
+        return orderDate;
+    }
+
+    /**
+     * Дата доставки в днях от 1970-01-01 или {@link #INVALID_INT}
+     */
+    public int deliveryDate() {
+        return deliveryDate;
+    }
+
+    public int quantity() {
+        return quantity;
+    }
+
+    /**
+     * Цена за единицу в копейках или {@link #INVALID_LONG}
+     */
+    public long priceKopecks() {
+        return priceKopecks;
+    }
+
+    /**
+     * Сравнить значение колонки с другой строкой без создания String
+     */
+    public boolean fieldEquals(int column, OrderLine other, int otherColumn) {
+        int n = len[column];
+        if (n != other.len[otherColumn]) {
+            return false;
+        }
+        return Arrays.equals(chars, start[column], start[column] + n,
+                other.chars, other.start[otherColumn], other.start[otherColumn] + n);
+    }
+
+    /**
+     * Получить значение колонки как String (для записи в БД)
+     */
+    public String field(int column) {
+        return new String(chars, start[column], len[column]);
+    }
+
+    /**
+     * Записать значение колонки в поток без создания String
+     */
+    public void writeField(int column, Writer out) throws IOException {
+        out.write(chars, start[column], len[column]);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + extra));
+        }
+    }
+
+    private void trim() {
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            int s = start[i];
+            int e = s + len[i];
+            while (s < e && chars[s] <= ' ') {
+                s++;
+            }
+            while (e > s && chars[e - 1] <= ' ') {
+                e--;
+            }
+            start[i] = s;
+            len[i] = e - s;
+        }
+    }
+
+    /**
+     * Дата из серийного номера Excel ("45826") или текста "dd.MM.yyyy"
+     */
+    private int parseDate(int column) {
+        int s = start[column];
+        int n = len[column];
+        if (n == 10 && chars[s + 2] == '.' && chars[s + 5] == '.') {
+            int day = digits(s, 2);
+            int month = digits(s + 3, 2);
+            int year = digits(s + 6, 4);
+            if (day < 0 || month < 1 || month > 12 || year < 0 || day < 1 || day > daysInMonth(year, month)) {
+                return INVALID_INT;
+            }
+            return (int) epochDay(year, month, day);
+        }
+        // Серийный номер может прийти с дробной частью (время), она отбрасывается
+        int end = s;
+        while (end < s + n && chars[end] != '.') {
+            end++;
+        }
+        int serial = digits(s, end - s);
+        return serial <= 0 ? INVALID_INT : serial - EXCEL_EPOCH_OFFSET;
+    }
+
+    /**
+     * Количество - целое число; числовые ячейки Excel могут прийти как "12.0"
+     */
+    private int parseQuantity() {
+        long kopecks = parseKopecks(COL_QUANTITY);
+        if (kopecks == INVALID_LONG || kopecks % 100 != 0 || kopecks / 100 > Integer.MAX_VALUE) {
+            return INVALID_INT;
+        }
+        return (int) (kopecks / 100);
+    }
+
+    /**
+     * Десятичное число ("123", "123.4", "123,45", "-1") в сотых долях.
+     * Знаки после второго округляют значение: Excel хранит цены как double ("123.44999999999999").
+     */
+    private long parseKopecks(int column) {
+        int i = start[column];
+        int end = i + len[column];
+        if (i == end) {
+            return INVALID_LONG;
+        }
+        boolean negative = chars[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long value = 0;
+        int intDigits = 0;
+        while (i < end && chars[i] >= '0' && chars[i] <= '9') {
+            if (++intDigits > 15) {
+                return INVALID_LONG;
+            }
+            value = value * 10 + (chars[i++] - '0');
+        }
+        value *= 100;
+        if (i < end && (chars[i] == '.' || chars[i] == ',')) {
+            i++;
+            int fraction = 0;
+            while (i < end && chars[i] >= '0' && chars[i] <= '9') {
+                int digit = chars[i++] - '0';
+                if (fraction == 0) {
+                    value += digit * 10L;
+                } else if (fraction == 1) {
+                    value += digit;
+                } else if (fraction == 2 && digit >= 5) {
+                    value++;
+                }
+                fraction++;
+            }
+        }
+        if (i != end || intDigits == 0) {
+            return INVALID_LONG;
+        }
+        return negative ? -value : value;
+    }
+
+    private int digits(int from, int count) {
+        if (count <= 0 || count > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    /**
+     * Номер дня от 1970-01-01 без создания LocalDate (алгоритм из LocalDate.toEpochDay)
+     */
+    private static long epochDay(int year, int month, int day) {
+        long y = year;
+        long total = 365 * y;
+        if (y >= 0) {
+            total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        } else {
+            total -= y / -4 - y / -100 + y / -400;
+        }
+        total += (367L * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (year % 4 != 0 || (year % 100 == 0 && year % 400 != 0)) {
+                total--;
+            }
+        }
+        return total - 719528;
+    }
+}
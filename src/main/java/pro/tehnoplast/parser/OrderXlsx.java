@@ -1,4 +1,206 @@
 package pro.tehnoplast.parser;
 
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * Потоковое чтение файла заказов (XLSX) через SAX по XML листа, без загрузки книги в память.
+ * Первый лист, первая строка - заголовок; колонки по порядку:
+ * номер заказа, дата заказа, дата доставки, ИНН контрагента, GLN склада, штрихкод, количество, цена.
+ * Значения ячеек складываются в один переиспользуемый {@link OrderLine}.
+ */
 public class OrderXlsx {
+
+    private static final int HEADER_ROWS = 1;
+
+    /**
+     * Обработчик разобранных строк; строка действительна только во время вызова
+     */
+    @FunctionalInterface
+    public interface LineHandler {
+        void line(OrderLine line) throws IOException;
+    }
+
+    /**
+     * Прочитать файл заказов, вызывая обработчик для каждой непустой строки данных.
+     * Возвращает количество переданных строк.
+     */
+    public static long read(File file, LineHandler handler) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            return read(pkg, handler);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Ошибка чтения файла заказов: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Прочитать файл заказов из потока (архив целиком буферизуется POI в памяти)
+     */
+    public static long read(InputStream in, LineHandler handler) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(in)) {
+            return read(pkg, handler);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Ошибка чтения файла заказов: " + e.getMessage(), e);
+        }
+    }
+
+    private static long read(OPCPackage pkg, LineHandler handler) throws IOException, OpenXML4JException {
+        XSSFReader reader = new XSSFReader(pkg);
+        String[] sharedStrings = loadSharedStrings(pkg);
+        Iterator<InputStream> sheets = reader.getSheetsData();
+        if (!sheets.hasNext()) {
+            return 0;
+        }
+        SheetHandler sheetHandler = new SheetHandler(sharedStrings, handler);
+        try (InputStream sheet = sheets.next()) {
+            XMLReader xmlReader = XMLHelper.newXMLReader();
+            xmlReader.setContentHandler(sheetHandler);
+            xmlReader.parse(new InputSource(sheet));
+        } catch (SAXException e) {
+            if (e.getException() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Ошибка разбора листа заказов: " + e.getMessage(), e);
+        } catch (ParserConfigurationException e) {
+            throw new IOException("Ошибка настройки XML-парсера: " + e.getMessage(), e);
+        }
+        return sheetHandler.lines;
+    }
+
+    /**
+     * Таблица общих строк разворачивается в массив один раз, чтобы не создавать объекты на каждую ячейку
+     */
+    private static String[] loadSharedStrings(OPCPackage pkg) throws IOException {
+        try {
+            ReadOnlySharedStringsTable table = new ReadOnlySharedStringsTable(pkg);
+            int count = table.getUniqueCount();
+            String[] strings = new String[count];
+            for (int i = 0; i < count; i++) {
+                strings[i] = table.getItemAt(i).getString();
+            }
+            return strings;
+        } catch (SAXException e) {
+            throw new IOException("Ошибка чтения общих строк: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * SAX-обработчик XML листа: {@code <row><c r="A2" t="s"><v>0</v></c>...</row>}
+     */
+    private static final class SheetHandler extends DefaultHandler {
+
+        private final String[] sharedStrings;
+        private final LineHandler handler;
+        private final OrderLine line = new OrderLine();
+
+        private long rowNumber;
+        private int column = -1;
+        private boolean sharedString;
+        private boolean capturing;
+        private int sharedIndex;
+        private long lines;
+
+        SheetHandler(String[] sharedStrings, LineHandler handler) {
+            this.sharedStrings = sharedStrings;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row" -> {
+                    String r = attributes.getValue("r");
+                    rowNumber = r != null ? Long.parseLong(r) : rowNumber + 1;
+                    line.reset(rowNumber);
+                }
+                case "c" -> {
+                    column = columnIndex(attributes.getValue("r"));
+                    sharedString = "s".equals(attributes.getValue("t"));
+                    if (column >= 0) {
+                        line.beginField(column);
+                    }
+                }
+                case "v", "t" -> {
+                    capturing = column >= 0;
+                    sharedIndex = 0;
+                }
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (!capturing) {
+                return;
+            }
+            if (sharedString) {
+                for (int i = start; i < start + length; i++) {
+                    sharedIndex = sharedIndex * 10 + (ch[i] - '0');
+                }
+            } else {
+                line.append(column, ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "v", "t" -> {
+                    if (capturing && sharedString && sharedIndex >= 0 && sharedIndex < sharedStrings.length) {
+                        line.append(column, sharedStrings[sharedIndex]);
+                    }
+                    capturing = false;
+                }
+                case "c" -> column = -1;
+                case "row" -> {
+                    if (rowNumber > HEADER_ROWS && !line.isBlank()) {
+                        line.complete();
+                        lines++;
+                        try {
+                            handler.line(line);
+                        } catch (IOException e) {
+                            throw new SAXException(e);
+                        }
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        /**
+         * Индекс колонки по адресу ячейки ("C12" -> 2); колонки за пределами формата пропускаются
+         */
+        private int columnIndex(String ref) {
+            if (ref == null) {
+                return -1;
+            }
+            int index = 0;
+            for (int i = 0; i < ref.length(); i++) {
+                char c = ref.charAt(i);
+                if (c < 'A' || c > 'Z') {
+                    break;
+                }
+                index = index * 26 + (c - 'A' + 1);
+            }
+            index--;
+            return index < OrderLine.COLUMN_COUNT ? index : -1;
+        }
+    }
 }
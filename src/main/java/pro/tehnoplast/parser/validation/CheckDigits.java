@@ -0,0 +1,91 @@
+package pro.tehnoplast.parser.validation;
+
+/**
+ * Проверка контрольных разрядов ИНН и кодов GS1 (GLN, EAN-13, EAN-8, GTIN-14)
+ * прямо по массиву символов: без регулярных выражений и промежуточных строк.
+ */
+public final class CheckDigits {
+
+    private static final int[] INN10_WEIGHTS = {2, 4, 10, 3, 5, 9, 4, 6, 8};
+    private static final int[] INN11_WEIGHTS = {7, 2, 4, 10, 3, 5, 9, 4, 6, 8};
+    private static final int[] INN12_WEIGHTS = {3, 7, 2, 4, 10, 3, 5, 9, 4, 6, 8};
+
+    private CheckDigits() {
+    }
+
+    /**
+     * ИНН юридического лица (10 цифр) или физического лица / ИП (12 цифр) с контрольными разрядами
+     */
+    public static boolean isValidInn(char[] chars, int offset, int length) {
+        if ((length != 10 && length != 12) || !allDigits(chars, offset, length)) {
+            return false;
+        }
+        if (length == 10) {
+            return innControl(chars, offset, INN10_WEIGHTS) == chars[offset + 9] - '0';
+        }
+        return innControl(chars, offset, INN11_WEIGHTS) == chars[offset + 10] - '0'
+                && innControl(chars, offset, INN12_WEIGHTS) == chars[offset + 11] - '0';
+    }
+
+    /**
+     * Проверить ИНН, заданный строкой
+     */
+    public static boolean isValidInn(String inn) {
+        return inn != null && isValidInn(inn.toCharArray(), 0, inn.length());
+    }
+
+    /**
+     * Код GS1 заданной длины (13 для GLN и EAN-13) с контрольной цифрой по модулю 10
+     */
+    public static boolean isValidGtin(char[] chars, int offset, int length, int expectedLength) {
+        return length == expectedLength && isValidGtin(chars, offset, length);
+    }
+
+    /**
+     * Штрихкод GS1 любой стандартной длины: EAN-8, UPC-A, EAN-13 или GTIN-14
+     */
+    public static boolean isValidGtin(char[] chars, int offset, int length) {
+        if ((length != 8 && length != 12 && length != 13 && length != 14) || !allDigits(chars, offset, length)) {
+            return false;
+        }
+        int sum = 0;
+        int weight = 3;
+        for (int i = offset + length - 2; i >= offset; i--) {
+            sum += (chars[i] - '0') * weight;
+            weight = 4 - weight;
+        }
+        return (10 - sum % 10) % 10 == chars[offset + length - 1] - '0';
+    }
+
+    /**
+     * Проверить GLN (13 цифр), заданный строкой
+     */
+    public static boolean isValidGln(String gln) {
+        return gln != null && isValidGtin(gln.toCharArray(), 0, gln.length(), 13);
+    }
+
+    /**
+     * Проверить штрихкод, заданный строкой
+     */
+    public static boolean isValidBarcode(String barcode) {
+        return barcode != null && isValidGtin(barcode.toCharArray(), 0, barcode.length());
+    }
+
+    private static int innControl(char[] chars, int offset, int[] weights) {
+        int sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += (chars[offset + i] - '0') * weights[i];
+        }
+        return sum % 11 % 10;
+    }
+
+    private static boolean allDigits(char[] chars, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,129 @@
+package pro.tehnoplast.parser.validation;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import pro.tehnoplast.parser.OrderLine;
+
+import java.io.IOException;
+
+import static pro.tehnoplast.parser.OrderLine.*;
+
+/**
+ * Этап проверки строк импорта заказов. Работает по разобранным символам и примитивам
+ * {@link OrderLine}: контрольные разряды ИНН, GLN и EAN, правдоподобие дат, диапазоны
+ * количества и цены. Объекты на строку не создаются, ошибки сразу уходят в {@link ValidationReport}.
+ */
+@Component
+public class OrderLineValidator {
+
+    private static final int MAX_ORDER_NUMBER_LENGTH = 50;
+    /**
+     * Ограничения колонок: unit_price DECIMAL(10, 2), total_price DECIMAL(12, 2)
+     */
+    private static final long MAX_UNIT_PRICE_KOPECKS = 99_999_999_99L;
+    private static final long MAX_TOTAL_KOPECKS = 9_999_999_999_99L;
+
+    private final int maxLeadDays;
+    private final int maxAgeDays;
+    private final int maxQuantity;
+
+    public OrderLineValidator(@Value("${tehnoseti.import.validation.max-lead-days:180}") int maxLeadDays,
+                              @Value("${tehnoseti.import.validation.max-age-days:365}") int maxAgeDays,
+                              @Value("${tehnoseti.import.validation.max-quantity:1000000}") int maxQuantity) {
+        this.maxLeadDays = maxLeadDays;
+        this.maxAgeDays = maxAgeDays;
+        this.maxQuantity = maxQuantity;
+    }
+
+    /**
+     * Проверить строку; все найденные ошибки пишутся в отчёт, итог строки учитывает вызывающий.
+     * {@code today} - текущая дата в днях от 1970-01-01, вычисляется один раз на файл.
+     */
+    public boolean validate(OrderLine line, long today, ValidationReport report) throws IOException {
+        boolean valid = checkOrderNumber(line, report);
+        char[] chars = line.chars();
+        if (!CheckDigits.isValidInn(chars, line.start(COL_COUNTERAGENT_INN), line.length(COL_COUNTERAGENT_INN))) {
+            report.error(line, ValidationError.INN_INVALID, COL_COUNTERAGENT_INN);
+            valid = false;
+        }
+        if (!CheckDigits.isValidGtin(chars, line.start(COL_WAREHOUSE_GLN), line.length(COL_WAREHOUSE_GLN), 13)) {
+            report.error(line, ValidationError.GLN_INVALID, COL_WAREHOUSE_GLN);
+            valid = false;
+        }
+        if (!CheckDigits.isValidGtin(chars, line.start(COL_BARCODE), line.length(COL_BARCODE))) {
+            report.error(line, ValidationError.BARCODE_INVALID, COL_BARCODE);
+            valid = false;
+        }
+        valid &= checkDates(line, today, report);
+        valid &= checkQuantityAndPrice(line, report);
+        return valid;
+    }
+
+    private boolean checkOrderNumber(OrderLine line, ValidationReport report) throws IOException {
+        int length = line.length(COL_ORDER_NUMBER);
+        if (length == 0) {
+            report.error(line, ValidationError.ORDER_NUMBER_MISSING, COL_ORDER_NUMBER);
+            return false;
+        }
+        if (length > MAX_ORDER_NUMBER_LENGTH) {
+            report.error(line, ValidationError.ORDER_NUMBER_TOO_LONG, COL_ORDER_NUMBER);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean checkDates(OrderLine line, long today, ValidationReport report) throws IOException {
+        int orderDate = line.orderDate();
+        int deliveryDate = line.deliveryDate();
+        boolean valid = true;
+        if (orderDate == INVALID_INT) {
+            report.error(line, ValidationError.ORDER_DATE_INVALID, COL_ORDER_DATE);
+            valid = false;
+        } else if (orderDate > today + 1) {
+            report.error(line, ValidationError.ORDER_DATE_IN_FUTURE, COL_ORDER_DATE);
+            valid = false;
+        } else if (today - orderDate > maxAgeDays) {
+            report.error(line, ValidationError.ORDER_DATE_TOO_OLD, COL_ORDER_DATE);
+            valid = false;
+        }
+        if (deliveryDate == INVALID_INT) {
+            report.error(line, ValidationError.DELIVERY_DATE_INVALID, COL_DELIVERY_DATE);
+            return false;
+        }
+        if (orderDate != INVALID_INT) {
+            if (deliveryDate < orderDate) {
+                report.error(line, ValidationError.DELIVERY_BEFORE_ORDER, COL_DELIVERY_DATE);
+                valid = false;
+            } else if (deliveryDate - orderDate > maxLeadDays) {
+                report.error(line, ValidationError.DELIVERY_TOO_FAR, COL_DELIVERY_DATE);
+                valid = false;
+            }
+        }
+        return valid;
+    }
+
+    private boolean checkQuantityAndPrice(OrderLine line, ValidationReport report) throws IOException {
+        int quantity = line.quantity();
+        long price = line.priceKopecks();
+        boolean valid = true;
+        if (quantity == INVALID_INT) {
+            report.error(line, ValidationError.QUANTITY_INVALID, COL_QUANTITY);
+            valid = false;
+        } else if (quantity <= 0 || quantity > maxQuantity) {
+            report.error(line, ValidationError.QUANTITY_OUT_OF_RANGE, COL_QUANTITY);
+            valid = false;
+        }
+        if (price == INVALID_LONG) {
+            report.error(line, ValidationError.PRICE_INVALID, COL_PRICE);
+            valid = false;
+        } else if (price < 0 || price > MAX_UNIT_PRICE_KOPECKS) {
+            report.error(line, ValidationError.PRICE_OUT_OF_RANGE, COL_PRICE);
+            valid = false;
+        }
+        if (valid && price * quantity > MAX_TOTAL_KOPECKS) {
+            report.error(line, ValidationError.TOTAL_OUT_OF_RANGE, COL_PRICE);
+            valid = false;
+        }
+        return valid;
+    }
+}
@@ -0,0 +1,37 @@
+package pro.tehnoplast.parser.validation;
+
+/**
+ * Ошибки проверки строки импорта. Код и описание - константы, в отчёт пишутся без форматирования
+ */
+public enum ValidationError {
+    ORDER_NUMBER_MISSING("Не указан номер заказа"),
+    ORDER_NUMBER_TOO_LONG("Номер заказа длиннее 50 символов"),
+    INN_INVALID("Некорректный ИНН (длина или контрольные разряды)"),
+    GLN_INVALID("Некорректный GLN склада (длина или контрольная цифра)"),
+    BARCODE_INVALID("Некорректный штрихкод EAN (длина или контрольная цифра)"),
+    ORDER_DATE_INVALID("Некорректная дата заказа"),
+    DELIVERY_DATE_INVALID("Некорректная дата доставки"),
+    ORDER_DATE_IN_FUTURE("Дата заказа в будущем"),
+    ORDER_DATE_TOO_OLD("Дата заказа слишком старая"),
+    DELIVERY_BEFORE_ORDER("Дата доставки раньше даты заказа"),
+    DELIVERY_TOO_FAR("Дата доставки слишком далеко от даты заказа"),
+    QUANTITY_INVALID("Количество не является целым числом"),
+    QUANTITY_OUT_OF_RANGE("Количество вне допустимого диапазона"),
+    PRICE_INVALID("Некорректная цена"),
+    PRICE_OUT_OF_RANGE("Цена вне допустимого диапазона"),
+    TOTAL_OUT_OF_RANGE("Сумма позиции превышает допустимую"),
+    COUNTERAGENT_NOT_FOUND("Контрагент с таким ИНН не найден"),
+    WAREHOUSE_NOT_FOUND("Склад с таким GLN не найден"),
+    PRODUCT_NOT_FOUND("Товар с таким штрихкодом не найден"),
+    ORDER_HEADER_MISMATCH("ИНН или GLN строки не совпадает с другими строками заказа");
+
+    private final String message;
+
+    ValidationError(String message) {
+        this.message = message;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
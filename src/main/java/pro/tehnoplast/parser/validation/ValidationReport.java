@@ -0,0 +1,142 @@
+package pro.tehnoplast.parser.validation;
+
+import pro.tehnoplast.parser.OrderLine;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Потоковый отчёт об ошибках импорта в формате TSV: строка файла, код ошибки, описание, значение
+ * и подсказки (для ненайденного товара - подобранные кандидаты, иначе пусто).
+ * Ошибки пишутся сразу в Writer и не накапливаются в памяти; после {@code maxWrittenErrors}
+ * запись прекращается, но подсчёт продолжается. Не потокобезопасен - один отчёт на один файл.
+ */
+public final class ValidationReport {
+
+    private static final String HEADER = "row\tcode\tmessage\tvalue\tsuggestions\n";
+
+    private final Writer out;
+    private final long maxWrittenErrors;
+    private final char[] digits = new char[20];
+
+    private long checkedLines;
+    private long rejectedLines;
+    private long errorCount;
+    private boolean headerWritten;
+
+    public ValidationReport(Writer out, long maxWrittenErrors) {
+        this.out = out;
+        this.maxWrittenErrors = maxWrittenErrors;
+    }
+
+    /**
+     * Записать ошибку по колонке строки
+     */
+    public void error(OrderLine line, ValidationError error, int column) throws IOException {
+        error(line, error, column, null);
+    }
+
+    /**
+     * Записать ошибку по колонке строки с подсказками; табуляции и переводы строк в подсказках недопустимы
+     */
+    public void error(OrderLine line, ValidationError error, int column, CharSequence suggestions) throws IOException {
+        if (errorCount++ >= maxWrittenErrors) {
+            return;
+        }
+        if (!headerWritten) {
+            out.write(HEADER);
+            headerWritten = true;
+        }
+        writeLong(line.rowNumber());
+        out.write('\t');
+        out.write(error.name());
+        out.write('\t');
+        out.write(error.getMessage());
+        out.write('\t');
+        writeValue(line, column);
+        out.write('\t');
+        if (suggestions != null) {
+            out.append(suggestions);
+        }
+        out.write('\n');
+    }
+
+    /**
+     * Будет ли записана следующая ошибка: подсказки не стоит подбирать для строк, которые в отчёт не попадут
+     */
+    public boolean writesNextError() {
+        return errorCount < maxWrittenErrors;
+    }
+
+    /**
+     * Учесть проверенную строку
+     */
+    public void lineChecked(boolean valid) {
+        checkedLines++;
+        if (!valid) {
+            rejectedLines++;
+        }
+    }
+
+    /**
+     * Дописать итоговую строку и сбросить буфер
+     */
+    public void finish() throws IOException {
+        out.write("# checked=");
+        writeLong(checkedLines);
+        out.write(" rejected=");
+        writeLong(rejectedLines);
+        out.write(" errors=");
+        writeLong(errorCount);
+        out.write('\n');
+        out.flush();
+    }
+
+    public long getCheckedLines() {
+        return checkedLines;
+    }
+
+    public long getRejectedLines() {
+        return rejectedLines;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public boolean hasErrors() {
+        return errorCount > 0;
+    }
+
+    /**
+     * Значение ячейки; табуляции и переводы строк заменяются пробелом, чтобы не ломать TSV
+     */
+    private void writeValue(OrderLine line, int column) throws IOException {
+        char[] chars = line.chars();
+        int from = line.start(column);
+        int to = from + line.length(column);
+        int runStart = from;
+        for (int i = from; i < to; i++) {
+            char c = chars[i];
+            if (c == '\t' || c == '\n' || c == '\r') {
+                out.write(chars, runStart, i - runStart);
+                out.write(' ');
+                runStart = i + 1;
+            }
+        }
+        out.write(chars, runStart, to - runStart);
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value < 0) {
+            out.write('-');
+            value = -value;
+        }
+        int pos = digits.length;
+        do {
+            digits[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        out.write(digits, pos, digits.length - pos);
+    }
+}
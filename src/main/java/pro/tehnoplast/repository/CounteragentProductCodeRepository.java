@@ -0,0 +1,14 @@
+package pro.tehnoplast.repository;
+
+import org.springframework.stereotype.Repository;
+import pro.tehnoplast.model.CounteragentProductCode;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CounteragentProductCodeRepository extends BaseRepository<CounteragentProductCode> {
+    Optional<CounteragentProductCode> findByCounteragentInnAndExternalCode(String counteragentInn, String externalCode);
+    List<CounteragentProductCode> findByCounteragentInn(String counteragentInn);
+    List<CounteragentProductCode> findByProductId(Long productId);
+}
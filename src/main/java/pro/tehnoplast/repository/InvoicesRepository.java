@@ -2,11 +2,16 @@ package pro.tehnoplast.repository;
 
 import pro.tehnoplast.model.Invoice;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
 public interface InvoicesRepository extends BaseRepository<Invoice>{
-    Optional<Invoice> findByInvoiceNumber(String invoiceNumber);
-    List<Invoice> findByIssueDate(String issueDate);
+    /**
+     * Номер счёта уникален только вместе с датой выставления
+     */
+    List<Invoice> findByNumber(String number);
+    Optional<Invoice> findByNumberAndIssueDate(String number, LocalDate issueDate);
+    List<Invoice> findByIssueDate(LocalDate issueDate);
     Optional<Invoice> findByOrderId(Long orderId);
 }
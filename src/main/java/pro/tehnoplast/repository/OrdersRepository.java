@@ -11,10 +11,14 @@ import java.util.Optional;
 
 @Repository
 public interface OrdersRepository extends BaseRepository<Order> {
-    Optional<Order> findByOrderNumber(String orderNumber);
+    /**
+     * Номер заказа уникален только вместе с датами заказа и поставки
+     */
+    List<Order> findByNumber(String number);
+    Optional<Order> findByNumberAndOrderDateAndDeliveryDate(String number, LocalDate orderDate, LocalDate deliveryDate);
 
-    List<Order> findOrdersByDeliveryDate(String deliveryDate);
-    List<Order> findOrdersByOrderDate(String orderDate);
+    List<Order> findOrdersByDeliveryDate(LocalDate deliveryDate);
+    List<Order> findOrdersByOrderDate(LocalDate orderDate);
 
-    List<Order> findOrdersByDeliveryDateAndRegion(@Param("deliveryDate") LocalDate deliveryDate, @Param("region") String region);
+    List<Order> findOrdersByDeliveryDateAndWarehouse_Region(@Param("deliveryDate") LocalDate deliveryDate, @Param("region") String region);
 }
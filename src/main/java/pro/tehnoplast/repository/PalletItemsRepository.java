@@ -1,7 +1,8 @@
 package pro.tehnoplast.repository;
 
+import org.springframework.data.jpa.repository.JpaRepository;
 import pro.tehnoplast.model.PalletItem;
 
-public interface PalletItemsRepository extends BaseRepository<PalletItem> {
+public interface PalletItemsRepository extends JpaRepository<PalletItem, PalletItem.PalletItemId> {
 
 }
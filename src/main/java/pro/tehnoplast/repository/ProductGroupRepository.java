@@ -7,5 +7,5 @@ import java.util.Optional;
 
 @Repository
 public interface ProductGroupRepository extends BaseRepository<ProductGroup> {
-    Optional<ProductGroup> findByName(String name);
+    Optional<ProductGroup> findByName(ProductGroup.ProductGroupType name);
 }
\ No newline at end of file
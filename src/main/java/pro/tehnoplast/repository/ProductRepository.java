@@ -1,5 +1,7 @@
 package pro.tehnoplast.repository;
 
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import pro.tehnoplast.model.Product;
 
@@ -13,5 +15,24 @@ public interface ProductRepository extends BaseRepository<Product> {
     Optional<Product> findByExternalBarcode(String externalBarcode);
     Optional<Product> findByExternalSku(String externalSku);
     Optional<Product> findByName(String name);
-    List<Product> findAllByCategory(String category);
+    List<Product> findAllByGroupId(Long groupId);
+
+    @Query(value = "SELECT id, name, internal_sku AS \"internalSku\","
+            + " CAST(similarity(name, :name) AS double precision) AS score"
+            + " FROM products WHERE is_deleted = false AND name % :name"
+            + " ORDER BY score DESC LIMIT :limit", nativeQuery = true)
+    List<SimilarProduct> findSimilarByName(@Param("name") String name, @Param("limit") int limit);
+
+    /**
+     * Товар, похожий по названию, и его сходство по pg_trgm (similarity) от 0 до 1
+     */
+    interface SimilarProduct {
+        Long getId();
+
+        String getName();
+
+        String getInternalSku();
+
+        Double getScore();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package pro.tehnoplast.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import pro.tehnoplast.model.WarehouseDailySummary;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface WarehouseDailySummaryRepository
+        extends JpaRepository<WarehouseDailySummary, WarehouseDailySummary.SummaryId> {
+    List<WarehouseDailySummary> findByIdDeliveryDateBetweenOrderByIdDeliveryDateAscIdWarehouseGlnAsc(
+            LocalDate from, LocalDate to);
+    List<WarehouseDailySummary> findByIdWarehouseGlnOrderByIdDeliveryDateAsc(String warehouseGln);
+}
@@ -1,9 +1,335 @@
 package pro.tehnoplast.service;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import pro.tehnoplast.repository.OrdersRepository;
+import org.springframework.transaction.annotation.Transactional;
+import pro.tehnoplast.parser.OrderLine;
+import pro.tehnoplast.parser.OrderXlsx;
+import pro.tehnoplast.parser.validation.OrderLineValidator;
+import pro.tehnoplast.parser.validation.ValidationError;
+import pro.tehnoplast.parser.validation.ValidationReport;
+import pro.tehnoplast.service.codes.ExternalCodeResolver;
+import pro.tehnoplast.service.codes.ExternalCodeTable;
+import pro.tehnoplast.service.matching.ProductMatch;
+import pro.tehnoplast.service.matching.ProductMatchingService;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static pro.tehnoplast.parser.OrderLine.*;
+
+@Slf4j
 @Service
 public class OrderParserService {
 
+    private static final int INSERT_CHUNK = 1000;
+
+    private static final String INSERT_ORDERS = """
+            INSERT INTO orders (number, order_date, delivery_date, counteragent_inn, warehouse_gln)
+            SELECT *
+            FROM unnest(?::varchar[], ?::date[], ?::date[], ?::varchar[], ?::varchar[])
+            RETURNING id, number, order_date, delivery_date
+            """;
+
+    private static final String INSERT_ORDER_ITEMS = """
+            INSERT INTO order_items (order_id, delivery_date, product_id, quantity, unit_price)
+            SELECT k.order_id, k.delivery_date, k.product_id, k.quantity, k.price_kopecks / 100.0
+            FROM unnest(?::integer[], ?::date[], ?::integer[], ?::integer[], ?::bigint[])
+                     AS k(order_id, delivery_date, product_id, quantity, price_kopecks)
+            """;
+
+    private final OrderLineValidator validator;
+    private final JdbcTemplate jdbcTemplate;
+    private final ExternalCodeResolver externalCodeResolver;
+    private final ProductMatchingService productMatchingService;
+    private final long maxReportErrors;
+
+    public OrderParserService(OrderLineValidator validator,
+                              JdbcTemplate jdbcTemplate,
+                              ExternalCodeResolver externalCodeResolver,
+                              ProductMatchingService productMatchingService,
+                              @Value("${tehnoseti.import.validation.max-report-errors:10000}") long maxReportErrors) {
+        this.validator = validator;
+        this.jdbcTemplate = jdbcTemplate;
+        this.externalCodeResolver = externalCodeResolver;
+        this.productMatchingService = productMatchingService;
+        this.maxReportErrors = maxReportErrors;
+    }
+
+    /**
+     * Итог импорта файла заказов
+     */
+    public record ImportResult(long lines, long rejectedLines, int ordersImported, int ordersRejected,
+                               int ordersSkipped, int itemsImported) {
+
+        @Override
+        public String toString() {
+            return "строк " + lines + ", отклонено строк " + rejectedLines
+                    + ", заказов загружено " + ordersImported + ", отклонено " + ordersRejected
+                    + ", уже были загружены " + ordersSkipped + ", позиций " + itemsImported;
+        }
+    }
+
+    /**
+     * Проверить файл заказов без записи в БД; ошибки по строкам пишутся в отчёт по мере чтения
+     */
+    public ValidationReport validateOrders(File xlsx, Writer reportOut) throws IOException {
+        long started = System.nanoTime();
+        long today = LocalDate.now().toEpochDay();
+        ValidationReport report = new ValidationReport(reportOut, maxReportErrors);
+        OrderXlsx.read(xlsx, line -> report.lineChecked(validator.validate(line, today, report)));
+        report.finish();
+        log.info("Проверка файла заказов {}: строк {}, отклонено {}, ошибок {} за {} мс", xlsx.getName(),
+                report.getCheckedLines(), report.getRejectedLines(), report.getErrorCount(),
+                (System.nanoTime() - started) / 1_000_000);
+        return report;
+    }
+
+    /**
+     * Загрузить файл заказов. Заказ загружается целиком или не загружается: если хотя бы одна
+     * его строка не прошла проверку, заказ отклоняется. Заказ определяется номером, датой заказа
+     * и датой доставки (уникальный ключ orders); заказы, уже загруженные ранее, пропускаются -
+     * повторный запуск безопасен. Для строк с ненайденным товаром в отчёт пишутся кандидаты,
+     * подобранные по наименованию товара из файла; принятый кандидат сохраняется как код
+     * контрагента (POST /api/products/matches/accept), и следующий импорт находит товар по штрихкоду.
+     */
+    @Transactional
+    public ImportResult importOrders(File xlsx, Writer reportOut) throws IOException {
+        long started = System.nanoTime();
+        long today = LocalDate.now().toEpochDay();
+        ValidationReport report = new ValidationReport(reportOut, maxReportErrors);
+        ReferenceData references = loadReferenceData();
+        Map<OrderKey, List<AcceptedLine>> orders = new LinkedHashMap<>();
+        Set<String> rejectedOrders = new HashSet<>();
+
+        long lines = OrderXlsx.read(xlsx, line -> {
+            boolean valid = validator.validate(line, today, report);
+            long productId = -1;
+            String inn = line.field(COL_COUNTERAGENT_INN);
+            String gln = line.field(COL_WAREHOUSE_GLN);
+            if (valid) {
+                if (!references.counteragents().contains(inn)) {
+                    report.error(line, ValidationError.COUNTERAGENT_NOT_FOUND, COL_COUNTERAGENT_INN);
+                    valid = false;
+                }
+                if (!references.warehouses().contains(gln)) {
+                    report.error(line, ValidationError.WAREHOUSE_NOT_FOUND, COL_WAREHOUSE_GLN);
+                    valid = false;
+                }
+                productId = references.productId(externalCodeResolver.tableFor(inn), line.field(COL_BARCODE));
+                if (productId < 0) {
+                    report.error(line, ValidationError.PRODUCT_NOT_FOUND, COL_BARCODE, suggestions(line, report));
+                    valid = false;
+                }
+            }
+            String number = line.field(COL_ORDER_NUMBER);
+            List<AcceptedLine> orderLines = null;
+            if (valid) {
+                orderLines = orders.computeIfAbsent(new OrderKey(number, line.orderDate(), line.deliveryDate()),
+                        k -> new ArrayList<>());
+                if (!orderLines.isEmpty() && !orderLines.get(0).sameHeader(inn, gln)) {
+                    report.error(line, ValidationError.ORDER_HEADER_MISMATCH, COL_COUNTERAGENT_INN);
+                    valid = false;
+                }
+            }
+            report.lineChecked(valid);
+            if (valid) {
+                orderLines.add(new AcceptedLine(inn, gln, productId, line.quantity(), line.priceKopecks()));
+            } else {
+                rejectedOrders.add(number);
+            }
+        });
+        report.finish();
+
+        orders.keySet().removeIf(key -> rejectedOrders.contains(key.number()));
+        int skipped = removeExistingOrders(orders);
+        ensurePartitions(orders.keySet());
+        int items = insertOrders(orders);
+
+        ImportResult result = new ImportResult(lines, report.getRejectedLines(), orders.size(),
+                rejectedOrders.size(), skipped, items);
+        log.info("Импорт файла заказов {}: {} за {} мс", xlsx.getName(), result,
+                (System.nanoTime() - started) / 1_000_000);
+        return result;
+    }
+
+    /**
+     * Кандидаты для строки с ненайденным товаром по наименованию из файла: "id:артикул:сходство" через ";".
+     * Без наименования или сверх лимита отчёта кандидаты не подбираются
+     */
+    private String suggestions(OrderLine line, ValidationReport report) {
+        if (line.length(COL_PRODUCT_NAME) == 0 || !report.writesNextError()) {
+            return null;
+        }
+        List<ProductMatch> matches = productMatchingService.suggest(line.field(COL_PRODUCT_NAME));
+        StringBuilder sb = new StringBuilder();
+        for (ProductMatch match : matches) {
+            if (!sb.isEmpty()) {
+                sb.append(';');
+            }
+            sb.append(match.productId()).append(':').append(match.internalSku()).append(':')
+                    .append(String.format(Locale.ROOT, "%.2f", match.score()));
+        }
+        return sb.toString();
+    }
+
+    private ReferenceData loadReferenceData() {
+        Set<String> counteragents = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT inn FROM counteragents WHERE is_deleted = false", String.class));
+        Set<String> warehouses = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT gln FROM warehouses WHERE is_deleted = false", String.class));
+        Map<String, Long> byBarcode = new HashMap<>();
+        jdbcTemplate.query("SELECT id, internal_barcode, external_barcode FROM products WHERE is_deleted = false",
+                rs -> {
+                    long id = rs.getLong("id");
+                    String external = rs.getString("external_barcode");
+                    if (external != null) {
+                        byBarcode.putIfAbsent(external, id);
+                    }
+                    // Внутренний штрихкод уникален и важнее внешнего
+                    byBarcode.put(rs.getString("internal_barcode"), id);
+                });
+        return new ReferenceData(counteragents, warehouses, byBarcode);
+    }
+
+    private int removeExistingOrders(Map<OrderKey, List<AcceptedLine>> orders) {
+        if (orders.isEmpty()) {
+            return 0;
+        }
+        String[] numbers = orders.keySet().stream().map(OrderKey::number).distinct().toArray(String[]::new);
+        Set<OrderKey> existing = new HashSet<>();
+        jdbcTemplate.query("""
+                SELECT number, order_date, delivery_date
+                FROM orders
+                WHERE number = ANY (?::varchar[])
+                """, rs -> {
+            existing.add(orderKey(rs));
+        }, (Object) numbers);
+        int before = orders.size();
+        orders.keySet().removeAll(existing);
+        return before - orders.size();
+    }
+
+    private void ensurePartitions(Set<OrderKey> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (OrderKey key : keys) {
+            min = Math.min(min, key.deliveryDate());
+            max = Math.max(max, key.deliveryDate());
+        }
+        LocalDate from = LocalDate.ofEpochDay(min).withDayOfMonth(1);
+        long months = ChronoUnit.MONTHS.between(from, LocalDate.ofEpochDay(max).withDayOfMonth(1)) + 1;
+        jdbcTemplate.queryForObject("SELECT ensure_delivery_partitions(?, ?)", Integer.class, from, (int) months);
+    }
+
+    /**
+     * Вставка заказов и позиций пакетами через unnest; возвращает количество позиций
+     */
+    private int insertOrders(Map<OrderKey, List<AcceptedLine>> orders) {
+        List<Map.Entry<OrderKey, List<AcceptedLine>>> entries = new ArrayList<>(orders.entrySet());
+        int items = 0;
+        for (int from = 0; from < entries.size(); from += INSERT_CHUNK) {
+            List<Map.Entry<OrderKey, List<AcceptedLine>>> chunk =
+                    entries.subList(from, Math.min(from + INSERT_CHUNK, entries.size()));
+            int n = chunk.size();
+            String[] numbers = new String[n];
+            String[] orderDates = new String[n];
+            String[] deliveryDates = new String[n];
+            String[] inns = new String[n];
+            String[] glns = new String[n];
+            for (int i = 0; i < n; i++) {
+                OrderKey key = chunk.get(i).getKey();
+                AcceptedLine first = chunk.get(i).getValue().get(0);
+                numbers[i] = key.number();
+                orderDates[i] = LocalDate.ofEpochDay(key.orderDate()).toString();
+                deliveryDates[i] = LocalDate.ofEpochDay(key.deliveryDate()).toString();
+                inns[i] = first.inn();
+                glns[i] = first.gln();
+            }
+            Map<OrderKey, Long> ids = new HashMap<>();
+            jdbcTemplate.query(INSERT_ORDERS, rs -> {
+                ids.put(orderKey(rs), rs.getLong("id"));
+            }, numbers, orderDates, deliveryDates, inns, glns);
+
+            int count = 0;
+            for (Map.Entry<OrderKey, List<AcceptedLine>> entry : chunk) {
+                count += entry.getValue().size();
+            }
+            Long[] orderIds = new Long[count];
+            String[] itemDates = new String[count];
+            Long[] productIds = new Long[count];
+            Integer[] quantities = new Integer[count];
+            Long[] prices = new Long[count];
+            int i = 0;
+            for (Map.Entry<OrderKey, List<AcceptedLine>> entry : chunk) {
+                Long orderId = ids.get(entry.getKey());
+                String deliveryDate = LocalDate.ofEpochDay(entry.getKey().deliveryDate()).toString();
+                for (AcceptedLine line : entry.getValue()) {
+                    orderIds[i] = orderId;
+                    itemDates[i] = deliveryDate;
+                    productIds[i] = line.productId();
+                    quantities[i] = line.quantity();
+                    prices[i] = line.priceKopecks();
+                    i++;
+                }
+            }
+            items += jdbcTemplate.update(INSERT_ORDER_ITEMS, orderIds, itemDates, productIds, quantities, prices);
+        }
+        return items;
+    }
+
+    private static OrderKey orderKey(ResultSet rs) throws SQLException {
+        return new OrderKey(rs.getString("number"),
+                (int) rs.getDate("order_date").toLocalDate().toEpochDay(),
+                (int) rs.getDate("delivery_date").toLocalDate().toEpochDay());
+    }
+
+    /**
+     * Ключ заказа - как уникальный ключ таблицы orders; даты в днях от 1970-01-01
+     */
+    private record OrderKey(String number, int orderDate, int deliveryDate) {
+    }
+
+    private record AcceptedLine(String inn, String gln, long productId, int quantity, long priceKopecks) {
+
+        boolean sameHeader(String otherInn, String otherGln) {
+            return inn.equals(otherInn) && gln.equals(otherGln);
+        }
+    }
+
+    /**
+     * Справочники для проверки ссылок, загружаются один раз на файл
+     */
+    private record ReferenceData(Set<String> counteragents, Set<String> warehouses, Map<String, Long> byBarcode) {
+
+        /**
+         * Товар по штрихкоду: сначала коды контрагента, затем внутренний и внешний штрихкоды
+         */
+        long productId(ExternalCodeTable counteragentCodes, String barcode) {
+            long id = counteragentCodes.get(barcode);
+            if (id != ExternalCodeTable.NOT_FOUND) {
+                return id;
+            }
+            Long product = byBarcode.get(barcode);
+            return product != null ? product : -1;
+        }
+    }
 }
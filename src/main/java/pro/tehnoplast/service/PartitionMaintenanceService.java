@@ -0,0 +1,75 @@
+package pro.tehnoplast.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+
+/**
+ * Обслуживание помесячных секций orders / order_items / pallets / pallet_items:
+ * заблаговременное создание будущих секций и отсоединение старых в архивную схему.
+ */
+@Slf4j
+@Service
+public class PartitionMaintenanceService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final String archiveSchema;
+
+    public PartitionMaintenanceService(JdbcTemplate jdbcTemplate,
+                                       @Value("${tehnoseti.partitioning.months-ahead:3}") int monthsAhead,
+                                       @Value("${tehnoseti.partitioning.retention-months:24}") int retentionMonths,
+                                       @Value("${tehnoseti.partitioning.archive-schema:logistics_archive}") String archiveSchema) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.archiveSchema = archiveSchema;
+    }
+
+    /**
+     * Ежесуточное обслуживание секций
+     */
+    @Scheduled(cron = "${tehnoseti.partitioning.cron:0 30 2 * * *}")
+    public void maintainPartitions() {
+        createFuturePartitions();
+        if (retentionMonths > 0) {
+            detachOldPartitions();
+        }
+    }
+
+    /**
+     * Создать недостающие секции с текущего месяца на monthsAhead месяцев вперед
+     */
+    @Transactional
+    public int createFuturePartitions() {
+        LocalDate from = LocalDate.now().withDayOfMonth(1);
+        Integer created = jdbcTemplate.queryForObject(
+                "SELECT ensure_delivery_partitions(?, ?)", Integer.class, from, monthsAhead + 1);
+        int count = created != null ? created : 0;
+        if (count > 0) {
+            log.info("Создано секций по дате доставки: {}", count);
+        }
+        return count;
+    }
+
+    /**
+     * Отсоединить секции старше срока хранения и перенести их в архивную схему
+     */
+    @Transactional
+    public int detachOldPartitions() {
+        LocalDate before = LocalDate.now().withDayOfMonth(1).minusMonths(retentionMonths);
+        Integer detached = jdbcTemplate.queryForObject(
+                "SELECT detach_delivery_partitions(?, ?)", Integer.class, before, archiveSchema);
+        int count = detached != null ? detached : 0;
+        if (count > 0) {
+            log.info("Отсоединено секций до {} в схему {}: {}", before, archiveSchema, count);
+        }
+        return count;
+    }
+}
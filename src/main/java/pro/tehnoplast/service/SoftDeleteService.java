@@ -0,0 +1,286 @@
+package pro.tehnoplast.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Array;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Групповое мягкое удаление/восстановление и фоновая очистка "надгробий".
+ * Операции выполняются одним SQL-запросом на набор ключей, минуя загрузку сущностей.
+ */
+@Slf4j
+@Service
+public class SoftDeleteService {
+
+    /**
+     * Таблицы с признаком is_deleted в порядке безопасной очистки
+     * (сначала зависимые, затем справочники)
+     */
+    public enum SoftDeletableTable {
+        PALLETS("pallets", "id", "integer", "id, delivery_date", null),
+        ORDER_ITEMS("order_items", "id", "integer", "id, delivery_date",
+                "NOT EXISTS (SELECT 1 FROM pallet_items pi WHERE pi.order_item_id = t.id AND pi.delivery_date = t.delivery_date)"),
+        INVOICES("invoices", "id", "integer", "id", null),
+        // Счета и позиции удаляются вместе с заказом каскадом, поэтому заказ очищается, только когда живых нет
+        ORDERS("orders", "id", "integer", "id, delivery_date",
+                "NOT EXISTS (SELECT 1 FROM invoices i WHERE i.order_id = t.id"
+                        + " AND i.order_delivery_date = t.delivery_date AND i.is_deleted = false)"
+                        + " AND NOT EXISTS (SELECT 1 FROM order_items oi WHERE oi.order_id = t.id"
+                        + " AND oi.delivery_date = t.delivery_date AND oi.is_deleted = false)"),
+        PRODUCTS("products", "id", "integer", "id",
+                "NOT EXISTS (SELECT 1 FROM order_items oi WHERE oi.product_id = t.id)"),
+        COUNTERAGENTS("counteragents", "inn", "varchar", "inn",
+                "NOT EXISTS (SELECT 1 FROM orders o WHERE o.counteragent_inn = t.inn)"
+                        + " AND NOT EXISTS (SELECT 1 FROM invoices i WHERE i.counteragent_inn = t.inn)"),
+        WAREHOUSES("warehouses", "gln", "varchar", "gln",
+                "NOT EXISTS (SELECT 1 FROM orders o WHERE o.warehouse_gln = t.gln)");
+
+        private final String tableName;
+        private final String idColumn;
+        private final String idSqlType;
+        private final String keyColumns;
+        private final String purgeGuard;
+
+        SoftDeletableTable(String tableName, String idColumn, String idSqlType, String keyColumns, String purgeGuard) {
+            this.tableName = tableName;
+            this.idColumn = idColumn;
+            this.idSqlType = idSqlType;
+            this.keyColumns = keyColumns;
+            this.purgeGuard = purgeGuard;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+    }
+
+    /**
+     * Сборная паллета переходит к оставшемуся заказу с наибольшей долей мест (как при консолидации)
+     */
+    private static final String REASSIGN_SHARED_PALLETS = """
+            UPDATE pallets p
+            SET order_id   = other.order_id,
+                updated_at = NOW()
+            FROM (SELECT DISTINCT ON (s.id, s.delivery_date) s.id, s.delivery_date, oi.order_id
+                  FROM pallets s
+                           JOIN pallet_items pi ON pi.pallet_id = s.id AND pi.delivery_date = s.delivery_date
+                           JOIN order_items oi ON oi.id = pi.order_item_id AND oi.delivery_date = pi.delivery_date
+                           JOIN products pr ON pr.id = oi.product_id
+                  WHERE s.order_id = ANY (?)
+                    AND s.is_deleted = false
+                    AND oi.order_id <> ALL (?)
+                    AND oi.is_deleted = false
+                  GROUP BY s.id, s.delivery_date, oi.order_id
+                  ORDER BY s.id, s.delivery_date, SUM(pi.quantity * pr.packing_coefficient) DESC, oi.order_id) other
+            WHERE p.id = other.id
+              AND p.delivery_date = other.delivery_date
+            """;
+
+    /**
+     * Позиции удаляемых заказов на чужих паллетах переносятся в detached_pallet_items, откуда их вернёт восстановление
+     */
+    private static final String DETACH_FROM_SHARED_PALLETS = """
+            WITH detached AS (
+                DELETE FROM pallet_items pi
+                    USING order_items oi, pallets p
+                    WHERE oi.id = pi.order_item_id
+                        AND oi.delivery_date = pi.delivery_date
+                        AND oi.order_id = ANY (?)
+                        AND p.id = pi.pallet_id
+                        AND p.delivery_date = pi.delivery_date
+                        AND p.order_id <> ALL (?)
+                        AND p.is_deleted = false
+                    RETURNING pi.pallet_id, pi.order_item_id, pi.delivery_date, oi.order_id, pi.quantity)
+            INSERT INTO detached_pallet_items (pallet_id, order_item_id, delivery_date, order_id, quantity)
+            SELECT pallet_id, order_item_id, delivery_date, order_id, quantity
+            FROM detached
+            ON CONFLICT (pallet_id, order_item_id, delivery_date)
+                DO UPDATE SET quantity    = detached_pallet_items.quantity + EXCLUDED.quantity,
+                              detached_at = NOW()
+            """;
+
+    /**
+     * Позиции и паллеты, удалённые вместе с заказом (отметка deleted_with_order, её снимает триггер
+     * при восстановлении); удалённые раньше заказа по отдельности остаются удалёнными
+     */
+    private static final String RESTORE_ORDER_ROWS = """
+            UPDATE %1$s t
+            SET is_deleted = false,
+                updated_at = NOW()
+            FROM orders o
+            WHERE o.id = ANY (?)
+              AND o.is_deleted = true
+              AND t.order_id = o.id
+              AND t.delivery_date = o.delivery_date
+              AND t.is_deleted = true
+              AND t.deleted_with_order = true
+            """;
+
+    /**
+     * Вернуть снятые позиции на паллеты, которые ещё существуют
+     */
+    private static final String REATTACH_TO_SHARED_PALLETS = """
+            WITH returned AS (
+                DELETE FROM detached_pallet_items d
+                    USING pallets p, order_items oi
+                    WHERE d.order_id = ANY (?)
+                        AND p.id = d.pallet_id
+                        AND p.delivery_date = d.delivery_date
+                        AND p.is_deleted = false
+                        AND oi.id = d.order_item_id
+                        AND oi.delivery_date = d.delivery_date
+                        AND oi.is_deleted = false
+                    RETURNING d.pallet_id, d.order_item_id, d.delivery_date, d.quantity)
+            INSERT INTO pallet_items (pallet_id, order_item_id, delivery_date, quantity)
+            SELECT pallet_id, order_item_id, delivery_date, quantity
+            FROM returned
+            ON CONFLICT (pallet_id, order_item_id, delivery_date)
+                DO UPDATE SET quantity = pallet_items.quantity + EXCLUDED.quantity
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int purgeAfterDays;
+    private final int purgeBatchSize;
+    private final long purgePauseMillis;
+
+    public SoftDeleteService(JdbcTemplate jdbcTemplate,
+                             @Value("${tehnoseti.soft-delete.purge-after-days:90}") int purgeAfterDays,
+                             @Value("${tehnoseti.soft-delete.purge-batch-size:500}") int purgeBatchSize,
+                             @Value("${tehnoseti.soft-delete.purge-pause-millis:200}") long purgePauseMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.purgeAfterDays = purgeAfterDays;
+        this.purgeBatchSize = purgeBatchSize;
+        this.purgePauseMillis = purgePauseMillis;
+    }
+
+    /**
+     * Мягко удалить набор записей. Возвращает количество измененных строк.
+     */
+    @Transactional
+    public int softDelete(SoftDeletableTable table, Collection<?> ids) {
+        return updateDeletedFlag(table, ids, true);
+    }
+
+    /**
+     * Восстановить набор мягко удаленных записей; заказы восстанавливаются вместе с позициями,
+     * паллетами и раскладкой (см. {@link #restoreOrders(Collection)})
+     */
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public int restore(SoftDeletableTable table, Collection<?> ids) {
+        if (table == SoftDeletableTable.ORDERS) {
+            return restoreOrders((Collection<Long>) ids);
+        }
+        return updateDeletedFlag(table, ids, false);
+    }
+
+    /**
+     * Мягко удалить заказы вместе с их позициями и паллетами. Сборная паллета с позициями
+     * других заказов остаётся: она переходит к заказу с наибольшей долей мест, а позиции удаляемых
+     * заказов с неё снимаются и сохраняются в detached_pallet_items до восстановления.
+     */
+    @Transactional
+    public int softDeleteOrders(Collection<Long> orderIds) {
+        if (orderIds == null || orderIds.isEmpty()) {
+            return 0;
+        }
+        Array ids = toSqlArray("integer", orderIds);
+        jdbcTemplate.update(REASSIGN_SHARED_PALLETS, ids, ids);
+        jdbcTemplate.update(DETACH_FROM_SHARED_PALLETS, ids, ids);
+        jdbcTemplate.update("UPDATE pallets SET is_deleted = true, deleted_with_order = true, updated_at = NOW()"
+                + " WHERE order_id = ANY (?) AND is_deleted = false", ids);
+        jdbcTemplate.update("UPDATE order_items SET is_deleted = true, deleted_with_order = true, updated_at = NOW()"
+                + " WHERE order_id = ANY (?) AND is_deleted = false", ids);
+        return jdbcTemplate.update("UPDATE orders SET is_deleted = true, updated_at = NOW()"
+                + " WHERE id = ANY (?) AND is_deleted = false", ids);
+    }
+
+    /**
+     * Восстановить заказы, удалённые {@link #softDeleteOrders(Collection)}: позиции и паллеты, удалённые
+     * вместе с заказом, и позиции на сборных паллетах других заказов, если эти паллеты ещё существуют.
+     * Паллета, перешедшая к другому заказу, остаётся за ним.
+     */
+    @Transactional
+    public int restoreOrders(Collection<Long> orderIds) {
+        if (orderIds == null || orderIds.isEmpty()) {
+            return 0;
+        }
+        Array ids = toSqlArray("integer", orderIds);
+        jdbcTemplate.update(RESTORE_ORDER_ROWS.formatted("order_items"), ids);
+        jdbcTemplate.update(RESTORE_ORDER_ROWS.formatted("pallets"), ids);
+        int restored = jdbcTemplate.update("UPDATE orders SET is_deleted = false, updated_at = NOW()"
+                + " WHERE id = ANY (?) AND is_deleted = true", ids);
+        jdbcTemplate.update(REATTACH_TO_SHARED_PALLETS, ids);
+        return restored;
+    }
+
+    /**
+     * Окончательно удалить записи, мягко удаленные более purgeAfterDays дней назад.
+     * Удаление идет короткими пакетами, каждый в своей транзакции, чтобы не держать
+     * долгие блокировки и давать autovacuum успевать за очисткой.
+     */
+    @Scheduled(cron = "${tehnoseti.soft-delete.purge-cron:0 0 3 * * *}")
+    public void purgeTombstones() {
+        LocalDateTime threshold = LocalDateTime.now().minusDays(purgeAfterDays);
+        for (SoftDeletableTable table : SoftDeletableTable.values()) {
+            long total = 0;
+            int deleted;
+            do {
+                deleted = purgeBatch(table, threshold);
+                total += deleted;
+                if (deleted > 0) {
+                    pause();
+                }
+            } while (deleted == purgeBatchSize);
+            if (total > 0) {
+                log.info("Окончательно удалено из {}: {}", table.tableName, total);
+            }
+        }
+    }
+
+    /**
+     * Удалить один пакет "надгробий" из таблицы
+     */
+    public int purgeBatch(SoftDeletableTable table, LocalDateTime threshold) {
+        String sql = "DELETE FROM " + table.tableName
+                + " WHERE (" + table.keyColumns + ") IN ("
+                + "SELECT " + table.keyColumns + " FROM " + table.tableName + " t"
+                + " WHERE t.is_deleted = true AND t.updated_at < ?"
+                + (table.purgeGuard != null ? " AND " + table.purgeGuard : "")
+                + " LIMIT ? FOR UPDATE SKIP LOCKED)";
+        return jdbcTemplate.update(sql, Timestamp.valueOf(threshold), purgeBatchSize);
+    }
+
+    private int updateDeletedFlag(SoftDeletableTable table, Collection<?> ids, boolean deleted) {
+        if (ids == null || ids.isEmpty()) {
+            return 0;
+        }
+        String sql = "UPDATE " + table.tableName + " SET is_deleted = ?, updated_at = NOW()"
+                + " WHERE " + table.idColumn + " = ANY (?) AND is_deleted = ?";
+        return jdbcTemplate.update(sql, deleted, toSqlArray(table.idSqlType, ids), !deleted);
+    }
+
+    private Array toSqlArray(String sqlType, Collection<?> values) {
+        return jdbcTemplate.execute((ConnectionCallback<Array>) con -> con.createArrayOf(sqlType, values.toArray()));
+    }
+
+    private void pause() {
+        if (purgePauseMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(purgePauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
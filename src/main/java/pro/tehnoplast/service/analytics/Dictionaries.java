@@ -0,0 +1,125 @@
+package pro.tehnoplast.service.analytics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Словари снимка: товар, склад и контрагент хранятся в колонках плотными кодами 0..n-1.
+ * Словари пополняет только поток обновления снимка; массивы значений при росте копируются,
+ * поэтому ранее выданный {@link View} читается запросами без блокировок.
+ */
+final class Dictionaries {
+
+    static final String PRODUCTS = "products.dict";
+    static final String WAREHOUSES = "warehouses.dict";
+    static final String COUNTERAGENTS = "counteragents.dict";
+
+    /**
+     * Значения словарей на момент снимка
+     */
+    record View(int[] productIds, int productCount, String[] warehouseGlns, int warehouseCount,
+                String[] counteragentInns, int counteragentCount) {
+    }
+
+    private int[] productIds = new int[1024];
+    private int productCount;
+    private final Map<Integer, Integer> productCodes = new HashMap<>();
+
+    private String[] warehouseGlns = new String[64];
+    private int warehouseCount;
+    private final Map<String, Integer> warehouseCodes = new HashMap<>();
+
+    private String[] counteragentInns = new String[256];
+    private int counteragentCount;
+    private final Map<String, Integer> counteragentCodes = new HashMap<>();
+
+    int productCode(int productId) {
+        Integer code = productCodes.get(productId);
+        if (code != null) {
+            return code;
+        }
+        if (productCount == productIds.length) {
+            productIds = Arrays.copyOf(productIds, productCount * 2);
+        }
+        productIds[productCount] = productId;
+        productCodes.put(productId, productCount);
+        return productCount++;
+    }
+
+    int warehouseCode(String gln) {
+        Integer code = warehouseCodes.get(gln);
+        if (code != null) {
+            return code;
+        }
+        if (warehouseCount == warehouseGlns.length) {
+            warehouseGlns = Arrays.copyOf(warehouseGlns, warehouseCount * 2);
+        }
+        warehouseGlns[warehouseCount] = gln;
+        warehouseCodes.put(gln, warehouseCount);
+        return warehouseCount++;
+    }
+
+    /**
+     * Код контрагента; заказ без контрагента получает код пустой строки
+     */
+    int counteragentCode(String inn) {
+        String key = inn != null ? inn : "";
+        Integer code = counteragentCodes.get(key);
+        if (code != null) {
+            return code;
+        }
+        if (counteragentCount == counteragentInns.length) {
+            counteragentInns = Arrays.copyOf(counteragentInns, counteragentCount * 2);
+        }
+        counteragentInns[counteragentCount] = key;
+        counteragentCodes.put(key, counteragentCount);
+        return counteragentCount++;
+    }
+
+    View view() {
+        return new View(productIds, productCount, warehouseGlns, warehouseCount, counteragentInns, counteragentCount);
+    }
+
+    /**
+     * Сохранить словари рядом с колонками поколения (по значению в строке, строка = код)
+     */
+    void save(Path dir) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(dir.resolve(PRODUCTS), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < productCount; i++) {
+                writer.write(Integer.toString(productIds[i]));
+                writer.newLine();
+            }
+        }
+        write(dir.resolve(WAREHOUSES), warehouseGlns, warehouseCount);
+        write(dir.resolve(COUNTERAGENTS), counteragentInns, counteragentCount);
+    }
+
+    static Dictionaries load(Path dir) throws IOException {
+        Dictionaries dictionaries = new Dictionaries();
+        for (String line : Files.readAllLines(dir.resolve(PRODUCTS), StandardCharsets.UTF_8)) {
+            dictionaries.productCode(Integer.parseInt(line));
+        }
+        for (String line : Files.readAllLines(dir.resolve(WAREHOUSES), StandardCharsets.UTF_8)) {
+            dictionaries.warehouseCode(line);
+        }
+        for (String line : Files.readAllLines(dir.resolve(COUNTERAGENTS), StandardCharsets.UTF_8)) {
+            dictionaries.counteragentCode(line);
+        }
+        return dictionaries;
+    }
+
+    private static void write(Path file, String[] values, int count) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < count; i++) {
+                writer.write(values[i]);
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package pro.tehnoplast.service.analytics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Сжатая колонка базового сегмента: строки разбиты на блоки по {@link Segment#BLOCK}, в блоке хранится
+ * минимум и значения как разности с ним, упакованные в наименьшее число бит (frame of reference).
+ * Упорядоченные колонки (id, даты доставки - позиции импортируются по датам) сводятся к нескольким
+ * битам на строку или к нулю, коды словарей - к разрядности словаря.
+ * <p>
+ * Файл: упакованные биты всех блоков подряд (слова long), затем минимумы блоков (long)
+ * и разрядности блоков (byte). Минимумы и разрядности читаются в кучу, биты остаются в отображении.
+ */
+final class PackedColumn implements Segment.Column {
+
+    /**
+     * Наибольшая разрядность, при которой значение читается одним long с любого бита байта
+     */
+    private static final int SINGLE_READ_WIDTH = 56;
+
+    private final ByteBuffer data;
+    private final long[] mins;
+    private final byte[] widths;
+    private final long[] offsets;
+    private final int rows;
+
+    private PackedColumn(ByteBuffer data, long[] mins, byte[] widths, int rows) {
+        this.data = data;
+        this.mins = mins;
+        this.widths = widths;
+        this.rows = rows;
+        this.offsets = new long[widths.length];
+        long offset = 0;
+        for (int block = 0; block < widths.length; block++) {
+            offsets[block] = offset;
+            offset += (long) widths[block] * Segment.BLOCK;
+        }
+    }
+
+    /**
+     * Отобразить файл колонки в память (только чтение). Отображается весь файл: значение читается
+     * long с его первого байта, и у последних значений этот long заходит в минимумы блоков
+     */
+    static PackedColumn map(Path file, int rows) throws IOException {
+        int blocks = Segment.blocks(rows);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long dataBytes = size - blocks * 9L;
+            if (dataBytes < 0 || dataBytes % 8 != 0) {
+                throw new IOException("Файл колонки повреждён: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            long[] mins = new long[blocks];
+            byte[] widths = new byte[blocks];
+            for (int block = 0; block < blocks; block++) {
+                mins[block] = buffer.getLong((int) (dataBytes + block * 8L));
+                widths[block] = buffer.get((int) (dataBytes + blocks * 8L + block));
+            }
+            return new PackedColumn(buffer, mins, widths, rows);
+        }
+    }
+
+    @Override
+    public long get(int row) {
+        int block = row >>> Segment.BLOCK_SHIFT;
+        int width = widths[block];
+        if (width == 0) {
+            return mins[block];
+        }
+        return mins[block] + bits(offsets[block] + (long) (row & (Segment.BLOCK - 1)) * width, width);
+    }
+
+    @Override
+    public int decode(int block, long[] out) {
+        int count = Math.min(Segment.BLOCK, rows - (block << Segment.BLOCK_SHIFT));
+        long min = mins[block];
+        int width = widths[block];
+        if (width == 0) {
+            Arrays.fill(out, 0, count, min);
+            return count;
+        }
+        long position = offsets[block];
+        if (width <= SINGLE_READ_WIDTH) {
+            long mask = (1L << width) - 1;
+            for (int i = 0; i < count; i++) {
+                out[i] = min + ((data.getLong((int) (position >>> 3)) >>> (position & 7)) & mask);
+                position += width;
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                out[i] = min + bits(position, width);
+                position += width;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long lowerBound(int block) {
+        return mins[block];
+    }
+
+    @Override
+    public long upperBound(int block) {
+        int width = widths[block];
+        return width == 64 ? Long.MAX_VALUE : mins[block] + ((1L << width) - 1);
+    }
+
+    /**
+     * Значение шириной width с бита position; шире {@link #SINGLE_READ_WIDTH} старшие биты дочитываются из следующего байта
+     */
+    private long bits(long position, int width) {
+        int index = (int) (position >>> 3);
+        int shift = (int) (position & 7);
+        long value = data.getLong(index) >>> shift;
+        if (shift + width > 64) {
+            value |= (data.get(index + 8) & 0xFFL) << (64 - shift);
+        }
+        return width == 64 ? value : value & ((1L << width) - 1);
+    }
+
+    /**
+     * Последовательная запись значений колонки: блок копится в массиве и упаковывается целиком
+     */
+    static final class Writer implements Closeable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private final long[] block = new long[Segment.BLOCK];
+        private int blockSize;
+        private long[] mins = new long[1024];
+        private byte[] widths = new byte[1024];
+        private int blocks;
+        private long word;
+        private int wordBits;
+
+        Writer(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void add(long value) throws IOException {
+            block[blockSize++] = value;
+            if (blockSize == Segment.BLOCK) {
+                flushBlock();
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            long min = block[0];
+            long max = block[0];
+            for (int i = 1; i < blockSize; i++) {
+                min = Math.min(min, block[i]);
+                max = Math.max(max, block[i]);
+            }
+            int width = 64 - Long.numberOfLeadingZeros(max - min);
+            if (blocks == mins.length) {
+                mins = Arrays.copyOf(mins, blocks * 2);
+                widths = Arrays.copyOf(widths, blocks * 2);
+            }
+            mins[blocks] = min;
+            widths[blocks] = (byte) width;
+            blocks++;
+            if (width > 0) {
+                // Неполный последний блок дополняется до BLOCK, чтобы смещения блоков считались умножением
+                for (int i = 0; i < Segment.BLOCK; i++) {
+                    put(i < blockSize ? block[i] - min : 0, width);
+                }
+            }
+            blockSize = 0;
+        }
+
+        private void put(long value, int width) throws IOException {
+            word |= value << wordBits;
+            if (wordBits + width >= 64) {
+                putLong(word);
+                int used = 64 - wordBits;
+                word = used == 64 ? 0 : value >>> used;
+                wordBits = wordBits + width - 64;
+            } else {
+                wordBits += width;
+            }
+        }
+
+        private void putLong(long value) throws IOException {
+            if (buffer.remaining() < 8) {
+                flush();
+            }
+            buffer.putLong(value);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (blockSize > 0) {
+                    flushBlock();
+                }
+                if (wordBits > 0) {
+                    putLong(word);
+                }
+                for (int i = 0; i < blocks; i++) {
+                    putLong(mins[i]);
+                }
+                for (int i = 0; i < blocks; i++) {
+                    if (!buffer.hasRemaining()) {
+                        flush();
+                    }
+                    buffer.put(widths[i]);
+                }
+                flush();
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package pro.tehnoplast.service.analytics;
+
+import pro.tehnoplast.service.analytics.SalesQuery.Dimension;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntPredicate;
+
+/**
+ * Группировка по снимку: строки делятся между исполнителями по числу ядер, каждый исполнитель
+ * сворачивает свои диапазоны простым циклом по раскодированным блокам колонок в один свой аккумулятор,
+ * затем аккумуляторы складываются. Ключ группы - смешанная система счисления по кодам измерений;
+ * если групп немного и каждому исполнителю достаётся не меньше строк, чем групп, аккумулятор -
+ * плоские массивы по ключу, иначе открытая адресация по long-ключу.
+ */
+final class SalesAggregator {
+
+    /**
+     * Наибольшее число групп для плоских массивов (3 массива long по 2 МБ на исполнителя)
+     */
+    private static final long DENSE_LIMIT = 1 << 18;
+    private static final int MIN_WORKER_ROWS = 1 << 16;
+
+    private static final int PRODUCT = 0;
+    private static final int WAREHOUSE = 1;
+    private static final int COUNTERAGENT = 2;
+    private static final int PERIOD = 3;
+
+    private final SalesSnapshot snapshot;
+    private final List<Dimension> groupBy;
+    private final int dims;
+    private final int[] sources;
+    private final long[] cards;
+    private final long cells;
+    private final long fromDay;
+    private final int span;
+    private final int[] periodOf;
+    private final LocalDate[] periodStart;
+    private final boolean[] productMask;
+    private final boolean[] warehouseMask;
+    private final boolean[] counteragentMask;
+    private final boolean needProduct;
+    private final boolean needWarehouse;
+    private final boolean needCounteragent;
+
+    private SalesAggregator(SalesSnapshot snapshot, SalesQuery query) {
+        this.snapshot = snapshot;
+        this.groupBy = query.groupBy();
+        Dictionaries.View dictionaries = snapshot.dictionaries();
+
+        // Период запроса сужается до дней, которые есть в снимке: от него зависит размер periodOf
+        long[] baseDays = snapshot.base().dayRange();
+        long[] deltaDays = snapshot.delta().dayRange();
+        long minDay = Math.min(baseDays[0], deltaDays[0]);
+        long maxDay = Math.max(baseDays[1], deltaDays[1]);
+        LocalDate from = query.from();
+        LocalDate to = query.to();
+        if (minDay > maxDay) {
+            to = from.minusDays(1);
+        } else {
+            from = from.toEpochDay() < minDay ? LocalDate.ofEpochDay(minDay) : from;
+            to = to.toEpochDay() > maxDay ? LocalDate.ofEpochDay(maxDay) : to;
+        }
+        this.fromDay = from.toEpochDay();
+        this.span = (int) Math.max(ChronoUnit.DAYS.between(from, to), -1);
+
+        this.periodOf = new int[Math.max(span + 1, 0)];
+        List<LocalDate> starts = new ArrayList<>();
+        boolean weeks = groupBy.contains(Dimension.WEEK);
+        for (int i = 0; i <= span; i++) {
+            LocalDate date = from.plusDays(i);
+            LocalDate start = weeks
+                    ? date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                    : date.withDayOfMonth(1);
+            if (starts.isEmpty() || !starts.get(starts.size() - 1).equals(start)) {
+                starts.add(start);
+            }
+            periodOf[i] = starts.size() - 1;
+        }
+        this.periodStart = starts.toArray(new LocalDate[0]);
+
+        this.dims = groupBy.size();
+        this.sources = new int[dims];
+        this.cards = new long[dims];
+        long total = 1;
+        for (int d = 0; d < dims; d++) {
+            switch (groupBy.get(d)) {
+                case PRODUCT -> {
+                    sources[d] = PRODUCT;
+                    cards[d] = dictionaries.productCount();
+                }
+                case WAREHOUSE -> {
+                    sources[d] = WAREHOUSE;
+                    cards[d] = dictionaries.warehouseCount();
+                }
+                case COUNTERAGENT -> {
+                    sources[d] = COUNTERAGENT;
+                    cards[d] = dictionaries.counteragentCount();
+                }
+                case WEEK, MONTH -> {
+                    sources[d] = PERIOD;
+                    cards[d] = periodStart.length;
+                }
+            }
+            total = cards[d] == 0 ? 0 : Math.multiplyExact(total, cards[d]);
+        }
+        this.cells = total;
+
+        this.needProduct = groupBy.contains(Dimension.PRODUCT) || !query.products().isEmpty();
+        this.needWarehouse = groupBy.contains(Dimension.WAREHOUSE) || !query.warehouses().isEmpty();
+        this.needCounteragent = groupBy.contains(Dimension.COUNTERAGENT) || !query.counteragents().isEmpty();
+        this.productMask = query.products().isEmpty() ? null
+                : mask(dictionaries.productCount(), i -> query.products().contains((long) dictionaries.productIds()[i]));
+        this.warehouseMask = query.warehouses().isEmpty() ? null
+                : mask(dictionaries.warehouseCount(), i -> query.warehouses().contains(dictionaries.warehouseGlns()[i]));
+        this.counteragentMask = query.counteragents().isEmpty() ? null
+                : mask(dictionaries.counteragentCount(), i -> query.counteragents().contains(dictionaries.counteragentInns()[i]));
+    }
+
+    /**
+     * Выполнить запрос по снимку
+     */
+    static List<SalesRow> aggregate(SalesSnapshot snapshot, SalesQuery query) {
+        return new SalesAggregator(snapshot, query).run();
+    }
+
+    private List<SalesRow> run() {
+        if (span < 0 || cells == 0) {
+            return List.of();
+        }
+        Segment[] segments = {snapshot.base(), snapshot.delta()};
+        long rows = (long) segments[0].rows + segments[1].rows;
+        int parallelism = ForkJoinPool.commonPool().getParallelism() + 1;
+        int workers = (int) Math.max(1, Math.min(parallelism, rows / MIN_WORKER_ROWS));
+        long share = (rows + workers - 1) / workers;
+        boolean dense = cells <= DENSE_LIMIT && cells <= share;
+
+        // Доля исполнителя - непрерывный отрезок строк базового сегмента и дельты подряд
+        List<List<Range>> work = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            long from = w * share;
+            long to = Math.min(rows, from + share);
+            List<Range> ranges = new ArrayList<>(2);
+            long offset = 0;
+            for (Segment segment : segments) {
+                long start = Math.max(from, offset);
+                long end = Math.min(to, offset + segment.rows);
+                if (start < end) {
+                    ranges.add(new Range(segment, (int) (start - offset), (int) (end - offset)));
+                }
+                offset += segment.rows;
+            }
+            work.add(ranges);
+        }
+        Accumulator total = work.parallelStream()
+                .map(ranges -> {
+                    Accumulator accumulator = newAccumulator(dense);
+                    ranges.forEach(range -> scan(range, accumulator));
+                    return accumulator;
+                })
+                .reduce(Accumulator::merge)
+                .orElseGet(() -> newAccumulator(dense));
+        return total.rows(this);
+    }
+
+    private record Range(Segment segment, int from, int to) {
+    }
+
+    /**
+     * Горячий цикл: колонки раскодируются блоками в массивы long, блоки вне диапазона дат пропускаются
+     * по границам блока без раскодирования; колонки измерений, не нужных запросу, не раскодируются
+     */
+    private void scan(Range range, Accumulator accumulator) {
+        Segment segment = range.segment();
+        long[] days = new long[Segment.BLOCK];
+        long[] products = new long[Segment.BLOCK];
+        long[] warehouses = new long[Segment.BLOCK];
+        long[] counteragents = new long[Segment.BLOCK];
+        long[] quantities = new long[Segment.BLOCK];
+        long[] amounts = new long[Segment.BLOCK];
+        long toDay = fromDay + span;
+        BitSet deleted = segment.deleted;
+        boolean anyDeleted = !deleted.isEmpty();
+        int lastBlock = (range.to() - 1) >>> Segment.BLOCK_SHIFT;
+        for (int block = range.from() >>> Segment.BLOCK_SHIFT; block <= lastBlock; block++) {
+            if (segment.days.upperBound(block) < fromDay || segment.days.lowerBound(block) > toDay) {
+                continue;
+            }
+            int first = block << Segment.BLOCK_SHIFT;
+            int from = Math.max(range.from(), first) - first;
+            int to = Math.min(range.to(), first + Segment.BLOCK) - first;
+            segment.days.decode(block, days);
+            if (needProduct) {
+                segment.products.decode(block, products);
+            }
+            if (needWarehouse) {
+                segment.warehouses.decode(block, warehouses);
+            }
+            if (needCounteragent) {
+                segment.counteragents.decode(block, counteragents);
+            }
+            segment.quantities.decode(block, quantities);
+            segment.amounts.decode(block, amounts);
+            for (int i = from; i < to; i++) {
+                int day = (int) (days[i] - fromDay);
+                if (day < 0 || day > span || (anyDeleted && deleted.get(first + i))) {
+                    continue;
+                }
+                int product = (int) products[i];
+                int warehouse = (int) warehouses[i];
+                int counteragent = (int) counteragents[i];
+                if ((productMask != null && !productMask[product])
+                        || (warehouseMask != null && !warehouseMask[warehouse])
+                        || (counteragentMask != null && !counteragentMask[counteragent])) {
+                    continue;
+                }
+                long key = 0;
+                for (int d = 0; d < dims; d++) {
+                    int code = switch (sources[d]) {
+                        case PRODUCT -> product;
+                        case WAREHOUSE -> warehouse;
+                        case COUNTERAGENT -> counteragent;
+                        default -> periodOf[day];
+                    };
+                    key = key * cards[d] + code;
+                }
+                accumulator.add(key, (int) quantities[i], amounts[i]);
+            }
+        }
+    }
+
+    private Accumulator newAccumulator(boolean dense) {
+        return dense ? new DenseAccumulator((int) cells) : new HashAccumulator();
+    }
+
+    private SalesRow toRow(long key, long quantity, long amount, long lines) {
+        Dictionaries.View dictionaries = snapshot.dictionaries();
+        Long productId = null;
+        String warehouseGln = null;
+        String counteragentInn = null;
+        LocalDate period = null;
+        for (int d = dims - 1; d >= 0; d--) {
+            int code = (int) (key % cards[d]);
+            key /= cards[d];
+            switch (sources[d]) {
+                case PRODUCT -> productId = (long) dictionaries.productIds()[code];
+                case WAREHOUSE -> warehouseGln = dictionaries.warehouseGlns()[code];
+                case COUNTERAGENT -> {
+                    String inn = dictionaries.counteragentInns()[code];
+                    counteragentInn = inn.isEmpty() ? null : inn;
+                }
+                default -> period = periodStart[code];
+            }
+        }
+        return new SalesRow(productId, warehouseGln, counteragentInn, period, quantity,
+                BigDecimal.valueOf(amount, 2), lines);
+    }
+
+    private static boolean[] mask(int size, IntPredicate selected) {
+        boolean[] mask = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            mask[i] = selected.test(i);
+        }
+        return mask;
+    }
+
+    private interface Accumulator {
+
+        void add(long key, int quantity, long amount);
+
+        Accumulator merge(Accumulator other);
+
+        List<SalesRow> rows(SalesAggregator aggregator);
+    }
+
+    private static final class DenseAccumulator implements Accumulator {
+
+        private final long[] quantity;
+        private final long[] amount;
+        private final long[] lines;
+
+        DenseAccumulator(int cells) {
+            quantity = new long[cells];
+            amount = new long[cells];
+            lines = new long[cells];
+        }
+
+        @Override
+        public void add(long key, int q, long a) {
+            int i = (int) key;
+            quantity[i] += q;
+            amount[i] += a;
+            lines[i]++;
+        }
+
+        @Override
+        public Accumulator merge(Accumulator other) {
+            DenseAccumulator o = (DenseAccumulator) other;
+            for (int i = 0; i < lines.length; i++) {
+                quantity[i] += o.quantity[i];
+                amount[i] += o.amount[i];
+                lines[i] += o.lines[i];
+            }
+            return this;
+        }
+
+        @Override
+        public List<SalesRow> rows(SalesAggregator aggregator) {
+            List<SalesRow> rows = new ArrayList<>();
+            for (int i = 0; i < lines.length; i++) {
+                if (lines[i] > 0) {
+                    rows.add(aggregator.toRow(i, quantity[i], amount[i], lines[i]));
+                }
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Открытая адресация с линейным пробированием; ключи неотрицательны, -1 - пустая ячейка
+     */
+    private static final class HashAccumulator implements Accumulator {
+
+        private long[] keys = new long[1 << 12];
+        private long[] quantity = new long[keys.length];
+        private long[] amount = new long[keys.length];
+        private long[] lines = new long[keys.length];
+        private int size;
+
+        HashAccumulator() {
+            Arrays.fill(keys, -1L);
+        }
+
+        @Override
+        public void add(long key, int q, long a) {
+            addAll(key, q, a, 1);
+        }
+
+        private void addAll(long key, long q, long a, long n) {
+            int mask = keys.length - 1;
+            int i = (int) mix(key) & mask;
+            while (keys[i] != key) {
+                if (keys[i] == -1L) {
+                    keys[i] = key;
+                    if (++size * 2 > keys.length) {
+                        grow();
+                        addAll(key, q, a, n);
+                        return;
+                    }
+                    break;
+                }
+                i = (i + 1) & mask;
+            }
+            quantity[i] += q;
+            amount[i] += a;
+            lines[i] += n;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldQuantity = quantity;
+            long[] oldAmount = amount;
+            long[] oldLines = lines;
+            keys = new long[oldKeys.length * 2];
+            Arrays.fill(keys, -1L);
+            quantity = new long[keys.length];
+            amount = new long[keys.length];
+            lines = new long[keys.length];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != -1L && oldLines[i] > 0) {
+                    addAll(oldKeys[i], oldQuantity[i], oldAmount[i], oldLines[i]);
+                }
+            }
+        }
+
+        @Override
+        public Accumulator merge(Accumulator other) {
+            HashAccumulator o = (HashAccumulator) other;
+            for (int i = 0; i < o.keys.length; i++) {
+                if (o.keys[i] != -1L) {
+                    addAll(o.keys[i], o.quantity[i], o.amount[i], o.lines[i]);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public List<SalesRow> rows(SalesAggregator aggregator) {
+            List<long[]> groups = new ArrayList<>(size);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != -1L) {
+                    groups.add(new long[]{keys[i], quantity[i], amount[i], lines[i]});
+                }
+            }
+            groups.sort((a, b) -> Long.compare(a[0], b[0]));
+            List<SalesRow> rows = new ArrayList<>(groups.size());
+            for (long[] g : groups) {
+                rows.add(aggregator.toRow(g[0], g[1], g[2], g[3]));
+            }
+            return rows;
+        }
+
+        private static long mix(long key) {
+            key ^= key >>> 33;
+            key *= 0xff51afd7ed558ccdL;
+            key ^= key >>> 33;
+            return key;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package pro.tehnoplast.service.analytics;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Запрос к снимку продаж: группировка и фильтры. Пустой набор фильтра - без ограничения.
+ *
+ * @param groupBy        измерения группировки в порядке вывода
+ * @param from           начало периода доставки (включительно)
+ * @param to             конец периода доставки (включительно)
+ * @param warehouses     GLN складов
+ * @param products       id товаров
+ * @param counteragents  ИНН контрагентов
+ */
+public record SalesQuery(List<Dimension> groupBy,
+                         LocalDate from,
+                         LocalDate to,
+                         Set<String> warehouses,
+                         Set<Long> products,
+                         Set<String> counteragents) {
+
+    /**
+     * Измерения группировки
+     */
+    public enum Dimension {
+        PRODUCT,
+        WAREHOUSE,
+        COUNTERAGENT,
+        WEEK,
+        MONTH
+    }
+
+    public SalesQuery {
+        if (groupBy.contains(Dimension.WEEK) && groupBy.contains(Dimension.MONTH)) {
+            throw new IllegalArgumentException("Нельзя группировать одновременно по неделям и месяцам");
+        }
+        if (groupBy.size() != Set.copyOf(groupBy).size()) {
+            throw new IllegalArgumentException("Измерение группировки указано дважды: " + groupBy);
+        }
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("Начало периода позже конца: " + from + " > " + to);
+        }
+        groupBy = List.copyOf(groupBy);
+        warehouses = Set.copyOf(warehouses);
+        products = Set.copyOf(products);
+        counteragents = Set.copyOf(counteragents);
+    }
+}
@@ -0,0 +1,20 @@
+package pro.tehnoplast.service.analytics;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Строка результата: значения измерений (null - измерение не в группировке) и итоги
+ *
+ * @param period  начало недели (понедельник) или первое число месяца
+ * @param amount  сумма, руб.
+ * @param lines   количество позиций заказов
+ */
+public record SalesRow(Long productId,
+                       String warehouseGln,
+                       String counteragentInn,
+                       LocalDate period,
+                       long quantity,
+                       BigDecimal amount,
+                       long lines) {
+}
@@ -0,0 +1,21 @@
+package pro.tehnoplast.service.analytics;
+
+import java.time.LocalDateTime;
+
+/**
+ * Неизменяемое состояние снимка для запросов: базовый сегмент (mmap), дельта и словари.
+ * Публикуется целиком через volatile-ссылку, запросы не берут блокировок.
+ *
+ * @param generation номер поколения файлов базового сегмента
+ * @param watermark  изменения в БД до этого момента (updated_at) уже учтены
+ */
+record SalesSnapshot(long generation,
+                     Segment base,
+                     Segment delta,
+                     Dictionaries.View dictionaries,
+                     LocalDateTime watermark) {
+
+    int liveRows() {
+        return base.rows - base.deleted.cardinality() + delta.rows - delta.deleted.cardinality();
+    }
+}
@@ -0,0 +1,513 @@
+package pro.tehnoplast.service.analytics;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import pro.tehnoplast.service.workload.Workload;
+import pro.tehnoplast.service.workload.WorkloadContext;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Колоночный снимок истории продаж (позиции заказов) для аналитики на локальном диске.
+ * Базовый сегмент - файлы колонок поколения, отображённые в память; изменения после его
+ * построения догружаются по updated_at заказов и позиций в дельту в куче. Когда дельта
+ * вырастает, базовый сегмент и дельта сливаются в новое поколение файлов.
+ * Запросы работают по опубликованному неизменяемому {@link SalesSnapshot} и не ходят в БД.
+ * Построение и догрузка идут в собственном потоке (массовая работа), а не в общем планировщике:
+ * первая полная сборка длится минуты и задержала бы остальные задачи по расписанию.
+ */
+@Slf4j
+@Service
+public class SalesSnapshotService {
+
+    private static final String META = "meta.properties";
+    private static final String GENERATION_PREFIX = "gen-";
+    private static final int INITIAL_DELTA_CAPACITY = 1 << 12;
+
+    private static final String SELECT_ITEMS = """
+            SELECT oi.id,
+                   oi.delivery_date,
+                   oi.product_id,
+                   o.warehouse_gln,
+                   o.counteragent_inn,
+                   oi.quantity,
+                   (oi.total_price * 100)::bigint        AS amount_kopecks,
+                   (oi.is_deleted OR o.is_deleted)      AS deleted,
+                   GREATEST(oi.updated_at, o.updated_at) AS updated_at
+            FROM order_items oi
+                     JOIN orders o ON o.id = oi.order_id AND o.delivery_date = oi.delivery_date
+            """;
+
+    private static final String FULL = SELECT_ITEMS + """
+            WHERE oi.is_deleted = false
+              AND o.is_deleted = false
+            ORDER BY oi.id
+            """;
+
+    /**
+     * Изменённые позиции и позиции изменённых заказов; обе выборки идут по индексам updated_at
+     */
+    private static final String CHANGES = SELECT_ITEMS + """
+            WHERE (oi.id, oi.delivery_date) IN (SELECT id, delivery_date
+                                                FROM order_items
+                                                WHERE updated_at > ?
+                                                UNION
+                                                SELECT i.id, i.delivery_date
+                                                FROM orders c
+                                                         JOIN order_items i
+                                                              ON i.order_id = c.id AND i.delivery_date = c.delivery_date
+                                                WHERE c.updated_at > ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readTransaction;
+    private final Path dir;
+    private final boolean enabled;
+    private final int fetchSize;
+    private final long overlapSeconds;
+    private final int compactMinRows;
+    private final double compactRatio;
+    private final long refreshMillis;
+    private final long initialDelayMillis;
+    private final ScheduledExecutorService refresher;
+
+    private volatile SalesSnapshot snapshot;
+
+    // Состояние построителя; меняется только в refresh() под блокировкой сервиса
+    private long generation;
+    private Dictionaries dictionaries;
+    private Segment base;
+    private BitSet baseDeleted;
+    private int[] deltaIds;
+    private int[] deltaDays;
+    private int[] deltaProducts;
+    private int[] deltaWarehouses;
+    private int[] deltaCounteragents;
+    private int[] deltaQuantities;
+    private long[] deltaAmounts;
+    private int deltaRows;
+    private BitSet deltaDeleted;
+    private Map<Integer, Integer> deltaRowById;
+    private LocalDateTime watermark;
+
+    public SalesSnapshotService(JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${tehnoseti.analytics.dir:${java.io.tmpdir}/tehnoseti/analytics}") String dir,
+                                @Value("${tehnoseti.analytics.enabled:true}") boolean enabled,
+                                @Value("${tehnoseti.analytics.fetch-size:10000}") int fetchSize,
+                                @Value("${tehnoseti.analytics.overlap-seconds:300}") long overlapSeconds,
+                                @Value("${tehnoseti.analytics.compact-min-rows:100000}") int compactMinRows,
+                                @Value("${tehnoseti.analytics.compact-ratio:0.1}") double compactRatio,
+                                @Value("${tehnoseti.analytics.refresh-millis:60000}") long refreshMillis,
+                                @Value("${tehnoseti.analytics.initial-delay-millis:15000}") long initialDelayMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.dir = Paths.get(dir);
+        this.enabled = enabled;
+        this.fetchSize = fetchSize;
+        this.overlapSeconds = overlapSeconds;
+        this.compactMinRows = compactMinRows;
+        this.compactRatio = compactRatio;
+        this.refreshMillis = refreshMillis;
+        this.initialDelayMillis = initialDelayMillis;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(WorkloadContext.wrap(Workload.BULK, r), "sales-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Запустить догрузку по расписанию после старта приложения
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            refresher.scheduleWithFixedDelay(this::refresh, initialDelayMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Состояние снимка
+     */
+    public record Status(long generation, int baseRows, int deltaRows, int liveRows, LocalDateTime watermark) {
+    }
+
+    /**
+     * Выполнить аналитический запрос; пусто - снимок ещё не построен
+     */
+    public Optional<List<SalesRow>> query(SalesQuery query) {
+        SalesSnapshot current = snapshot;
+        if (current == null) {
+            return Optional.empty();
+        }
+        return Optional.of(SalesAggregator.aggregate(current, query));
+    }
+
+    public Optional<Status> status() {
+        SalesSnapshot current = snapshot;
+        if (current == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new Status(current.generation(), current.base().rows, current.delta().rows,
+                current.liveRows(), current.watermark()));
+    }
+
+    /**
+     * Догрузить изменения; при первом запуске - открыть последнее поколение с диска или построить снимок
+     */
+    public synchronized void refresh() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (snapshot == null && !openLatest()) {
+                build();
+            }
+            long started = System.nanoTime();
+            int changed = applyChanges();
+            int live = deltaRows - deltaDeleted.cardinality();
+            if (live > Math.max(compactMinRows, base.rows * compactRatio)) {
+                compact();
+            }
+            if (changed > 0) {
+                log.debug("Снимок продаж: учтено изменений {} за {} мс, дельта {} строк", changed,
+                        (System.nanoTime() - started) / 1_000_000, deltaRows);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Исключение из задачи отменило бы её повторы в ScheduledExecutorService
+            log.error("Ошибка обновления снимка продаж: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Полная перестройка снимка из БД в новое поколение
+     */
+    public synchronized void rebuild() throws IOException {
+        build();
+    }
+
+    private void build() throws IOException {
+        long started = System.nanoTime();
+        long next = generation + 1;
+        Path target = generationDir(next);
+        Files.createDirectories(target);
+        Dictionaries built = new Dictionaries();
+        LocalDateTime[] startedAt = new LocalDateTime[1];
+        int rows;
+        try (Segment.Writer writer = new Segment.Writer(target)) {
+            readTransaction.executeWithoutResult(status -> {
+                startedAt[0] = jdbcTemplate.queryForObject("SELECT LOCALTIMESTAMP", LocalDateTime.class);
+                stream(FULL, rs -> {
+                    try {
+                        writer.add(rs.getInt("id"),
+                                (int) rs.getDate("delivery_date").toLocalDate().toEpochDay(),
+                                built.productCode(rs.getInt("product_id")),
+                                built.warehouseCode(rs.getString("warehouse_gln")),
+                                built.counteragentCode(rs.getString("counteragent_inn")),
+                                rs.getInt("quantity"),
+                                rs.getLong("amount_kopecks"));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            });
+            rows = writer.rows();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        dictionaries = built;
+        finishGeneration(next, target, rows, startedAt[0]);
+        log.info("Снимок продаж построен: поколение {}, строк {} за {} мс", next, rows,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Открыть последнее полностью записанное поколение (meta.properties пишется последним);
+     * false - поколений нет или последнее записано в другом формате колонок
+     */
+    private boolean openLatest() throws IOException {
+        Files.createDirectories(dir);
+        long latest = 0;
+        try (DirectoryStream<Path> generations = Files.newDirectoryStream(dir, GENERATION_PREFIX + "*")) {
+            for (Path path : generations) {
+                long number = parseGeneration(path);
+                if (number > latest && Files.exists(path.resolve(META))) {
+                    latest = number;
+                }
+            }
+        }
+        if (latest == 0) {
+            return false;
+        }
+        Path target = generationDir(latest);
+        Properties meta = new Properties();
+        try (Reader reader = Files.newBufferedReader(target.resolve(META), StandardCharsets.UTF_8)) {
+            meta.load(reader);
+        }
+        if (!Segment.FORMAT.equals(meta.getProperty("format"))) {
+            // Новое поколение получит следующий номер, а это будет удалено после его записи
+            generation = latest;
+            log.info("Снимок продаж на диске в прежнем формате (поколение {}), будет перестроен", latest);
+            return false;
+        }
+        int rows = Integer.parseInt(meta.getProperty("rows"));
+        dictionaries = Dictionaries.load(target);
+        switchTo(latest, Segment.map(target, rows), LocalDateTime.parse(meta.getProperty("watermark")));
+        log.info("Снимок продаж открыт с диска: поколение {}, строк {}, изменения с {}", latest, rows, watermark);
+        return true;
+    }
+
+    /**
+     * Учесть позиции, изменённые после водяного знака. Знак сдвигается назад на {@code overlapSeconds}:
+     * updated_at = NOW() начала транзакции, и транзакция может зафиксироваться позже уже прочитанных.
+     * Повторно прочитанные строки без изменений отбрасываются сравнением значений.
+     */
+    private int applyChanges() {
+        LocalDateTime since = watermark.minusSeconds(overlapSeconds);
+        int[] changed = {0};
+        LocalDateTime[] seen = {watermark};
+        readTransaction.executeWithoutResult(status -> stream(CHANGES, rs -> {
+            LocalDateTime updatedAt = rs.getObject("updated_at", LocalDateTime.class);
+            if (updatedAt.isAfter(seen[0])) {
+                seen[0] = updatedAt;
+            }
+            if (apply(rs)) {
+                changed[0]++;
+            }
+        }, since, since));
+        watermark = seen[0];
+        if (changed[0] > 0) {
+            publish();
+        }
+        return changed[0];
+    }
+
+    /**
+     * Применить изменённую строку; false - значения не изменились
+     */
+    private boolean apply(ResultSet rs) throws SQLException {
+        int id = rs.getInt("id");
+        Integer deltaRow = deltaRowById.get(id);
+        int baseRow = deltaRow == null ? base.find(id) : -1;
+        if (baseRow >= 0 && baseDeleted.get(baseRow)) {
+            baseRow = -1;
+        }
+        if (rs.getBoolean("deleted")) {
+            if (deltaRow != null) {
+                deltaDeleted.set(deltaRow);
+                deltaRowById.remove(id);
+            }
+            if (baseRow >= 0) {
+                baseDeleted.set(baseRow);
+            }
+            return deltaRow != null || baseRow >= 0;
+        }
+        int day = (int) rs.getDate("delivery_date").toLocalDate().toEpochDay();
+        int product = dictionaries.productCode(rs.getInt("product_id"));
+        int warehouse = dictionaries.warehouseCode(rs.getString("warehouse_gln"));
+        int counteragent = dictionaries.counteragentCode(rs.getString("counteragent_inn"));
+        int quantity = rs.getInt("quantity");
+        long amount = rs.getLong("amount_kopecks");
+        if (deltaRow != null) {
+            if (deltaSegment(deltaDeleted).sameValues(deltaRow, day, product, warehouse, counteragent, quantity, amount)) {
+                return false;
+            }
+            deltaDeleted.set(deltaRow);
+        } else if (baseRow >= 0) {
+            if (base.sameValues(baseRow, day, product, warehouse, counteragent, quantity, amount)) {
+                return false;
+            }
+            baseDeleted.set(baseRow);
+        }
+        appendDelta(id, day, product, warehouse, counteragent, quantity, amount);
+        return true;
+    }
+
+    private void appendDelta(int id, int day, int product, int warehouse, int counteragent, int quantity, long amount) {
+        if (deltaRows == deltaIds.length) {
+            // Новые массивы: опубликованные снимки продолжают читать старые
+            int capacity = deltaRows * 2;
+            deltaIds = Arrays.copyOf(deltaIds, capacity);
+            deltaDays = Arrays.copyOf(deltaDays, capacity);
+            deltaProducts = Arrays.copyOf(deltaProducts, capacity);
+            deltaWarehouses = Arrays.copyOf(deltaWarehouses, capacity);
+            deltaCounteragents = Arrays.copyOf(deltaCounteragents, capacity);
+            deltaQuantities = Arrays.copyOf(deltaQuantities, capacity);
+            deltaAmounts = Arrays.copyOf(deltaAmounts, capacity);
+        }
+        deltaIds[deltaRows] = id;
+        deltaDays[deltaRows] = day;
+        deltaProducts[deltaRows] = product;
+        deltaWarehouses[deltaRows] = warehouse;
+        deltaCounteragents[deltaRows] = counteragent;
+        deltaQuantities[deltaRows] = quantity;
+        deltaAmounts[deltaRows] = amount;
+        deltaRowById.put(id, deltaRows);
+        deltaRows++;
+    }
+
+    /**
+     * Слить базовый сегмент и дельту в новое поколение; строки остаются упорядоченными по id
+     */
+    private void compact() throws IOException {
+        long started = System.nanoTime();
+        long next = generation + 1;
+        Path target = generationDir(next);
+        Files.createDirectories(target);
+        Segment delta = deltaSegment(deltaDeleted);
+        long[] order = new long[deltaRows - deltaDeleted.cardinality()];
+        int n = 0;
+        for (int row = deltaDeleted.nextClearBit(0); row < deltaRows; row = deltaDeleted.nextClearBit(row + 1)) {
+            order[n++] = ((long) deltaIds[row] << 32) | row;
+        }
+        Arrays.sort(order);
+        int rows;
+        try (Segment.Writer writer = new Segment.Writer(target)) {
+            int i = baseDeleted.nextClearBit(0);
+            int j = 0;
+            while (i < base.rows || j < order.length) {
+                if (j == order.length || (i < base.rows && base.ids.get(i) < (int) (order[j] >>> 32))) {
+                    writer.copy(base, i);
+                    i = baseDeleted.nextClearBit(i + 1);
+                } else {
+                    writer.copy(delta, (int) order[j++]);
+                }
+            }
+            rows = writer.rows();
+        }
+        finishGeneration(next, target, rows, watermark);
+        log.info("Снимок продаж уплотнён: поколение {}, строк {} за {} мс", next, rows,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private void finishGeneration(long number, Path target, int rows, LocalDateTime generationWatermark)
+            throws IOException {
+        dictionaries.save(target);
+        Properties meta = new Properties();
+        meta.setProperty("format", Segment.FORMAT);
+        meta.setProperty("rows", Integer.toString(rows));
+        meta.setProperty("watermark", generationWatermark.toString());
+        try (Writer writer = Files.newBufferedWriter(target.resolve(META), StandardCharsets.UTF_8)) {
+            meta.store(writer, "sales snapshot");
+        }
+        long previous = generation;
+        switchTo(number, Segment.map(target, rows), generationWatermark);
+        if (previous > 0) {
+            deleteGeneration(previous);
+        }
+    }
+
+    private void switchTo(long number, Segment segment, LocalDateTime generationWatermark) {
+        generation = number;
+        base = segment;
+        baseDeleted = new BitSet(segment.rows);
+        deltaIds = new int[INITIAL_DELTA_CAPACITY];
+        deltaDays = new int[INITIAL_DELTA_CAPACITY];
+        deltaProducts = new int[INITIAL_DELTA_CAPACITY];
+        deltaWarehouses = new int[INITIAL_DELTA_CAPACITY];
+        deltaCounteragents = new int[INITIAL_DELTA_CAPACITY];
+        deltaQuantities = new int[INITIAL_DELTA_CAPACITY];
+        deltaAmounts = new long[INITIAL_DELTA_CAPACITY];
+        deltaRows = 0;
+        deltaDeleted = new BitSet();
+        deltaRowById = new HashMap<>();
+        watermark = generationWatermark;
+        publish();
+    }
+
+    private void publish() {
+        snapshot = new SalesSnapshot(generation,
+                base.withDeleted((BitSet) baseDeleted.clone()),
+                deltaSegment((BitSet) deltaDeleted.clone()),
+                dictionaries.view(),
+                watermark);
+    }
+
+    private Segment deltaSegment(BitSet deleted) {
+        return Segment.wrap(deltaRows, deltaIds, deltaDays, deltaProducts, deltaWarehouses, deltaCounteragents,
+                deltaQuantities, deltaAmounts, deleted);
+    }
+
+    /**
+     * Файлы старого поколения удаляются сразу: отображения в память остаются действительными,
+     * пока их читают запросы, место освобождается после сборки буферов
+     */
+    private void deleteGeneration(long number) {
+        Path target = generationDir(number);
+        try (Stream<Path> files = Files.walk(target)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.warn("Не удалось удалить поколение снимка {}: {}", target, e.getMessage());
+        }
+    }
+
+    private void stream(String sql, RowHandler handler, Object... args) {
+        PreparedStatementCreator creator = con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < args.length; i++) {
+                ps.setObject(i + 1, args[i]);
+            }
+            return ps;
+        };
+        jdbcTemplate.query(creator, handler::row);
+    }
+
+    @FunctionalInterface
+    private interface RowHandler {
+        void row(ResultSet rs) throws SQLException;
+    }
+
+    private Path generationDir(long number) {
+        return dir.resolve(GENERATION_PREFIX + number);
+    }
+
+    private static long parseGeneration(Path path) {
+        try {
+            return Long.parseLong(path.getFileName().toString().substring(GENERATION_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package pro.tehnoplast.service.analytics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.BitSet;
+
+/**
+ * Колоночный сегмент снимка: по одной колонке на поле, строка - индекс во всех колонках.
+ * Базовый сегмент лежит в файлах поколения, сжат блоками ({@link PackedColumn}) и отображается в память (mmap),
+ * дельта - массивы в куче. Справочные значения закодированы словарями, даты - номер дня от 1970-01-01.
+ * Строки базового сегмента упорядочены по id позиции заказа; удалённые строки отмечаются битами.
+ */
+final class Segment {
+
+    /**
+     * Строк в блоке колонки: блоками колонки раскодируются при просмотре и отбрасываются по диапазону дат
+     */
+    static final int BLOCK_SHIFT = 7;
+    static final int BLOCK = 1 << BLOCK_SHIFT;
+
+    /**
+     * Версия формата файлов колонок; поколение в другом формате не открывается, а перестраивается
+     */
+    static final String FORMAT = "2";
+
+    static final String IDS = "ids.col";
+    static final String DAYS = "days.col";
+    static final String PRODUCTS = "products.col";
+    static final String WAREHOUSES = "warehouses.col";
+    static final String COUNTERAGENTS = "counteragents.col";
+    static final String QUANTITIES = "quantities.col";
+    static final String AMOUNTS = "amounts.col";
+
+    /**
+     * Колонка сегмента; значения любой ширины отдаются как long
+     */
+    interface Column {
+
+        long get(int row);
+
+        /**
+         * Раскодировать строки блока в out (не короче {@link #BLOCK}); возвращает число строк блока
+         */
+        int decode(int block, long[] out);
+
+        /**
+         * Нижняя граница значений блока
+         */
+        long lowerBound(int block);
+
+        /**
+         * Верхняя граница значений блока (может быть больше наибольшего значения)
+         */
+        long upperBound(int block);
+    }
+
+    final int rows;
+    final Column ids;
+    final Column days;
+    final Column products;
+    final Column warehouses;
+    final Column counteragents;
+    final Column quantities;
+    final Column amounts;
+    final BitSet deleted;
+
+    private Segment(int rows, Column ids, Column days, Column products, Column warehouses,
+                    Column counteragents, Column quantities, Column amounts, BitSet deleted) {
+        this.rows = rows;
+        this.ids = ids;
+        this.days = days;
+        this.products = products;
+        this.warehouses = warehouses;
+        this.counteragents = counteragents;
+        this.quantities = quantities;
+        this.amounts = amounts;
+        this.deleted = deleted;
+    }
+
+    static int blocks(int rows) {
+        return (rows + BLOCK - 1) >>> BLOCK_SHIFT;
+    }
+
+    /**
+     * Отобразить файлы колонок поколения в память (только чтение)
+     */
+    static Segment map(Path dir, int rows) throws IOException {
+        return new Segment(rows,
+                PackedColumn.map(dir.resolve(IDS), rows),
+                PackedColumn.map(dir.resolve(DAYS), rows),
+                PackedColumn.map(dir.resolve(PRODUCTS), rows),
+                PackedColumn.map(dir.resolve(WAREHOUSES), rows),
+                PackedColumn.map(dir.resolve(COUNTERAGENTS), rows),
+                PackedColumn.map(dir.resolve(QUANTITIES), rows),
+                PackedColumn.map(dir.resolve(AMOUNTS), rows),
+                new BitSet(rows));
+    }
+
+    /**
+     * Сегмент поверх массивов дельты; массивы только дописываются, поэтому читать первые {@code rows} безопасно
+     */
+    static Segment wrap(int rows, int[] ids, int[] days, int[] products, int[] warehouses,
+                        int[] counteragents, int[] quantities, long[] amounts, BitSet deleted) {
+        return new Segment(rows, new IntArrayColumn(ids, rows), new IntArrayColumn(days, rows),
+                new IntArrayColumn(products, rows), new IntArrayColumn(warehouses, rows),
+                new IntArrayColumn(counteragents, rows), new IntArrayColumn(quantities, rows),
+                new LongArrayColumn(amounts, rows), deleted);
+    }
+
+    /**
+     * Тот же сегмент с другим набором удалённых строк
+     */
+    Segment withDeleted(BitSet deleted) {
+        return new Segment(rows, ids, days, products, warehouses, counteragents, quantities, amounts, deleted);
+    }
+
+    /**
+     * Строка по id позиции (двоичный поиск сначала по минимумам блоков, затем в блоке; сегмент упорядочен по id);
+     * -1 - нет
+     */
+    int find(int id) {
+        int low = 0;
+        int high = blocks(rows) - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (ids.lowerBound(mid) <= id) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        low <<= BLOCK_SHIFT;
+        high = Math.min(rows, low + BLOCK) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = ids.get(mid);
+            if (value < id) {
+                low = mid + 1;
+            } else if (value > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    boolean sameValues(int row, int day, int product, int warehouse, int counteragent, int quantity, long amount) {
+        return days.get(row) == day
+                && products.get(row) == product
+                && warehouses.get(row) == warehouse
+                && counteragents.get(row) == counteragent
+                && quantities.get(row) == quantity
+                && amounts.get(row) == amount;
+    }
+
+    /**
+     * Наименьший и наибольший день сегмента по границам блоков; для пустого сегмента min > max
+     */
+    long[] dayRange() {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int block = 0, n = blocks(rows); block < n; block++) {
+            min = Math.min(min, days.lowerBound(block));
+            max = Math.max(max, days.upperBound(block));
+        }
+        return new long[]{min, max};
+    }
+
+    /**
+     * Колонка дельты поверх массива int
+     */
+    private record IntArrayColumn(int[] values, int rows) implements Column {
+
+        @Override
+        public long get(int row) {
+            return values[row];
+        }
+
+        @Override
+        public int decode(int block, long[] out) {
+            int from = block << BLOCK_SHIFT;
+            int count = Math.min(BLOCK, rows - from);
+            for (int i = 0; i < count; i++) {
+                out[i] = values[from + i];
+            }
+            return count;
+        }
+
+        @Override
+        public long lowerBound(int block) {
+            int from = block << BLOCK_SHIFT;
+            long min = Long.MAX_VALUE;
+            for (int i = from, to = Math.min(rows, from + BLOCK); i < to; i++) {
+                min = Math.min(min, values[i]);
+            }
+            return min;
+        }
+
+        @Override
+        public long upperBound(int block) {
+            int from = block << BLOCK_SHIFT;
+            long max = Long.MIN_VALUE;
+            for (int i = from, to = Math.min(rows, from + BLOCK); i < to; i++) {
+                max = Math.max(max, values[i]);
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Колонка дельты поверх массива long
+     */
+    private record LongArrayColumn(long[] values, int rows) implements Column {
+
+        @Override
+        public long get(int row) {
+            return values[row];
+        }
+
+        @Override
+        public int decode(int block, long[] out) {
+            int from = block << BLOCK_SHIFT;
+            int count = Math.min(BLOCK, rows - from);
+            System.arraycopy(values, from, out, 0, count);
+            return count;
+        }
+
+        @Override
+        public long lowerBound(int block) {
+            return Long.MIN_VALUE;
+        }
+
+        @Override
+        public long upperBound(int block) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Последовательная запись строк в файлы колонок нового поколения
+     */
+    static final class Writer implements Closeable {
+
+        private final PackedColumn.Writer ids;
+        private final PackedColumn.Writer days;
+        private final PackedColumn.Writer products;
+        private final PackedColumn.Writer warehouses;
+        private final PackedColumn.Writer counteragents;
+        private final PackedColumn.Writer quantities;
+        private final PackedColumn.Writer amounts;
+        private int rows;
+
+        Writer(Path dir) throws IOException {
+            ids = new PackedColumn.Writer(dir.resolve(IDS));
+            days = new PackedColumn.Writer(dir.resolve(DAYS));
+            products = new PackedColumn.Writer(dir.resolve(PRODUCTS));
+            warehouses = new PackedColumn.Writer(dir.resolve(WAREHOUSES));
+            counteragents = new PackedColumn.Writer(dir.resolve(COUNTERAGENTS));
+            quantities = new PackedColumn.Writer(dir.resolve(QUANTITIES));
+            amounts = new PackedColumn.Writer(dir.resolve(AMOUNTS));
+        }
+
+        void add(long id, long day, long product, long warehouse, long counteragent, long quantity, long amount)
+                throws IOException {
+            ids.add(id);
+            days.add(day);
+            products.add(product);
+            warehouses.add(warehouse);
+            counteragents.add(counteragent);
+            quantities.add(quantity);
+            amounts.add(amount);
+            rows++;
+        }
+
+        /**
+         * Переписать строку другого сегмента
+         */
+        void copy(Segment source, int row) throws IOException {
+            add(source.ids.get(row), source.days.get(row), source.products.get(row), source.warehouses.get(row),
+                    source.counteragents.get(row), source.quantities.get(row), source.amounts.get(row));
+        }
+
+        int rows() {
+            return rows;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (PackedColumn.Writer column : new PackedColumn.Writer[]{ids, days, products, warehouses,
+                    counteragents, quantities, amounts}) {
+                column.close();
+            }
+        }
+    }
+}
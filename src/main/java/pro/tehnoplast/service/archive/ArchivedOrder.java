@@ -0,0 +1,74 @@
+package pro.tehnoplast.service.archive;
+
+import pro.tehnoplast.service.report.OrderDetail;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Запись заказа в файловом архиве. Самодостаточна: названия товаров, контрагента и адрес склада
+ * сохранены на момент архивации, поэтому чтение архива не зависит от справочников.
+ */
+public record ArchivedOrder(long id,
+                            String number,
+                            LocalDate orderDate,
+                            LocalDate deliveryDate,
+                            String counteragentInn,
+                            String counteragentName,
+                            String warehouseGln,
+                            String warehouseAddress,
+                            int palletCount,
+                            LocalDateTime createdAt,
+                            LocalDateTime updatedAt,
+                            Invoice invoice,
+                            List<Item> items,
+                            List<Long> pallets) {
+
+    /**
+     * Счёт к заказу
+     */
+    public record Invoice(long id,
+                          String number,
+                          LocalDate issueDate,
+                          String counteragentInn,
+                          String orderNumber,
+                          BigDecimal amount) {
+    }
+
+    /**
+     * Позиция заказа с раскладкой по паллетам
+     */
+    public record Item(long id,
+                       long productId,
+                       String productName,
+                       String productSku,
+                       String productBarcode,
+                       int quantity,
+                       BigDecimal unitPrice,
+                       BigDecimal totalPrice,
+                       List<PalletShare> pallets) {
+    }
+
+    /**
+     * Количество позиции на паллете
+     */
+    public record PalletShare(long palletId, int quantity) {
+    }
+
+    /**
+     * Карточка заказа в том же виде, что и для заказов в БД
+     */
+    public OrderDetail toDetail() {
+        return new OrderDetail(id, number, orderDate, deliveryDate, counteragentInn, counteragentName,
+                warehouseGln, warehouseAddress, palletCount,
+                invoice != null ? invoice.number() : null,
+                invoice != null ? invoice.issueDate() : null,
+                items.stream()
+                        .map(item -> new OrderDetail.Item(item.id(), item.productId(), item.productName(),
+                                item.productSku(), item.productBarcode(), item.quantity(), item.unitPrice(),
+                                item.totalPrice()))
+                        .toList());
+    }
+}
@@ -0,0 +1,146 @@
+package pro.tehnoplast.service.archive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import pro.tehnoplast.service.report.ContentVersion;
+import pro.tehnoplast.service.report.OrderRef;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Чтение файлового архива заказов. Поиск по номеру и дате идёт по указателю order_archive_index
+ * и не открывает файлы; карточка заказа читается из одного сжатого блока файла дня доставки
+ * (десятки заказов), поэтому задержка не зависит от размера архива.
+ * <p>
+ * После архивации файл - единственная копия заказа, поэтому каталог tehnoseti.archive.dir обязателен
+ * и должен быть постоянным томом, общим для всех экземпляров; без него приложение не запускается.
+ */
+@Service
+public class OrderArchive {
+
+    private static final String ENTRY = """
+            SELECT file, block_offset, block_length, archived_at
+            FROM order_archive_index
+            WHERE order_id = ?
+            """;
+
+    private static final String REFS = """
+            SELECT order_id, number, order_date, delivery_date, counteragent_inn, warehouse_gln, pallet_count
+            FROM order_archive_index
+            """;
+
+    private static final RowMapper<OrderRef> REF_MAPPER = (rs, rowNum) -> new OrderRef(
+            rs.getLong("order_id"),
+            rs.getString("number"),
+            rs.getDate("order_date").toLocalDate(),
+            rs.getDate("delivery_date").toLocalDate(),
+            rs.getString("counteragent_inn"),
+            rs.getString("warehouse_gln"),
+            rs.getInt("pallet_count"),
+            true);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final Path dir;
+
+    public OrderArchive(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                        @Value("${tehnoseti.archive.dir:}") String dir) {
+        if (dir == null || dir.isBlank()) {
+            throw new IllegalStateException("Не задан каталог архива заказов tehnoseti.archive.dir"
+                    + " (постоянный том, общий для всех экземпляров)");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.dir = Path.of(dir);
+        if (!Files.isDirectory(this.dir)) {
+            throw new IllegalStateException("Каталог архива заказов " + this.dir + " не существует");
+        }
+    }
+
+    /**
+     * Версия карточки архивного заказа: архивная запись не меняется, версия - момент архивации
+     */
+    public Optional<ContentVersion> getVersion(long orderId) {
+        return jdbcTemplate.query(ENTRY, (rs, rowNum) -> {
+            long archivedAt = rs.getTimestamp("archived_at").getTime();
+            return ContentVersion.of(1, archivedAt, archivedAt);
+        }, orderId).stream().findFirst();
+    }
+
+    /**
+     * Заказ из архива; пусто - заказ не архивировался
+     */
+    public Optional<ArchivedOrder> find(long orderId) {
+        return jdbcTemplate.query(ENTRY, (rs, rowNum) -> readOrder(orderId, rs.getString("file"),
+                rs.getLong("block_offset"), rs.getInt("block_length")), orderId).stream().findFirst();
+    }
+
+    /**
+     * Архивные заказы с номером
+     */
+    public List<OrderRef> findByNumber(String number) {
+        return jdbcTemplate.query(REFS + " WHERE number = ? ORDER BY order_date, order_id", REF_MAPPER, number);
+    }
+
+    /**
+     * Архивные заказы с датой доставки
+     */
+    public List<OrderRef> findByDeliveryDate(LocalDate deliveryDate) {
+        return jdbcTemplate.query(REFS + " WHERE delivery_date = ? ORDER BY order_date, order_id", REF_MAPPER, deliveryDate);
+    }
+
+    /**
+     * Файл архива по пути из указателя
+     */
+    Path resolve(String file) {
+        return dir.resolve(file);
+    }
+
+    /**
+     * Корневой каталог архива
+     */
+    Path dir() {
+        return dir;
+    }
+
+    private ArchivedOrder readOrder(long orderId, String file, long offset, int length) {
+        ByteBuffer block = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(resolve(file))) {
+            while (block.hasRemaining()) {
+                if (channel.read(block, offset + block.position()) < 0) {
+                    throw new EOFException("Файл архива " + file + " короче блока заказа " + orderId);
+                }
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new ByteArrayInputStream(block.array())), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    ArchivedOrder order = objectMapper.readValue(line, ArchivedOrder.class);
+                    if (order.id() == orderId) {
+                        return order;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать заказ " + orderId + " из архива " + file, e);
+        }
+        throw new IllegalStateException("Заказа " + orderId + " нет в блоке архива " + file + " по указателю");
+    }
+}
@@ -0,0 +1,438 @@
+package pro.tehnoplast.service.archive;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Array;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Перенос закрытых заказов (дата доставки старше age-days) в сжатые файлы на локальном диске
+ * с последующим окончательным удалением из БД. Архивируется день доставки целиком:
+ * заказы дня с позициями, раскладкой по паллетам и счётом пишутся в файл
+ * {@code yyyy/MM/yyyy-MM-dd.ndjson.gz} - NDJSON, сжатый независимыми gzip-блоками по block-orders заказов
+ * (файл целиком читается zcat), - а в order_archive_index фиксируется блок каждого заказа.
+ * Файл и указатель записываются в одной транзакции чтения дня: файл сбрасывается на диск вместе
+ * с записями каталогов до фиксации указателя. Удаление идёт затем пакетами по batch-size заказов,
+ * каждый в своей транзакции, и только после проверки, что файлы пакета на месте и читаются. Прерванная архивация при следующем запуске
+ * продолжает удаление уже заархивированных заказов, не переписывая их файл.
+ * Удаление не порождает событий outbox: сводки за архивные даты остаются как были.
+ * Каталог архива должен быть общим для всех экземпляров приложения, читающих архив.
+ */
+@Slf4j
+@Service
+public class OrderArchiver {
+
+    private static final String ORDER_DAYS = """
+            SELECT DISTINCT delivery_date
+            FROM orders
+            WHERE delivery_date < ?
+              AND is_deleted = false
+            ORDER BY delivery_date
+            """;
+
+    /**
+     * Заказы дня, ещё не попавшие в архив; запись заказа собирается в JSON на стороне БД
+     */
+    private static final String ORDERS = """
+            SELECT o.id, o.number, o.order_date, o.counteragent_inn, o.warehouse_gln, o.pallet_count,
+                   json_build_object(
+                           'id', o.id,
+                           'number', o.number,
+                           'orderDate', o.order_date,
+                           'deliveryDate', o.delivery_date,
+                           'counteragentInn', o.counteragent_inn,
+                           'counteragentName', c.name,
+                           'warehouseGln', o.warehouse_gln,
+                           'warehouseAddress', w.address,
+                           'palletCount', o.pallet_count,
+                           'createdAt', o.created_at,
+                           'updatedAt', o.updated_at,
+                           'invoice', (SELECT json_build_object(
+                                                      'id', inv.id,
+                                                      'number', inv.number,
+                                                      'issueDate', inv.issue_date,
+                                                      'counteragentInn', inv.counteragent_inn,
+                                                      'orderNumber', inv.order_number,
+                                                      'amount', inv.amount)
+                                       FROM invoices inv
+                                       WHERE inv.order_id = o.id
+                                         AND inv.order_delivery_date = o.delivery_date
+                                         AND inv.is_deleted = false),
+                           'items', COALESCE((SELECT json_agg(json_build_object(
+                                                                      'id', oi.id,
+                                                                      'productId', oi.product_id,
+                                                                      'productName', p.name,
+                                                                      'productSku', p.internal_sku,
+                                                                      'productBarcode', p.internal_barcode,
+                                                                      'quantity', oi.quantity,
+                                                                      'unitPrice', oi.unit_price,
+                                                                      'totalPrice', oi.total_price,
+                                                                      'pallets', COALESCE((SELECT json_agg(json_build_object(
+                                                                                                                   'palletId', pi.pallet_id,
+                                                                                                                   'quantity', pi.quantity)
+                                                                                                           ORDER BY pi.pallet_id)
+                                                                                           FROM pallet_items pi
+                                                                                           WHERE pi.order_item_id = oi.id
+                                                                                             AND pi.delivery_date = oi.delivery_date),
+                                                                                          '[]'::json))
+                                                              ORDER BY oi.id)
+                                              FROM order_items oi
+                                                       JOIN products p ON p.id = oi.product_id
+                                              WHERE oi.order_id = o.id
+                                                AND oi.delivery_date = o.delivery_date
+                                                AND oi.is_deleted = false), '[]'::json),
+                           'pallets', COALESCE((SELECT json_agg(pl.id ORDER BY pl.id)
+                                                FROM pallets pl
+                                                WHERE pl.order_id = o.id
+                                                  AND pl.delivery_date = o.delivery_date
+                                                  AND pl.is_deleted = false), '[]'::json)
+                   )::text AS record
+            FROM orders o
+                     LEFT JOIN counteragents c ON c.inn = o.counteragent_inn
+                     LEFT JOIN warehouses w ON w.gln = o.warehouse_gln
+            WHERE o.delivery_date = ?
+              AND o.is_deleted = false
+              AND NOT EXISTS (SELECT 1 FROM order_archive_index a WHERE a.order_id = o.id)
+            ORDER BY o.id
+            """;
+
+    private static final String INSERT_INDEX = """
+            INSERT INTO order_archive_index (order_id, delivery_date, number, order_date, counteragent_inn,
+                                             warehouse_gln, pallet_count, file, block_offset, block_length)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    /**
+     * Файлы пакета заказов и длина, которую они должны иметь по указателю
+     */
+    private static final String BATCH_FILES = """
+            SELECT file, MAX(block_offset + block_length) AS length
+            FROM order_archive_index
+            WHERE order_id = ANY (?)
+            GROUP BY file
+            """;
+
+    private static final String ARCHIVED_IN_DB = """
+            SELECT a.order_id
+            FROM order_archive_index a
+            WHERE a.delivery_date = ?
+              AND EXISTS (SELECT 1 FROM orders o WHERE o.id = a.order_id AND o.delivery_date = a.delivery_date)
+            ORDER BY a.order_id
+            """;
+
+    /**
+     * Удаление пакета заказов: сначала содержимое паллет и итоги паллет, затем паллеты, счета, позиции и заказы
+     */
+    private static final String[] DELETE_BATCH = {
+            """
+            DELETE FROM pallet_items pi
+            USING order_items oi
+            WHERE pi.delivery_date = ?
+              AND oi.delivery_date = pi.delivery_date
+              AND oi.id = pi.order_item_id
+              AND oi.order_id = ANY (?)
+            """,
+            """
+            DELETE FROM pallet_aggregates pa
+            USING pallets p
+            WHERE pa.delivery_date = ?
+              AND p.delivery_date = pa.delivery_date
+              AND p.id = pa.pallet_id
+              AND p.order_id = ANY (?)
+            """,
+            "DELETE FROM pallets WHERE delivery_date = ? AND order_id = ANY (?)",
+            "DELETE FROM invoices WHERE order_delivery_date = ? AND order_id = ANY (?)",
+            "DELETE FROM order_items WHERE delivery_date = ? AND order_id = ANY (?)",
+            "DELETE FROM orders WHERE delivery_date = ? AND id = ANY (?)"
+    };
+
+    /**
+     * Итог запуска архивации
+     */
+    public record Result(int days, long archived, long deleted) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final OrderArchive archive;
+    private final int ageDays;
+    private final int blockOrders;
+    private final int batchSize;
+    private final long pauseMillis;
+    private final int fetchSize;
+
+    public OrderArchiver(JdbcTemplate jdbcTemplate,
+                         PlatformTransactionManager transactionManager,
+                         OrderArchive archive,
+                         @Value("${tehnoseti.archive.age-days:365}") int ageDays,
+                         @Value("${tehnoseti.archive.block-orders:64}") int blockOrders,
+                         @Value("${tehnoseti.archive.batch-size:500}") int batchSize,
+                         @Value("${tehnoseti.archive.pause-millis:200}") long pauseMillis,
+                         @Value("${tehnoseti.archive.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.archive = archive;
+        this.ageDays = ageDays;
+        this.blockOrders = Math.max(1, blockOrders);
+        this.batchSize = Math.max(1, batchSize);
+        this.pauseMillis = pauseMillis;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Дата, раньше которой заказы считаются закрытыми
+     */
+    public LocalDate defaultCutoff() {
+        return LocalDate.now().minusDays(ageDays);
+    }
+
+    /**
+     * Заархивировать заказы с датой доставки раньше before; позже срока хранения архивировать нельзя
+     */
+    public Result archiveBefore(LocalDate before) {
+        if (before.isAfter(defaultCutoff())) {
+            throw new IllegalArgumentException("Архивировать можно только заказы с доставкой раньше " + defaultCutoff());
+        }
+        List<LocalDate> days = jdbcTemplate.queryForList(ORDER_DAYS, LocalDate.class, before);
+        long archived = 0;
+        long deleted = 0;
+        for (LocalDate day : days) {
+            long started = System.nanoTime();
+            Integer written = transactionTemplate.execute(status -> writeDay(day));
+            long removed = deleteArchived(day);
+            archived += written != null ? written : 0;
+            deleted += removed;
+            log.info("Архив заказов за {}: записано {}, удалено из БД {} за {} мс", day, written, removed,
+                    (System.nanoTime() - started) / 1_000_000);
+        }
+        return new Result(days.size(), archived, deleted);
+    }
+
+    /**
+     * Записать файл дня и указатель на его заказы; возвращает количество записанных заказов.
+     * Блокировка дня не даёт двум исполнителям (задача, захваченная повторно по истечении аренды)
+     * писать один и тот же файл: второй дождётся первого и увидит его заказы уже в указателе.
+     */
+    private int writeDay(LocalDate day) {
+        jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(hashtext('archive:' || ?))", Object.class,
+                day.toString());
+        String file = freeFileName(day);
+        Path target = archive.resolve(file);
+        List<Object[]> index = new ArrayList<>();
+        Path tmp = null;
+        boolean moved = false;
+        try {
+            Files.createDirectories(target.getParent());
+            tmp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                BlockWriter writer = new BlockWriter(channel, file, index);
+                jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(ORDERS, ResultSet.TYPE_FORWARD_ONLY,
+                            ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(fetchSize);
+                    ps.setObject(1, day);
+                    return ps;
+                }, rs -> {
+                    writer.add(rs.getString("record"), new Object[]{
+                            rs.getLong("id"), Date.valueOf(day), rs.getString("number"), rs.getDate("order_date"),
+                            rs.getString("counteragent_inn"), rs.getString("warehouse_gln"), rs.getInt("pallet_count"),
+                            file, null, null});
+                });
+                writer.finishBlock();
+                channel.force(true);
+            }
+            if (index.isEmpty()) {
+                return 0;
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            moved = true;
+            // Переименование и новые каталоги долговечны только после сброса записей каталогов
+            for (Path dir = target.getParent(); dir != null && dir.startsWith(archive.dir()); dir = dir.getParent()) {
+                forceDirectory(dir);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать архив заказов за " + day, e);
+        } finally {
+            if (!moved) {
+                deleteQuietly(tmp);
+            }
+        }
+        jdbcTemplate.batchUpdate(INSERT_INDEX, index);
+        return index.size();
+    }
+
+    /**
+     * Имя файла дня, на который ещё нет указателей. Повторная архивация дня (заказы, появившиеся после
+     * первой) пишет следующий файл; файл, оставшийся от прерванной записи, перезаписывается.
+     * Вызывается под блокировкой дня.
+     */
+    private String freeFileName(LocalDate day) {
+        Set<String> used = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT DISTINCT file FROM order_archive_index WHERE delivery_date = ?", String.class, day));
+        String dir = String.format("%04d/%02d/", day.getYear(), day.getMonthValue());
+        for (int part = 1; ; part++) {
+            String file = dir + day + (part == 1 ? "" : "." + part) + ".ndjson.gz";
+            if (!used.contains(file)) {
+                return file;
+            }
+        }
+    }
+
+    /**
+     * Удалить из БД заархивированные заказы дня пакетами; возвращает количество удалённых заказов
+     */
+    private long deleteArchived(LocalDate day) {
+        List<Long> ids = jdbcTemplate.queryForList(ARCHIVED_IN_DB, Long.class, day);
+        long deleted = 0;
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Long> batch = ids.subList(from, Math.min(ids.size(), from + batchSize));
+            Integer removed = transactionTemplate.execute(status -> {
+                Array array = jdbcTemplate.execute((ConnectionCallback<Array>) con ->
+                        con.createArrayOf("integer", batch.toArray()));
+                verifyFiles(day, array);
+                jdbcTemplate.execute("SET LOCAL tehnoseti.archiving = 'on'");
+                int orders = 0;
+                for (String sql : DELETE_BATCH) {
+                    orders = jdbcTemplate.update(sql, day, array);
+                }
+                return orders;
+            });
+            deleted += removed != null ? removed : 0;
+            pause();
+        }
+        return deleted;
+    }
+
+    /**
+     * Убедиться, что файлы архива с заказами пакета существуют, читаются и не короче блоков по указателю;
+     * иначе удаление не начинается - строки в БД остаются единственной копией
+     */
+    private void verifyFiles(LocalDate day, Array orderIds) {
+        jdbcTemplate.query(BATCH_FILES, rs -> {
+            String file = rs.getString("file");
+            long length = rs.getLong("length");
+            Path path = archive.resolve(file);
+            try {
+                if (!Files.isRegularFile(path) || !Files.isReadable(path) || Files.size(path) < length) {
+                    throw new IllegalStateException("Файл архива " + path + " отсутствует, не читается или короче "
+                            + length + " байт: заказы за " + day + " не удаляются");
+                }
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    channel.read(ByteBuffer.allocate(1), length - 1);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось прочитать файл архива " + path
+                        + ": заказы за " + day + " не удаляются", e);
+            }
+        }, orderIds);
+    }
+
+    private static void deleteQuietly(Path tmp) {
+        if (tmp == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить временный файл архива {}: {}", tmp, e.getMessage());
+        }
+    }
+
+    private static void forceDirectory(Path dir) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private void pause() {
+        if (pauseMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(pauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Запись заказов независимыми gzip-блоками: каждый блок распаковывается сам по себе,
+     * а их последовательность - обычный многочленный gzip
+     */
+    private final class BlockWriter {
+
+        private final FileChannel channel;
+        private final String file;
+        private final List<Object[]> index;
+        private final List<Object[]> pending = new ArrayList<>();
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private GZIPOutputStream gzip;
+
+        BlockWriter(FileChannel channel, String file, List<Object[]> index) {
+            this.channel = channel;
+            this.file = file;
+            this.index = index;
+        }
+
+        void add(String record, Object[] indexRow) {
+            try {
+                if (gzip == null) {
+                    buffer.reset();
+                    gzip = new GZIPOutputStream(buffer, 8192);
+                }
+                gzip.write(record.getBytes(StandardCharsets.UTF_8));
+                gzip.write('\n');
+                pending.add(indexRow);
+                if (pending.size() >= blockOrders) {
+                    finishBlock();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось записать блок архива " + file, e);
+            }
+        }
+
+        void finishBlock() throws IOException {
+            if (gzip == null) {
+                return;
+            }
+            gzip.finish();
+            gzip = null;
+            long offset = channel.position();
+            ByteBuffer block = ByteBuffer.wrap(buffer.toByteArray());
+            while (block.hasRemaining()) {
+                channel.write(block);
+            }
+            for (Object[] row : pending) {
+                row[8] = offset;
+                row[9] = buffer.size();
+                index.add(row);
+            }
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package pro.tehnoplast.service.codes;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Групповое ведение сопоставлений (ИНН контрагента, внешний код) -> товар.
+ * Изменение сопровождается NOTIFY в канал {@link ExternalCodeResolver#CHANNEL}: после фиксации
+ * транзакции кэш контрагента перечитывается на каждом экземпляре приложения, включая этот.
+ */
+@Service
+public class ExternalCodeMappingService {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String UPSERT =
+            "INSERT INTO counteragent_product_codes (counteragent_inn, external_code, product_id) VALUES (?, ?, ?)"
+                    + " ON CONFLICT (counteragent_inn, external_code)"
+                    + " DO UPDATE SET product_id = EXCLUDED.product_id"
+                    + " WHERE counteragent_product_codes.product_id <> EXCLUDED.product_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ExternalCodeMappingService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Добавить или обновить сопоставление одного кода
+     */
+    @Transactional
+    public void put(String counteragentInn, String externalCode, Long productId) {
+        putAll(counteragentInn, Map.of(externalCode, productId));
+    }
+
+    /**
+     * Добавить или обновить набор сопоставлений контрагента
+     */
+    @Transactional
+    public void putAll(String counteragentInn, Map<String, Long> codeToProductId) {
+        if (codeToProductId.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = new ArrayList<>(codeToProductId.size());
+        codeToProductId.forEach((code, productId) -> args.add(new Object[]{counteragentInn, code, productId}));
+        for (int from = 0; from < args.size(); from += BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(UPSERT, args.subList(from, Math.min(from + BATCH_SIZE, args.size())));
+        }
+        notifyChanged(counteragentInn);
+    }
+
+    /**
+     * Удалить сопоставления указанных кодов контрагента
+     */
+    @Transactional
+    public int removeAll(String counteragentInn, Collection<String> externalCodes) {
+        if (externalCodes.isEmpty()) {
+            return 0;
+        }
+        int removed = jdbcTemplate.update(
+                "DELETE FROM counteragent_product_codes WHERE counteragent_inn = ? AND external_code = ANY (?)",
+                counteragentInn, externalCodes.toArray(new String[0]));
+        notifyChanged(counteragentInn);
+        return removed;
+    }
+
+    /**
+     * Заменить все сопоставления контрагента переданным набором
+     */
+    @Transactional
+    public void replaceAll(String counteragentInn, Map<String, Long> codeToProductId) {
+        jdbcTemplate.update("DELETE FROM counteragent_product_codes WHERE counteragent_inn = ?", counteragentInn);
+        if (codeToProductId.isEmpty()) {
+            notifyChanged(counteragentInn);
+        } else {
+            putAll(counteragentInn, codeToProductId);
+        }
+    }
+
+    /**
+     * Уведомление доставляется слушателям только после фиксации текущей транзакции
+     */
+    private void notifyChanged(String counteragentInn) {
+        jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class, ExternalCodeResolver.CHANNEL, counteragentInn);
+    }
+}
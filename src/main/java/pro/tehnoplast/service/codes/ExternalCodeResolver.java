@@ -0,0 +1,131 @@
+package pro.tehnoplast.service.codes;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Кэш сопоставлений внешних кодов контрагентов с товарами.
+ * Разрешение кода - чтение из неизменяемых таблиц без обращений к БД;
+ * обновление подменяет таблицу контрагента целиком (copy-on-write).
+ * Изменения сопоставлений приходят уведомлениями в канал {@link #CHANNEL} (полезная нагрузка - ИНН)
+ * на каждый экземпляр приложения.
+ */
+@Slf4j
+@Component
+public class ExternalCodeResolver {
+
+    public static final String CHANNEL = "external_codes_changed";
+
+    private static final String SELECT_ALL =
+            "SELECT counteragent_inn, external_code, product_id FROM counteragent_product_codes"
+                    + " ORDER BY counteragent_inn";
+    private static final String SELECT_BY_INN =
+            "SELECT counteragent_inn, external_code, product_id FROM counteragent_product_codes"
+                    + " WHERE counteragent_inn = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Map<String, ExternalCodeTable> tables = Map.of();
+
+    public ExternalCodeResolver(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Найти id товара по ИНН контрагента и его коду товара,
+     * {@link ExternalCodeTable#NOT_FOUND} если сопоставления нет
+     */
+    public long resolve(String counteragentInn, String externalCode) {
+        ExternalCodeTable table = tables.get(counteragentInn);
+        return table != null ? table.get(externalCode) : ExternalCodeTable.NOT_FOUND;
+    }
+
+    /**
+     * Таблица кодов контрагента для пакетного разрешения в цикле импорта
+     */
+    public ExternalCodeTable tableFor(String counteragentInn) {
+        return tables.getOrDefault(counteragentInn, ExternalCodeTable.EMPTY);
+    }
+
+    /**
+     * Загрузить все сопоставления
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reloadAll() {
+        Map<String, ExternalCodeTable> loaded = new HashMap<>();
+        TableLoader loader = new TableLoader(loaded);
+        jdbcTemplate.query(SELECT_ALL, rs -> {
+            loader.add(rs.getString(1), rs.getString(2), rs.getLong(3));
+        });
+        loader.flush();
+        tables = Map.copyOf(loaded);
+        log.info("Загружены внешние коды товаров: {} контрагентов", loaded.size());
+    }
+
+    /**
+     * Перечитать сопоставления одного контрагента
+     */
+    public void reload(String counteragentInn) {
+        Map<String, ExternalCodeTable> loaded = new HashMap<>();
+        TableLoader loader = new TableLoader(loaded);
+        jdbcTemplate.query(SELECT_BY_INN, rs -> {
+            loader.add(rs.getString(1), rs.getString(2), rs.getLong(3));
+        }, counteragentInn);
+        loader.flush();
+
+        synchronized (this) {
+            Map<String, ExternalCodeTable> updated = new HashMap<>(tables);
+            ExternalCodeTable table = loaded.get(counteragentInn);
+            if (table != null) {
+                updated.put(counteragentInn, table);
+            } else {
+                updated.remove(counteragentInn);
+            }
+            tables = Map.copyOf(updated);
+        }
+    }
+
+    /**
+     * Накопитель строк, отсортированных по ИНН, в таблицы по контрагентам
+     */
+    private static final class TableLoader {
+        private final Map<String, ExternalCodeTable> target;
+        private String currentInn;
+        private String[] codes = new String[1024];
+        private long[] productIds = new long[1024];
+        private int count;
+
+        private TableLoader(Map<String, ExternalCodeTable> target) {
+            this.target = target;
+        }
+
+        private void add(String inn, String code, long productId) {
+            if (!inn.equals(currentInn)) {
+                flush();
+                currentInn = inn;
+            }
+            if (count == codes.length) {
+                codes = Arrays.copyOf(codes, count * 2);
+                productIds = Arrays.copyOf(productIds, count * 2);
+            }
+            codes[count] = code;
+            productIds[count] = productId;
+            count++;
+        }
+
+        private void flush() {
+            if (currentInn != null && count > 0) {
+                target.put(currentInn, ExternalCodeTable.of(codes, productIds, count));
+            }
+            Arrays.fill(codes, 0, count, null);
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package pro.tehnoplast.service.codes;
+
+import java.util.Arrays;
+
+/**
+ * Компактная неизменяемая таблица "внешний код -> id товара" одного контрагента.
+ * Открытая адресация с линейным пробированием: массив ключей и параллельный массив long.
+ */
+public final class ExternalCodeTable {
+
+    public static final long NOT_FOUND = -1L;
+
+    static final ExternalCodeTable EMPTY = new ExternalCodeTable(new String[0], new long[0], 0);
+
+    private final String[] keys;
+    private final long[] values;
+    private final int mask;
+    private final int size;
+
+    private ExternalCodeTable(String[] keys, long[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.mask = keys.length - 1;
+        this.size = size;
+    }
+
+    /**
+     * Построить таблицу по парам кодов и id товаров; при повторе кода побеждает последний
+     */
+    public static ExternalCodeTable of(String[] codes, long[] productIds, int count) {
+        if (count == 0) {
+            return EMPTY;
+        }
+        int capacity = Integer.highestOneBit(Math.max(4, count * 2 - 1)) << 1;
+        String[] keys = new String[capacity];
+        long[] values = new long[capacity];
+        Arrays.fill(values, NOT_FOUND);
+        int mask = capacity - 1;
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            String code = codes[i];
+            int slot = spread(code.hashCode()) & mask;
+            while (keys[slot] != null && !keys[slot].equals(code)) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == null) {
+                keys[slot] = code;
+                size++;
+            }
+            values[slot] = productIds[i];
+        }
+        return new ExternalCodeTable(keys, values, size);
+    }
+
+    /**
+     * Найти id товара по коду, {@link #NOT_FOUND} если код не сопоставлен
+     */
+    public long get(String code) {
+        if (size == 0 || code == null) {
+            return NOT_FOUND;
+        }
+        int slot = spread(code.hashCode()) & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (key.equals(code)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Количество кодов в таблице
+     */
+    public int size() {
+        return size;
+    }
+
+    private static int spread(int h) {
+        h *= 0x9E3779B1;
+        return h ^ (h >>> 16);
+    }
+}
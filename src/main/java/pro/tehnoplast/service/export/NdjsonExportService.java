@@ -0,0 +1,278 @@
+package pro.tehnoplast.service.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Потоковая выгрузка в формате NDJSON (один JSON-объект на строку).
+ * Строки читаются однонаправленным курсором с фиксированным fetch size
+ * в read-only транзакции и сразу пишутся потоковым генератором Jackson,
+ * поэтому расход памяти не зависит от объема выгрузки.
+ */
+@Service
+public class NdjsonExportService {
+
+    private static final String ORDERS_SQL = """
+            SELECT o.id, o.number, o.order_date, o.delivery_date, o.counteragent_inn, o.warehouse_gln,
+                   o.pallet_count, oi.id AS item_id, oi.product_id, oi.quantity, oi.unit_price, oi.total_price
+            FROM orders o
+                     LEFT JOIN order_items oi
+                               ON oi.order_id = o.id AND oi.delivery_date = o.delivery_date AND oi.is_deleted = false
+            WHERE o.delivery_date BETWEEN ? AND ?
+              AND o.is_deleted = false
+            ORDER BY o.delivery_date, o.id, oi.id
+            """;
+
+    private static final String PALLETS_SQL = """
+            SELECT p.id, p.order_id, p.delivery_date, pi.order_item_id, oi.product_id, pi.quantity
+            FROM pallets p
+                     LEFT JOIN pallet_items pi ON pi.pallet_id = p.id AND pi.delivery_date = p.delivery_date
+                     LEFT JOIN order_items oi ON oi.id = pi.order_item_id AND oi.delivery_date = pi.delivery_date
+            WHERE p.delivery_date BETWEEN ? AND ?
+              AND p.is_deleted = false
+            ORDER BY p.delivery_date, p.id, pi.order_item_id
+            """;
+
+    private static final String INVOICES_SQL = """
+            SELECT id, number, issue_date, order_id, order_delivery_date, counteragent_inn
+            FROM invoices
+            WHERE issue_date BETWEEN ? AND ?
+              AND is_deleted = false
+            ORDER BY issue_date, id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+    private final int flushEvery;
+
+    public NdjsonExportService(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                               @Value("${tehnoseti.export.fetch-size:1000}") int fetchSize,
+                               @Value("${tehnoseti.export.flush-every:500}") int flushEvery) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize;
+        this.flushEvery = flushEvery;
+    }
+
+    /**
+     * Заказы с позициями за период доставки
+     */
+    @Transactional(readOnly = true)
+    public long exportOrders(LocalDate from, LocalDate to, OutputStream out) throws IOException {
+        try (JsonGenerator gen = createGenerator(out)) {
+            GroupingWriter writer = new GroupingWriter(gen) {
+                @Override
+                void writeHeader(ResultSet rs) throws SQLException, IOException {
+                    gen.writeNumberField("id", rs.getLong("id"));
+                    gen.writeStringField("number", rs.getString("number"));
+                    writeDate(gen, "orderDate", rs.getDate("order_date"));
+                    writeDate(gen, "deliveryDate", rs.getDate("delivery_date"));
+                    gen.writeStringField("counteragentInn", rs.getString("counteragent_inn"));
+                    gen.writeStringField("warehouseGln", rs.getString("warehouse_gln"));
+                    gen.writeNumberField("palletCount", rs.getInt("pallet_count"));
+                    gen.writeArrayFieldStart("items");
+                }
+
+                @Override
+                void writeChild(ResultSet rs) throws SQLException, IOException {
+                    long itemId = rs.getLong("item_id");
+                    if (rs.wasNull()) {
+                        return;
+                    }
+                    gen.writeStartObject();
+                    gen.writeNumberField("id", itemId);
+                    gen.writeNumberField("productId", rs.getLong("product_id"));
+                    gen.writeNumberField("quantity", rs.getInt("quantity"));
+                    writeDecimal(gen, "unitPrice", rs.getBigDecimal("unit_price"));
+                    writeDecimal(gen, "totalPrice", rs.getBigDecimal("total_price"));
+                    gen.writeEndObject();
+                }
+            };
+            stream(ORDERS_SQL, from, to, writer);
+            return writer.finish();
+        }
+    }
+
+    /**
+     * Паллеты с содержимым за период доставки
+     */
+    @Transactional(readOnly = true)
+    public long exportPallets(LocalDate from, LocalDate to, OutputStream out) throws IOException {
+        try (JsonGenerator gen = createGenerator(out)) {
+            GroupingWriter writer = new GroupingWriter(gen) {
+                @Override
+                void writeHeader(ResultSet rs) throws SQLException, IOException {
+                    gen.writeNumberField("id", rs.getLong("id"));
+                    gen.writeNumberField("orderId", rs.getLong("order_id"));
+                    writeDate(gen, "deliveryDate", rs.getDate("delivery_date"));
+                    gen.writeArrayFieldStart("items");
+                }
+
+                @Override
+                void writeChild(ResultSet rs) throws SQLException, IOException {
+                    long orderItemId = rs.getLong("order_item_id");
+                    if (rs.wasNull()) {
+                        return;
+                    }
+                    gen.writeStartObject();
+                    gen.writeNumberField("orderItemId", orderItemId);
+                    gen.writeNumberField("productId", rs.getLong("product_id"));
+                    gen.writeNumberField("quantity", rs.getInt("quantity"));
+                    gen.writeEndObject();
+                }
+            };
+            stream(PALLETS_SQL, from, to, writer);
+            return writer.finish();
+        }
+    }
+
+    /**
+     * Счета за период выставления
+     */
+    @Transactional(readOnly = true)
+    public long exportInvoices(LocalDate from, LocalDate to, OutputStream out) throws IOException {
+        try (JsonGenerator gen = createGenerator(out)) {
+            long[] count = {0};
+            stream(INVOICES_SQL, from, to, rs -> {
+                try {
+                    gen.writeStartObject();
+                    gen.writeNumberField("id", rs.getLong("id"));
+                    gen.writeStringField("number", rs.getString("number"));
+                    writeDate(gen, "issueDate", rs.getDate("issue_date"));
+                    long orderId = rs.getLong("order_id");
+                    if (rs.wasNull()) {
+                        gen.writeNullField("orderId");
+                    } else {
+                        gen.writeNumberField("orderId", orderId);
+                    }
+                    writeDate(gen, "orderDeliveryDate", rs.getDate("order_delivery_date"));
+                    gen.writeStringField("counteragentInn", rs.getString("counteragent_inn"));
+                    gen.writeEndObject();
+                    endLine(gen, ++count[0]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return count[0];
+        }
+    }
+
+    private void stream(String sql, LocalDate from, LocalDate to, RowWriter rowWriter) throws IOException {
+        PreparedStatementCreator creator = con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setObject(1, from);
+            ps.setObject(2, to);
+            return ps;
+        };
+        try {
+            jdbcTemplate.query(creator, rs -> {
+                rowWriter.write(rs);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private JsonGenerator createGenerator(OutputStream out) throws IOException {
+        JsonGenerator gen = objectMapper.getFactory().createGenerator(out);
+        gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        gen.setRootValueSeparator(null);
+        return gen;
+    }
+
+    private void endLine(JsonGenerator gen, long written) throws IOException {
+        gen.writeRaw('\n');
+        if (written == 1 || written % flushEvery == 0) {
+            gen.flush();
+        }
+    }
+
+    private static void writeDate(JsonGenerator gen, String field, Date date) throws IOException {
+        if (date == null) {
+            gen.writeNullField(field);
+        } else {
+            gen.writeStringField(field, date.toLocalDate().toString());
+        }
+    }
+
+    private static void writeDecimal(JsonGenerator gen, String field, BigDecimal value) throws IOException {
+        if (value == null) {
+            gen.writeNullField(field);
+        } else {
+            gen.writeNumberField(field, value);
+        }
+    }
+
+    /**
+     * Обработчик строки результата
+     */
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Сборка "родитель + дочерние строки" из отсортированного по родителю соединения
+     */
+    private abstract class GroupingWriter implements RowWriter {
+        private final JsonGenerator gen;
+        private long currentId = Long.MIN_VALUE;
+        private long written;
+
+        GroupingWriter(JsonGenerator gen) {
+            this.gen = gen;
+        }
+
+        abstract void writeHeader(ResultSet rs) throws SQLException, IOException;
+
+        abstract void writeChild(ResultSet rs) throws SQLException, IOException;
+
+        @Override
+        public void write(ResultSet rs) throws SQLException {
+            try {
+                long id = rs.getLong("id");
+                if (id != currentId) {
+                    closeCurrent();
+                    currentId = id;
+                    gen.writeStartObject();
+                    writeHeader(rs);
+                }
+                writeChild(rs);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        long finish() throws IOException {
+            closeCurrent();
+            gen.flush();
+            return written;
+        }
+
+        private void closeCurrent() throws IOException {
+            if (currentId == Long.MIN_VALUE) {
+                return;
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+            endLine(gen, ++written);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package pro.tehnoplast.service.jobs;
+
+import org.springframework.stereotype.Component;
+import pro.tehnoplast.service.reconciliation.InvoiceReconciliation;
+import pro.tehnoplast.service.reconciliation.InvoiceReconciliationService;
+
+import java.time.LocalDate;
+
+/**
+ * Сверка счетов с заказами в фоне; расхождения сохраняются в invoice_reconciliation_issues.
+ * Параметры задачи - период доставки "yyyy-MM-dd/yyyy-MM-dd".
+ */
+@Component
+public class InvoiceReconciliationJobHandler implements JobHandler {
+
+    public static final String TYPE = "reconciliation.invoices";
+
+    private final InvoiceReconciliationService reconciliationService;
+
+    public InvoiceReconciliationJobHandler(InvoiceReconciliationService reconciliationService) {
+        this.reconciliationService = reconciliationService;
+    }
+
+    /**
+     * Параметры задачи для периода доставки
+     */
+    public static String payload(LocalDate from, LocalDate to) {
+        return from + "/" + to;
+    }
+
+    @Override
+    public String type() {
+        return TYPE;
+    }
+
+    @Override
+    public String handle(Job job) {
+        String[] period = job.payload().split("/");
+        InvoiceReconciliation result = reconciliationService.reconcile(LocalDate.parse(period[0]),
+                LocalDate.parse(period[1]));
+        return "сверка " + result.id() + ": заказов " + result.orders() + ", счетов " + result.invoices()
+                + ", расхождений " + result.issues().size();
+    }
+}
@@ -0,0 +1,14 @@
+package pro.tehnoplast.service.jobs;
+
+/**
+ * Захваченная исполнителем задача. {@code attempt} - номер текущей попытки, начиная с 1
+ */
+public record Job(long id, String type, String payload, int attempt, int maxAttempts) {
+
+    /**
+     * Последняя ли это попытка (после ошибки задача уйдёт в failed)
+     */
+    public boolean isLastAttempt() {
+        return attempt >= maxAttempts;
+    }
+}
@@ -0,0 +1,26 @@
+package pro.tehnoplast.service.jobs;
+
+/**
+ * Обработчик задач одного типа. Реализации - Spring-бины, {@link JobWorker} находит их сам.
+ * Обработка должна быть идемпотентной: после падения узла задача будет выполнена повторно.
+ */
+public interface JobHandler {
+
+    /**
+     * Тип задачи (jobs.job_type)
+     */
+    String type();
+
+    /**
+     * Сколько задач этого типа может выполняться одновременно во всём кластере
+     */
+    default int maxConcurrency() {
+        return 1;
+    }
+
+    /**
+     * Выполнить задачу; возвращает краткий итог для jobs.result.
+     * Исключение означает неудачную попытку: задача будет повторена с задержкой.
+     */
+    String handle(Job job) throws Exception;
+}
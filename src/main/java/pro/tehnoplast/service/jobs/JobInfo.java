@@ -0,0 +1,19 @@
+package pro.tehnoplast.service.jobs;
+
+import java.time.LocalDateTime;
+
+/**
+ * Состояние задачи для API
+ */
+public record JobInfo(long id,
+                      String type,
+                      String status,
+                      int attempts,
+                      int maxAttempts,
+                      LocalDateTime runAfter,
+                      String lockedBy,
+                      String lastError,
+                      String result,
+                      LocalDateTime createdAt,
+                      LocalDateTime finishedAt) {
+}
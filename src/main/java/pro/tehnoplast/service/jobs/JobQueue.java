@@ -0,0 +1,294 @@
+package pro.tehnoplast.service.jobs;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Долговременная очередь задач в таблице jobs. Задачи захватываются через FOR UPDATE SKIP LOCKED,
+ * поэтому несколько экземпляров приложения разбирают очередь без двойной обработки.
+ * Захват выдаёт аренду (locked_until); исполнитель продлевает её пульсом, а брошенные
+ * упавшим узлом задачи по истечении аренды возвращаются в очередь.
+ */
+@Service
+public class JobQueue {
+
+    public static final String QUEUED = "queued";
+    public static final String RUNNING = "running";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+
+    private static final String ENQUEUE = """
+            INSERT INTO jobs (job_type, payload, max_attempts, run_after)
+            VALUES (?, ?, ?, NOW() + make_interval(secs => ?))
+            RETURNING id
+            """;
+
+    /**
+     * Захват выполняется под advisory-блокировкой типа задачи: подсчёт выполняющихся задач
+     * и выборка новых не гоняются между узлами, и ограничение параллельности по типу соблюдается точно.
+     * Задачи с истёкшей арендой в подсчёт не входят.
+     */
+    private static final String CLAIM = """
+            UPDATE jobs j
+            SET status       = 'running',
+                attempts     = j.attempts + 1,
+                locked_by    = ?,
+                locked_until = NOW() + make_interval(secs => ?),
+                heartbeat_at = NOW()
+            FROM (SELECT id
+                  FROM jobs
+                  WHERE job_type = ?
+                    AND status = 'queued'
+                    AND run_after <= NOW()
+                  ORDER BY run_after, id
+                  LIMIT GREATEST(0, LEAST(?, ? - (SELECT count(*)
+                                                  FROM jobs
+                                                  WHERE job_type = ?
+                                                    AND status = 'running'
+                                                    AND locked_until > NOW())))
+                  FOR UPDATE SKIP LOCKED) c
+            WHERE j.id = c.id
+            RETURNING j.id, j.job_type, j.payload, j.attempts, j.max_attempts
+            """;
+
+    private static final String HEARTBEAT = """
+            UPDATE jobs
+            SET locked_until = NOW() + make_interval(secs => ?),
+                heartbeat_at = NOW()
+            WHERE id = ANY (?)
+              AND locked_by = ?
+              AND status = 'running'
+            """;
+
+    private static final String COMPLETE = """
+            UPDATE jobs
+            SET status       = 'done',
+                result       = ?,
+                last_error   = NULL,
+                locked_by    = NULL,
+                locked_until = NULL,
+                finished_at  = NOW()
+            WHERE id = ?
+              AND locked_by = ?
+              AND status = 'running'
+            """;
+
+    private static final String FAIL = """
+            UPDATE jobs
+            SET status       = CASE WHEN attempts >= max_attempts THEN 'failed' ELSE 'queued' END,
+                finished_at  = CASE WHEN attempts >= max_attempts THEN NOW() END,
+                run_after    = NOW() + make_interval(secs => ?),
+                last_error   = ?,
+                locked_by    = NULL,
+                locked_until = NULL
+            WHERE id = ?
+              AND locked_by = ?
+              AND status = 'running'
+            """;
+
+    private static final String RECOVER_EXPIRED = """
+            UPDATE jobs j
+            SET status       = CASE WHEN j.attempts >= j.max_attempts THEN 'failed' ELSE 'queued' END,
+                finished_at  = CASE WHEN j.attempts >= j.max_attempts THEN NOW() END,
+                last_error   = 'Истекла аренда задачи, исполнитель не отвечает: ' || j.locked_by,
+                run_after    = NOW(),
+                locked_by    = NULL,
+                locked_until = NULL
+            FROM (SELECT id
+                  FROM jobs
+                  WHERE status = 'running'
+                    AND locked_until < NOW()
+                  FOR UPDATE SKIP LOCKED) e
+            WHERE j.id = e.id
+            """;
+
+    private static final String PURGE_FINISHED = """
+            DELETE FROM jobs
+            WHERE id IN (SELECT id
+                         FROM jobs
+                         WHERE status IN ('done', 'failed')
+                           AND finished_at < NOW() - make_interval(days => ?)
+                         LIMIT ?)
+            """;
+
+    private static final String PUT_FILE = """
+            INSERT INTO job_files (job_id, name, content_type, content)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT (job_id, name) DO UPDATE
+                SET content_type = EXCLUDED.content_type,
+                    content      = EXCLUDED.content,
+                    created_at   = NOW()
+            """;
+
+    private static final RowMapper<Job> JOB_MAPPER = (rs, rowNum) -> new Job(
+            rs.getLong("id"),
+            rs.getString("job_type"),
+            rs.getString("payload"),
+            rs.getInt("attempts"),
+            rs.getInt("max_attempts"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public JobQueue(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Поставить задачу в очередь
+     */
+    public long enqueue(String type, String payload, int maxAttempts) {
+        Long id = jdbcTemplate.queryForObject(ENQUEUE, Long.class, type, payload, maxAttempts, 0);
+        return id != null ? id : 0L;
+    }
+
+    /**
+     * Поставить задачу в очередь вместе с входным файлом (в одной транзакции)
+     */
+    @Transactional
+    public long enqueue(String type, String payload, int maxAttempts,
+                        String fileName, String contentType, InputStream content, long length) {
+        long id = enqueue(type, payload, maxAttempts);
+        putFile(id, fileName, contentType, content, length);
+        return id;
+    }
+
+    /**
+     * Есть ли задача типа в очереди или в работе
+     */
+    public boolean hasPending(String type) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM jobs WHERE job_type = ? AND status IN ('queued', 'running'))",
+                Boolean.class, type));
+    }
+
+    /**
+     * Захватить до {@code limit} готовых задач типа, не превышая {@code maxRunning}
+     * одновременно выполняемых задач этого типа во всём кластере
+     */
+    public List<Job> claim(String type, int limit, int maxRunning, String workerId, int leaseSeconds) {
+        List<Job> claimed = transactionTemplate.execute(status -> {
+            jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(hashtext('jobs:' || ?))", Object.class, type);
+            return jdbcTemplate.query(CLAIM, JOB_MAPPER, workerId, leaseSeconds, type, limit, maxRunning, type);
+        });
+        return claimed != null ? claimed : List.of();
+    }
+
+    /**
+     * Продлить аренду задач исполнителя; возвращает количество продлённых
+     */
+    public int heartbeat(Collection<Long> jobIds, String workerId, int leaseSeconds) {
+        if (jobIds.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update(HEARTBEAT, leaseSeconds, jobIds.toArray(new Long[0]), workerId);
+    }
+
+    /**
+     * Отметить задачу выполненной. false - аренда была потеряна и задачу забрал другой узел
+     */
+    public boolean complete(long jobId, String workerId, String result) {
+        return jdbcTemplate.update(COMPLETE, result, jobId, workerId) == 1;
+    }
+
+    /**
+     * Отметить неудачную попытку: повтор через {@code retryDelaySeconds} или failed, если попытки исчерпаны
+     */
+    public boolean fail(long jobId, String workerId, String error, long retryDelaySeconds) {
+        return jdbcTemplate.update(FAIL, retryDelaySeconds, error, jobId, workerId) == 1;
+    }
+
+    /**
+     * Вернуть в очередь задачи с истёкшей арендой
+     */
+    public int recoverExpired() {
+        return jdbcTemplate.update(RECOVER_EXPIRED);
+    }
+
+    /**
+     * Удалить порцию завершённых задач старше {@code days} дней (файлы удаляются каскадно)
+     */
+    public int purgeFinished(int days, int batchSize) {
+        return jdbcTemplate.update(PURGE_FINISHED, days, batchSize);
+    }
+
+    /**
+     * Получить состояние задачи
+     */
+    public Optional<JobInfo> find(long jobId) {
+        return jdbcTemplate.query("""
+                SELECT id, job_type, status, attempts, max_attempts, run_after, locked_by,
+                       last_error, result, created_at, finished_at
+                FROM jobs
+                WHERE id = ?
+                """, (rs, rowNum) -> new JobInfo(
+                rs.getLong("id"),
+                rs.getString("job_type"),
+                rs.getString("status"),
+                rs.getInt("attempts"),
+                rs.getInt("max_attempts"),
+                toLocalDateTime(rs.getTimestamp("run_after")),
+                rs.getString("locked_by"),
+                rs.getString("last_error"),
+                rs.getString("result"),
+                toLocalDateTime(rs.getTimestamp("created_at")),
+                toLocalDateTime(rs.getTimestamp("finished_at"))), jobId).stream().findFirst();
+    }
+
+    /**
+     * Сохранить файл задачи (вход или результат); файл с тем же именем заменяется
+     */
+    public void putFile(long jobId, String name, String contentType, InputStream content, long length) {
+        jdbcTemplate.update(PUT_FILE, ps -> {
+            ps.setLong(1, jobId);
+            ps.setString(2, name);
+            ps.setString(3, contentType);
+            ps.setBinaryStream(4, content, length);
+        });
+    }
+
+    /**
+     * Тип содержимого файла задачи, если файл есть
+     */
+    public Optional<String> fileContentType(long jobId, String name) {
+        return jdbcTemplate.queryForList("SELECT content_type FROM job_files WHERE job_id = ? AND name = ?",
+                String.class, jobId, name).stream().findFirst();
+    }
+
+    /**
+     * Скопировать содержимое файла задачи в поток; false - файла нет
+     */
+    public boolean copyFile(long jobId, String name, OutputStream out) {
+        Boolean found = jdbcTemplate.query("SELECT content FROM job_files WHERE job_id = ? AND name = ?", rs -> {
+            if (!rs.next()) {
+                return false;
+            }
+            try (InputStream in = rs.getBinaryStream("content")) {
+                in.transferTo(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        }, jobId, name);
+        return Boolean.TRUE.equals(found);
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
@@ -0,0 +1,203 @@
+package pro.tehnoplast.service.jobs;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pro.tehnoplast.service.workload.Workload;
+import pro.tehnoplast.service.workload.WorkloadAdmission;
+import pro.tehnoplast.service.workload.WorkloadContext;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Исполнитель очереди задач на одном узле. Для каждого типа задач - свой пул потоков;
+ * узел захватывает задачи, только когда в пуле есть свободные места, так что задачи
+ * распределяются между экземплярами приложения по мере освобождения потоков.
+ * Пока задача выполняется, аренда продлевается пульсом; при ошибке задача
+ * повторяется с экспоненциальной задержкой. Пульс идёт в собственном потоке, а не в общем
+ * планировщике: долгая задача по расписанию не должна задержать его дольше аренды,
+ * иначе задача будет перехвачена и выполнена дважды.
+ * Задачи - массовая работа ({@link Workload#BULK}): они идут в пулы соединений массовой работы,
+ * а пока интерфейс под давлением, новые задачи не захватываются и ждут в очереди.
+ */
+@Slf4j
+@Component
+public class JobWorker {
+
+    private static final int MAX_ERROR_LENGTH = 4000;
+
+    private final JobQueue queue;
+    private final WorkloadAdmission admission;
+    private final Map<String, JobHandler> handlers = new HashMap<>();
+    private final Map<String, ExecutorService> executors = new HashMap<>();
+    private final Map<String, AtomicInteger> inFlight = new HashMap<>();
+    private final Map<String, Integer> localThreads = new HashMap<>();
+    private final Set<Long> runningJobs = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService heartbeats;
+    private final String workerId;
+    private final int leaseSeconds;
+    private final long backoffBaseSeconds;
+    private final long backoffMaxSeconds;
+    private final int retentionDays;
+
+    private volatile boolean stopping;
+
+    public JobWorker(JobQueue queue,
+                     WorkloadAdmission admission,
+                     List<JobHandler> jobHandlers,
+                     @Value("${tehnoseti.jobs.threads-per-type:2}") int threadsPerType,
+                     @Value("${tehnoseti.jobs.lease-seconds:60}") int leaseSeconds,
+                     @Value("${tehnoseti.jobs.heartbeat-millis:15000}") long heartbeatMillis,
+                     @Value("${tehnoseti.jobs.backoff-base-seconds:10}") long backoffBaseSeconds,
+                     @Value("${tehnoseti.jobs.backoff-max-seconds:3600}") long backoffMaxSeconds,
+                     @Value("${tehnoseti.jobs.retention-days:14}") int retentionDays) {
+        this.queue = queue;
+        this.admission = admission;
+        this.workerId = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID().toString().substring(0, 8);
+        this.leaseSeconds = leaseSeconds;
+        this.backoffBaseSeconds = backoffBaseSeconds;
+        this.backoffMaxSeconds = backoffMaxSeconds;
+        this.retentionDays = retentionDays;
+        for (JobHandler handler : jobHandlers) {
+            String type = handler.type();
+            if (handlers.putIfAbsent(type, handler) != null) {
+                throw new IllegalStateException("Два обработчика для типа задач " + type);
+            }
+            int threads = Math.max(1, Math.min(threadsPerType, handler.maxConcurrency()));
+            AtomicInteger counter = new AtomicInteger();
+            localThreads.put(type, threads);
+            inFlight.put(type, new AtomicInteger());
+            executors.put(type, Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(WorkloadContext.wrap(Workload.BULK, r), "job-" + type + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "job-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        log.info("Исполнитель задач {}: типы {}", workerId, localThreads);
+    }
+
+    /**
+     * Забрать задачи в свободные потоки
+     */
+    @Scheduled(fixedDelayString = "${tehnoseti.jobs.poll-millis:1000}")
+    public void poll() {
+        if (stopping || !admission.admitsBackground()) {
+            return;
+        }
+        for (JobHandler handler : handlers.values()) {
+            String type = handler.type();
+            AtomicInteger running = inFlight.get(type);
+            int free = localThreads.get(type) - running.get();
+            if (free <= 0) {
+                continue;
+            }
+            List<Job> jobs = queue.claim(type, free, handler.maxConcurrency(), workerId, leaseSeconds);
+            for (Job job : jobs) {
+                running.incrementAndGet();
+                runningJobs.add(job.id());
+                executors.get(type).execute(() -> run(handler, job));
+            }
+        }
+    }
+
+    /**
+     * Продлить аренду выполняющихся задач; ошибка не должна останавливать следующие пульсы
+     */
+    void heartbeat() {
+        if (runningJobs.isEmpty()) {
+            return;
+        }
+        try {
+            int extended = queue.heartbeat(Set.copyOf(runningJobs), workerId, leaseSeconds);
+            if (extended < runningJobs.size()) {
+                log.warn("Аренда продлена для {} из {} задач: часть задач перехвачена другими узлами",
+                        extended, runningJobs.size());
+            }
+        } catch (RuntimeException e) {
+            log.error("Не удалось продлить аренду задач {}: {}", runningJobs, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Вернуть в очередь задачи упавших узлов и удалить старые завершённые. Идёт в интерактивном пуле,
+     * а не в пуле массовой работы: его соединения заняты самими задачами.
+     */
+    @Scheduled(fixedDelayString = "${tehnoseti.jobs.reaper-millis:30000}")
+    public void reap() {
+        WorkloadContext.wrap(Workload.INTERACTIVE, () -> {
+            int recovered = queue.recoverExpired();
+            if (recovered > 0) {
+                log.warn("Возвращено в очередь задач с истёкшей арендой: {}", recovered);
+            }
+            queue.purgeFinished(retentionDays, 1000);
+        }).run();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        stopping = true;
+        executors.values().forEach(ExecutorService::shutdown);
+        for (ExecutorService executor : executors.values()) {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        heartbeats.shutdownNow();
+        if (!runningJobs.isEmpty()) {
+            log.warn("Остановка с незавершёнными задачами {}: вернутся в очередь по истечении аренды", runningJobs);
+        }
+    }
+
+    private void run(JobHandler handler, Job job) {
+        long started = System.nanoTime();
+        try {
+            String result = handler.handle(job);
+            if (!queue.complete(job.id(), workerId, result)) {
+                log.warn("Задача {} выполнена, но аренда потеряна; результат не записан", job.id());
+            } else {
+                log.info("Задача {} ({}) выполнена за {} мс: {}", job.id(), job.type(),
+                        (System.nanoTime() - started) / 1_000_000, result);
+            }
+        } catch (Exception e) {
+            long delay = backoffSeconds(job.attempt());
+            log.error("Задача {} ({}), попытка {} из {}: {}", job.id(), job.type(), job.attempt(),
+                    job.maxAttempts(), e.getMessage(), e);
+            queue.fail(job.id(), workerId, truncate(e.toString()), delay);
+        } finally {
+            runningJobs.remove(job.id());
+            inFlight.get(job.type()).decrementAndGet();
+        }
+    }
+
+    /**
+     * Экспоненциальная задержка повтора со случайным разбросом +-20%, чтобы повторы узлов не совпадали
+     */
+    private long backoffSeconds(int attempt) {
+        long delay = backoffBaseSeconds << Math.min(attempt - 1, 20);
+        delay = Math.min(delay, backoffMaxSeconds);
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return Math.max(1, Math.round(delay * jitter));
+    }
+
+    private static String truncate(String message) {
+        return message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+    }
+}
@@ -0,0 +1,67 @@
+package pro.tehnoplast.service.jobs;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pro.tehnoplast.service.archive.OrderArchiver;
+
+import java.time.LocalDate;
+
+/**
+ * Архивация закрытых заказов в файлы. Задача одна на кластер (каталог архива один), ставится
+ * в очередь по расписанию, если в очереди её ещё нет. Параметр задачи - дата "yyyy-MM-dd",
+ * раньше которой архивируются даты доставки; пустой - по сроку tehnoseti.archive.age-days.
+ */
+@Slf4j
+@Component
+public class OrderArchiveJobHandler implements JobHandler {
+
+    public static final String TYPE = "orders.archive";
+
+    private final JobQueue queue;
+    private final OrderArchiver archiver;
+    private final int maxAttempts;
+
+    public OrderArchiveJobHandler(JobQueue queue,
+                                  OrderArchiver archiver,
+                                  @Value("${tehnoseti.jobs.max-attempts:5}") int maxAttempts) {
+        this.queue = queue;
+        this.archiver = archiver;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Параметры задачи для архивации дат доставки раньше before; null - по сроку из настроек
+     */
+    public static String payload(LocalDate before) {
+        return before != null ? before.toString() : "";
+    }
+
+    /**
+     * Ежесуточная постановка архивации в очередь
+     */
+    @Scheduled(cron = "${tehnoseti.archive.cron:0 0 4 * * *}")
+    public void schedule() {
+        if (queue.hasPending(TYPE)) {
+            log.info("Архивация заказов уже в очереди");
+            return;
+        }
+        queue.enqueue(TYPE, payload(null), maxAttempts);
+    }
+
+    @Override
+    public String type() {
+        return TYPE;
+    }
+
+    @Override
+    public String handle(Job job) {
+        LocalDate before = job.payload() == null || job.payload().isBlank()
+                ? archiver.defaultCutoff()
+                : LocalDate.parse(job.payload());
+        OrderArchiver.Result result = archiver.archiveBefore(before);
+        return "до " + before + ": дней " + result.days() + ", заархивировано заказов " + result.archived()
+                + ", удалено из БД " + result.deleted();
+    }
+}
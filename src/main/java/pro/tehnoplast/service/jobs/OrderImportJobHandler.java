@@ -0,0 +1,71 @@
+package pro.tehnoplast.service.jobs;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import pro.tehnoplast.service.OrderParserService;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Импорт файла заказов в фоне. Входной XLSX хранится в job_files, поэтому задачу
+ * может выполнить любой экземпляр приложения; отчёт об ошибках сохраняется туда же.
+ */
+@Component
+public class OrderImportJobHandler implements JobHandler {
+
+    public static final String TYPE = "orders.import";
+    public static final String INPUT_FILE = "orders.xlsx";
+    public static final String REPORT_FILE = "report.tsv";
+
+    private final JobQueue queue;
+    private final OrderParserService orderParserService;
+    private final int maxConcurrency;
+
+    public OrderImportJobHandler(JobQueue queue,
+                                 OrderParserService orderParserService,
+                                 @Value("${tehnoseti.jobs.import-concurrency:2}") int maxConcurrency) {
+        this.queue = queue;
+        this.orderParserService = orderParserService;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public String type() {
+        return TYPE;
+    }
+
+    @Override
+    public int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    @Override
+    public String handle(Job job) throws Exception {
+        Path xlsx = Files.createTempFile("job-" + job.id() + "-", ".xlsx");
+        try {
+            try (OutputStream out = Files.newOutputStream(xlsx)) {
+                if (!queue.copyFile(job.id(), INPUT_FILE, out)) {
+                    throw new IllegalStateException("У задачи " + job.id() + " нет входного файла " + INPUT_FILE);
+                }
+            }
+            ByteArrayOutputStream report = new ByteArrayOutputStream();
+            OrderParserService.ImportResult result;
+            try (Writer writer = new OutputStreamWriter(report, StandardCharsets.UTF_8)) {
+                result = orderParserService.importOrders(xlsx.toFile(), writer);
+            }
+            byte[] bytes = report.toByteArray();
+            queue.putFile(job.id(), REPORT_FILE, "text/tab-separated-values;charset=UTF-8",
+                    new ByteArrayInputStream(bytes), bytes.length);
+            return result.toString();
+        } finally {
+            Files.deleteIfExists(xlsx);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package pro.tehnoplast.service.jobs;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import pro.tehnoplast.service.export.CsvCopyExportService;
+
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+/**
+ * Выгрузка позиций заказов (CSV, gzip) в фоне; результат сохраняется в job_files.
+ * Параметры задачи - период доставки "yyyy-MM-dd/yyyy-MM-dd".
+ */
+@Component
+public class OrderItemsExportJobHandler implements JobHandler {
+
+    public static final String TYPE = "export.order-items";
+    public static final String RESULT_FILE = "order-items.csv.gz";
+
+    private final JobQueue queue;
+    private final CsvCopyExportService csvExportService;
+    private final int maxConcurrency;
+
+    public OrderItemsExportJobHandler(JobQueue queue,
+                                      CsvCopyExportService csvExportService,
+                                      @Value("${tehnoseti.jobs.export-concurrency:2}") int maxConcurrency) {
+        this.queue = queue;
+        this.csvExportService = csvExportService;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Параметры задачи для периода доставки
+     */
+    public static String payload(LocalDate from, LocalDate to) {
+        return from + "/" + to;
+    }
+
+    @Override
+    public String type() {
+        return TYPE;
+    }
+
+    @Override
+    public int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    @Override
+    public String handle(Job job) throws Exception {
+        String[] period = job.payload().split("/");
+        LocalDate from = LocalDate.parse(period[0]);
+        LocalDate to = LocalDate.parse(period[1]);
+        Path file = Files.createTempFile("job-" + job.id() + "-", ".csv.gz");
+        try {
+            long rows;
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+                rows = csvExportService.exportOrderItemsCsvGzip(from, to, out);
+            }
+            try (InputStream in = Files.newInputStream(file)) {
+                queue.putFile(job.id(), RESULT_FILE, "application/gzip", in, Files.size(file));
+            }
+            return "строк " + rows;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package pro.tehnoplast.service.matching;
+
+/**
+ * Кандидат на сопоставление нераспознанной строки с товаром
+ *
+ * @param productId идентификатор товара
+ * @param name      название товара
+ * @param internalSku внутренний артикул товара
+ * @param score     сходство от 0 до 1: коэффициент Дайса по триграммам индекса
+ *                  или similarity() pg_trgm, пока индекс не построен
+ */
+public record ProductMatch(long productId, String name, String internalSku, double score) {
+}
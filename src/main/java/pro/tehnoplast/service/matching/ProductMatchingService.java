@@ -0,0 +1,106 @@
+package pro.tehnoplast.service.matching;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import pro.tehnoplast.model.Product;
+import pro.tehnoplast.repository.CounteragentRepository;
+import pro.tehnoplast.repository.ProductRepository;
+import pro.tehnoplast.service.codes.ExternalCodeMappingService;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Подбор товаров для строк импорта, не найденных по точным кодам.
+ * Основной путь - триграммный индекс в памяти, запасной - pg_trgm в БД.
+ */
+@Slf4j
+@Service
+public class ProductMatchingService {
+
+    private final ProductRepository productRepository;
+    private final CounteragentRepository counteragentRepository;
+    private final ExternalCodeMappingService codeMappingService;
+    private final int defaultLimit;
+    private final double minScore;
+
+    private volatile ProductNameIndex index = ProductNameIndex.build(List.of());
+
+    public ProductMatchingService(ProductRepository productRepository,
+                                  CounteragentRepository counteragentRepository,
+                                  ExternalCodeMappingService codeMappingService,
+                                  @Value("${tehnoseti.matching.limit:5}") int defaultLimit,
+                                  @Value("${tehnoseti.matching.min-score:0.3}") double minScore) {
+        this.productRepository = productRepository;
+        this.counteragentRepository = counteragentRepository;
+        this.codeMappingService = codeMappingService;
+        this.defaultLimit = defaultLimit;
+        this.minScore = minScore;
+    }
+
+    /**
+     * Перестроить индекс по актуальному справочнику товаров
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${tehnoseti.matching.refresh-millis:600000}",
+            initialDelayString = "${tehnoseti.matching.refresh-millis:600000}")
+    @Transactional(readOnly = true)
+    public void rebuildIndex() {
+        List<Product> products = productRepository.findAll();
+        index = ProductNameIndex.build(products);
+        log.info("Индекс сопоставления товаров перестроен: {} позиций", products.size());
+    }
+
+    /**
+     * Предложить кандидатов для нераспознанного названия
+     */
+    public List<ProductMatch> suggest(String name) {
+        return suggest(name, defaultLimit);
+    }
+
+    /**
+     * Предложить до limit кандидатов для нераспознанного названия
+     */
+    public List<ProductMatch> suggest(String name, int limit) {
+        List<ProductMatch> matches = index.search(name, limit, minScore);
+        if (!matches.isEmpty() || index.size() > 0) {
+            return matches;
+        }
+        // Индекс еще не построен - обращаемся к pg_trgm
+        return productRepository.findSimilarByName(name, limit).stream()
+                .map(p -> new ProductMatch(p.getId(), p.getName(), p.getInternalSku(), p.getScore()))
+                .toList();
+    }
+
+    /**
+     * Принять сопоставление: внешние коды покупателя (артикул и штрихкод) сохраняются в таблице кодов
+     * этого контрагента, чтобы его следующие импорты находили товар точным поиском.
+     * Карточка товара не меняется: у разных контрагентов свои коды одного товара
+     */
+    @Transactional
+    public void acceptMatch(String counteragentInn, Long productId, String externalSku, String externalBarcode) {
+        if (!productRepository.existsById(productId)) {
+            throw new IllegalArgumentException("Товар не найден: " + productId);
+        }
+        if (counteragentRepository.findByInn(counteragentInn).isEmpty()) {
+            throw new IllegalArgumentException("Контрагент не найден: " + counteragentInn);
+        }
+        Map<String, Long> codes = new HashMap<>();
+        if (externalSku != null && !externalSku.isBlank()) {
+            codes.put(externalSku.trim(), productId);
+        }
+        if (externalBarcode != null && !externalBarcode.isBlank()) {
+            codes.put(externalBarcode.trim(), productId);
+        }
+        if (codes.isEmpty()) {
+            throw new IllegalArgumentException("Не указан ни артикул, ни штрихкод покупателя");
+        }
+        codeMappingService.putAll(counteragentInn, codes);
+    }
+}
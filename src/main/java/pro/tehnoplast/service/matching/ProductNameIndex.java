@@ -0,0 +1,222 @@
+package pro.tehnoplast.service.matching;
+
+import pro.tehnoplast.model.Product;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Неизменяемый триграммный индекс названий товаров в памяти.
+ * Триграммы кодируются в long, словарь триграмм - открытая адресация,
+ * списки вхождений - массивы int, поэтому поиск не создает объектов на каждую триграмму.
+ */
+public final class ProductNameIndex {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final long[] productIds;
+    private final String[] names;
+    private final String[] skus;
+    private final int[] gramCounts;
+
+    private final long[] gramKeys;
+    private final int[][] postings;
+    private final int mask;
+
+    private final ThreadLocal<int[]> scratch;
+
+    private ProductNameIndex(long[] productIds, String[] names, String[] skus, int[] gramCounts,
+                             long[] gramKeys, int[][] postings) {
+        this.productIds = productIds;
+        this.names = names;
+        this.skus = skus;
+        this.gramCounts = gramCounts;
+        this.gramKeys = gramKeys;
+        this.postings = postings;
+        this.mask = gramKeys.length - 1;
+        this.scratch = ThreadLocal.withInitial(() -> new int[productIds.length]);
+    }
+
+    /**
+     * Построить индекс по списку товаров
+     */
+    public static ProductNameIndex build(List<Product> products) {
+        int n = products.size();
+        long[] ids = new long[n];
+        String[] names = new String[n];
+        String[] skus = new String[n];
+        int[] gramCounts = new int[n];
+        long[][] productGrams = new long[n][];
+
+        int totalGrams = 0;
+        for (int i = 0; i < n; i++) {
+            Product product = products.get(i);
+            ids[i] = product.getId();
+            names[i] = product.getName();
+            skus[i] = product.getInternalSku();
+            productGrams[i] = trigrams(product.getName());
+            gramCounts[i] = productGrams[i].length;
+            totalGrams += productGrams[i].length;
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(16, totalGrams * 2 - 1)) << 1;
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        int[] sizes = new int[capacity];
+        for (long[] grams : productGrams) {
+            for (long gram : grams) {
+                sizes[slot(keys, capacity - 1, gram, true)]++;
+            }
+        }
+
+        int[][] postings = new int[capacity][];
+        for (int s = 0; s < capacity; s++) {
+            if (keys[s] != EMPTY) {
+                postings[s] = new int[sizes[s]];
+                sizes[s] = 0;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            for (long gram : productGrams[i]) {
+                int s = slot(keys, capacity - 1, gram, false);
+                postings[s][sizes[s]++] = i;
+            }
+        }
+        return new ProductNameIndex(ids, names, skus, gramCounts, keys, postings);
+    }
+
+    /**
+     * Количество товаров в индексе
+     */
+    public int size() {
+        return productIds.length;
+    }
+
+    /**
+     * Найти до limit наиболее похожих товаров с похожестью не ниже minScore
+     */
+    public List<ProductMatch> search(String query, int limit, double minScore) {
+        long[] queryGrams = trigrams(query);
+        if (queryGrams.length == 0 || limit <= 0 || productIds.length == 0) {
+            return List.of();
+        }
+
+        int[] hits = scratch.get();
+        int[] touched = new int[Math.min(productIds.length, 1024)];
+        int touchedCount = 0;
+        for (long gram : queryGrams) {
+            int s = slot(gramKeys, mask, gram, false);
+            if (s < 0) {
+                continue;
+            }
+            for (int product : postings[s]) {
+                if (hits[product]++ == 0) {
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
+                    }
+                    touched[touchedCount++] = product;
+                }
+            }
+        }
+
+        int[] best = new int[limit];
+        double[] bestScores = new double[limit];
+        int found = 0;
+        for (int t = 0; t < touchedCount; t++) {
+            int product = touched[t];
+            double score = 2.0 * hits[product] / (queryGrams.length + gramCounts[product]);
+            hits[product] = 0;
+            if (score < minScore || (found == limit && score <= bestScores[found - 1])) {
+                continue;
+            }
+            int pos = found < limit ? found++ : limit - 1;
+            while (pos > 0 && bestScores[pos - 1] < score) {
+                best[pos] = best[pos - 1];
+                bestScores[pos] = bestScores[pos - 1];
+                pos--;
+            }
+            best[pos] = product;
+            bestScores[pos] = score;
+        }
+
+        List<ProductMatch> result = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            int p = best[i];
+            result.add(new ProductMatch(productIds[p], names[p], skus[p], bestScores[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Уникальные триграммы нормализованной строки (как в pg_trgm: слова дополняются пробелами)
+     */
+    static long[] trigrams(String text) {
+        if (text == null || text.isEmpty()) {
+            return new long[0];
+        }
+        long[] grams = new long[text.length() * 2 + 4];
+        int count = 0;
+        char prev2 = ' ';
+        char prev1 = ' ';
+        boolean inWord = false;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? normalize(text.charAt(i)) : ' ';
+            if (c == ' ') {
+                if (inWord) {
+                    grams[count++] = encode(prev2, prev1, ' ');
+                    inWord = false;
+                }
+                prev2 = ' ';
+                prev1 = ' ';
+                continue;
+            }
+            inWord = true;
+            grams[count++] = encode(prev2, prev1, c);
+            prev2 = prev1;
+            prev1 = c;
+        }
+        Arrays.sort(grams, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || grams[unique - 1] != grams[i]) {
+                grams[unique++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, unique);
+    }
+
+    private static char normalize(char c) {
+        if (Character.isLetterOrDigit(c)) {
+            char lower = Character.toLowerCase(c);
+            return lower == 'ё' ? 'е' : lower;
+        }
+        return ' ';
+    }
+
+    private static long encode(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    private static int slot(long[] keys, int mask, long key, boolean insert) {
+        int s = (int) (mix(key) & mask);
+        while (keys[s] != EMPTY) {
+            if (keys[s] == key) {
+                return s;
+            }
+            s = (s + 1) & mask;
+        }
+        if (!insert) {
+            return -1;
+        }
+        keys[s] = key;
+        return s;
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,144 @@
+package pro.tehnoplast.service.notify;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import pro.tehnoplast.service.codes.ExternalCodeResolver;
+import pro.tehnoplast.service.scan.ScanWorkingSets;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Единственное на экземпляр приложения соединение LISTEN. Соединение выделенное
+ * (не из пула), уведомления читаются в фоновом потоке: изменения сводок раздаются через SSE,
+ * изменения заказов сбрасывают рабочие наборы сканирования, изменения внешних кодов перечитывают
+ * кэш контрагента. Чтение кодов из БД идёт в отдельном потоке, чтобы не задерживать остальные уведомления.
+ */
+@Slf4j
+@Component
+public class SummaryChangeListener implements DisposableBean {
+
+    private static final int POLL_TIMEOUT_MILLIS = 10_000;
+    private static final long RECONNECT_DELAY_MILLIS = 5_000;
+
+    private final DataSourceProperties dataSourceProperties;
+    private final SummaryEventBroadcaster broadcaster;
+    private final ScanWorkingSets scanWorkingSets;
+    private final ExternalCodeResolver codeResolver;
+    private final ExecutorService codeReloader;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public SummaryChangeListener(@Qualifier("writeDataSourceProperties") DataSourceProperties dataSourceProperties,
+                                 SummaryEventBroadcaster broadcaster,
+                                 ScanWorkingSets scanWorkingSets,
+                                 ExternalCodeResolver codeResolver) {
+        this.dataSourceProperties = dataSourceProperties;
+        this.broadcaster = broadcaster;
+        this.scanWorkingSets = scanWorkingSets;
+        this.codeResolver = codeResolver;
+        this.codeReloader = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "external-codes-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Запустить поток прослушивания после старта приложения
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::listenLoop, "summary-listener");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public synchronized void destroy() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+        codeReloader.shutdownNow();
+    }
+
+    private void listenLoop() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + SummaryChangeNotifier.CHANNEL);
+                    statement.execute("LISTEN " + ScanWorkingSets.CHANNEL);
+                    statement.execute("LISTEN " + ExternalCodeResolver.CHANNEL);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                log.info("Подписка на каналы {}, {}, {} установлена", SummaryChangeNotifier.CHANNEL,
+                        ScanWorkingSets.CHANNEL, ExternalCodeResolver.CHANNEL);
+                // Пока соединения не было, изменения заказов и кодов могли пройти мимо
+                scanWorkingSets.invalidateAll();
+                reloadCodes(null);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        if (ScanWorkingSets.CHANNEL.equals(notification.getName())) {
+                            scanWorkingSets.invalidate(Long.parseLong(notification.getParameter()));
+                        } else if (ExternalCodeResolver.CHANNEL.equals(notification.getName())) {
+                            reloadCodes(notification.getParameter());
+                        } else {
+                            broadcaster.broadcast(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Соединение LISTEN потеряно, повтор через {} мс: {}", RECONNECT_DELAY_MILLIS, e.getMessage());
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Перечитать коды контрагента, а без ИНН - всех контрагентов
+     */
+    private void reloadCodes(String counteragentInn) {
+        codeReloader.execute(() -> {
+            try {
+                if (counteragentInn == null) {
+                    codeResolver.reloadAll();
+                } else {
+                    codeResolver.reload(counteragentInn);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Не удалось перечитать внешние коды {}: {}",
+                        counteragentInn != null ? counteragentInn : "всех контрагентов", e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,77 @@
+package pro.tehnoplast.service.notify;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import pro.tehnoplast.service.outbox.DerivedDataChangedEvent.SummaryKey;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Отправка NOTIFY об изменившихся сводках. Уведомление доставляется слушателям
+ * только после фиксации транзакции, в которой оно отправлено.
+ * Формат полезной нагрузки: "gln:yyyy-mm-dd,gln:yyyy-mm-dd" или "*" (обновить все).
+ */
+@Component
+public class SummaryChangeNotifier {
+
+    public static final String CHANNEL = "warehouse_summary_changed";
+    public static final String REFRESH_ALL = "*";
+
+    /**
+     * Предел PostgreSQL для полезной нагрузки NOTIFY - 8000 байт
+     */
+    private static final int MAX_PAYLOAD = 7000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SummaryChangeNotifier(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Уведомить слушателей об изменении сводок (в текущей транзакции)
+     */
+    public void notifyChanged(Collection<SummaryKey> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class, CHANNEL, encode(keys));
+    }
+
+    /**
+     * Закодировать ключи в компактную строку
+     */
+    public static String encode(Collection<SummaryKey> keys) {
+        StringBuilder payload = new StringBuilder(keys.size() * 25);
+        for (SummaryKey key : keys) {
+            if (payload.length() > 0) {
+                payload.append(',');
+            }
+            payload.append(key.warehouseGln()).append(':').append(key.deliveryDate());
+            if (payload.length() > MAX_PAYLOAD) {
+                return REFRESH_ALL;
+            }
+        }
+        return payload.toString();
+    }
+
+    /**
+     * Разобрать строку ключей; для "*" возвращается пустой список
+     */
+    public static List<SummaryKey> decode(String payload) {
+        List<SummaryKey> keys = new ArrayList<>();
+        if (payload == null || payload.isEmpty() || REFRESH_ALL.equals(payload)) {
+            return keys;
+        }
+        for (String part : payload.split(",")) {
+            int colon = part.indexOf(':');
+            if (colon > 0) {
+                keys.add(new SummaryKey(part.substring(0, colon), LocalDate.parse(part.substring(colon + 1))));
+            }
+        }
+        return keys;
+    }
+}
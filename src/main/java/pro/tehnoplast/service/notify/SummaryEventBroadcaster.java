@@ -0,0 +1,100 @@
+package pro.tehnoplast.service.notify;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Реестр подключенных страниц сводки (Server-Sent Events) и рассылка им изменений.
+ * Отправка идёт в отдельном потоке: запись в медленное соединение не задерживает поток LISTEN,
+ * а порядок событий для страницы сохраняется. Периодический комментарий-пульс выявляет
+ * закрытые соединения, по которым давно не было событий.
+ */
+@Slf4j
+@Component
+public class SummaryEventBroadcaster implements DisposableBean {
+
+    private final CopyOnWriteArrayList<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    private final long timeoutMillis;
+    private final ExecutorService sender;
+
+    public SummaryEventBroadcaster(@Value("${tehnoseti.summary-events.timeout-millis:1800000}") long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        this.sender = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "summary-sse");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Подписать новую страницу
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        emitters.add(emitter);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+        return emitter;
+    }
+
+    /**
+     * Разослать полезную нагрузку уведомления всем подписчикам
+     */
+    public void broadcast(String payload) {
+        sendAll(() -> SseEmitter.event().name("summary").data(payload));
+    }
+
+    /**
+     * Пульс: комментарий клиентом не обрабатывается, но запись в закрытое соединение завершится ошибкой
+     */
+    @Scheduled(fixedDelayString = "${tehnoseti.summary-events.heartbeat-millis:30000}")
+    public void heartbeat() {
+        if (!emitters.isEmpty()) {
+            sendAll(() -> SseEmitter.event().comment("ping"));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        sender.shutdownNow();
+    }
+
+    /**
+     * Событие строится для каждой страницы заново: построитель SseEventBuilder одноразовый
+     */
+    private void sendAll(Supplier<SseEmitter.SseEventBuilder> event) {
+        try {
+            sender.execute(() -> {
+                for (SseEmitter emitter : emitters) {
+                    try {
+                        emitter.send(event.get());
+                    } catch (IOException | IllegalStateException e) {
+                        emitters.remove(emitter);
+                        emitter.completeWithError(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("Рассылка SSE остановлена: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Количество подключенных страниц
+     */
+    public int getSubscriberCount() {
+        return emitters.size();
+    }
+}
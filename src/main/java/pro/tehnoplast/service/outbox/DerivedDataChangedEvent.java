@@ -0,0 +1,26 @@
+package pro.tehnoplast.service.outbox;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+/**
+ * Событие приложения: производные данные пересчитаны для указанных ключей.
+ * На него подписываются кэши и push-каналы.
+ *
+ * @param summaryKeys пары (склад, дата доставки), сводки по которым изменились
+ * @param palletKeys  паллеты, агрегаты которых изменились
+ */
+public record DerivedDataChangedEvent(Set<SummaryKey> summaryKeys, Set<PalletKey> palletKeys) {
+
+    /**
+     * Ключ сводки по складу и дате
+     */
+    public record SummaryKey(String warehouseGln, LocalDate deliveryDate) {
+    }
+
+    /**
+     * Ключ паллеты в секционированной таблице
+     */
+    public record PalletKey(long palletId, LocalDate deliveryDate) {
+    }
+}
@@ -0,0 +1,148 @@
+package pro.tehnoplast.service.outbox;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import pro.tehnoplast.service.outbox.DerivedDataChangedEvent.PalletKey;
+import pro.tehnoplast.service.outbox.DerivedDataChangedEvent.SummaryKey;
+
+import java.util.Collection;
+
+/**
+ * Пересчет производных данных одним запросом на весь набор ключей
+ */
+@Component
+public class DerivedDataRecalculator {
+
+    private static final String SUMMARY_KEYS =
+            "SELECT * FROM unnest(?::varchar[], ?::date[]) AS k(warehouse_gln, delivery_date)";
+
+    private static final String UPSERT_SUMMARIES = """
+            INSERT INTO warehouse_daily_summaries (warehouse_gln, delivery_date, orders_count, items_count,
+                                                   total_quantity, total_amount, pallet_count, updated_at)
+            SELECT o.warehouse_gln,
+                   o.delivery_date,
+                   COUNT(*),
+                   COALESCE(SUM(items.items_count), 0),
+                   COALESCE(SUM(items.total_quantity), 0),
+                   COALESCE(SUM(items.total_amount), 0),
+                   COALESCE(SUM(pallets.pallet_count), 0),
+                   NOW()
+            FROM orders o
+                     JOIN (%s) k ON k.warehouse_gln = o.warehouse_gln AND k.delivery_date = o.delivery_date
+                     LEFT JOIN LATERAL (SELECT COUNT(*)              AS items_count,
+                                               SUM(oi.quantity)      AS total_quantity,
+                                               SUM(oi.total_price)   AS total_amount
+                                        FROM order_items oi
+                                        WHERE oi.order_id = o.id
+                                          AND oi.delivery_date = o.delivery_date
+                                          AND oi.is_deleted = false) items ON true
+                     LEFT JOIN LATERAL (SELECT COUNT(*) AS pallet_count
+                                        FROM pallets p
+                                        WHERE p.order_id = o.id
+                                          AND p.delivery_date = o.delivery_date
+                                          AND p.is_deleted = false) pallets ON true
+            WHERE o.is_deleted = false
+            GROUP BY o.warehouse_gln, o.delivery_date
+            ON CONFLICT (warehouse_gln, delivery_date) DO UPDATE
+                SET orders_count   = EXCLUDED.orders_count,
+                    items_count    = EXCLUDED.items_count,
+                    total_quantity = EXCLUDED.total_quantity,
+                    total_amount   = EXCLUDED.total_amount,
+                    pallet_count   = EXCLUDED.pallet_count,
+                    updated_at     = EXCLUDED.updated_at
+            """.formatted(SUMMARY_KEYS);
+
+    private static final String DELETE_EMPTY_SUMMARIES = """
+            DELETE FROM warehouse_daily_summaries s
+            USING (%s) k
+            WHERE s.warehouse_gln = k.warehouse_gln
+              AND s.delivery_date = k.delivery_date
+              AND NOT EXISTS (SELECT 1 FROM orders o
+                              WHERE o.warehouse_gln = k.warehouse_gln
+                                AND o.delivery_date = k.delivery_date
+                                AND o.is_deleted = false)
+            """.formatted(SUMMARY_KEYS);
+
+    private static final String PALLET_KEYS =
+            "SELECT * FROM unnest(?::integer[], ?::date[]) AS k(pallet_id, delivery_date)";
+
+    private static final String UPSERT_PALLETS = """
+            INSERT INTO pallet_aggregates (pallet_id, delivery_date, items_count, total_quantity,
+                                           total_value, occupied_places, updated_at)
+            SELECT p.id,
+                   p.delivery_date,
+                   COUNT(pi.order_item_id),
+                   COALESCE(SUM(pi.quantity), 0),
+                   COALESCE(SUM(pi.quantity * oi.unit_price), 0),
+                   COALESCE(SUM(pi.quantity * pr.packing_coefficient), 0),
+                   NOW()
+            FROM pallets p
+                     JOIN (%s) k ON k.pallet_id = p.id AND k.delivery_date = p.delivery_date
+                     LEFT JOIN pallet_items pi ON pi.pallet_id = p.id AND pi.delivery_date = p.delivery_date
+                     LEFT JOIN order_items oi ON oi.id = pi.order_item_id AND oi.delivery_date = pi.delivery_date
+                     LEFT JOIN products pr ON pr.id = oi.product_id
+            WHERE p.is_deleted = false
+            GROUP BY p.id, p.delivery_date
+            ON CONFLICT (pallet_id, delivery_date) DO UPDATE
+                SET items_count     = EXCLUDED.items_count,
+                    total_quantity  = EXCLUDED.total_quantity,
+                    total_value     = EXCLUDED.total_value,
+                    occupied_places = EXCLUDED.occupied_places,
+                    updated_at      = EXCLUDED.updated_at
+            """.formatted(PALLET_KEYS);
+
+    private static final String DELETE_STALE_PALLETS = """
+            DELETE FROM pallet_aggregates a
+            USING (%s) k
+            WHERE a.pallet_id = k.pallet_id
+              AND a.delivery_date = k.delivery_date
+              AND NOT EXISTS (SELECT 1 FROM pallets p
+                              WHERE p.id = k.pallet_id
+                                AND p.delivery_date = k.delivery_date
+                                AND p.is_deleted = false)
+            """.formatted(PALLET_KEYS);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DerivedDataRecalculator(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Пересчитать сводки по складам и датам
+     */
+    public void recalculateSummaries(Collection<SummaryKey> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        String[] glns = new String[keys.size()];
+        String[] dates = new String[keys.size()];
+        int i = 0;
+        for (SummaryKey key : keys) {
+            glns[i] = key.warehouseGln();
+            dates[i] = key.deliveryDate().toString();
+            i++;
+        }
+        jdbcTemplate.update(UPSERT_SUMMARIES, glns, dates);
+        jdbcTemplate.update(DELETE_EMPTY_SUMMARIES, glns, dates);
+    }
+
+    /**
+     * Пересчитать агрегаты паллет
+     */
+    public void recalculatePallets(Collection<PalletKey> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        Long[] ids = new Long[keys.size()];
+        String[] dates = new String[keys.size()];
+        int i = 0;
+        for (PalletKey key : keys) {
+            ids[i] = key.palletId();
+            dates[i] = key.deliveryDate().toString();
+            i++;
+        }
+        jdbcTemplate.update(UPSERT_PALLETS, ids, dates);
+        jdbcTemplate.update(DELETE_STALE_PALLETS, ids, dates);
+    }
+}
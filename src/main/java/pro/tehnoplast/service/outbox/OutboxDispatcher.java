@@ -0,0 +1,112 @@
+package pro.tehnoplast.service.outbox;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import pro.tehnoplast.service.notify.SummaryChangeNotifier;
+import pro.tehnoplast.service.outbox.DerivedDataChangedEvent.PalletKey;
+import pro.tehnoplast.service.outbox.DerivedDataChangedEvent.SummaryKey;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Фоновый разборщик outbox. Забирает пакет событий через FOR UPDATE SKIP LOCKED
+ * (несколько экземпляров приложения не мешают друг другу), схлопывает повторяющиеся
+ * ключи, пересчитывает производные данные и удаляет обработанные события в одной транзакции.
+ * Об изменившихся сводках в той же транзакции отправляется NOTIFY для всех экземпляров.
+ */
+@Slf4j
+@Service
+public class OutboxDispatcher {
+
+    private static final String CLAIM = """
+            SELECT id, warehouse_gln, delivery_date, pallet_id
+            FROM outbox_events
+            ORDER BY id
+            LIMIT ?
+            FOR UPDATE SKIP LOCKED
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final DerivedDataRecalculator recalculator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SummaryChangeNotifier summaryChangeNotifier;
+    private final int batchSize;
+
+    public OutboxDispatcher(JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            DerivedDataRecalculator recalculator,
+                            ApplicationEventPublisher eventPublisher,
+                            SummaryChangeNotifier summaryChangeNotifier,
+                            @Value("${tehnoseti.outbox.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.recalculator = recalculator;
+        this.eventPublisher = eventPublisher;
+        this.summaryChangeNotifier = summaryChangeNotifier;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Разбирать outbox, пока есть полные пакеты
+     */
+    @Scheduled(fixedDelayString = "${tehnoseti.outbox.poll-millis:1000}")
+    public void dispatch() {
+        int processed;
+        do {
+            processed = dispatchBatch();
+        } while (processed == batchSize);
+    }
+
+    /**
+     * Обработать один пакет событий; возвращает количество забранных событий
+     */
+    public int dispatchBatch() {
+        DerivedDataChangedEvent changed = new DerivedDataChangedEvent(new HashSet<>(), new HashSet<>());
+        Integer claimed = transactionTemplate.execute(status -> {
+            List<Long> ids = new ArrayList<>();
+            Set<SummaryKey> summaryKeys = changed.summaryKeys();
+            Set<PalletKey> palletKeys = changed.palletKeys();
+            jdbcTemplate.query(CLAIM, rs -> {
+                ids.add(rs.getLong("id"));
+                String gln = rs.getString("warehouse_gln");
+                Date deliveryDate = rs.getDate("delivery_date");
+                long palletId = rs.getLong("pallet_id");
+                boolean hasPallet = !rs.wasNull();
+                if (gln != null && deliveryDate != null) {
+                    summaryKeys.add(new SummaryKey(gln, deliveryDate.toLocalDate()));
+                }
+                if (hasPallet && deliveryDate != null) {
+                    palletKeys.add(new PalletKey(palletId, deliveryDate.toLocalDate()));
+                }
+            }, batchSize);
+            if (ids.isEmpty()) {
+                return 0;
+            }
+
+            recalculator.recalculateSummaries(summaryKeys);
+            recalculator.recalculatePallets(palletKeys);
+            summaryChangeNotifier.notifyChanged(summaryKeys);
+            jdbcTemplate.update("DELETE FROM outbox_events WHERE id = ANY (?)", (Object) ids.toArray(new Long[0]));
+            return ids.size();
+        });
+
+        int count = claimed != null ? claimed : 0;
+        if (count > 0) {
+            log.debug("Outbox: обработано {} событий, сводок {}, паллет {}",
+                    count, changed.summaryKeys().size(), changed.palletKeys().size());
+            eventPublisher.publishEvent(changed);
+        }
+        return count;
+    }
+}
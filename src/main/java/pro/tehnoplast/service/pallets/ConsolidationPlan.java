@@ -0,0 +1,56 @@
+package pro.tehnoplast.service.pallets;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * План сборных паллет склада на дату доставки
+ *
+ * @param palletsBefore     паллет сейчас
+ * @param palletsAfter      паллет по плану
+ * @param averageFillBefore средний процент заполнения сейчас
+ * @param averageFillAfter  средний процент заполнения по плану
+ */
+public record ConsolidationPlan(String warehouseGln,
+                                LocalDate deliveryDate,
+                                int palletsBefore,
+                                int palletsAfter,
+                                double averageFillBefore,
+                                double averageFillAfter,
+                                List<PlannedPallet> pallets) {
+
+    /**
+     * Паллета плана
+     *
+     * @param palletId     id паллеты; для новой паллеты до применения плана - null
+     * @param orderId      заказ паллеты (на сборной - заказ с наибольшей долей мест)
+     * @param productGroup группа товаров паллеты
+     * @param places       занятые условные места
+     * @param unchanged    паллета остаётся как есть
+     * @param items        части позиций заказов на паллете
+     */
+    public record PlannedPallet(Long palletId,
+                                long orderId,
+                                String productGroup,
+                                double places,
+                                boolean unchanged,
+                                List<Placement> items) {
+
+        PlannedPallet withPalletId(long id) {
+            return new PlannedPallet(id, orderId, productGroup, places, unchanged, items);
+        }
+    }
+
+    /**
+     * Количество позиции заказа на паллете
+     */
+    public record Placement(long orderItemId, long orderId, int quantity) {
+    }
+
+    /**
+     * Число паллет, которое станет меньше при применении плана
+     */
+    public int palletsSaved() {
+        return palletsBefore - palletsAfter;
+    }
+}
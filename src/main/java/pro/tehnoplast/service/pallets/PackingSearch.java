@@ -0,0 +1,259 @@
+package pro.tehnoplast.service.pallets;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Локальный поиск раскладки частей позиций по паллетам одной группы товаров (задача упаковки в контейнеры).
+ * Начальное решение - "лучший подходящий" по убыванию размера; затем случайные перемещения и обмены частей
+ * между паллетами, не уменьшающие сумму квадратов загрузок (так полупустые паллеты разгружаются в полные),
+ * и попытки расформировать самую пустую паллету. Шаги не ухудшают решение, поэтому остановка
+ * по бюджету времени возвращает лучшее найденное.
+ */
+final class PackingSearch {
+
+    private static final int CLOCK_CHECK_STEPS = 256;
+    private static final int ELIMINATE_STEPS = 1024;
+    private static final int MAX_STALE_STEPS = 200_000;
+
+    /**
+     * Раскладка: номер паллеты для каждой части
+     *
+     * @param score сумма квадратов загрузок паллет
+     */
+    record Packing(int[] binOf, int bins, long score) {
+
+        boolean betterThan(Packing other) {
+            return other == null || bins < other.bins || (bins == other.bins && score > other.score);
+        }
+    }
+
+    private final int[] sizes;
+    private final int capacity;
+    private final SplittableRandom random;
+
+    private final int[] binOf;
+    private final int[] slotOf;
+    private int[][] members;
+    private int[] counts;
+    private int[] loads;
+    private int bins;
+    private long score;
+
+    private PackingSearch(int[] sizes, int capacity, long seed) {
+        this.sizes = sizes;
+        this.capacity = capacity;
+        this.random = new SplittableRandom(seed);
+        this.binOf = new int[sizes.length];
+        this.slotOf = new int[sizes.length];
+        this.members = new int[sizes.length][];
+        this.counts = new int[sizes.length];
+        this.loads = new int[sizes.length];
+    }
+
+    /**
+     * Разложить части по паллетам вместимостью {@code capacity}; каждая часть не больше вместимости
+     *
+     * @param seed          0 - чистый "лучший подходящий", иначе начальный порядок слегка перемешивается
+     * @param deadlineNanos момент остановки по {@link System#nanoTime()}
+     */
+    static Packing pack(int[] sizes, int capacity, long seed, long deadlineNanos) {
+        PackingSearch search = new PackingSearch(sizes, capacity, seed);
+        search.bestFitDecreasing(seed);
+        search.improve(deadlineNanos);
+        return new Packing(search.binOf, search.bins, search.score);
+    }
+
+    /**
+     * Нижняя граница числа паллет: суммарный размер, делённый на вместимость
+     */
+    static int lowerBound(int[] sizes, int capacity) {
+        long total = 0;
+        for (int size : sizes) {
+            total += size;
+        }
+        return (int) Math.max(1, (total + capacity - 1) / capacity);
+    }
+
+    private void bestFitDecreasing(long seed) {
+        Integer[] order = new Integer[sizes.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(sizes[b], sizes[a]));
+        if (seed != 0) {
+            for (int k = 0; k < order.length / 4; k++) {
+                int i = random.nextInt(order.length - 1);
+                Integer swap = order[i];
+                order[i] = order[i + 1];
+                order[i + 1] = swap;
+            }
+        }
+        for (int piece : order) {
+            int target = bestFit(piece, -1);
+            if (target < 0) {
+                target = bins++;
+                members[target] = new int[4];
+            }
+            add(piece, target);
+        }
+    }
+
+    private void improve(long deadlineNanos) {
+        int lowerBound = lowerBound(sizes, capacity);
+        int stale = 0;
+        for (long step = 0; bins > lowerBound && bins > 1 && stale < MAX_STALE_STEPS; step++) {
+            if (step % CLOCK_CHECK_STEPS == 0 && System.nanoTime() > deadlineNanos) {
+                return;
+            }
+            boolean improved;
+            if (step % ELIMINATE_STEPS == 0) {
+                improved = eliminateEmptiest();
+            } else if (random.nextBoolean()) {
+                improved = relocate();
+            } else {
+                improved = swap();
+            }
+            stale = improved ? 0 : stale + 1;
+        }
+    }
+
+    /**
+     * Переложить случайную часть на другую паллету, если сумма квадратов загрузок не уменьшится
+     */
+    private boolean relocate() {
+        int piece = random.nextInt(sizes.length);
+        int from = binOf[piece];
+        int to = random.nextInt(bins - 1);
+        if (to >= from) {
+            to++;
+        }
+        int size = sizes[piece];
+        if (loads[to] + size > capacity) {
+            return false;
+        }
+        long delta = 2L * size * (loads[to] - loads[from] + size);
+        if (delta < 0) {
+            return false;
+        }
+        move(piece, to);
+        boolean emptied = counts[from] == 0;
+        dropIfEmpty(from);
+        return delta > 0 || emptied;
+    }
+
+    /**
+     * Обменять две части разных паллет, если сумма квадратов загрузок не уменьшится
+     */
+    private boolean swap() {
+        int first = random.nextInt(sizes.length);
+        int second = random.nextInt(sizes.length);
+        int a = binOf[first];
+        int b = binOf[second];
+        int d = sizes[second] - sizes[first];
+        if (a == b || d == 0 || loads[a] + d > capacity || loads[b] - d > capacity) {
+            return false;
+        }
+        long delta = 2L * d * (loads[a] - loads[b] + d);
+        if (delta < 0) {
+            return false;
+        }
+        move(first, b);
+        move(second, a);
+        return delta > 0;
+    }
+
+    /**
+     * Разложить самую пустую паллету по остальным; если какая-то часть не помещается - откатить
+     */
+    private boolean eliminateEmptiest() {
+        int emptiest = 0;
+        for (int bin = 1; bin < bins; bin++) {
+            if (loads[bin] < loads[emptiest]) {
+                emptiest = bin;
+            }
+        }
+        int[] pieces = Arrays.copyOf(members[emptiest], counts[emptiest]);
+        int moved = 0;
+        for (int piece : pieces) {
+            int target = bestFit(piece, emptiest);
+            if (target < 0) {
+                break;
+            }
+            move(piece, target);
+            moved++;
+        }
+        if (moved < pieces.length) {
+            for (int i = 0; i < moved; i++) {
+                move(pieces[i], emptiest);
+            }
+            return false;
+        }
+        dropIfEmpty(emptiest);
+        return true;
+    }
+
+    /**
+     * Наиболее загруженная паллета, на которую помещается часть; -1 - нет такой
+     */
+    private int bestFit(int piece, int excluded) {
+        int best = -1;
+        int size = sizes[piece];
+        for (int bin = 0; bin < bins; bin++) {
+            if (bin != excluded && loads[bin] + size <= capacity && (best < 0 || loads[bin] > loads[best])) {
+                best = bin;
+            }
+        }
+        return best;
+    }
+
+    private void move(int piece, int to) {
+        remove(piece);
+        add(piece, to);
+    }
+
+    private void add(int piece, int bin) {
+        if (counts[bin] == members[bin].length) {
+            members[bin] = Arrays.copyOf(members[bin], counts[bin] * 2);
+        }
+        members[bin][counts[bin]] = piece;
+        slotOf[piece] = counts[bin]++;
+        binOf[piece] = bin;
+        int load = loads[bin];
+        loads[bin] = load + sizes[piece];
+        score += (long) loads[bin] * loads[bin] - (long) load * load;
+    }
+
+    private void remove(int piece) {
+        int bin = binOf[piece];
+        int slot = slotOf[piece];
+        int last = members[bin][--counts[bin]];
+        members[bin][slot] = last;
+        slotOf[last] = slot;
+        int load = loads[bin];
+        loads[bin] = load - sizes[piece];
+        score += (long) loads[bin] * loads[bin] - (long) load * load;
+    }
+
+    /**
+     * Убрать опустевшую паллету: на её место переезжает последняя
+     */
+    private void dropIfEmpty(int bin) {
+        if (counts[bin] > 0) {
+            return;
+        }
+        int last = --bins;
+        if (bin != last) {
+            int[] emptied = members[bin];
+            members[bin] = members[last];
+            members[last] = emptied;
+            counts[bin] = counts[last];
+            counts[last] = 0;
+            loads[bin] = loads[last];
+            loads[last] = 0;
+            for (int i = 0; i < counts[bin]; i++) {
+                binOf[members[bin][i]] = bin;
+            }
+        }
+    }
+}
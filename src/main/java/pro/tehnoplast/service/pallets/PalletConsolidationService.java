@@ -0,0 +1,353 @@
+package pro.tehnoplast.service.pallets;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import pro.tehnoplast.model.Pallet;
+import pro.tehnoplast.model.PalletItem;
+import pro.tehnoplast.service.pallets.ConsolidationPlan.Placement;
+import pro.tehnoplast.service.pallets.ConsolidationPlan.PlannedPallet;
+import pro.tehnoplast.service.pallets.PackingSearch.Packing;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Сборные паллеты: заказы одного склада на одну дату доставки делят паллеты вместо того,
+ * чтобы каждый заказ вёз свои полупустые. На паллете - только совместимые группы товаров
+ * ({@link PalletItem#isCompatibleGroups}); принадлежность частей заказам сохраняется в pallet_items,
+ * а паллета числится за заказом с наибольшей долей мест. Раскладка каждой группы ищется
+ * параллельно несколькими локальными поисками в пределах общего бюджета времени на весь день.
+ */
+@Slf4j
+@Service
+public class PalletConsolidationService {
+
+    /**
+     * Размеры частей считаются в сотых долях условного места
+     */
+    private static final int SCALE = 100;
+    private static final int CAPACITY = (int) Math.round(Pallet.CAPACITY_PLACES * SCALE);
+
+    private static final String PIECES = """
+            SELECT o.warehouse_gln,
+                   pi.pallet_id,
+                   pi.order_item_id,
+                   oi.order_id,
+                   pi.quantity,
+                   pi.quantity * COALESCE(pr.packing_coefficient, 0) AS places,
+                   pg.name                                          AS product_group
+            FROM pallets p
+                     JOIN pallet_items pi ON pi.pallet_id = p.id AND pi.delivery_date = p.delivery_date
+                     JOIN order_items oi ON oi.id = pi.order_item_id AND oi.delivery_date = pi.delivery_date
+                     JOIN orders o ON o.id = oi.order_id AND o.delivery_date = oi.delivery_date
+                     JOIN products pr ON pr.id = oi.product_id
+                     LEFT JOIN product_groups pg ON pg.id = pr.group_id
+            WHERE p.delivery_date = ?
+              AND p.is_deleted = false
+              AND oi.is_deleted = false
+              AND o.is_deleted = false
+              AND (CAST(? AS varchar) IS NULL OR o.warehouse_gln = ?)
+            ORDER BY o.warehouse_gln, pi.pallet_id, pi.order_item_id
+            """;
+
+    private static final String INSERT_PALLETS = """
+            INSERT INTO pallets (id, order_id, delivery_date)
+            SELECT k.id, k.order_id, ?
+            FROM unnest(?::integer[], ?::integer[]) AS k(id, order_id)
+            """;
+
+    private static final String INSERT_PALLET_ITEMS = """
+            INSERT INTO pallet_items (pallet_id, order_item_id, delivery_date, quantity)
+            SELECT k.pallet_id, k.order_item_id, ?, k.quantity
+            FROM unnest(?::integer[], ?::integer[], ?::integer[]) AS k(pallet_id, order_item_id, quantity)
+            """;
+
+    private static final String RETIRE_PALLETS = """
+            UPDATE pallets
+            SET is_deleted = true,
+                updated_at = NOW()
+            WHERE id = ANY (?::integer[])
+              AND delivery_date = ?
+              AND is_deleted = false
+            """;
+
+    /**
+     * Части позиций уходят с заменённых паллет на новые: строки переносятся, а не копируются,
+     * иначе размещённое количество позиции считалось бы дважды
+     */
+    private static final String MOVE_OFF_RETIRED = """
+            DELETE FROM pallet_items
+            WHERE pallet_id = ANY (?::integer[])
+              AND delivery_date = ?
+              AND order_item_id = ANY (?::integer[])
+            """;
+
+    /**
+     * Число паллет заказа - паллеты, на которых лежат его позиции
+     */
+    private static final String UPDATE_PALLET_COUNTS = """
+            UPDATE orders o
+            SET pallet_count = c.pallets
+            FROM (SELECT oi.order_id, COUNT(DISTINCT pi.pallet_id) AS pallets
+                  FROM pallet_items pi
+                           JOIN pallets p ON p.id = pi.pallet_id AND p.delivery_date = pi.delivery_date
+                           JOIN order_items oi ON oi.id = pi.order_item_id AND oi.delivery_date = pi.delivery_date
+                  WHERE pi.delivery_date = ?
+                    AND p.is_deleted = false
+                    AND oi.order_id = ANY (?::integer[])
+                  GROUP BY oi.order_id) c
+            WHERE o.id = c.order_id
+              AND o.delivery_date = ?
+              AND o.pallet_count <> c.pallets
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long timeBudgetMillis;
+    private final int searchesPerGroup;
+
+    public PalletConsolidationService(JdbcTemplate jdbcTemplate,
+                                      @Value("${tehnoseti.consolidation.time-budget-millis:2000}") long timeBudgetMillis,
+                                      @Value("${tehnoseti.consolidation.searches-per-group:4}") int searchesPerGroup) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.searchesPerGroup = searchesPerGroup;
+    }
+
+    /**
+     * Часть позиции заказа на паллете - неделимая единица раскладки
+     */
+    private record Piece(String warehouseGln, long palletId, long orderItemId, long orderId, int quantity,
+                         double places, String productGroup) {
+    }
+
+    /**
+     * Части одного склада, которые можно класть на общие паллеты
+     */
+    private record PieceGroup(String warehouseGln, List<Piece> pieces, int[] sizes) {
+    }
+
+    private record SearchTask(int group, long seed) {
+    }
+
+    private record WarehousePlan(ConsolidationPlan plan, Set<Long> currentPallets) {
+    }
+
+    /**
+     * Рассчитать план сборных паллет на дату (по всем складам или по одному) без изменений в БД
+     */
+    @Transactional(readOnly = true)
+    public List<ConsolidationPlan> plan(LocalDate deliveryDate, String warehouseGln) {
+        return buildPlans(deliveryDate, warehouseGln).stream().map(WarehousePlan::plan).toList();
+    }
+
+    /**
+     * Рассчитать и применить план: новые паллеты создаются, заменённые мягко удаляются вместе с переносом
+     * их частей на новые паллеты, паллеты без изменений остаются. Склады, где число паллет не уменьшается, не трогаются.
+     */
+    @Transactional
+    public List<ConsolidationPlan> apply(LocalDate deliveryDate, String warehouseGln) {
+        jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(hashtext('pallets:' || ?))", Object.class,
+                deliveryDate.toString());
+        List<ConsolidationPlan> applied = new ArrayList<>();
+        for (WarehousePlan warehousePlan : buildPlans(deliveryDate, warehouseGln)) {
+            ConsolidationPlan plan = warehousePlan.plan();
+            if (plan.palletsSaved() > 0) {
+                plan = save(plan, warehousePlan.currentPallets());
+                log.info("Сборные паллеты {} на {}: было {}, стало {}", plan.warehouseGln(), plan.deliveryDate(),
+                        plan.palletsBefore(), plan.palletsAfter());
+            }
+            applied.add(plan);
+        }
+        return applied;
+    }
+
+    private List<WarehousePlan> buildPlans(LocalDate deliveryDate, String warehouseGln) {
+        long started = System.nanoTime();
+        long deadline = started + timeBudgetMillis * 1_000_000;
+        List<Piece> pieces = jdbcTemplate.query(PIECES, (rs, rowNum) -> new Piece(
+                rs.getString("warehouse_gln"),
+                rs.getLong("pallet_id"),
+                rs.getLong("order_item_id"),
+                rs.getLong("order_id"),
+                rs.getInt("quantity"),
+                rs.getDouble("places"),
+                rs.getString("product_group")), deliveryDate, warehouseGln, warehouseGln);
+
+        Map<String, List<Piece>> byWarehouse = new TreeMap<>();
+        for (Piece piece : pieces) {
+            byWarehouse.computeIfAbsent(piece.warehouseGln(), gln -> new ArrayList<>()).add(piece);
+        }
+        Map<String, List<List<Piece>>> bins = new HashMap<>();
+        List<PieceGroup> groups = new ArrayList<>();
+        for (Map.Entry<String, List<Piece>> entry : byWarehouse.entrySet()) {
+            List<List<Piece>> warehouseBins = new ArrayList<>();
+            bins.put(entry.getKey(), warehouseBins);
+            Map<String, List<Piece>> byGroup = new TreeMap<>();
+            for (Piece piece : entry.getValue()) {
+                if (size(piece) > CAPACITY || !PalletItem.isCompatibleGroups(piece.productGroup(), piece.productGroup())) {
+                    // Больше паллеты или несовместима ни с чем - отдельная паллета
+                    warehouseBins.add(List.of(piece));
+                } else {
+                    byGroup.computeIfAbsent(piece.productGroup(), group -> new ArrayList<>()).add(piece);
+                }
+            }
+            for (List<Piece> groupPieces : byGroup.values()) {
+                groups.add(new PieceGroup(entry.getKey(), groupPieces,
+                        groupPieces.stream().mapToInt(PalletConsolidationService::size).toArray()));
+            }
+        }
+
+        Packing[] best = search(groups, deadline);
+        for (int g = 0; g < groups.size(); g++) {
+            PieceGroup group = groups.get(g);
+            List<List<Piece>> groupBins = new ArrayList<>();
+            for (int bin = 0; bin < best[g].bins(); bin++) {
+                groupBins.add(new ArrayList<>());
+            }
+            for (int i = 0; i < group.pieces().size(); i++) {
+                groupBins.get(best[g].binOf()[i]).add(group.pieces().get(i));
+            }
+            bins.get(group.warehouseGln()).addAll(groupBins);
+        }
+
+        List<WarehousePlan> plans = new ArrayList<>();
+        for (Map.Entry<String, List<Piece>> entry : byWarehouse.entrySet()) {
+            plans.add(toPlan(entry.getKey(), deliveryDate, entry.getValue(), bins.get(entry.getKey())));
+        }
+        log.debug("План сборных паллет на {}: частей {}, групп {} за {} мс", deliveryDate, pieces.size(),
+                groups.size(), (System.nanoTime() - started) / 1_000_000);
+        return plans;
+    }
+
+    /**
+     * Несколько поисков с разными начальными порядками на каждую группу, все группы дня параллельно
+     */
+    private Packing[] search(List<PieceGroup> groups, long deadline) {
+        Packing[] best = new Packing[groups.size()];
+        List<SearchTask> tasks = new ArrayList<>();
+        for (int g = 0; g < groups.size(); g++) {
+            int searches = PackingSearch.lowerBound(groups.get(g).sizes(), CAPACITY) > 1 ? searchesPerGroup : 1;
+            for (int seed = 0; seed < searches; seed++) {
+                tasks.add(new SearchTask(g, seed));
+            }
+        }
+        List<Packing> results = tasks.parallelStream()
+                .map(task -> PackingSearch.pack(groups.get(task.group()).sizes(), CAPACITY, task.seed(), deadline))
+                .toList();
+        for (int t = 0; t < tasks.size(); t++) {
+            int g = tasks.get(t).group();
+            if (results.get(t).betterThan(best[g])) {
+                best[g] = results.get(t);
+            }
+        }
+        return best;
+    }
+
+    private WarehousePlan toPlan(String warehouseGln, LocalDate deliveryDate, List<Piece> pieces,
+                                 List<List<Piece>> plannedBins) {
+        Map<Long, List<Piece>> current = new LinkedHashMap<>();
+        double places = 0;
+        for (Piece piece : pieces) {
+            current.computeIfAbsent(piece.palletId(), id -> new ArrayList<>()).add(piece);
+            places += piece.places();
+        }
+        // Раскладка без выигрыша в числе паллет не стоит перекладывания
+        List<List<Piece>> bins = plannedBins.size() < current.size() ? plannedBins : new ArrayList<>(current.values());
+        List<PlannedPallet> pallets = new ArrayList<>();
+        for (List<Piece> bin : bins) {
+            pallets.add(toPallet(bin, current));
+        }
+        pallets.sort(Comparator.comparingLong(PlannedPallet::orderId)
+                .thenComparing(PlannedPallet::places, Comparator.reverseOrder()));
+        ConsolidationPlan plan = new ConsolidationPlan(warehouseGln, deliveryDate, current.size(), bins.size(),
+                averageFill(places, current.size()), averageFill(places, bins.size()), pallets);
+        return new WarehousePlan(plan, current.keySet());
+    }
+
+    private static PlannedPallet toPallet(List<Piece> bin, Map<Long, List<Piece>> current) {
+        Map<Long, Placement> items = new LinkedHashMap<>();
+        Map<Long, Double> placesByOrder = new HashMap<>();
+        Set<Long> sourcePallets = new HashSet<>();
+        double places = 0;
+        for (Piece piece : bin) {
+            // Части одной позиции с разных паллет на новой паллете - одна строка pallet_items
+            items.merge(piece.orderItemId(), new Placement(piece.orderItemId(), piece.orderId(), piece.quantity()),
+                    (a, b) -> new Placement(a.orderItemId(), a.orderId(), a.quantity() + b.quantity()));
+            placesByOrder.merge(piece.orderId(), piece.places(), Double::sum);
+            sourcePallets.add(piece.palletId());
+            places += piece.places();
+        }
+        long orderId = placesByOrder.entrySet().stream()
+                .max(Map.Entry.<Long, Double>comparingByValue().thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder())))
+                .orElseThrow()
+                .getKey();
+        Long palletId = sourcePallets.size() == 1 ? sourcePallets.iterator().next() : null;
+        boolean unchanged = palletId != null && current.get(palletId).size() == bin.size();
+        return new PlannedPallet(unchanged ? palletId : null, orderId, bin.get(0).productGroup(),
+                Math.round(places * 100) / 100.0, unchanged, List.copyOf(items.values()));
+    }
+
+    private ConsolidationPlan save(ConsolidationPlan plan, Set<Long> currentPallets) {
+        LocalDate date = plan.deliveryDate();
+        int created = (int) plan.pallets().stream().filter(pallet -> !pallet.unchanged()).count();
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT nextval(pg_get_serial_sequence('pallets', 'id')) FROM generate_series(1, ?)", Long.class, created);
+
+        Long[] palletIds = new Long[created];
+        Long[] orderIds = new Long[created];
+        List<Long> itemPallets = new ArrayList<>();
+        List<Long> itemIds = new ArrayList<>();
+        List<Integer> itemQuantities = new ArrayList<>();
+        Set<Long> kept = new HashSet<>();
+        Set<Long> orders = new HashSet<>();
+        List<PlannedPallet> pallets = new ArrayList<>();
+        int next = 0;
+        for (PlannedPallet pallet : plan.pallets()) {
+            pallet.items().forEach(item -> orders.add(item.orderId()));
+            if (pallet.unchanged()) {
+                kept.add(pallet.palletId());
+                pallets.add(pallet);
+                continue;
+            }
+            long id = ids.get(next);
+            palletIds[next] = id;
+            orderIds[next] = pallet.orderId();
+            next++;
+            for (Placement item : pallet.items()) {
+                itemPallets.add(id);
+                itemIds.add(item.orderItemId());
+                itemQuantities.add(item.quantity());
+            }
+            pallets.add(pallet.withPalletId(id));
+        }
+        Long[] retired = currentPallets.stream().filter(id -> !kept.contains(id)).toArray(Long[]::new);
+
+        jdbcTemplate.update(RETIRE_PALLETS, retired, date);
+        jdbcTemplate.update(MOVE_OFF_RETIRED, retired, date, itemIds.stream().distinct().toArray(Long[]::new));
+        jdbcTemplate.update(INSERT_PALLETS, date, palletIds, orderIds);
+        jdbcTemplate.update(INSERT_PALLET_ITEMS, date, itemPallets.toArray(Long[]::new), itemIds.toArray(Long[]::new),
+                itemQuantities.toArray(Integer[]::new));
+        jdbcTemplate.update(UPDATE_PALLET_COUNTS, date, orders.toArray(Long[]::new), date);
+        return new ConsolidationPlan(plan.warehouseGln(), date, plan.palletsBefore(), plan.palletsAfter(),
+                plan.averageFillBefore(), plan.averageFillAfter(), pallets);
+    }
+
+    private static int size(Piece piece) {
+        return (int) Math.round(piece.places() * SCALE);
+    }
+
+    private static double averageFill(double places, int pallets) {
+        return pallets == 0 ? 0 : Math.round(places / (pallets * Pallet.CAPACITY_PLACES) * 1000) / 10.0;
+    }
+}
@@ -0,0 +1,34 @@
+package pro.tehnoplast.service.reconciliation;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Результат сверки счетов с заказами за период доставки
+ *
+ * @param orders   заказов в периоде
+ * @param invoices счетов, участвовавших в сверке
+ * @param issues   найденные расхождения
+ */
+public record InvoiceReconciliation(long id,
+                                    LocalDate periodFrom,
+                                    LocalDate periodTo,
+                                    int orders,
+                                    int invoices,
+                                    List<Issue> issues) {
+
+    /**
+     * Расхождение: {@code issue} - missing, duplicate, late, amount_mismatch, inn_mismatch или unmatched
+     */
+    public record Issue(String issue,
+                        Long orderId,
+                        LocalDate orderDeliveryDate,
+                        String orderNumber,
+                        Long invoiceId,
+                        String invoiceNumber,
+                        String counteragentInn,
+                        BigDecimal orderAmount,
+                        BigDecimal invoiceAmount) {
+    }
+}
@@ -0,0 +1,301 @@
+package pro.tehnoplast.service.reconciliation;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+import pro.tehnoplast.service.reconciliation.InvoiceReconciliation.Issue;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Сверка счетов с заказами за период доставки. Заказы с суммами позиций и счета читаются
+ * двумя потоковыми запросами в одном снимке и соединяются в памяти по хеш-таблицам:
+ * по ссылке на заказ, а для счетов без ссылки - по номеру заказа и ИНН с ближайшей датой доставки.
+ * Расхождения сохраняются в invoice_reconciliation_issues; повторная сверка периода заменяет прежнюю.
+ */
+@Slf4j
+@Service
+public class InvoiceReconciliationService {
+
+    public static final String MISSING = "missing";
+    public static final String DUPLICATE = "duplicate";
+    public static final String LATE = "late";
+    public static final String AMOUNT_MISMATCH = "amount_mismatch";
+    public static final String INN_MISMATCH = "inn_mismatch";
+    public static final String UNMATCHED = "unmatched";
+
+    /**
+     * Заказы периода с суммой активных позиций
+     */
+    private static final String ORDERS = """
+            SELECT o.id,
+                   o.delivery_date,
+                   o.number,
+                   o.counteragent_inn,
+                   COALESCE(SUM(oi.total_price), 0) AS amount
+            FROM orders o
+                     LEFT JOIN order_items oi
+                               ON oi.order_id = o.id AND oi.delivery_date = o.delivery_date AND oi.is_deleted = false
+            WHERE o.delivery_date BETWEEN ? AND ?
+              AND o.is_deleted = false
+            GROUP BY o.id, o.delivery_date
+            """;
+
+    /**
+     * Счета к заказам периода и счета без ссылки на заказ, выставленные в периоде.
+     * Счета со ссылкой идут первыми, чтобы счет без ссылки не занял уже оплаченный заказ;
+     * дальше порядок выставления определяет, какой из повторных счетов считается основным
+     */
+    private static final String INVOICES = """
+            SELECT id, number, issue_date, order_id, counteragent_inn, order_number, amount
+            FROM invoices
+            WHERE is_deleted = false
+              AND (order_delivery_date BETWEEN ? AND ?
+                OR (order_id IS NULL AND issue_date BETWEEN ? AND ?))
+            ORDER BY order_id IS NULL, issue_date, id
+            """;
+
+    private static final String INSERT_RECONCILIATION = """
+            INSERT INTO invoice_reconciliations (period_from, period_to, orders, invoices, issues)
+            VALUES (?, ?, ?, ?, ?)
+            RETURNING id
+            """;
+
+    private static final String INSERT_ISSUES = """
+            INSERT INTO invoice_reconciliation_issues (reconciliation_id, issue, order_id, order_delivery_date,
+                                                       order_number, invoice_id, invoice_number, counteragent_inn,
+                                                       order_amount, invoice_amount)
+            SELECT ?, k.issue, k.order_id, k.order_delivery_date, k.order_number, k.invoice_id, k.invoice_number,
+                   k.counteragent_inn, k.order_amount, k.invoice_amount
+            FROM unnest(?::varchar[], ?::integer[], ?::date[], ?::varchar[], ?::integer[], ?::varchar[], ?::varchar[],
+                        ?::numeric[], ?::numeric[])
+                     AS k(issue, order_id, order_delivery_date, order_number, invoice_id, invoice_number,
+                          counteragent_inn, order_amount, invoice_amount)
+            """;
+
+    private static final String RECONCILIATION = """
+            SELECT id, period_from, period_to, orders, invoices
+            FROM invoice_reconciliations
+            WHERE id = ?
+            """;
+
+    private static final String ISSUES = """
+            SELECT issue, order_id, order_delivery_date, order_number, invoice_id, invoice_number, counteragent_inn,
+                   order_amount, invoice_amount
+            FROM invoice_reconciliation_issues
+            WHERE reconciliation_id = ?
+            ORDER BY issue, order_delivery_date, order_number, invoice_number
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int fetchSize;
+
+    public InvoiceReconciliationService(JdbcTemplate jdbcTemplate,
+                                        @Value("${tehnoseti.reconciliation.fetch-size:10000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Сверить счета с заказами за период доставки и сохранить расхождения
+     */
+    @Transactional(isolation = Isolation.REPEATABLE_READ)
+    public InvoiceReconciliation reconcile(LocalDate from, LocalDate to) {
+        long started = System.nanoTime();
+        jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(hashtext('reconciliation:' || ? || '/' || ?))",
+                Object.class, from.toString(), to.toString());
+
+        Map<Long, OrderRollup> byId = new HashMap<>();
+        Map<String, List<OrderRollup>> byNumber = new HashMap<>();
+        stream(ORDERS, rs -> {
+            OrderRollup order = new OrderRollup(rs.getLong("id"), rs.getObject("delivery_date", LocalDate.class),
+                    rs.getString("number"), rs.getString("counteragent_inn"), rs.getBigDecimal("amount"));
+            byId.put(order.id, order);
+            byNumber.computeIfAbsent(numberKey(order.number, order.counteragentInn), key -> new ArrayList<>(1))
+                    .add(order);
+        }, from, to);
+
+        List<Issue> issues = new ArrayList<>();
+        int[] invoices = {0};
+        stream(INVOICES, rs -> {
+            invoices[0]++;
+            long invoiceId = rs.getLong("id");
+            String invoiceNumber = rs.getString("number");
+            LocalDate issueDate = rs.getObject("issue_date", LocalDate.class);
+            long orderId = rs.getLong("order_id");
+            boolean linked = !rs.wasNull();
+            String inn = rs.getString("counteragent_inn");
+            BigDecimal amount = rs.getBigDecimal("amount");
+
+            OrderRollup order = linked
+                    ? byId.get(orderId)
+                    : nearest(byNumber.get(numberKey(rs.getString("order_number"), inn)), issueDate);
+            if (order == null) {
+                issues.add(new Issue(UNMATCHED, linked ? orderId : null, null, rs.getString("order_number"),
+                        invoiceId, invoiceNumber, inn, null, amount));
+                return;
+            }
+            if (++order.invoiceCount > 1) {
+                issues.add(order.issue(DUPLICATE, invoiceId, invoiceNumber, inn, amount));
+            }
+            if (issueDate.isAfter(order.deliveryDate)) {
+                issues.add(order.issue(LATE, invoiceId, invoiceNumber, inn, amount));
+            }
+            if (amount != null && amount.compareTo(order.amount) != 0) {
+                issues.add(order.issue(AMOUNT_MISMATCH, invoiceId, invoiceNumber, inn, amount));
+            }
+            if (inn != null && order.counteragentInn != null && !inn.equals(order.counteragentInn)) {
+                issues.add(order.issue(INN_MISMATCH, invoiceId, invoiceNumber, inn, amount));
+            }
+        }, from, to, from, to);
+
+        for (OrderRollup order : byId.values()) {
+            if (order.invoiceCount == 0) {
+                issues.add(order.issue(MISSING, null, null, order.counteragentInn, null));
+            }
+        }
+
+        long id = save(from, to, byId.size(), invoices[0], issues);
+        log.info("Сверка счетов за {} - {}: заказов {}, счетов {}, расхождений {} за {} мс", from, to,
+                byId.size(), invoices[0], issues.size(), (System.nanoTime() - started) / 1_000_000);
+        return new InvoiceReconciliation(id, from, to, byId.size(), invoices[0], issues);
+    }
+
+    /**
+     * Сохранённая сверка с расхождениями
+     */
+    @Transactional(readOnly = true)
+    public Optional<InvoiceReconciliation> find(long id) {
+        return jdbcTemplate.query(RECONCILIATION, (rs, rowNum) -> new InvoiceReconciliation(
+                        rs.getLong("id"),
+                        rs.getObject("period_from", LocalDate.class),
+                        rs.getObject("period_to", LocalDate.class),
+                        rs.getInt("orders"),
+                        rs.getInt("invoices"),
+                        jdbcTemplate.query(ISSUES, (irs, n) -> new Issue(
+                                irs.getString("issue"),
+                                nullableLong(irs, "order_id"),
+                                irs.getObject("order_delivery_date", LocalDate.class),
+                                irs.getString("order_number"),
+                                nullableLong(irs, "invoice_id"),
+                                irs.getString("invoice_number"),
+                                irs.getString("counteragent_inn"),
+                                irs.getBigDecimal("order_amount"),
+                                irs.getBigDecimal("invoice_amount")), id)), id)
+                .stream().findFirst();
+    }
+
+    private long save(LocalDate from, LocalDate to, int orders, int invoices, List<Issue> issues) {
+        jdbcTemplate.update("DELETE FROM invoice_reconciliations WHERE period_from = ? AND period_to = ?", from, to);
+        Long id = jdbcTemplate.queryForObject(INSERT_RECONCILIATION, Long.class, from, to, orders, invoices,
+                issues.size());
+        int size = issues.size();
+        String[] types = new String[size];
+        Long[] orderIds = new Long[size];
+        String[] deliveryDates = new String[size];
+        String[] orderNumbers = new String[size];
+        Long[] invoiceIds = new Long[size];
+        String[] invoiceNumbers = new String[size];
+        String[] inns = new String[size];
+        String[] orderAmounts = new String[size];
+        String[] invoiceAmounts = new String[size];
+        for (int i = 0; i < size; i++) {
+            Issue issue = issues.get(i);
+            types[i] = issue.issue();
+            orderIds[i] = issue.orderId();
+            deliveryDates[i] = issue.orderDeliveryDate() != null ? issue.orderDeliveryDate().toString() : null;
+            orderNumbers[i] = issue.orderNumber();
+            invoiceIds[i] = issue.invoiceId();
+            invoiceNumbers[i] = issue.invoiceNumber();
+            inns[i] = issue.counteragentInn();
+            orderAmounts[i] = issue.orderAmount() != null ? issue.orderAmount().toPlainString() : null;
+            invoiceAmounts[i] = issue.invoiceAmount() != null ? issue.invoiceAmount().toPlainString() : null;
+        }
+        jdbcTemplate.update(INSERT_ISSUES, id, types, orderIds, deliveryDates, orderNumbers, invoiceIds,
+                invoiceNumbers, inns, orderAmounts, invoiceAmounts);
+        return id;
+    }
+
+    /**
+     * Заказ с тем же номером и ИНН, ближайший по дате доставки к дате счета; номера заказов повторяются,
+     * поэтому заказ без счета предпочтительнее уже выставленного
+     */
+    private static OrderRollup nearest(List<OrderRollup> candidates, LocalDate issueDate) {
+        if (candidates == null) {
+            return null;
+        }
+        OrderRollup nearest = null;
+        long best = Long.MAX_VALUE;
+        for (OrderRollup candidate : candidates) {
+            long distance = Math.abs(candidate.deliveryDate.toEpochDay() - issueDate.toEpochDay());
+            if (candidate.invoiceCount > 0) {
+                distance += Integer.MAX_VALUE;
+            }
+            if (distance < best) {
+                nearest = candidate;
+                best = distance;
+            }
+        }
+        return nearest;
+    }
+
+    private static Long nullableLong(ResultSet rs, String column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static String numberKey(String number, String inn) {
+        return number + '|' + inn;
+    }
+
+    private void stream(String sql, RowCallbackHandler handler, Object... args) {
+        PreparedStatementCreator creator = con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < args.length; i++) {
+                ps.setObject(i + 1, args[i]);
+            }
+            return ps;
+        };
+        jdbcTemplate.query(creator, handler);
+    }
+
+    /**
+     * Заказ периода с суммой позиций и числом найденных к нему счетов
+     */
+    private static final class OrderRollup {
+
+        private final long id;
+        private final LocalDate deliveryDate;
+        private final String number;
+        private final String counteragentInn;
+        private final BigDecimal amount;
+        private int invoiceCount;
+
+        private OrderRollup(long id, LocalDate deliveryDate, String number, String counteragentInn, BigDecimal amount) {
+            this.id = id;
+            this.deliveryDate = deliveryDate;
+            this.number = number;
+            this.counteragentInn = counteragentInn;
+            this.amount = amount;
+        }
+
+        private Issue issue(String type, Long invoiceId, String invoiceNumber, String inn, BigDecimal invoiceAmount) {
+            return new Issue(type, id, deliveryDate, number, invoiceId, invoiceNumber, inn, amount, invoiceAmount);
+        }
+    }
+}
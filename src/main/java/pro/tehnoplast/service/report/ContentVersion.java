@@ -0,0 +1,24 @@
+package pro.tehnoplast.service.report;
+
+/**
+ * Версия содержимого ответа для условных GET-запросов (ETag / Last-Modified).
+ * Считается по updated_at строк без чтения самих данных.
+ *
+ * @param tag          значение ETag без кавычек
+ * @param lastModified наибольший updated_at, мс от эпохи
+ */
+public record ContentVersion(String tag, long lastModified) {
+
+    /**
+     * Версия набора строк: количество строк, сумма их updated_at в микросекундах и наибольший updated_at.
+     * Сумма меняется при изменении любой строки, даже если наибольшее значение осталось прежним
+     * (транзакция с более ранним NOW() зафиксирована позже), количество - при удалении.
+     */
+    public static ContentVersion of(long rows, long updatedAtSum, long lastModified) {
+        return new ContentVersion(rows + "-" + Long.toHexString(updatedAtSum), lastModified);
+    }
+
+    public String etag() {
+        return "\"" + tag + "\"";
+    }
+}
@@ -0,0 +1,35 @@
+package pro.tehnoplast.service.report;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Карточка заказа: шапка, счёт и позиции
+ */
+public record OrderDetail(long id,
+                          String number,
+                          LocalDate orderDate,
+                          LocalDate deliveryDate,
+                          String counteragentInn,
+                          String counteragentName,
+                          String warehouseGln,
+                          String warehouseAddress,
+                          int palletCount,
+                          String invoiceNumber,
+                          LocalDate invoiceDate,
+                          List<Item> items) {
+
+    /**
+     * Позиция заказа
+     */
+    public record Item(long id,
+                       long productId,
+                       String productName,
+                       String productSku,
+                       String productBarcode,
+                       int quantity,
+                       BigDecimal unitPrice,
+                       BigDecimal totalPrice) {
+    }
+}
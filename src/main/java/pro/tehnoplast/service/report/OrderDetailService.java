@@ -0,0 +1,179 @@
+package pro.tehnoplast.service.report;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import pro.tehnoplast.service.archive.ArchivedOrder;
+import pro.tehnoplast.service.archive.OrderArchive;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Чтение карточки заказа и поиск заказов (пул чтения). Заказы, перенесённые в файловый архив,
+ * находятся и читаются так же, как заказы в БД.
+ */
+@Service
+@Transactional(readOnly = true)
+public class OrderDetailService {
+
+    /**
+     * Версия карточки по updated_at заказа, его позиций и счёта; позиции читаются по индексу order_id
+     */
+    private static final String VERSION = """
+            SELECT 1 + COUNT(oi.id) + COUNT(DISTINCT inv.id)                          AS rows,
+                   (EXTRACT(EPOCH FROM o.updated_at) * 1000000)::bigint
+                       + COALESCE(SUM((EXTRACT(EPOCH FROM oi.updated_at) * 1000000)::bigint), 0)
+                       + COALESCE(MAX((EXTRACT(EPOCH FROM inv.updated_at) * 1000000)::bigint), 0) AS updated_sum,
+                   GREATEST(o.updated_at, MAX(oi.updated_at), MAX(inv.updated_at))    AS last_modified
+            FROM orders o
+                     LEFT JOIN order_items oi
+                               ON oi.order_id = o.id AND oi.delivery_date = o.delivery_date AND oi.is_deleted = false
+                     LEFT JOIN invoices inv
+                               ON inv.order_id = o.id AND inv.order_delivery_date = o.delivery_date AND inv.is_deleted = false
+            WHERE o.id = ?
+              AND o.is_deleted = false
+            GROUP BY o.id, o.updated_at
+            """;
+
+    private static final String HEADER = """
+            SELECT o.id, o.number, o.order_date, o.delivery_date, o.counteragent_inn, c.name AS counteragent_name,
+                   o.warehouse_gln, w.address AS warehouse_address, o.pallet_count,
+                   inv.number AS invoice_number, inv.issue_date AS invoice_date
+            FROM orders o
+                     LEFT JOIN counteragents c ON c.inn = o.counteragent_inn
+                     LEFT JOIN warehouses w ON w.gln = o.warehouse_gln
+                     LEFT JOIN invoices inv
+                               ON inv.order_id = o.id AND inv.order_delivery_date = o.delivery_date AND inv.is_deleted = false
+            WHERE o.id = ?
+              AND o.is_deleted = false
+            """;
+
+    private static final String ITEMS = """
+            SELECT oi.id, oi.product_id, p.name, p.internal_sku, p.internal_barcode,
+                   oi.quantity, oi.unit_price, oi.total_price
+            FROM order_items oi
+                     JOIN products p ON p.id = oi.product_id
+            WHERE oi.order_id = ?
+              AND oi.delivery_date = ?
+              AND oi.is_deleted = false
+            ORDER BY oi.id
+            """;
+
+    private static final String BY_NUMBER = """
+            SELECT id, number, order_date, delivery_date, counteragent_inn, warehouse_gln, pallet_count
+            FROM orders
+            WHERE number = ?
+              AND is_deleted = false
+            ORDER BY order_date, id
+            """;
+
+    private static final String BY_DELIVERY_DATE = """
+            SELECT id, number, order_date, delivery_date, counteragent_inn, warehouse_gln, pallet_count
+            FROM orders
+            WHERE delivery_date = ?
+              AND is_deleted = false
+            ORDER BY order_date, id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OrderArchive orderArchive;
+
+    public OrderDetailService(JdbcTemplate jdbcTemplate, OrderArchive orderArchive) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.orderArchive = orderArchive;
+    }
+
+    /**
+     * Версия карточки заказа; пусто - заказа нет ни в БД, ни в архиве
+     */
+    public Optional<ContentVersion> getVersion(long orderId) {
+        return jdbcTemplate.query(VERSION, (rs, rowNum) -> ContentVersion.of(
+                rs.getLong("rows"),
+                rs.getLong("updated_sum"),
+                rs.getTimestamp("last_modified").getTime()), orderId).stream().findFirst()
+                .or(() -> orderArchive.getVersion(orderId));
+    }
+
+    /**
+     * Заказы с номером, включая архивные
+     */
+    public List<OrderRef> findByNumber(String number) {
+        return merge(jdbcTemplate.query(BY_NUMBER, OrderDetailService::toRef, number),
+                orderArchive.findByNumber(number));
+    }
+
+    /**
+     * Заказы с датой доставки, включая архивные
+     */
+    public List<OrderRef> findByDeliveryDate(LocalDate deliveryDate) {
+        return merge(jdbcTemplate.query(BY_DELIVERY_DATE, OrderDetailService::toRef, deliveryDate),
+                orderArchive.findByDeliveryDate(deliveryDate));
+    }
+
+    /**
+     * Карточка заказа
+     */
+    public Optional<OrderDetail> getOrder(long orderId) {
+        Optional<OrderDetail> order = getLiveOrder(orderId);
+        return order.isPresent() ? order : orderArchive.find(orderId).map(ArchivedOrder::toDetail);
+    }
+
+    private Optional<OrderDetail> getLiveOrder(long orderId) {
+        return jdbcTemplate.query(HEADER, (rs, rowNum) -> {
+            Date deliveryDate = rs.getDate("delivery_date");
+            Date invoiceDate = rs.getDate("invoice_date");
+            List<OrderDetail.Item> items = jdbcTemplate.query(ITEMS, (it, n) -> new OrderDetail.Item(
+                    it.getLong("id"),
+                    it.getLong("product_id"),
+                    it.getString("name"),
+                    it.getString("internal_sku"),
+                    it.getString("internal_barcode"),
+                    it.getInt("quantity"),
+                    it.getBigDecimal("unit_price"),
+                    it.getBigDecimal("total_price")), orderId, deliveryDate);
+            return new OrderDetail(
+                    rs.getLong("id"),
+                    rs.getString("number"),
+                    rs.getDate("order_date").toLocalDate(),
+                    deliveryDate.toLocalDate(),
+                    rs.getString("counteragent_inn"),
+                    rs.getString("counteragent_name"),
+                    rs.getString("warehouse_gln"),
+                    rs.getString("warehouse_address"),
+                    rs.getInt("pallet_count"),
+                    rs.getString("invoice_number"),
+                    invoiceDate != null ? invoiceDate.toLocalDate() : null,
+                    items);
+        }, orderId).stream().findFirst();
+    }
+
+    private static OrderRef toRef(ResultSet rs, int rowNum) throws SQLException {
+        return new OrderRef(
+                rs.getLong("id"),
+                rs.getString("number"),
+                rs.getDate("order_date").toLocalDate(),
+                rs.getDate("delivery_date").toLocalDate(),
+                rs.getString("counteragent_inn"),
+                rs.getString("warehouse_gln"),
+                rs.getInt("pallet_count"),
+                false);
+    }
+
+    private static List<OrderRef> merge(List<OrderRef> live, List<OrderRef> archived) {
+        if (archived.isEmpty()) {
+            return live;
+        }
+        List<OrderRef> all = new ArrayList<>(live.size() + archived.size());
+        all.addAll(archived);
+        all.addAll(live);
+        all.sort(Comparator.comparing(OrderRef::orderDate).thenComparingLong(OrderRef::id));
+        return all;
+    }
+}
@@ -0,0 +1,18 @@
+package pro.tehnoplast.service.report;
+
+import java.time.LocalDate;
+
+/**
+ * Заказ в результатах поиска по номеру или дате; карточка - GET /api/orders/{id}
+ *
+ * @param archived заказ перенесён в файловый архив
+ */
+public record OrderRef(long id,
+                       String number,
+                       LocalDate orderDate,
+                       LocalDate deliveryDate,
+                       String counteragentInn,
+                       String warehouseGln,
+                       int palletCount,
+                       boolean archived) {
+}
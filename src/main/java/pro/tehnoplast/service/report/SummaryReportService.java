@@ -0,0 +1,121 @@
+package pro.tehnoplast.service.report;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import pro.tehnoplast.model.WarehouseDailySummary;
+import pro.tehnoplast.repository.WarehouseDailySummaryRepository;
+import pro.tehnoplast.service.outbox.DerivedDataChangedEvent.SummaryKey;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Чтение сводной таблицы по складам и датам (пул чтения)
+ */
+@Service
+@Transactional(readOnly = true)
+public class SummaryReportService {
+
+    /**
+     * Версия сводки за период; читается только индекс (delivery_date) INCLUDE (updated_at).
+     * Сумма отметок времени берётся по модулю bigint: на десятках тысяч строк она в bigint не помещается
+     */
+    private static final String VERSION = """
+            SELECT COUNT(*)                                                      AS rows,
+                   COALESCE(SUM((EXTRACT(EPOCH FROM updated_at) * 1000000)::bigint)
+                                % 9223372036854775807, 0)::bigint                AS updated_sum,
+                   MAX(updated_at)                                               AS last_modified
+            FROM warehouse_daily_summaries
+            WHERE delivery_date BETWEEN ? AND ?
+            """;
+
+    private static final String ROWS = """
+            SELECT warehouse_gln, delivery_date, orders_count, items_count, total_quantity, total_amount,
+                   pallet_count, updated_at
+            FROM warehouse_daily_summaries
+            WHERE delivery_date BETWEEN ? AND ?
+            ORDER BY delivery_date, warehouse_gln
+            """;
+
+    private final WarehouseDailySummaryRepository summaryRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final int fetchSize;
+
+    public SummaryReportService(WarehouseDailySummaryRepository summaryRepository, JdbcTemplate jdbcTemplate,
+                                @Value("${tehnoseti.summary.fetch-size:1000}") int fetchSize) {
+        this.summaryRepository = summaryRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Версия сводки за период доставки для условных запросов
+     */
+    public ContentVersion getVersion(LocalDate from, LocalDate to) {
+        return jdbcTemplate.queryForObject(VERSION, (rs, rowNum) -> {
+            Timestamp lastModified = rs.getTimestamp("last_modified");
+            return ContentVersion.of(rs.getLong("rows"), rs.getLong("updated_sum"),
+                    lastModified != null ? lastModified.getTime() : -1L);
+        }, from, to);
+    }
+
+    /**
+     * Сводка за период доставки
+     */
+    public List<WarehouseDailySummary> getSummaries(LocalDate from, LocalDate to) {
+        return summaryRepository.findByIdDeliveryDateBetweenOrderByIdDeliveryDateAscIdWarehouseGlnAsc(from, to);
+    }
+
+    /**
+     * Сводка за период доставки курсором, порциями по fetch-size: в памяти одна порция, а не вся таблица.
+     * Итератор действителен только внутри обработчика
+     */
+    public void streamSummaries(LocalDate from, LocalDate to, Consumer<Iterator<WarehouseDailySummary>> handler) {
+        PreparedStatementCreator creator = con -> {
+            PreparedStatement ps = con.prepareStatement(ROWS, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setObject(1, from);
+            ps.setObject(2, to);
+            return ps;
+        };
+        try (Stream<WarehouseDailySummary> rows = jdbcTemplate.queryForStream(creator, (rs, rowNum) -> toSummary(rs))) {
+            handler.accept(rows.iterator());
+        }
+    }
+
+    /**
+     * Строки сводки по набору ключей (для точечного обновления страницы)
+     */
+    public List<WarehouseDailySummary> getSummaries(Collection<SummaryKey> keys) {
+        List<WarehouseDailySummary.SummaryId> ids = new ArrayList<>(keys.size());
+        for (SummaryKey key : keys) {
+            ids.add(new WarehouseDailySummary.SummaryId(key.warehouseGln(), key.deliveryDate()));
+        }
+        return summaryRepository.findAllById(ids);
+    }
+
+    private static WarehouseDailySummary toSummary(ResultSet rs) throws SQLException {
+        WarehouseDailySummary summary = new WarehouseDailySummary();
+        summary.setId(new WarehouseDailySummary.SummaryId(rs.getString("warehouse_gln"),
+                rs.getObject("delivery_date", LocalDate.class)));
+        summary.setOrdersCount(rs.getInt("orders_count"));
+        summary.setItemsCount(rs.getInt("items_count"));
+        summary.setTotalQuantity(rs.getLong("total_quantity"));
+        summary.setTotalAmount(rs.getBigDecimal("total_amount"));
+        summary.setPalletCount(rs.getInt("pallet_count"));
+        summary.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
+        return summary;
+    }
+}
@@ -0,0 +1,19 @@
+package pro.tehnoplast.service.scan;
+
+/**
+ * Ответ на сканирование штрихкода: позиция текущего заказа и её остаток
+ *
+ * @param placed    количество уже на паллетах
+ * @param remaining остаток, не размещенный на паллетах (как OrderItem.getRemainingQuantity)
+ */
+public record ScanResult(long orderId,
+                         String orderNumber,
+                         String barcode,
+                         long orderItemId,
+                         long productId,
+                         String productName,
+                         String productSku,
+                         int quantity,
+                         int placed,
+                         int remaining) {
+}
@@ -0,0 +1,73 @@
+package pro.tehnoplast.service.scan;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Неизменяемый снимок заказа для сканирования: позиции с остатками и индекс по штрихкодам
+ * (внутренний и внешний штрихкод товара). После изменения заказа снимок не правится, а заменяется.
+ *
+ * @param generation поколение набора, для которого снимок прочитан из БД
+ * @param loadedAt   момент чтения (мс от эпохи)
+ */
+record ScanWorkingSet(long orderId,
+                      String number,
+                      LocalDate deliveryDate,
+                      long generation,
+                      long loadedAt,
+                      Map<String, List<Line>> byBarcode) {
+
+    /**
+     * Позиция заказа
+     */
+    record Line(long orderItemId,
+                long productId,
+                String productName,
+                String productSku,
+                String internalBarcode,
+                String externalBarcode,
+                int quantity,
+                int placed) {
+
+        int remaining() {
+            return quantity - placed;
+        }
+    }
+
+    static ScanWorkingSet of(long orderId, String number, LocalDate deliveryDate, long generation, List<Line> lines) {
+        Map<String, List<Line>> byBarcode = new HashMap<>(lines.size() * 3);
+        for (Line line : lines) {
+            byBarcode.computeIfAbsent(line.internalBarcode(), k -> new ArrayList<>(1)).add(line);
+            if (line.externalBarcode() != null && !line.externalBarcode().equals(line.internalBarcode())) {
+                byBarcode.computeIfAbsent(line.externalBarcode(), k -> new ArrayList<>(1)).add(line);
+            }
+        }
+        byBarcode.replaceAll((barcode, matched) -> List.copyOf(matched));
+        return new ScanWorkingSet(orderId, number, deliveryDate, generation, System.currentTimeMillis(),
+                Map.copyOf(byBarcode));
+    }
+
+    /**
+     * Позиция по штрихкоду; если товар в заказе несколькими строками - первая с ненулевым остатком
+     */
+    Line resolve(String barcode) {
+        List<Line> lines = byBarcode.get(barcode);
+        if (lines == null) {
+            return null;
+        }
+        for (Line line : lines) {
+            if (line.remaining() > 0) {
+                return line;
+            }
+        }
+        return lines.get(0);
+    }
+
+    ScanResult toResult(String barcode, Line line) {
+        return new ScanResult(orderId, number, barcode, line.orderItemId(), line.productId(), line.productName(),
+                line.productSku(), line.quantity(), line.placed(), line.remaining());
+    }
+}
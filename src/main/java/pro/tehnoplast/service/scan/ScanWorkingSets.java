@@ -0,0 +1,259 @@
+package pro.tehnoplast.service.scan;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Рабочие наборы заказов для сканирования штрихкодов упаковщиками. Набор заказа читается из БД
+ * одним запросом (позиции, товары, количество на неудалённых паллетах), дальше сканирование отвечает из памяти.
+ * <p>
+ * Согласованность с записью в pallet_items, pallets, order_items и orders держится через NOTIFY: триггеры
+ * шлют id заказа в канал {@link #CHANNEL}, слушатель каждого экземпляра вызывает {@link #invalidate(long)}.
+ * Инвалидация увеличивает поколение набора, поэтому снимок, прочитанный до изменения, не будет выдан
+ * даже если его загрузка завершилась позже уведомления. Наборы, по которым недавно сканировали,
+ * перечитываются сразу в фоне, чтобы следующее сканирование не ждало БД.
+ */
+@Slf4j
+@Service
+public class ScanWorkingSets implements DisposableBean {
+
+    public static final String CHANNEL = "scan_working_set_changed";
+
+    private static final String LOAD = """
+            SELECT o.number,
+                   o.delivery_date,
+                   oi.id AS order_item_id,
+                   oi.product_id,
+                   p.name AS product_name,
+                   p.internal_sku,
+                   p.internal_barcode,
+                   p.external_barcode,
+                   oi.quantity,
+                   COALESCE(placed.quantity, 0) AS placed
+            FROM orders o
+                     LEFT JOIN order_items oi
+                               ON oi.order_id = o.id AND oi.delivery_date = o.delivery_date AND oi.is_deleted = false
+                     LEFT JOIN products p ON p.id = oi.product_id
+                     LEFT JOIN LATERAL (SELECT SUM(pi.quantity) AS quantity
+                                        FROM pallet_items pi
+                                                 JOIN pallets pl
+                                                      ON pl.id = pi.pallet_id AND pl.delivery_date = pi.delivery_date
+                                        WHERE pi.order_item_id = oi.id
+                                          AND pi.delivery_date = oi.delivery_date
+                                          AND pl.is_deleted = false) placed ON true
+            WHERE o.id = ?
+              AND o.is_deleted = false
+            ORDER BY oi.id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxOrders;
+    private final long idleMillis;
+    private final long maxAgeMillis;
+    private final long refreshWindowMillis;
+
+    private final ConcurrentHashMap<Long, Slot> slots = new ConcurrentHashMap<>();
+    private final ExecutorService refresher;
+    private final Counter loads;
+    private final Counter invalidations;
+
+    public ScanWorkingSets(JdbcTemplate jdbcTemplate,
+                           MeterRegistry registry,
+                           @Value("${tehnoseti.scan.max-orders:5000}") int maxOrders,
+                           @Value("${tehnoseti.scan.idle-minutes:30}") long idleMinutes,
+                           @Value("${tehnoseti.scan.max-age-minutes:10}") long maxAgeMinutes,
+                           @Value("${tehnoseti.scan.refresh-window-minutes:5}") long refreshWindowMinutes,
+                           @Value("${tehnoseti.scan.refresh-threads:2}") int refreshThreads) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxOrders = maxOrders;
+        this.idleMillis = idleMinutes * 60_000;
+        this.maxAgeMillis = maxAgeMinutes * 60_000;
+        this.refreshWindowMillis = refreshWindowMinutes * 60_000;
+        AtomicInteger counter = new AtomicInteger();
+        this.refresher = Executors.newFixedThreadPool(Math.max(1, refreshThreads), r -> {
+            Thread thread = new Thread(r, "scan-refresh-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.loads = Counter.builder("tehnoseti.scan.loads").register(registry);
+        this.invalidations = Counter.builder("tehnoseti.scan.invalidations").register(registry);
+        Gauge.builder("tehnoseti.scan.orders", slots, Map::size).register(registry);
+    }
+
+    /**
+     * Ячейка заказа: текущий снимок и поколение. Снимок действителен, пока его поколение совпадает
+     * с поколением ячейки.
+     */
+    private static final class Slot {
+        final AtomicLong generation = new AtomicLong();
+        final AtomicBoolean refreshQueued = new AtomicBoolean();
+        final ReentrantLock loading = new ReentrantLock();
+        volatile ScanWorkingSet workingSet;
+        volatile long touchedAt;
+    }
+
+    /**
+     * Позиция заказа по отсканированному штрихкоду; пусто - заказа нет или товара с таким штрихкодом нет в заказе
+     */
+    public Optional<ScanResult> scan(long orderId, String barcode) {
+        ScanWorkingSet workingSet = get(orderId);
+        if (workingSet == null) {
+            return Optional.empty();
+        }
+        ScanWorkingSet.Line line = workingSet.resolve(barcode);
+        return line != null ? Optional.of(workingSet.toResult(barcode, line)) : Optional.empty();
+    }
+
+    /**
+     * Есть ли заказ (не удалённый) в БД
+     */
+    public boolean hasOrder(long orderId) {
+        return get(orderId) != null;
+    }
+
+    /**
+     * Заказ изменился: текущий снимок больше не выдаётся, активный набор перечитывается в фоне
+     */
+    public void invalidate(long orderId) {
+        Slot slot = slots.get(orderId);
+        if (slot == null) {
+            return;
+        }
+        slot.generation.incrementAndGet();
+        invalidations.increment();
+        if (System.currentTimeMillis() - slot.touchedAt < refreshWindowMillis
+                && slot.refreshQueued.compareAndSet(false, true)) {
+            refresher.execute(() -> {
+                slot.refreshQueued.set(false);
+                try {
+                    load(orderId, slot);
+                } catch (RuntimeException e) {
+                    log.warn("Не удалось перечитать рабочий набор заказа {}: {}", orderId, e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Уведомления могли быть пропущены (переподключение LISTEN): все снимки перечитываются при следующем сканировании
+     */
+    public void invalidateAll() {
+        slots.values().forEach(slot -> slot.generation.incrementAndGet());
+        log.info("Рабочие наборы сканирования сброшены: {}", slots.size());
+    }
+
+    /**
+     * Вытеснить наборы, по которым давно не сканировали, и лишние сверх лимита
+     */
+    @Scheduled(fixedDelayString = "${tehnoseti.scan.evict-millis:60000}")
+    public void evict() {
+        long idleBefore = System.currentTimeMillis() - idleMillis;
+        slots.entrySet().removeIf(entry -> entry.getValue().touchedAt < idleBefore);
+        int excess = slots.size() - maxOrders;
+        if (excess > 0) {
+            slots.entrySet().stream()
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().touchedAt))
+                    .limit(excess)
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(slots::remove);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        refresher.shutdownNow();
+    }
+
+    private ScanWorkingSet get(long orderId) {
+        Slot slot = slots.computeIfAbsent(orderId, id -> new Slot());
+        long now = System.currentTimeMillis();
+        slot.touchedAt = now;
+        ScanWorkingSet workingSet = slot.workingSet;
+        if (isCurrent(slot, workingSet, now)) {
+            return workingSet;
+        }
+        workingSet = load(orderId, slot);
+        if (workingSet == null) {
+            slots.remove(orderId, slot);
+        }
+        return workingSet;
+    }
+
+    private boolean isCurrent(Slot slot, ScanWorkingSet workingSet, long now) {
+        return workingSet != null
+                && workingSet.generation() == slot.generation.get()
+                && now - workingSet.loadedAt() < maxAgeMillis;
+    }
+
+    /**
+     * Прочитать набор из БД; одновременные сканирования одного заказа ждут одно чтение
+     */
+    private ScanWorkingSet load(long orderId, Slot slot) {
+        slot.loading.lock();
+        try {
+            ScanWorkingSet current = slot.workingSet;
+            if (isCurrent(slot, current, System.currentTimeMillis())) {
+                return current;
+            }
+            // Поколение берётся до чтения: уведомление, пришедшее во время чтения, сделает снимок устаревшим
+            long generation = slot.generation.get();
+            ScanWorkingSet loaded = read(orderId, generation);
+            slot.workingSet = loaded;
+            loads.increment();
+            return loaded;
+        } finally {
+            slot.loading.unlock();
+        }
+    }
+
+    private ScanWorkingSet read(long orderId, long generation) {
+        List<ScanWorkingSet.Line> lines = new ArrayList<>();
+        String[] number = new String[1];
+        LocalDate[] deliveryDate = new LocalDate[1];
+        jdbcTemplate.query(LOAD, rs -> {
+            number[0] = rs.getString("number");
+            Date date = rs.getDate("delivery_date");
+            deliveryDate[0] = date.toLocalDate();
+            long orderItemId = rs.getLong("order_item_id");
+            if (rs.wasNull()) {
+                return;
+            }
+            lines.add(new ScanWorkingSet.Line(
+                    orderItemId,
+                    rs.getLong("product_id"),
+                    rs.getString("product_name"),
+                    rs.getString("internal_sku"),
+                    rs.getString("internal_barcode"),
+                    rs.getString("external_barcode"),
+                    rs.getInt("quantity"),
+                    rs.getInt("placed")));
+        }, orderId);
+        if (number[0] == null) {
+            return null;
+        }
+        return ScanWorkingSet.of(orderId, number[0], deliveryDate[0], generation, lines);
+    }
+}
@@ -0,0 +1,26 @@
+package pro.tehnoplast.service.shipments;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Рейс: машина дня доставки в регион складов
+ *
+ * @param vehicleNumber номер машины в регионе на дату
+ * @param totalWeight   расчётный вес паллет (как {@code Pallet.getTotalWeight})
+ * @param pallets       паллеты в порядке погрузки
+ */
+public record Shipment(long id,
+                       LocalDate deliveryDate,
+                       String region,
+                       int vehicleNumber,
+                       int palletCount,
+                       double totalWeight,
+                       List<ShipmentPallet> pallets) {
+
+    /**
+     * Паллета в машине
+     */
+    public record ShipmentPallet(long palletId, long orderId, String warehouseGln, double weight) {
+    }
+}
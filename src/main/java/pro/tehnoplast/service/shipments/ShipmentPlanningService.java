@@ -0,0 +1,187 @@
+package pro.tehnoplast.service.shipments;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import pro.tehnoplast.service.shipments.Shipment.ShipmentPallet;
+import pro.tehnoplast.service.shipments.TruckLoader.Load;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Планирование рейсов: паллеты дня доставки распределяются по машинам в пределах региона складов
+ * с ограничением числа паллет и расчётного веса машины. План дня хранится в shipments / shipment_pallets
+ * и при повторном планировании заменяется целиком.
+ */
+@Slf4j
+@Service
+public class ShipmentPlanningService {
+
+    /**
+     * Паллеты дня с регионом склада и расчётным весом (количество × упаковочный коэффициент, как Pallet.getTotalWeight)
+     */
+    private static final String PALLETS = """
+            SELECT p.id,
+                   p.order_id,
+                   o.warehouse_gln,
+                   w.region,
+                   COALESCE(SUM(pi.quantity * pr.packing_coefficient), 0) AS weight
+            FROM pallets p
+                     JOIN orders o ON o.id = p.order_id AND o.delivery_date = p.delivery_date
+                     JOIN warehouses w ON w.gln = o.warehouse_gln
+                     LEFT JOIN pallet_items pi ON pi.pallet_id = p.id AND pi.delivery_date = p.delivery_date
+                     LEFT JOIN order_items oi ON oi.id = pi.order_item_id AND oi.delivery_date = pi.delivery_date
+                     LEFT JOIN products pr ON pr.id = oi.product_id
+            WHERE p.delivery_date = ?
+              AND p.is_deleted = false
+              AND o.is_deleted = false
+            GROUP BY p.id, p.order_id, o.warehouse_gln, w.region
+            """;
+
+    private static final String INSERT_SHIPMENTS = """
+            INSERT INTO shipments (id, delivery_date, region, vehicle_number, pallet_count, total_weight)
+            SELECT k.id, ?, k.region, k.vehicle_number, k.pallet_count, k.total_weight
+            FROM unnest(?::integer[], ?::varchar[], ?::integer[], ?::integer[], ?::double precision[])
+                     AS k(id, region, vehicle_number, pallet_count, total_weight)
+            """;
+
+    private static final String INSERT_SHIPMENT_PALLETS = """
+            INSERT INTO shipment_pallets (shipment_id, pallet_id, delivery_date, load_order, weight)
+            SELECT k.shipment_id, k.pallet_id, ?, k.load_order, k.weight
+            FROM unnest(?::integer[], ?::integer[], ?::integer[], ?::double precision[])
+                     AS k(shipment_id, pallet_id, load_order, weight)
+            """;
+
+    /**
+     * План дня; паллеты, удалённые после планирования, не показываются
+     */
+    private static final String SHIPMENTS = """
+            SELECT s.id,
+                   s.region,
+                   s.vehicle_number,
+                   s.pallet_count,
+                   s.total_weight,
+                   sp.pallet_id,
+                   sp.weight,
+                   p.order_id,
+                   o.warehouse_gln
+            FROM shipments s
+                     JOIN shipment_pallets sp ON sp.shipment_id = s.id
+                     JOIN pallets p ON p.id = sp.pallet_id AND p.delivery_date = sp.delivery_date AND p.is_deleted = false
+                     JOIN orders o ON o.id = p.order_id AND o.delivery_date = p.delivery_date
+            WHERE s.delivery_date = ?
+            ORDER BY s.region, s.vehicle_number, sp.load_order
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TruckLoader truckLoader;
+
+    public ShipmentPlanningService(JdbcTemplate jdbcTemplate,
+                                   @Value("${tehnoseti.shipments.max-pallets:33}") int maxPallets,
+                                   @Value("${tehnoseti.shipments.max-weight:2000}") double maxWeight) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.truckLoader = new TruckLoader(maxPallets, maxWeight);
+    }
+
+    /**
+     * Распределить паллеты дня по машинам и сохранить план вместо прежнего
+     */
+    @Transactional
+    public List<Shipment> plan(LocalDate deliveryDate) {
+        long started = System.nanoTime();
+        jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(hashtext('shipments:' || ?))", Object.class,
+                deliveryDate.toString());
+        Map<String, List<Load>> byRegion = new TreeMap<>();
+        jdbcTemplate.query(PALLETS, rs -> {
+            byRegion.computeIfAbsent(rs.getString("region"), region -> new ArrayList<>())
+                    .add(new Load(rs.getLong("id"), rs.getLong("order_id"), rs.getString("warehouse_gln"),
+                            rs.getDouble("weight")));
+        }, deliveryDate);
+
+        Map<String, List<List<Load>>> trucksByRegion = new LinkedHashMap<>();
+        int total = 0;
+        for (Map.Entry<String, List<Load>> region : byRegion.entrySet()) {
+            List<List<Load>> trucks = truckLoader.load(region.getValue());
+            trucksByRegion.put(region.getKey(), trucks);
+            total += trucks.size();
+        }
+        List<Shipment> shipments = save(deliveryDate, trucksByRegion, total);
+        log.info("Рейсы на {}: паллет {}, машин {} за {} мс", deliveryDate,
+                byRegion.values().stream().mapToInt(List::size).sum(), total,
+                (System.nanoTime() - started) / 1_000_000);
+        return shipments;
+    }
+
+    /**
+     * Сохранённый план рейсов на дату
+     */
+    @Transactional(readOnly = true)
+    public List<Shipment> findByDate(LocalDate deliveryDate) {
+        List<Shipment> shipments = new ArrayList<>();
+        jdbcTemplate.query(SHIPMENTS, rs -> {
+            long id = rs.getLong("id");
+            Shipment last = shipments.isEmpty() ? null : shipments.get(shipments.size() - 1);
+            if (last == null || last.id() != id) {
+                last = new Shipment(id, deliveryDate, rs.getString("region"), rs.getInt("vehicle_number"),
+                        rs.getInt("pallet_count"), rs.getDouble("total_weight"), new ArrayList<>());
+                shipments.add(last);
+            }
+            last.pallets().add(new ShipmentPallet(rs.getLong("pallet_id"), rs.getLong("order_id"),
+                    rs.getString("warehouse_gln"), rs.getDouble("weight")));
+        }, deliveryDate);
+        return shipments;
+    }
+
+    private List<Shipment> save(LocalDate deliveryDate, Map<String, List<List<Load>>> trucksByRegion, int total) {
+        jdbcTemplate.update("DELETE FROM shipments WHERE delivery_date = ?", deliveryDate);
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT nextval(pg_get_serial_sequence('shipments', 'id')) FROM generate_series(1, ?)", Long.class, total);
+
+        Long[] shipmentIds = new Long[total];
+        String[] regions = new String[total];
+        Integer[] vehicleNumbers = new Integer[total];
+        Integer[] palletCounts = new Integer[total];
+        Double[] weights = new Double[total];
+        List<Long> palletShipments = new ArrayList<>();
+        List<Long> palletIds = new ArrayList<>();
+        List<Integer> loadOrders = new ArrayList<>();
+        List<Double> palletWeights = new ArrayList<>();
+        List<Shipment> shipments = new ArrayList<>(total);
+        int i = 0;
+        for (Map.Entry<String, List<List<Load>>> region : trucksByRegion.entrySet()) {
+            int vehicle = 0;
+            for (List<Load> truck : region.getValue()) {
+                long id = ids.get(i);
+                List<ShipmentPallet> pallets = new ArrayList<>(truck.size());
+                double weight = 0;
+                for (int order = 0; order < truck.size(); order++) {
+                    Load load = truck.get(order);
+                    palletShipments.add(id);
+                    palletIds.add(load.palletId());
+                    loadOrders.add(order + 1);
+                    palletWeights.add(load.weight());
+                    pallets.add(new ShipmentPallet(load.palletId(), load.orderId(), load.warehouseGln(), load.weight()));
+                    weight += load.weight();
+                }
+                shipmentIds[i] = id;
+                regions[i] = region.getKey();
+                vehicleNumbers[i] = ++vehicle;
+                palletCounts[i] = truck.size();
+                weights[i] = weight;
+                shipments.add(new Shipment(id, deliveryDate, region.getKey(), vehicle, truck.size(), weight, pallets));
+                i++;
+            }
+        }
+        jdbcTemplate.update(INSERT_SHIPMENTS, deliveryDate, shipmentIds, regions, vehicleNumbers, palletCounts, weights);
+        jdbcTemplate.update(INSERT_SHIPMENT_PALLETS, deliveryDate, palletShipments.toArray(Long[]::new),
+                palletIds.toArray(Long[]::new), loadOrders.toArray(Integer[]::new), palletWeights.toArray(Double[]::new));
+        return shipments;
+    }
+}
@@ -0,0 +1,168 @@
+package pro.tehnoplast.service.shipments;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Раскладка паллет одного региона по машинам с ограничением числа паллет и веса.
+ * Паллеты склада по возможности едут одной машиной: сначала крупные склады заполняют машины целиком,
+ * затем остатки складов раскладываются целыми группами "первый подходящий по убыванию".
+ * Если раскладка по отдельным паллетам даёт меньше машин, берётся она.
+ */
+final class TruckLoader {
+
+    /**
+     * Паллета к погрузке
+     */
+    record Load(long palletId, long orderId, String warehouseGln, double weight) {
+    }
+
+    private static final Comparator<Load> HEAVIEST_FIRST = Comparator.comparingDouble(Load::weight).reversed()
+            .thenComparingLong(Load::palletId);
+
+    private final int maxPallets;
+    private final double maxWeight;
+
+    TruckLoader(int maxPallets, double maxWeight) {
+        this.maxPallets = maxPallets;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Машины региона; паллеты в машине упорядочены по складам (остановкам) и весу
+     */
+    List<List<Load>> load(List<Load> pallets) {
+        List<Truck> grouped = byWarehouse(pallets);
+        if (grouped.size() > lowerBound(pallets)) {
+            List<Truck> single = firstFitDecreasing(pallets);
+            if (single.size() < grouped.size()) {
+                grouped = single;
+            }
+        }
+        List<List<Load>> trucks = new ArrayList<>(grouped.size());
+        for (Truck truck : grouped) {
+            truck.pallets.sort(Comparator.comparing(Load::warehouseGln).thenComparing(HEAVIEST_FIRST));
+            trucks.add(truck.pallets);
+        }
+        return trucks;
+    }
+
+    private List<Truck> byWarehouse(List<Load> pallets) {
+        Map<String, List<Load>> warehouses = new LinkedHashMap<>();
+        for (Load pallet : pallets) {
+            warehouses.computeIfAbsent(pallet.warehouseGln(), gln -> new ArrayList<>()).add(pallet);
+        }
+        List<Truck> trucks = new ArrayList<>();
+        List<List<Load>> remainders = new ArrayList<>();
+        for (List<Load> warehouse : warehouses.values()) {
+            warehouse.sort(HEAVIEST_FIRST);
+            // Полные машины на один склад, пока остаток не поместится в одну машину
+            while (!fits(warehouse)) {
+                Truck truck = new Truck();
+                List<Load> rest = new ArrayList<>();
+                for (Load pallet : warehouse) {
+                    if (truck.isEmpty() || truck.fits(pallet)) {
+                        truck.add(pallet);
+                    } else {
+                        rest.add(pallet);
+                    }
+                }
+                trucks.add(truck);
+                warehouse = rest;
+            }
+            if (!warehouse.isEmpty()) {
+                remainders.add(warehouse);
+            }
+        }
+        remainders.sort(Comparator.<List<Load>>comparingInt(List::size).reversed()
+                .thenComparing(TruckLoader::weight, Comparator.reverseOrder()));
+        List<Truck> open = new ArrayList<>();
+        for (List<Load> remainder : remainders) {
+            Truck target = null;
+            for (Truck truck : open) {
+                if (truck.fits(remainder)) {
+                    target = truck;
+                    break;
+                }
+            }
+            if (target == null) {
+                target = new Truck();
+                open.add(target);
+            }
+            for (Load pallet : remainder) {
+                target.add(pallet);
+            }
+        }
+        trucks.addAll(open);
+        return trucks;
+    }
+
+    private List<Truck> firstFitDecreasing(List<Load> pallets) {
+        List<Load> sorted = new ArrayList<>(pallets);
+        sorted.sort(HEAVIEST_FIRST);
+        List<Truck> trucks = new ArrayList<>();
+        for (Load pallet : sorted) {
+            Truck target = null;
+            for (Truck truck : trucks) {
+                if (truck.fits(pallet)) {
+                    target = truck;
+                    break;
+                }
+            }
+            if (target == null) {
+                target = new Truck();
+                trucks.add(target);
+            }
+            target.add(pallet);
+        }
+        return trucks;
+    }
+
+    /**
+     * Меньше машин не бывает: по числу паллет и по весу
+     */
+    private int lowerBound(List<Load> pallets) {
+        return (int) Math.max(Math.ceil(pallets.size() / (double) maxPallets), Math.ceil(weight(pallets) / maxWeight));
+    }
+
+    private boolean fits(List<Load> pallets) {
+        return pallets.size() <= maxPallets && weight(pallets) <= maxWeight;
+    }
+
+    private static double weight(List<Load> pallets) {
+        double weight = 0;
+        for (Load pallet : pallets) {
+            weight += pallet.weight();
+        }
+        return weight;
+    }
+
+    private final class Truck {
+
+        private final List<Load> pallets = new ArrayList<>();
+        private double weight;
+
+        boolean isEmpty() {
+            return pallets.isEmpty();
+        }
+
+        /**
+         * Паллета тяжелее машины едет одна
+         */
+        boolean fits(Load pallet) {
+            return pallets.size() < maxPallets && weight + pallet.weight() <= maxWeight;
+        }
+
+        boolean fits(List<Load> group) {
+            return pallets.size() + group.size() <= maxPallets && weight + TruckLoader.weight(group) <= maxWeight;
+        }
+
+        void add(Load pallet) {
+            pallets.add(pallet);
+            weight += pallet.weight();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package pro.tehnoplast.service.slips;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Упаковочный лист заказа - строки packing_slip_view одного заказа
+ */
+public record PackingSlip(String orderNumber,
+                          LocalDate orderDate,
+                          LocalDate deliveryDate,
+                          int totalPallets,
+                          String warehouseGln,
+                          String warehouseAddress,
+                          String warehouseRegion,
+                          String invoiceNumber,
+                          LocalDate invoiceDate,
+                          List<Line> lines) {
+
+    /**
+     * Товар на паллете
+     */
+    public record Line(long palletId,
+                       int palletNumber,
+                       String productName,
+                       String productBarcode,
+                       String productSku,
+                       String productGroup,
+                       int quantity,
+                       BigDecimal price,
+                       BigDecimal total) {
+    }
+
+    /**
+     * Итоговая сумма по листу
+     */
+    public BigDecimal totalAmount() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Line line : lines) {
+            total = total.add(line.total());
+        }
+        return total;
+    }
+}
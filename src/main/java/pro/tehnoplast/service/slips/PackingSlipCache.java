@@ -0,0 +1,597 @@
+package pro.tehnoplast.service.slips;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.Context;
+import pro.tehnoplast.service.outbox.DerivedDataChangedEvent;
+import pro.tehnoplast.service.outbox.DerivedDataChangedEvent.PalletKey;
+import pro.tehnoplast.service.outbox.DerivedDataChangedEvent.SummaryKey;
+import pro.tehnoplast.service.report.ContentVersion;
+import pro.tehnoplast.service.workload.Workload;
+import pro.tehnoplast.service.workload.WorkloadContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Готовые упаковочные листы (HTML) на локальном диске: {dir}/{дата доставки}/{GLN склада}/{id заказа}-{версия}.html.
+ * Версия - наибольший updated_at заказа, его позиций, их товаров и групп товаров, паллет с его позициями
+ * (изменение состава паллеты поднимает её updated_at триггером), их агрегатов, счёта и склада,
+ * поэтому изменённый заказ получает новый файл, а устаревший удаляется. Перед выдачей версия
+ * сверяется с БД одним запросом - лист не бывает устаревшим, даже если изменение обработал другой узел.
+ * Вечером листы на следующий день формируются заранее, чтобы утренний пик отдавался с диска.
+ * Лист отрисовывается под блокировкой своего заказа, вне индекса: отрисовка одного заказа не держит
+ * другие, а индекс меняется только заменой готового файла. Изменения производных данных
+ * перерисовываются в отдельном потоке, а не в потоке outbox.
+ */
+@Slf4j
+@Service
+public class PackingSlipCache {
+
+    private static final String TEMPLATE = "packing-slip";
+    private static final String SUFFIX = ".html";
+
+    /**
+     * Заменённый файл мог только что уйти на отправку через sendfile, поэтому удаляется не сразу
+     */
+    private static final long RETIRE_DELAY_MILLIS = 60_000;
+
+    /**
+     * Число блокировок отрисовки; заказ берёт блокировку по остатку id
+     */
+    private static final int RENDER_LOCKS = 256;
+
+    private static final String VERSIONS = """
+            SELECT o.id,
+                   o.number,
+                   o.order_date,
+                   o.delivery_date,
+                   o.warehouse_gln,
+                   (EXTRACT(EPOCH FROM GREATEST(o.updated_at, w.updated_at, inv.updated_at,
+                                                items.updated_at, pallets.updated_at)) * 1000)::bigint AS version
+            FROM orders o
+                     JOIN warehouses w ON w.gln = o.warehouse_gln
+                     LEFT JOIN invoices inv ON inv.order_id = o.id AND inv.order_delivery_date = o.delivery_date
+                     LEFT JOIN LATERAL (SELECT GREATEST(MAX(oi.updated_at), MAX(prod.updated_at),
+                                                   MAX(pg.updated_at)) AS updated_at
+                                        FROM order_items oi
+                                                 JOIN products prod ON prod.id = oi.product_id
+                                                 JOIN product_groups pg ON pg.id = prod.group_id
+                                        WHERE oi.order_id = o.id
+                                          AND oi.delivery_date = o.delivery_date) items ON true
+                     LEFT JOIN LATERAL (SELECT GREATEST(MAX(p.updated_at), MAX(pa.updated_at)) AS updated_at
+                                        FROM order_items oi
+                                                 JOIN pallet_items pi
+                                                      ON pi.order_item_id = oi.id AND pi.delivery_date = oi.delivery_date
+                                                 JOIN pallets p ON p.id = pi.pallet_id AND p.delivery_date = pi.delivery_date
+                                                 LEFT JOIN pallet_aggregates pa
+                                                           ON pa.pallet_id = p.id AND pa.delivery_date = p.delivery_date
+                                        WHERE oi.order_id = o.id
+                                          AND oi.delivery_date = o.delivery_date) pallets ON true
+            WHERE o.is_deleted = false
+              AND %s
+            """;
+
+    private static final String SLIP_ROWS = """
+            SELECT *
+            FROM packing_slip_view
+            WHERE %s
+            ORDER BY order_number, order_date, pallet_number, product_sku
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ITemplateEngine templateEngine;
+    private final Path dir;
+    private final int daysAhead;
+
+    /**
+     * Последняя отрисованная версия листа по id заказа
+     */
+    private final ConcurrentHashMap<Long, SlipFile> index = new ConcurrentHashMap<>();
+    private final Queue<Retired> retired = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock[] renderLocks = new ReentrantLock[RENDER_LOCKS];
+    private final ExecutorService changeRenderer;
+
+    public PackingSlipCache(JdbcTemplate jdbcTemplate,
+                            ITemplateEngine templateEngine,
+                            @Value("${tehnoseti.packing-slips.dir:${java.io.tmpdir}/tehnoseti/packing-slips}") String dir,
+                            @Value("${tehnoseti.packing-slips.days-ahead:1}") int daysAhead) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.templateEngine = templateEngine;
+        this.dir = Paths.get(dir);
+        this.daysAhead = daysAhead;
+        for (int i = 0; i < RENDER_LOCKS; i++) {
+            renderLocks[i] = new ReentrantLock();
+        }
+        this.changeRenderer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(WorkloadContext.wrap(Workload.BULK, r), "packing-slip-changes");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        changeRenderer.shutdownNow();
+    }
+
+    /**
+     * Файл листа на диске
+     *
+     * @param version версия содержимого (мс от эпохи по updated_at)
+     */
+    public record SlipFile(long orderId, LocalDate deliveryDate, String warehouseGln, long version, Path path) {
+    }
+
+    private record Retired(Path path, long deleteAfter) {
+    }
+
+    /**
+     * Текущая версия заказа по данным БД
+     */
+    public record OrderVersion(long orderId, String number, LocalDate orderDate, LocalDate deliveryDate,
+                               String warehouseGln, long version) {
+
+        /**
+         * Версия для условных запросов: лист меняется только вместе с версией заказа
+         */
+        public ContentVersion contentVersion() {
+            return new ContentVersion(orderId + "-" + version, version);
+        }
+    }
+
+    /**
+     * Восстановить индекс по файлам, оставшимся на диске с прошлого запуска
+     */
+    @PostConstruct
+    public void loadIndex() throws IOException {
+        Files.createDirectories(dir);
+        LocalDate today = LocalDate.now();
+        try (DirectoryStream<Path> dates = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            for (Path dateDir : dates) {
+                LocalDate deliveryDate = parseDate(dateDir.getFileName().toString());
+                if (deliveryDate == null || deliveryDate.isBefore(today)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> warehouses = Files.newDirectoryStream(dateDir, Files::isDirectory)) {
+                    for (Path warehouseDir : warehouses) {
+                        String gln = warehouseDir.getFileName().toString();
+                        try (DirectoryStream<Path> files = Files.newDirectoryStream(warehouseDir, "*" + SUFFIX)) {
+                            for (Path file : files) {
+                                indexFile(deliveryDate, gln, file);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        log.info("Упаковочные листы: на диске {} файлов в {}", index.size(), dir);
+    }
+
+    /**
+     * Текущая версия заказа; пусто - заказа нет
+     */
+    public Optional<OrderVersion> findVersion(long orderId) {
+        List<OrderVersion> versions = findVersions("o.id = ?", orderId);
+        if (versions.isEmpty()) {
+            evict(orderId);
+            return Optional.empty();
+        }
+        return Optional.of(versions.get(0));
+    }
+
+    /**
+     * Файл листа для версии заказа; если файла нет или он устарел, лист формируется сейчас.
+     * Пусто - у заказа ещё нет паллет.
+     */
+    public Optional<SlipFile> get(OrderVersion version) {
+        return Optional.ofNullable(refresh(version));
+    }
+
+    /**
+     * Данные листа для версии заказа (для выгрузки в другие форматы); пусто - у заказа ещё нет паллет
+     */
+    public Optional<PackingSlip> findSlip(OrderVersion version) {
+        return Optional.ofNullable(loadSlip(version));
+    }
+
+    /**
+     * Заранее сформировать листы на следующие дни доставки после вечерней отсечки приёма заказов
+     */
+    @Scheduled(cron = "${tehnoseti.packing-slips.prerender-cron:0 0 20 * * *}")
+    public void prerender() {
+        LocalDate today = LocalDate.now();
+        for (int day = 1; day <= daysAhead; day++) {
+            prerender(today.plusDays(day));
+        }
+        purgeBefore(today);
+    }
+
+    /**
+     * Сформировать листы всех заказов на дату доставки; уже актуальные файлы не перерисовываются
+     */
+    public int prerender(LocalDate deliveryDate) {
+        long started = System.nanoTime();
+        Map<OrderKey, OrderVersion> stale = new HashMap<>();
+        for (OrderVersion version : findVersions("o.delivery_date = ?", deliveryDate)) {
+            SlipFile current = index.get(version.orderId());
+            if (current == null || current.version() != version.version()) {
+                stale.put(new OrderKey(version.number(), version.orderDate()), version);
+            }
+        }
+        if (stale.isEmpty()) {
+            return 0;
+        }
+        int[] rendered = {0};
+        streamSlips("delivery_date = ?", (key, slip) -> {
+            OrderVersion version = stale.get(key);
+            if (version != null) {
+                ReentrantLock lock = renderLock(version.orderId());
+                lock.lock();
+                try {
+                    if (!isCurrent(index.get(version.orderId()), version)) {
+                        replace(version, render(version, slip));
+                        rendered[0]++;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }, deliveryDate);
+        log.info("Упаковочные листы на {}: сформировано {} за {} мс", deliveryDate, rendered[0],
+                (System.nanoTime() - started) / 1_000_000);
+        return rendered[0];
+    }
+
+    /**
+     * Удалить заменённые версии листов, отложенные на время отправки
+     */
+    @Scheduled(fixedDelayString = "${tehnoseti.packing-slips.cleanup-millis:30000}")
+    public void deleteRetired() {
+        long now = System.currentTimeMillis();
+        Retired next;
+        while ((next = retired.peek()) != null && next.deleteAfter() <= now) {
+            retired.poll();
+            try {
+                Files.deleteIfExists(next.path());
+            } catch (IOException e) {
+                log.warn("Не удалось удалить упаковочный лист {}: {}", next.path(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Пересоздать листы только тех заказов, которых коснулось изменение: паллеты из события
+     * и заказы со складом и датой из изменившихся сводок. Затрагиваются только уже сформированные листы.
+     * Событие приходит в потоке outbox, работа передаётся в поток листов.
+     */
+    @EventListener
+    public void onDerivedDataChanged(DerivedDataChangedEvent event) {
+        if (index.isEmpty()) {
+            return;
+        }
+        try {
+            changeRenderer.execute(() -> {
+                try {
+                    refreshAffected(event);
+                } catch (RuntimeException e) {
+                    log.warn("Не удалось обновить упаковочные листы по изменению: {}", e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("Обновление упаковочных листов остановлено: {}", e.getMessage());
+        }
+    }
+
+    private void refreshAffected(DerivedDataChangedEvent event) {
+        Set<Long> affected = new HashSet<>();
+        Set<SummaryKey> summaryKeys = event.summaryKeys();
+        for (SlipFile file : index.values()) {
+            if (summaryKeys.contains(new SummaryKey(file.warehouseGln(), file.deliveryDate()))) {
+                affected.add(file.orderId());
+            }
+        }
+        for (long orderId : findPalletOrders(event.palletKeys())) {
+            if (index.containsKey(orderId)) {
+                affected.add(orderId);
+            }
+        }
+        if (affected.isEmpty()) {
+            return;
+        }
+        Map<Long, OrderVersion> versions = new HashMap<>();
+        for (OrderVersion version : findVersions("o.id = ANY (?::integer[])", (Object) affected.toArray(new Long[0]))) {
+            versions.put(version.orderId(), version);
+        }
+        int changed = 0;
+        for (long orderId : affected) {
+            OrderVersion version = versions.get(orderId);
+            if (version == null) {
+                evict(orderId);
+                changed++;
+            } else if (index.get(orderId) == null || index.get(orderId).version() != version.version()) {
+                refresh(version);
+                changed++;
+            }
+        }
+        if (changed > 0) {
+            log.debug("Упаковочные листы: обновлено {} из {} затронутых", changed, affected.size());
+        }
+    }
+
+    /**
+     * Актуальный файл для версии заказа; при расхождении лист перерисовывается (один раз на заказ,
+     * параллельные запросы того же заказа ждут готовый файл)
+     */
+    private SlipFile refresh(OrderVersion version) {
+        SlipFile current = index.get(version.orderId());
+        if (isCurrent(current, version)) {
+            return current;
+        }
+        ReentrantLock lock = renderLock(version.orderId());
+        lock.lock();
+        try {
+            current = index.get(version.orderId());
+            if (isCurrent(current, version)) {
+                return current;
+            }
+            PackingSlip slip = loadSlip(version);
+            if (slip == null) {
+                delete(index.remove(version.orderId()));
+                return null;
+            }
+            return replace(version, render(version, slip));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean isCurrent(SlipFile file, OrderVersion version) {
+        return file != null && file.version() == version.version() && Files.exists(file.path());
+    }
+
+    /**
+     * Опубликовать готовый файл; вызывается под блокировкой отрисовки заказа
+     */
+    private SlipFile replace(OrderVersion version, SlipFile file) {
+        SlipFile existing = index.put(version.orderId(), file);
+        if (existing != null && !existing.path().equals(file.path())) {
+            delete(existing);
+        }
+        return file;
+    }
+
+    private ReentrantLock renderLock(long orderId) {
+        return renderLocks[(int) Math.floorMod(orderId, (long) RENDER_LOCKS)];
+    }
+
+    private SlipFile render(OrderVersion version, PackingSlip slip) {
+        Path slipDir = dir.resolve(version.deliveryDate().toString()).resolve(version.warehouseGln());
+        Path target = slipDir.resolve(version.orderId() + "-" + version.version() + SUFFIX);
+        try {
+            Files.createDirectories(slipDir);
+            Path tmp = Files.createTempFile(slipDir, version.orderId() + "-", ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                Context context = new Context();
+                context.setVariable("slip", slip);
+                templateEngine.process(TEMPLATE, context, writer);
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать упаковочный лист " + target, e);
+        }
+        return new SlipFile(version.orderId(), version.deliveryDate(), version.warehouseGln(), version.version(), target);
+    }
+
+    private PackingSlip loadSlip(OrderVersion version) {
+        PackingSlip[] found = {null};
+        streamSlips("order_number = ? AND order_date = ? AND delivery_date = ?", (key, slip) -> found[0] = slip,
+                version.number(), version.orderDate(), version.deliveryDate());
+        return found[0];
+    }
+
+    /**
+     * Прочитать строки представления, собирая листы по заказам (строки одного заказа идут подряд)
+     */
+    private void streamSlips(String where, SlipConsumer consumer, Object... args) {
+        SlipBuilder builder = new SlipBuilder(consumer);
+        jdbcTemplate.query(SLIP_ROWS.formatted(where), builder::row, args);
+        builder.flush();
+    }
+
+    private List<OrderVersion> findVersions(String where, Object... args) {
+        return jdbcTemplate.query(VERSIONS.formatted(where), (rs, rowNum) -> new OrderVersion(
+                rs.getLong("id"),
+                rs.getString("number"),
+                rs.getDate("order_date").toLocalDate(),
+                rs.getDate("delivery_date").toLocalDate(),
+                rs.getString("warehouse_gln"),
+                rs.getLong("version")), args);
+    }
+
+    private Set<Long> findPalletOrders(Collection<PalletKey> keys) {
+        if (keys.isEmpty()) {
+            return Set.of();
+        }
+        Long[] ids = new Long[keys.size()];
+        String[] dates = new String[keys.size()];
+        int i = 0;
+        for (PalletKey key : keys) {
+            ids[i] = key.palletId();
+            dates[i] = key.deliveryDate().toString();
+            i++;
+        }
+        // Сборная паллета несёт позиции нескольких заказов
+        return new HashSet<>(jdbcTemplate.queryForList("""
+                WITH k AS (SELECT * FROM unnest(?::integer[], ?::date[]) AS k(pallet_id, delivery_date))
+                SELECT p.order_id
+                FROM pallets p
+                         JOIN k ON k.pallet_id = p.id AND k.delivery_date = p.delivery_date
+                UNION
+                SELECT oi.order_id
+                FROM pallet_items pi
+                         JOIN k ON k.pallet_id = pi.pallet_id AND k.delivery_date = pi.delivery_date
+                         JOIN order_items oi ON oi.id = pi.order_item_id AND oi.delivery_date = pi.delivery_date
+                """, Long.class, ids, dates));
+    }
+
+    /**
+     * Удалить каталоги прошедших дат доставки
+     */
+    private void purgeBefore(LocalDate date) {
+        index.values().removeIf(file -> file.deliveryDate().isBefore(date));
+        try (DirectoryStream<Path> dates = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            for (Path dateDir : dates) {
+                LocalDate deliveryDate = parseDate(dateDir.getFileName().toString());
+                if (deliveryDate != null && deliveryDate.isBefore(date)) {
+                    try (Stream<Path> files = Files.walk(dateDir)) {
+                        for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                            Files.deleteIfExists(file);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Не удалось удалить старые упаковочные листы: {}", e.getMessage());
+        }
+    }
+
+    private void evict(long orderId) {
+        delete(index.remove(orderId));
+    }
+
+    private void delete(SlipFile file) {
+        if (file != null) {
+            retired.add(new Retired(file.path(), System.currentTimeMillis() + RETIRE_DELAY_MILLIS));
+        }
+    }
+
+    /**
+     * Имя файла: {id заказа}-{версия}.html; из двух версий одного заказа остаётся новая
+     */
+    private void indexFile(LocalDate deliveryDate, String warehouseGln, Path file) throws IOException {
+        String name = file.getFileName().toString();
+        int dash = name.indexOf('-');
+        try {
+            long orderId = Long.parseLong(name.substring(0, dash));
+            long version = Long.parseLong(name.substring(dash + 1, name.length() - SUFFIX.length()));
+            SlipFile loaded = new SlipFile(orderId, deliveryDate, warehouseGln, version, file);
+            SlipFile previous = index.put(orderId, loaded);
+            if (previous != null && previous.version() > version) {
+                index.put(orderId, previous);
+                Files.deleteIfExists(file);
+            } else if (previous != null) {
+                Files.deleteIfExists(previous.path());
+            }
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static LocalDate parseDate(String value) {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private record OrderKey(String number, LocalDate orderDate) {
+    }
+
+    @FunctionalInterface
+    private interface SlipConsumer {
+        void accept(OrderKey key, PackingSlip slip);
+    }
+
+    /**
+     * Сборка листов из упорядоченных строк packing_slip_view
+     */
+    private static final class SlipBuilder {
+
+        private final SlipConsumer consumer;
+        private OrderKey key;
+        private PackingSlip headerSlip;
+        private List<PackingSlip.Line> lines = new ArrayList<>();
+
+        SlipBuilder(SlipConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        void row(ResultSet rs) throws SQLException {
+            OrderKey rowKey = new OrderKey(rs.getString("order_number"), rs.getDate("order_date").toLocalDate());
+            if (!rowKey.equals(key)) {
+                flush();
+                key = rowKey;
+                headerSlip = new PackingSlip(
+                        rowKey.number(),
+                        rowKey.orderDate(),
+                        rs.getDate("delivery_date").toLocalDate(),
+                        rs.getInt("total_pallets"),
+                        rs.getString("warehouse_gln"),
+                        rs.getString("warehouse_address"),
+                        rs.getString("warehouse_region"),
+                        rs.getString("invoice_number"),
+                        rs.getDate("invoice_date") != null ? rs.getDate("invoice_date").toLocalDate() : null,
+                        List.of());
+            }
+            lines.add(new PackingSlip.Line(
+                    rs.getLong("pallet_id"),
+                    rs.getInt("pallet_number"),
+                    rs.getString("product_name"),
+                    rs.getString("product_barcode"),
+                    rs.getString("product_sku"),
+                    rs.getString("product_group"),
+                    rs.getInt("quantity_on_pallet"),
+                    rs.getBigDecimal("product_price"),
+                    rs.getBigDecimal("total_price")));
+        }
+
+        void flush() {
+            if (key == null) {
+                return;
+            }
+            PackingSlip h = headerSlip;
+            consumer.accept(key, new PackingSlip(h.orderNumber(), h.orderDate(), h.deliveryDate(), h.totalPallets(),
+                    h.warehouseGln(), h.warehouseAddress(), h.warehouseRegion(), h.invoiceNumber(),
+                    h.invoiceDate(), List.copyOf(lines)));
+            key = null;
+            lines = new ArrayList<>();
+        }
+    }
+}
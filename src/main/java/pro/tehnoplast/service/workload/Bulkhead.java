@@ -0,0 +1,93 @@
+package pro.tehnoplast.service.workload;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ограничитель одновременных запросов одного класса нагрузки. Если свободных мест нет,
+ * запрос ждёт в очереди ограниченной длины не дольше maxWaitMillis, иначе получает отказ.
+ */
+public final class Bulkhead {
+
+    private final Workload workload;
+    private final int limit;
+    private final int maxQueue;
+    private final long maxWaitMillis;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public Bulkhead(Workload workload, int limit, int maxQueue, long maxWaitMillis) {
+        this.workload = workload;
+        this.limit = Math.max(1, limit);
+        this.maxQueue = Math.max(0, maxQueue);
+        this.maxWaitMillis = Math.max(0, maxWaitMillis);
+        this.permits = new Semaphore(this.limit, true);
+    }
+
+    /**
+     * Занять место; null - мест нет и очередь полна или время ожидания истекло
+     */
+    public Permit tryEnter() throws InterruptedException {
+        if (permits.tryAcquire()) {
+            return new Permit();
+        }
+        if (maxWaitMillis == 0 || queued.incrementAndGet() > maxQueue) {
+            if (maxWaitMillis > 0) {
+                queued.decrementAndGet();
+            }
+            return null;
+        }
+        try {
+            return permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS) ? new Permit() : null;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    public Workload workload() {
+        return workload;
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int active() {
+        return limit - permits.availablePermits();
+    }
+
+    public int queued() {
+        return queued.get();
+    }
+
+    /**
+     * Доля занятых мест
+     */
+    public double saturation() {
+        return (double) active() / limit;
+    }
+
+    /**
+     * Занятое место; повторное освобождение ничего не делает
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit() {
+        }
+
+        public Workload workload() {
+            return workload;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package pro.tehnoplast.service.workload;
+
+/**
+ * Класс нагрузки. У каждого класса свой лимит одновременных запросов, а у фоновой
+ * массовой работы - ещё и собственные пулы соединений, так что импорт или выгрузка
+ * не могут занять соединения и потоки, нужные интерфейсу.
+ */
+public enum Workload {
+
+    /**
+     * Интерактивные запросы интерфейса: сводка, упаковочные листы, карточки заказов
+     */
+    INTERACTIVE,
+
+    /**
+     * Планирование: рейсы и консолидация паллет - короткие, но тяжёлые по CPU расчёты
+     */
+    PLANNING,
+
+    /**
+     * Массовая работа: импорт файлов, выгрузки, сверки и фоновые задачи по расписанию
+     */
+    BULK;
+
+    /**
+     * Имя класса для метрик и настроек
+     */
+    public String tag() {
+        return name().toLowerCase();
+    }
+}
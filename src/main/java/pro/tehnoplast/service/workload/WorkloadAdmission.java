@@ -0,0 +1,135 @@
+package pro.tehnoplast.service.workload;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Допуск запросов по классам нагрузки. У каждого класса свой {@link Bulkhead};
+ * планирование и массовая работа, кроме того, не допускаются, пока интерфейс под давлением -
+ * занято больше pressure-ratio интерактивных мест или в его пулах соединений есть ожидающие.
+ * Так при перегрузке первыми откладываются выгрузки и импорт, а не чтение для интерфейса.
+ * Метрики tehnoseti.workload.* с тегом workload показывают занятость классов для подбора лимитов.
+ */
+@Slf4j
+@Component
+public class WorkloadAdmission {
+
+    private final Map<Workload, Bulkhead> bulkheads = new EnumMap<>(Workload.class);
+    private final Map<Workload, Timer> waits = new EnumMap<>(Workload.class);
+    private final MeterRegistry registry;
+    private final List<HikariDataSource> interactivePools;
+    private final int pressureThreshold;
+    private final long retryAfterSeconds;
+    private final Counter deferredJobPolls;
+
+    public WorkloadAdmission(MeterRegistry registry,
+                             @Qualifier("writeDataSource") HikariDataSource writeDataSource,
+                             @Qualifier("readDataSource") HikariDataSource readDataSource,
+                             @Value("${tehnoseti.workloads.interactive.limit:150}") int interactiveLimit,
+                             @Value("${tehnoseti.workloads.planning.limit:2}") int planningLimit,
+                             @Value("${tehnoseti.workloads.planning.max-queue:4}") int planningQueue,
+                             @Value("${tehnoseti.workloads.planning.max-wait-millis:10000}") long planningWait,
+                             @Value("${tehnoseti.workloads.bulk.limit:4}") int bulkLimit,
+                             @Value("${tehnoseti.workloads.bulk.max-queue:4}") int bulkQueue,
+                             @Value("${tehnoseti.workloads.bulk.max-wait-millis:5000}") long bulkWait,
+                             @Value("${tehnoseti.workloads.pressure-ratio:0.8}") double pressureRatio,
+                             @Value("${tehnoseti.workloads.retry-after-seconds:10}") long retryAfterSeconds) {
+        this.registry = registry;
+        this.interactivePools = List.of(writeDataSource, readDataSource);
+        this.retryAfterSeconds = retryAfterSeconds;
+        register(new Bulkhead(Workload.INTERACTIVE, interactiveLimit, 0, 0));
+        register(new Bulkhead(Workload.PLANNING, planningLimit, planningQueue, planningWait));
+        register(new Bulkhead(Workload.BULK, bulkLimit, bulkQueue, bulkWait));
+        this.pressureThreshold = Math.max(1, (int) Math.ceil(bulkheads.get(Workload.INTERACTIVE).limit() * pressureRatio));
+        this.deferredJobPolls = registry.counter("tehnoseti.workload.deferred", "workload", Workload.BULK.tag());
+        Gauge.builder("tehnoseti.workload.pressure", this, admission -> admission.underPressure() ? 1 : 0)
+                .description("1 - интерфейс под давлением, массовая работа и планирование не допускаются")
+                .register(registry);
+        log.info("Классы нагрузки: интерактивные {}, планирование {}, массовые {}; давление с {} интерактивных запросов",
+                interactiveLimit, planningLimit, bulkLimit, pressureThreshold);
+    }
+
+    /**
+     * Допустить запрос класса workload; место освобождается закрытием разрешения
+     *
+     * @throws WorkloadRejectedException если мест нет или интерфейс под давлением
+     */
+    public Bulkhead.Permit admit(Workload workload) {
+        if (workload != Workload.INTERACTIVE && underPressure()) {
+            throw reject(workload, "pressure", "Интерфейс перегружен, запрос отложен");
+        }
+        Bulkhead bulkhead = bulkheads.get(workload);
+        long started = System.nanoTime();
+        Bulkhead.Permit permit;
+        try {
+            permit = bulkhead.tryEnter();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject(workload, "interrupted", "Ожидание места прервано");
+        }
+        waits.get(workload).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        if (permit == null) {
+            throw reject(workload, "full", "Нет свободных мест для запросов класса " + workload.tag());
+        }
+        return permit;
+    }
+
+    /**
+     * Можно ли сейчас брать в работу фоновые массовые задачи; если нет, задачи остаются в очереди
+     */
+    public boolean admitsBackground() {
+        if (underPressure()) {
+            deferredJobPolls.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Интерфейс под давлением: занята большая часть интерактивных мест или запросы ждут соединения
+     */
+    public boolean underPressure() {
+        if (bulkheads.get(Workload.INTERACTIVE).active() >= pressureThreshold) {
+            return true;
+        }
+        for (HikariDataSource pool : interactivePools) {
+            HikariPoolMXBean mxBean = pool.getHikariPoolMXBean();
+            if (mxBean != null && mxBean.getThreadsAwaitingConnection() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void register(Bulkhead bulkhead) {
+        String tag = bulkhead.workload().tag();
+        bulkheads.put(bulkhead.workload(), bulkhead);
+        waits.put(bulkhead.workload(), Timer.builder("tehnoseti.workload.wait")
+                .tag("workload", tag)
+                .description("Ожидание места в классе нагрузки")
+                .register(registry));
+        Gauge.builder("tehnoseti.workload.active", bulkhead, Bulkhead::active).tag("workload", tag).register(registry);
+        Gauge.builder("tehnoseti.workload.queued", bulkhead, Bulkhead::queued).tag("workload", tag).register(registry);
+        Gauge.builder("tehnoseti.workload.limit", bulkhead, Bulkhead::limit).tag("workload", tag).register(registry);
+        Gauge.builder("tehnoseti.workload.saturation", bulkhead, Bulkhead::saturation).tag("workload", tag).register(registry);
+    }
+
+    private WorkloadRejectedException reject(Workload workload, String reason, String message) {
+        registry.counter("tehnoseti.workload.rejected", "workload", workload.tag(), "reason", reason).increment();
+        log.debug("Отказ запросу класса {} ({}): {}", workload.tag(), reason, message);
+        return new WorkloadRejectedException(workload, message, retryAfterSeconds);
+    }
+}
@@ -0,0 +1,45 @@
+package pro.tehnoplast.service.workload;
+
+/**
+ * Класс нагрузки текущего потока. По нему маршрутизирующий источник данных выбирает пул соединений;
+ * поток без явно заданного класса считается интерактивным.
+ */
+public final class WorkloadContext {
+
+    private static final ThreadLocal<Workload> CURRENT = new ThreadLocal<>();
+
+    private WorkloadContext() {
+    }
+
+    public static Workload current() {
+        Workload workload = CURRENT.get();
+        return workload != null ? workload : Workload.INTERACTIVE;
+    }
+
+    public static void set(Workload workload) {
+        CURRENT.set(workload);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Обернуть задачу так, чтобы она выполнялась в заданном классе нагрузки
+     */
+    public static Runnable wrap(Workload workload, Runnable task) {
+        return () -> {
+            Workload previous = CURRENT.get();
+            CURRENT.set(workload);
+            try {
+                task.run();
+            } finally {
+                if (previous != null) {
+                    CURRENT.set(previous);
+                } else {
+                    CURRENT.remove();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,24 @@
+package pro.tehnoplast.service.workload;
+
+import lombok.Getter;
+
+import java.io.Serial;
+
+/**
+ * Запрос не допущен к выполнению: у его класса нагрузки нет мест или интерфейс перегружен
+ */
+@Getter
+public class WorkloadRejectedException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final Workload workload;
+    private final long retryAfterSeconds;
+
+    public WorkloadRejectedException(Workload workload, String message, long retryAfterSeconds) {
+        super(message);
+        this.workload = workload;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,125 @@
+package pro.tehnoplast.service.xlsx;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+import pro.tehnoplast.model.WarehouseDailySummary;
+import pro.tehnoplast.service.slips.PackingSlip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static java.util.Map.entry;
+
+/**
+ * Выгрузки в Excel по оформленным шаблонам templates/xlsx/*.xlsx: упаковочный лист заказа и сводка по складам.
+ * Шаблоны компилируются один раз при старте.
+ */
+@Service
+public class XlsxReportService {
+
+    public static final String CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    private final XlsxTemplate<PackingSlip, PackingSlip.Line> packingSlip;
+    private final XlsxTemplate<SummarySheet, WarehouseDailySummary> summary;
+
+    public XlsxReportService() {
+        this.packingSlip = compile("templates/xlsx/packing-slip.xlsx",
+                Map.ofEntries(
+                        entry("orderNumber", PackingSlip::orderNumber),
+                        entry("orderDate", PackingSlip::orderDate),
+                        entry("deliveryDate", PackingSlip::deliveryDate),
+                        entry("totalPallets", PackingSlip::totalPallets),
+                        entry("warehouseGln", PackingSlip::warehouseGln),
+                        entry("warehouseAddress", PackingSlip::warehouseAddress),
+                        entry("warehouseRegion", PackingSlip::warehouseRegion),
+                        entry("invoiceNumber", PackingSlip::invoiceNumber),
+                        entry("invoiceDate", PackingSlip::invoiceDate),
+                        entry("totalQuantity", slip -> slip.lines().stream().mapToLong(PackingSlip.Line::quantity).sum()),
+                        entry("totalAmount", PackingSlip::totalAmount)),
+                PackingSlip::lines,
+                Map.of(
+                        "palletNumber", PackingSlip.Line::palletNumber,
+                        "productName", PackingSlip.Line::productName,
+                        "productBarcode", PackingSlip.Line::productBarcode,
+                        "productSku", PackingSlip.Line::productSku,
+                        "productGroup", PackingSlip.Line::productGroup,
+                        "quantity", PackingSlip.Line::quantity,
+                        "price", PackingSlip.Line::price,
+                        "total", PackingSlip.Line::total));
+        this.summary = compile("templates/xlsx/summary.xlsx",
+                Map.of(
+                        "from", SummarySheet::from,
+                        "to", SummarySheet::to,
+                        "ordersCount", sheet -> sheet.sum(WarehouseDailySummary::getOrdersCount),
+                        "itemsCount", sheet -> sheet.sum(WarehouseDailySummary::getItemsCount),
+                        "totalQuantity", sheet -> sheet.sum(WarehouseDailySummary::getTotalQuantity),
+                        "totalAmount", SummarySheet::totalAmount,
+                        "palletCount", sheet -> sheet.sum(WarehouseDailySummary::getPalletCount)),
+                SummarySheet::rows,
+                Map.of(
+                        "deliveryDate", WarehouseDailySummary::getDeliveryDate,
+                        "warehouseGln", WarehouseDailySummary::getWarehouseGln,
+                        "ordersCount", WarehouseDailySummary::getOrdersCount,
+                        "itemsCount", WarehouseDailySummary::getItemsCount,
+                        "totalQuantity", WarehouseDailySummary::getTotalQuantity,
+                        "totalAmount", WarehouseDailySummary::getTotalAmount,
+                        "palletCount", WarehouseDailySummary::getPalletCount));
+    }
+
+    /**
+     * Упаковочный лист заказа
+     */
+    public void writePackingSlip(PackingSlip slip, OutputStream out) throws IOException {
+        packingSlip.write(slip, out);
+    }
+
+    /**
+     * Сводка по складам и датам доставки за период
+     */
+    public void writeSummary(LocalDate from, LocalDate to, List<WarehouseDailySummary> rows, OutputStream out)
+            throws IOException {
+        summary.write(new SummarySheet(from, to, rows), out);
+    }
+
+    private static <T, L> XlsxTemplate<T, L> compile(String path,
+                                                     Map<String, Function<? super T, ?>> fields,
+                                                     Function<T, List<L>> lines,
+                                                     Map<String, Function<? super L, ?>> lineFields) {
+        try (InputStream in = new ClassPathResource(path).getInputStream()) {
+            return XlsxTemplate.compile(in, fields, lines, lineFields);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать шаблон " + path, e);
+        }
+    }
+
+    private record SummarySheet(LocalDate from, LocalDate to, List<WarehouseDailySummary> rows) {
+
+        long sum(Function<WarehouseDailySummary, ? extends Number> field) {
+            long total = 0;
+            for (WarehouseDailySummary row : rows) {
+                Number value = field.apply(row);
+                if (value != null) {
+                    total += value.longValue();
+                }
+            }
+            return total;
+        }
+
+        BigDecimal totalAmount() {
+            BigDecimal total = BigDecimal.ZERO;
+            for (WarehouseDailySummary row : rows) {
+                if (row.getTotalAmount() != null) {
+                    total = total.add(row.getTotalAmount());
+                }
+            }
+            return total;
+        }
+    }
+}
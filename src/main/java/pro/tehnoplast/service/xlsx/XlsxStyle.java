@@ -0,0 +1,112 @@
+package pro.tehnoplast.service.xlsx;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.VerticalAlignment;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Стиль ячейки шаблона, снятый в простые значения. Создать такой стиль в новой книге заметно дешевле,
+ * чем {@code cloneStyleFrom} из другой книги: тот при каждом вызове копирует тему оформления через XML.
+ */
+record XlsxStyle(Font font,
+                 String dataFormat,
+                 HorizontalAlignment alignment,
+                 VerticalAlignment verticalAlignment,
+                 boolean wrapText,
+                 short indent,
+                 short rotation,
+                 FillPatternType fillPattern,
+                 String fillColor,
+                 String fillBackgroundColor,
+                 BorderStyle borderTop,
+                 BorderStyle borderRight,
+                 BorderStyle borderBottom,
+                 BorderStyle borderLeft) {
+
+    /**
+     * Шрифт; цвет - ARGB в hex или null (автоматический)
+     */
+    record Font(String name, short height, boolean bold, boolean italic, byte underline, boolean strikeout,
+                String color) {
+
+        static Font of(XSSFFont font) {
+            return new Font(font.getFontName(), font.getFontHeight(), font.getBold(), font.getItalic(),
+                    font.getUnderline(), font.getStrikeout(), argb(font.getXSSFColor()));
+        }
+
+        XSSFFont create(Workbook workbook) {
+            XSSFFont font = (XSSFFont) workbook.createFont();
+            font.setFontName(name);
+            font.setFontHeight(height);
+            font.setBold(bold);
+            font.setItalic(italic);
+            font.setUnderline(underline);
+            font.setStrikeout(strikeout);
+            if (color != null) {
+                font.setColor(xssfColor(color));
+            }
+            return font;
+        }
+    }
+
+    static XlsxStyle of(XSSFCellStyle style) {
+        return new XlsxStyle(
+                Font.of(style.getFont()),
+                style.getDataFormatString(),
+                style.getAlignment(),
+                style.getVerticalAlignment(),
+                style.getWrapText(),
+                style.getIndention(),
+                style.getRotation(),
+                style.getFillPattern(),
+                argb(style.getFillForegroundXSSFColor()),
+                argb(style.getFillBackgroundXSSFColor()),
+                style.getBorderTop(),
+                style.getBorderRight(),
+                style.getBorderBottom(),
+                style.getBorderLeft());
+    }
+
+    /**
+     * Создать стиль в книге; одинаковые шрифты палитры создаются один раз
+     */
+    CellStyle create(Workbook workbook, Map<Font, XSSFFont> fonts) {
+        XSSFCellStyle style = (XSSFCellStyle) workbook.createCellStyle();
+        style.setFont(fonts.computeIfAbsent(font, key -> key.create(workbook)));
+        style.setDataFormat(workbook.createDataFormat().getFormat(dataFormat));
+        style.setAlignment(alignment);
+        style.setVerticalAlignment(verticalAlignment);
+        style.setWrapText(wrapText);
+        style.setIndention(indent);
+        style.setRotation(rotation);
+        style.setFillPattern(fillPattern);
+        if (fillColor != null) {
+            style.setFillForegroundColor(xssfColor(fillColor));
+        }
+        if (fillBackgroundColor != null) {
+            style.setFillBackgroundColor(xssfColor(fillBackgroundColor));
+        }
+        style.setBorderTop(borderTop);
+        style.setBorderRight(borderRight);
+        style.setBorderBottom(borderBottom);
+        style.setBorderLeft(borderLeft);
+        return style;
+    }
+
+    private static String argb(XSSFColor color) {
+        return color != null && !color.isAuto() ? color.getARGBHex() : null;
+    }
+
+    private static XSSFColor xssfColor(String argb) {
+        return new XSSFColor(HexFormat.of().parseHex(argb), null);
+    }
+}
@@ -0,0 +1,336 @@
+package pro.tehnoplast.service.xlsx;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.PaneInformation;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFPrintSetup;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Скомпилированный шаблон XLSX: оформленная книга разбирается один раз в раскладку строк и палитру стилей,
+ * а каждый документ заполняется в потоковую книгу (SXSSF) без повторного чтения шаблона.
+ * <p>
+ * В ячейках шаблона - текст и подстановки {@code ${поле}} (поля документа) и {@code ${line.поле}} (поля строки).
+ * Строка с подстановками {@code line.} повторяется для каждой строки документа; строки ниже неё сдвигаются.
+ * Ячейка из одной подстановки получает типизированное значение (число, дата), с текстом - строку.
+ * Первый лист шаблона, ширины колонок, объединения, закрепление и параметры печати переносятся.
+ *
+ * @param <T> документ
+ * @param <L> строка документа
+ */
+public final class XlsxTemplate<T, L> {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([A-Za-z.]+)}");
+    private static final String LINE_PREFIX = "line.";
+    private static final DateTimeFormatter DATE_TEXT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+
+    /**
+     * Строки в памяти потоковой книги: остальные сбрасываются во временный файл
+     */
+    private static final int WINDOW_SIZE = 200;
+
+    private final String sheetName;
+    private final XlsxStyle[] palette;
+    private final int[] columnWidths;
+    private final short defaultRowHeight;
+    private final List<RowTemplate<T>> header;
+    private final RowTemplate<L> line;
+    private final List<RowTemplate<T>> footer;
+    private final List<CellRangeAddress> headerMerges;
+    private final List<CellRangeAddress> footerMerges;
+    private final int lineRow;
+    private final PaneInformation pane;
+    private final boolean landscape;
+    private final short paperSize;
+    private final short fitWidth;
+    private final short fitHeight;
+    private final boolean fitToPage;
+    private final Function<T, List<L>> lines;
+
+    private XlsxTemplate(XSSFWorkbook template, XSSFSheet sheet, Map<String, Function<? super T, ?>> fields,
+                         Function<T, List<L>> lines, Map<String, Function<? super L, ?>> lineFields) {
+        this.sheetName = sheet.getSheetName();
+        this.lines = lines;
+
+        Map<Short, Integer> paletteIndexes = new HashMap<>();
+        List<Short> styles = new ArrayList<>();
+        int lineRowIndex = -1;
+        List<RowTemplate<T>> before = new ArrayList<>();
+        List<RowTemplate<T>> after = new ArrayList<>();
+        RowTemplate<L> lineTemplate = null;
+        int maxColumn = 0;
+        for (int r = 0; r <= sheet.getLastRowNum(); r++) {
+            XSSFRow row = sheet.getRow(r);
+            if (row == null) {
+                continue;
+            }
+            maxColumn = Math.max(maxColumn, row.getLastCellNum());
+            if (lineRowIndex < 0 && hasLinePlaceholder(row)) {
+                lineRowIndex = r;
+                lineTemplate = compileRow(row, r, paletteIndexes, styles, lineFields, true);
+            } else if (lineRowIndex < 0) {
+                before.add(compileRow(row, r, paletteIndexes, styles, fields, false));
+            } else {
+                after.add(compileRow(row, r, paletteIndexes, styles, fields, false));
+            }
+        }
+        if (lineTemplate == null) {
+            throw new IllegalArgumentException("В шаблоне " + sheetName + " нет строки с подстановками ${line.*}");
+        }
+        this.lineRow = lineRowIndex;
+        this.header = before;
+        this.line = lineTemplate;
+        this.footer = after;
+
+        this.palette = new XlsxStyle[styles.size()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = XlsxStyle.of(template.getCellStyleAt(styles.get(i)));
+        }
+        this.columnWidths = new int[maxColumn];
+        for (int c = 0; c < maxColumn; c++) {
+            columnWidths[c] = sheet.getColumnWidth(c);
+        }
+        this.defaultRowHeight = sheet.getDefaultRowHeight();
+
+        List<CellRangeAddress> headerRanges = new ArrayList<>();
+        List<CellRangeAddress> footerRanges = new ArrayList<>();
+        for (CellRangeAddress range : sheet.getMergedRegions()) {
+            (range.getFirstRow() < lineRowIndex ? headerRanges : footerRanges).add(range);
+        }
+        this.headerMerges = headerRanges;
+        this.footerMerges = footerRanges;
+        this.pane = sheet.getPaneInformation();
+        XSSFPrintSetup printSetup = sheet.getPrintSetup();
+        this.landscape = printSetup.getLandscape();
+        this.paperSize = printSetup.getPaperSize();
+        this.fitWidth = printSetup.getFitWidth();
+        this.fitHeight = printSetup.getFitHeight();
+        this.fitToPage = sheet.getFitToPage();
+    }
+
+    /**
+     * Разобрать шаблон; неизвестная подстановка - ошибка сразу, а не при формировании документа
+     *
+     * @param fields     поля документа по именам подстановок
+     * @param lines      строки документа
+     * @param lineFields поля строки по именам подстановок (без префикса {@code line.})
+     */
+    public static <T, L> XlsxTemplate<T, L> compile(InputStream in,
+                                                    Map<String, Function<? super T, ?>> fields,
+                                                    Function<T, List<L>> lines,
+                                                    Map<String, Function<? super L, ?>> lineFields) throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook(in)) {
+            return new XlsxTemplate<>(workbook, workbook.getSheetAt(0), fields, lines, lineFields);
+        }
+    }
+
+    /**
+     * Сформировать документ в поток
+     */
+    public void write(T document, OutputStream out) throws IOException {
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(WINDOW_SIZE)) {
+            CellStyle[] styles = createStyles(workbook);
+            Sheet sheet = workbook.createSheet(sheetName);
+            for (int c = 0; c < columnWidths.length; c++) {
+                sheet.setColumnWidth(c, columnWidths[c]);
+            }
+            sheet.setDefaultRowHeight(defaultRowHeight);
+            copyPrintSetup(sheet);
+
+            for (RowTemplate<T> row : header) {
+                row.write(sheet, row.index, document, styles);
+            }
+            List<L> rows = lines.apply(document);
+            int rowIndex = lineRow;
+            for (L item : rows) {
+                line.write(sheet, rowIndex++, item, styles);
+            }
+            // Без строк документа строка-образец остаётся пустой, чтобы итог не налезал на шапку
+            int shift = Math.max(rows.size(), 1) - 1;
+            for (RowTemplate<T> row : footer) {
+                row.write(sheet, row.index + shift, document, styles);
+            }
+
+            for (CellRangeAddress range : headerMerges) {
+                sheet.addMergedRegionUnsafe(range.copy());
+            }
+            for (CellRangeAddress range : footerMerges) {
+                sheet.addMergedRegionUnsafe(new CellRangeAddress(range.getFirstRow() + shift,
+                        range.getLastRow() + shift, range.getFirstColumn(), range.getLastColumn()));
+            }
+            if (pane != null && pane.isFreezePane()) {
+                sheet.createFreezePane(pane.getVerticalSplitPosition(), pane.getHorizontalSplitPosition());
+            }
+            workbook.write(out);
+        }
+    }
+
+    /**
+     * Палитра: по одному стилю на каждый стиль шаблона, а не на ячейку
+     */
+    private CellStyle[] createStyles(Workbook workbook) {
+        CellStyle[] styles = new CellStyle[palette.length];
+        Map<XlsxStyle.Font, XSSFFont> fonts = new HashMap<>();
+        for (int i = 0; i < palette.length; i++) {
+            styles[i] = palette[i].create(workbook, fonts);
+        }
+        return styles;
+    }
+
+    private void copyPrintSetup(Sheet sheet) {
+        sheet.getPrintSetup().setLandscape(landscape);
+        sheet.getPrintSetup().setPaperSize(paperSize);
+        sheet.getPrintSetup().setFitWidth(fitWidth);
+        sheet.getPrintSetup().setFitHeight(fitHeight);
+        sheet.setFitToPage(fitToPage);
+    }
+
+    private static boolean hasLinePlaceholder(XSSFRow row) {
+        for (Cell cell : row) {
+            if (cell.getCellType() == CellType.STRING && cell.getStringCellValue().contains("${" + LINE_PREFIX)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <V> RowTemplate<V> compileRow(XSSFRow row, int index, Map<Short, Integer> palette, List<Short> styles,
+                                                 Map<String, ? extends Function<? super V, ?>> fields, boolean line) {
+        List<CellTemplate<V>> cells = new ArrayList<>();
+        for (Cell cell : row) {
+            short styleIndex = cell.getCellStyle().getIndex();
+            int style = palette.computeIfAbsent(styleIndex, key -> {
+                styles.add(key);
+                return styles.size() - 1;
+            });
+            cells.add(switch (cell.getCellType()) {
+                case STRING -> compileText(cell.getColumnIndex(), style, cell.getStringCellValue(), fields, line);
+                case NUMERIC -> new CellTemplate<>(cell.getColumnIndex(), style, cell.getNumericCellValue(), null);
+                case BOOLEAN -> new CellTemplate<>(cell.getColumnIndex(), style, cell.getBooleanCellValue(), null);
+                default -> new CellTemplate<>(cell.getColumnIndex(), style, null, null);
+            });
+        }
+        return new RowTemplate<>(index, row.getCTRow().isSetHt() ? row.getHeight() : -1, cells);
+    }
+
+    private static <V> CellTemplate<V> compileText(int column, int style, String text,
+                                                   Map<String, ? extends Function<? super V, ?>> fields, boolean line) {
+        Matcher matcher = PLACEHOLDER.matcher(text);
+        List<Object> parts = new ArrayList<>();
+        int end = 0;
+        while (matcher.find()) {
+            if (matcher.start() > end) {
+                parts.add(text.substring(end, matcher.start()));
+            }
+            parts.add(field(matcher.group(1), fields, line));
+            end = matcher.end();
+        }
+        if (parts.isEmpty()) {
+            return new CellTemplate<>(column, style, text, null);
+        }
+        if (end < text.length()) {
+            parts.add(text.substring(end));
+        }
+        return new CellTemplate<>(column, style, null, parts);
+    }
+
+    private static <V> Function<? super V, ?> field(String name, Map<String, ? extends Function<? super V, ?>> fields,
+                                                    boolean line) {
+        String key = name;
+        if (line) {
+            if (!name.startsWith(LINE_PREFIX)) {
+                throw new IllegalArgumentException("В строке-образце допустимы только подстановки ${line.*}: " + name);
+            }
+            key = name.substring(LINE_PREFIX.length());
+        }
+        Function<? super V, ?> field = fields.get(key);
+        if (field == null) {
+            throw new IllegalArgumentException("Неизвестная подстановка в шаблоне: ${" + name + "}");
+        }
+        return field;
+    }
+
+    private record RowTemplate<V>(int index, short height, List<CellTemplate<V>> cells) {
+
+        void write(Sheet sheet, int rowIndex, V value, CellStyle[] styles) {
+            Row row = sheet.createRow(rowIndex);
+            if (height >= 0) {
+                row.setHeight(height);
+            }
+            for (CellTemplate<V> cell : cells) {
+                cell.write(row, value, styles);
+            }
+        }
+    }
+
+    /**
+     * Ячейка шаблона: постоянное значение либо части текста - строки и поля
+     */
+    private record CellTemplate<V>(int column, int style, Object constant, List<Object> parts) {
+
+        @SuppressWarnings("unchecked")
+        void write(Row row, V value, CellStyle[] styles) {
+            Cell cell = row.createCell(column);
+            cell.setCellStyle(styles[style]);
+            if (parts == null) {
+                setValue(cell, constant);
+            } else if (parts.size() == 1 && parts.get(0) instanceof Function<?, ?> field) {
+                setValue(cell, ((Function<? super V, ?>) field).apply(value));
+            } else {
+                StringBuilder text = new StringBuilder();
+                for (Object part : parts) {
+                    if (part instanceof Function<?, ?> field) {
+                        Object fieldValue = ((Function<? super V, ?>) field).apply(value);
+                        if (fieldValue instanceof LocalDate date) {
+                            text.append(DATE_TEXT.format(date));
+                        } else if (fieldValue != null) {
+                            text.append(fieldValue);
+                        }
+                    } else {
+                        text.append(part);
+                    }
+                }
+                cell.setCellValue(text.toString());
+            }
+        }
+
+        private static void setValue(Cell cell, Object value) {
+            if (value == null) {
+                cell.setBlank();
+            } else if (value instanceof BigDecimal decimal) {
+                cell.setCellValue(decimal.doubleValue());
+            } else if (value instanceof Number number) {
+                cell.setCellValue(number.doubleValue());
+            } else if (value instanceof LocalDate date) {
+                cell.setCellValue(date);
+            } else if (value instanceof Boolean bool) {
+                cell.setCellValue(bool);
+            } else {
+                cell.setCellValue(value.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+-- Перевод orders, order_items, pallets и pallet_items на помесячное секционирование по delivery_date.
+-- Данные переносятся из старых таблиц, последовательности идентификаторов сохраняются.
+
+DROP VIEW IF EXISTS packing_slip_view;
+
+ALTER TABLE pallet_items RENAME TO pallet_items_legacy;
+ALTER TABLE pallets RENAME TO pallets_legacy;
+ALTER TABLE order_items RENAME TO order_items_legacy;
+ALTER TABLE orders RENAME TO orders_legacy;
+
+ALTER INDEX pallet_items_pkey RENAME TO pallet_items_legacy_pkey;
+ALTER INDEX pallets_pkey RENAME TO pallets_legacy_pkey;
+ALTER INDEX order_items_pkey RENAME TO order_items_legacy_pkey;
+ALTER INDEX orders_pkey RENAME TO orders_legacy_pkey;
+
+DROP INDEX IF EXISTS idx_orders_number;
+DROP INDEX IF EXISTS idx_orders_delivery_date;
+DROP INDEX IF EXISTS idx_order_items_order;
+DROP INDEX IF EXISTS idx_pallets_order;
+DROP INDEX IF EXISTS idx_pallet_items_pallet;
+
+ALTER TABLE invoices DROP CONSTRAINT IF EXISTS invoices_order_id_fkey;
+ALTER TABLE invoices ADD COLUMN order_delivery_date DATE;
+COMMENT ON COLUMN invoices.order_delivery_date IS 'Дата доставки заказа (часть ключа секционированной таблицы orders)';
+
+CREATE TABLE orders
+(
+    id               INTEGER                 NOT NULL DEFAULT nextval('orders_id_seq'),
+    number           VARCHAR(50)             NOT NULL,
+    order_date       DATE                    NOT NULL,
+    delivery_date    DATE                    NOT NULL,
+    counteragent_inn VARCHAR(12) REFERENCES counteragents (inn) ON DELETE RESTRICT,
+    warehouse_gln    VARCHAR(13) REFERENCES warehouses (gln) ON DELETE RESTRICT,
+    pallet_count     INTEGER                 NOT NULL DEFAULT 1 CHECK (pallet_count > 0),
+    created_at       TIMESTAMP DEFAULT NOW() NOT NULL,
+    updated_at       TIMESTAMP DEFAULT NOW() NOT NULL,
+    is_deleted       BOOLEAN   DEFAULT false NOT NULL,
+    PRIMARY KEY (id, delivery_date),
+    UNIQUE (number, order_date, delivery_date)
+) PARTITION BY RANGE (delivery_date);
+
+CREATE TABLE order_items
+(
+    id            INTEGER                 NOT NULL DEFAULT nextval('order_items_id_seq'),
+    order_id      INTEGER                 NOT NULL,
+    delivery_date DATE                    NOT NULL,
+    product_id    INTEGER                 NOT NULL REFERENCES products (id) ON DELETE RESTRICT,
+    quantity      INTEGER                 NOT NULL CHECK (quantity > 0),
+    unit_price    DECIMAL(10, 2)          NOT NULL CHECK (unit_price >= 0),
+    total_price   DECIMAL(12, 2) GENERATED ALWAYS AS (quantity * unit_price) STORED,
+    created_at    TIMESTAMP DEFAULT NOW() NOT NULL,
+    updated_at    TIMESTAMP DEFAULT NOW() NOT NULL,
+    is_deleted    BOOLEAN   DEFAULT false NOT NULL,
+    PRIMARY KEY (id, delivery_date),
+    FOREIGN KEY (order_id, delivery_date) REFERENCES orders (id, delivery_date) ON DELETE CASCADE
+) PARTITION BY RANGE (delivery_date);
+
+CREATE TABLE pallets
+(
+    id            INTEGER                 NOT NULL DEFAULT nextval('pallets_id_seq'),
+    order_id      INTEGER                 NOT NULL,
+    delivery_date DATE                    NOT NULL,
+    created_at    TIMESTAMP DEFAULT NOW() NOT NULL,
+    updated_at    TIMESTAMP DEFAULT NOW() NOT NULL,
+    is_deleted    BOOLEAN   DEFAULT false NOT NULL,
+    PRIMARY KEY (id, delivery_date),
+    FOREIGN KEY (order_id, delivery_date) REFERENCES orders (id, delivery_date) ON DELETE CASCADE
+) PARTITION BY RANGE (delivery_date);
+
+CREATE TABLE pallet_items
+(
+    pallet_id     INTEGER NOT NULL,
+    order_item_id INTEGER NOT NULL,
+    delivery_date DATE    NOT NULL,
+    quantity      INTEGER NOT NULL CHECK (quantity > 0),
+    PRIMARY KEY (pallet_id, order_item_id, delivery_date),
+    FOREIGN KEY (pallet_id, delivery_date) REFERENCES pallets (id, delivery_date) ON DELETE CASCADE,
+    FOREIGN KEY (order_item_id, delivery_date) REFERENCES order_items (id, delivery_date) ON DELETE RESTRICT
+) PARTITION BY RANGE (delivery_date);
+
+-- Создание помесячных секций на p_months месяцев начиная с месяца p_from
+CREATE OR REPLACE FUNCTION ensure_delivery_partitions(p_from DATE, p_months INTEGER)
+    RETURNS INTEGER AS
+$$
+DECLARE
+    tbl          TEXT;
+    month_start  DATE;
+    month_end    DATE;
+    part_name    TEXT;
+    created      INTEGER := 0;
+BEGIN
+    FOREACH tbl IN ARRAY ARRAY ['orders', 'order_items', 'pallets', 'pallet_items']
+        LOOP
+            FOR i IN 0..p_months - 1
+                LOOP
+                    month_start := (date_trunc('month', p_from) + make_interval(months => i))::DATE;
+                    month_end := (month_start + INTERVAL '1 month')::DATE;
+                    part_name := format('%s_%s', tbl, to_char(month_start, 'YYYY_MM'));
+                    IF to_regclass(part_name) IS NULL THEN
+                        EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                                       part_name, tbl, month_start, month_end);
+                        created := created + 1;
+                    END IF;
+                END LOOP;
+        END LOOP;
+    RETURN created;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Отсоединение секций старше p_before и перенос их в архивную схему.
+-- Счета к архивируемым заказам копируются в архив и удаляются, внешние ключи отсоединенных секций снимаются.
+CREATE OR REPLACE FUNCTION detach_delivery_partitions(p_before DATE, p_archive_schema TEXT)
+    RETURNS INTEGER AS
+$$
+DECLARE
+    tbl         TEXT;
+    rec         RECORD;
+    fk          RECORD;
+    month_start DATE;
+    detached    INTEGER := 0;
+BEGIN
+    EXECUTE format('CREATE SCHEMA IF NOT EXISTS %I', p_archive_schema);
+
+    -- Сначала ссылающиеся таблицы, затем orders
+    FOREACH tbl IN ARRAY ARRAY ['pallet_items', 'pallets', 'order_items', 'orders']
+        LOOP
+            FOR rec IN
+                SELECT child.relname AS part_name
+                FROM pg_inherits inh
+                         JOIN pg_class parent ON parent.oid = inh.inhparent
+                         JOIN pg_class child ON child.oid = inh.inhrelid
+                WHERE parent.oid = to_regclass(tbl)
+                  AND child.relname ~ '_\d{4}_\d{2}$'
+                ORDER BY child.relname
+                LOOP
+                    month_start := to_date(right(rec.part_name, 7), 'YYYY_MM');
+                    CONTINUE WHEN month_start + INTERVAL '1 month' > date_trunc('month', p_before);
+
+                    IF tbl = 'orders' THEN
+                        EXECUTE format('CREATE TABLE IF NOT EXISTS %I.%I AS SELECT * FROM invoices WHERE false',
+                                       p_archive_schema, 'invoices_' || right(rec.part_name, 7));
+                        EXECUTE format('INSERT INTO %I.%I SELECT * FROM invoices WHERE order_delivery_date >= %L AND order_delivery_date < %L',
+                                       p_archive_schema, 'invoices_' || right(rec.part_name, 7),
+                                       month_start, month_start + INTERVAL '1 month');
+                        DELETE FROM invoices
+                        WHERE order_delivery_date >= month_start
+                          AND order_delivery_date < month_start + INTERVAL '1 month';
+                    END IF;
+
+                    EXECUTE format('ALTER TABLE %I DETACH PARTITION %I', tbl, rec.part_name);
+                    FOR fk IN
+                        SELECT conname FROM pg_constraint
+                        WHERE conrelid = to_regclass(rec.part_name) AND contype = 'f'
+                        LOOP
+                            EXECUTE format('ALTER TABLE %I DROP CONSTRAINT %I', rec.part_name, fk.conname);
+                        END LOOP;
+                    EXECUTE format('ALTER TABLE %I SET SCHEMA %I', rec.part_name, p_archive_schema);
+                    detached := detached + 1;
+                END LOOP;
+        END LOOP;
+    RETURN detached;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Секции на весь диапазон имеющихся данных плюс три месяца вперед
+SELECT ensure_delivery_partitions(bounds.first_month::DATE,
+                                  ((EXTRACT(YEAR FROM bounds.last_month) - EXTRACT(YEAR FROM bounds.first_month)) * 12
+                                      + EXTRACT(MONTH FROM bounds.last_month) - EXTRACT(MONTH FROM bounds.first_month)
+                                      + 1)::INTEGER)
+FROM (SELECT date_trunc('month', LEAST(COALESCE(MIN(delivery_date), CURRENT_DATE), CURRENT_DATE))      AS first_month,
+             date_trunc('month', GREATEST(COALESCE(MAX(delivery_date), CURRENT_DATE),
+                                          CURRENT_DATE + INTERVAL '3 months'))                            AS last_month
+      FROM orders_legacy) bounds;
+
+INSERT INTO orders (id, number, order_date, delivery_date, counteragent_inn, warehouse_gln, pallet_count,
+                    created_at, updated_at, is_deleted)
+SELECT id, number, order_date, delivery_date, counteragent_inn, warehouse_gln, pallet_count,
+       created_at, updated_at, is_deleted
+FROM orders_legacy;
+
+INSERT INTO order_items (id, order_id, delivery_date, product_id, quantity, unit_price, created_at, updated_at, is_deleted)
+SELECT oi.id, oi.order_id, o.delivery_date, oi.product_id, oi.quantity, oi.unit_price, oi.created_at, oi.updated_at, oi.is_deleted
+FROM order_items_legacy oi
+         JOIN orders_legacy o ON o.id = oi.order_id;
+
+INSERT INTO pallets (id, order_id, delivery_date, created_at, updated_at, is_deleted)
+SELECT p.id, p.order_id, o.delivery_date, p.created_at, p.updated_at, p.is_deleted
+FROM pallets_legacy p
+         JOIN orders_legacy o ON o.id = p.order_id;
+
+INSERT INTO pallet_items (pallet_id, order_item_id, delivery_date, quantity)
+SELECT pi.pallet_id, pi.order_item_id, o.delivery_date, pi.quantity
+FROM pallet_items_legacy pi
+         JOIN pallets_legacy p ON p.id = pi.pallet_id
+         JOIN orders_legacy o ON o.id = p.order_id;
+
+UPDATE invoices inv
+SET order_delivery_date = o.delivery_date
+FROM orders o
+WHERE o.id = inv.order_id;
+
+ALTER TABLE invoices
+    ADD FOREIGN KEY (order_id, order_delivery_date) REFERENCES orders (id, delivery_date) ON DELETE CASCADE;
+
+ALTER SEQUENCE orders_id_seq OWNED BY orders.id;
+ALTER SEQUENCE order_items_id_seq OWNED BY order_items.id;
+ALTER SEQUENCE pallets_id_seq OWNED BY pallets.id;
+
+DROP TABLE pallet_items_legacy;
+DROP TABLE pallets_legacy;
+DROP TABLE order_items_legacy;
+DROP TABLE orders_legacy;
+
+CREATE INDEX idx_orders_number ON orders (number);
+CREATE INDEX idx_orders_delivery_date ON orders (delivery_date);
+CREATE INDEX idx_order_items_order ON order_items (order_id);
+CREATE INDEX idx_pallets_order ON pallets (order_id);
+CREATE INDEX idx_pallet_items_pallet ON pallet_items (pallet_id);
+CREATE INDEX idx_pallet_items_order_item ON pallet_items (order_item_id);
+
+CREATE TRIGGER update_orders_modtime
+    BEFORE UPDATE
+    ON orders
+    FOR EACH ROW
+EXECUTE FUNCTION update_modified_column();
+
+CREATE TRIGGER update_order_items_modtime
+    BEFORE UPDATE
+    ON order_items
+    FOR EACH ROW
+EXECUTE FUNCTION update_modified_column();
+
+CREATE TRIGGER update_pallets_modtime
+    BEFORE UPDATE
+    ON pallets
+    FOR EACH ROW
+EXECUTE FUNCTION update_modified_column();
+
+CREATE OR REPLACE FUNCTION check_pallet_quantity()
+    RETURNS TRIGGER AS
+$$
+DECLARE
+    max_qty INTEGER;
+BEGIN
+    SELECT oi.quantity
+    INTO max_qty
+    FROM order_items oi
+    WHERE oi.id = NEW.order_item_id
+      AND oi.delivery_date = NEW.delivery_date;
+
+    IF NEW.quantity > max_qty THEN
+        RAISE EXCEPTION 'Количество на паллете (%) превышает заказанное (%)', NEW.quantity, max_qty;
+    END IF;
+
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER pallet_quantity_check
+    BEFORE INSERT OR UPDATE
+    ON pallet_items
+    FOR EACH ROW
+EXECUTE FUNCTION check_pallet_quantity();
+
+-- Представление для упаковочных листов
+CREATE OR REPLACE VIEW packing_slip_view AS
+SELECT o.number                                            AS order_number,
+       o.order_date,
+       o.delivery_date,
+       o.pallet_count                                      AS total_pallets,
+       w.gln                                               AS warehouse_gln,
+       w.address                                           AS warehouse_address,
+       w.region                                            AS warehouse_region,
+       inv.number                                          AS invoice_number,
+       inv.issue_date                                      AS invoice_date,
+       p.id                                                AS pallet_id,
+       ROW_NUMBER() OVER (PARTITION BY o.id ORDER BY p.id) AS pallet_number,
+       prod.name                                           AS product_name,
+       prod.internal_barcode                               AS product_barcode,
+       prod.internal_sku                                   AS product_sku,
+       pg.name                                             AS product_group,
+       pi.quantity                                         AS quantity_on_pallet,
+       oi.unit_price                                       AS product_price,
+       (pi.quantity * oi.unit_price)                       AS total_price
+FROM orders o
+         JOIN warehouses w ON o.warehouse_gln = w.gln
+         LEFT JOIN invoices inv ON o.id = inv.order_id
+         JOIN pallets p ON o.id = p.order_id AND o.delivery_date = p.delivery_date
+         JOIN pallet_items pi ON p.id = pi.pallet_id AND p.delivery_date = pi.delivery_date
+         JOIN order_items oi ON pi.order_item_id = oi.id AND pi.delivery_date = oi.delivery_date
+         JOIN products prod ON oi.product_id = prod.id
+         JOIN product_groups pg ON prod.group_id = pg.id
+WHERE o.is_deleted = false
+  AND p.is_deleted = false;
+
+
+COMMENT ON VIEW packing_slip_view IS 'Готовые упаковочные листы для печати';
@@ -0,0 +1,23 @@
+-- Замена индексов поиска на частичные (только активные записи) и индексы для очистки "надгробий"
+
+DROP INDEX IF EXISTS idx_orders_number;
+DROP INDEX IF EXISTS idx_orders_delivery_date;
+DROP INDEX IF EXISTS idx_invoices_number;
+DROP INDEX IF EXISTS idx_invoices_issue_date;
+DROP INDEX IF EXISTS idx_products_barcode;
+DROP INDEX IF EXISTS idx_products_group;
+
+CREATE INDEX idx_orders_number ON orders (number) WHERE is_deleted = false;
+CREATE INDEX idx_orders_delivery_date ON orders (delivery_date) WHERE is_deleted = false;
+CREATE INDEX idx_orders_warehouse_delivery ON orders (warehouse_gln, delivery_date) WHERE is_deleted = false;
+CREATE INDEX idx_invoices_number ON invoices (number) WHERE is_deleted = false;
+CREATE INDEX idx_invoices_issue_date ON invoices (issue_date) WHERE is_deleted = false;
+CREATE INDEX idx_products_barcode ON products (internal_barcode) WHERE is_deleted = false;
+CREATE INDEX idx_products_external_barcode ON products (external_barcode) WHERE is_deleted = false;
+CREATE INDEX idx_products_external_sku ON products (external_sku) WHERE is_deleted = false;
+CREATE INDEX idx_products_name ON products (name) WHERE is_deleted = false;
+CREATE INDEX idx_products_group ON products (group_id) WHERE is_deleted = false;
+
+CREATE INDEX idx_orders_tombstones ON orders (updated_at) WHERE is_deleted = true;
+CREATE INDEX idx_order_items_tombstones ON order_items (updated_at) WHERE is_deleted = true;
+CREATE INDEX idx_pallets_tombstones ON pallets (updated_at) WHERE is_deleted = true;
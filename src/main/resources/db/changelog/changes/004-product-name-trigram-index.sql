@@ -0,0 +1,5 @@
+-- Триграммный индекс для нечеткого сопоставления названий товаров при импорте
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX idx_products_name_trgm ON products USING gin (name gin_trgm_ops) WHERE is_deleted = false;
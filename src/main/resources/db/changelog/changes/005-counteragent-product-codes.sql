@@ -0,0 +1,24 @@
+-- Внешние коды товаров в разрезе контрагентов
+
+CREATE TABLE counteragent_product_codes
+(
+    id               SERIAL PRIMARY KEY,
+    counteragent_inn VARCHAR(12)             NOT NULL REFERENCES counteragents (inn) ON DELETE CASCADE,
+    external_code    VARCHAR(50)             NOT NULL,
+    product_id       INTEGER                 NOT NULL REFERENCES products (id) ON DELETE CASCADE,
+    created_at       TIMESTAMP DEFAULT NOW() NOT NULL,
+    updated_at       TIMESTAMP DEFAULT NOW() NOT NULL,
+    UNIQUE (counteragent_inn, external_code)
+);
+
+COMMENT ON TABLE counteragent_product_codes IS 'Сопоставление кодов товаров контрагентов с номенклатурой';
+
+CREATE INDEX idx_counteragent_product_codes_product ON counteragent_product_codes (product_id);
+
+CREATE TRIGGER update_counteragent_product_codes_modtime
+    BEFORE UPDATE
+    ON counteragent_product_codes
+    FOR EACH ROW
+EXECUTE FUNCTION update_modified_column();
+
+-- Перенос уже известных внешних кодов не выполняется: в products они не привязаны к контрагенту
@@ -0,0 +1,113 @@
+-- Транзакционный outbox и таблицы производных данных (сводки по складам, агрегаты паллет)
+
+-- Сводка по складу и дате доставки (производные данные, пересчитываются асинхронно)
+CREATE TABLE warehouse_daily_summaries
+(
+    warehouse_gln  VARCHAR(13)             NOT NULL,
+    delivery_date  DATE                    NOT NULL,
+    orders_count   INTEGER                 NOT NULL,
+    items_count    INTEGER                 NOT NULL,
+    total_quantity BIGINT                  NOT NULL,
+    total_amount   DECIMAL(14, 2)          NOT NULL,
+    pallet_count   INTEGER                 NOT NULL,
+    updated_at     TIMESTAMP DEFAULT NOW() NOT NULL,
+    PRIMARY KEY (warehouse_gln, delivery_date)
+);
+
+COMMENT ON TABLE warehouse_daily_summaries IS 'Сводная таблица по складам и датам доставки';
+
+CREATE INDEX idx_warehouse_daily_summaries_date ON warehouse_daily_summaries (delivery_date);
+
+-- Агрегаты паллет (производные данные, пересчитываются асинхронно)
+CREATE TABLE pallet_aggregates
+(
+    pallet_id       INTEGER                 NOT NULL,
+    delivery_date   DATE                    NOT NULL,
+    items_count     INTEGER                 NOT NULL,
+    total_quantity  BIGINT                  NOT NULL,
+    total_value     DECIMAL(14, 2)          NOT NULL,
+    occupied_places DOUBLE PRECISION        NOT NULL,
+    updated_at      TIMESTAMP DEFAULT NOW() NOT NULL,
+    PRIMARY KEY (pallet_id, delivery_date)
+);
+
+COMMENT ON TABLE pallet_aggregates IS 'Итоги по паллетам: позиции, количество, стоимость, занятые места';
+
+-- Транзакционный outbox: события изменений пишутся триггерами в той же транзакции
+CREATE TABLE outbox_events
+(
+    id            BIGSERIAL PRIMARY KEY,
+    source_table  VARCHAR(30)             NOT NULL,
+    operation     VARCHAR(10)             NOT NULL,
+    warehouse_gln VARCHAR(13),
+    delivery_date DATE,
+    pallet_id     INTEGER,
+    created_at    TIMESTAMP DEFAULT NOW() NOT NULL
+);
+
+COMMENT ON TABLE outbox_events IS 'Очередь событий изменений для асинхронного пересчета производных данных';
+
+CREATE OR REPLACE FUNCTION enqueue_outbox_event()
+    RETURNS TRIGGER AS
+$$
+DECLARE
+    source TEXT := TG_ARGV[0];
+    gln    VARCHAR(13);
+BEGIN
+    IF source = 'orders' THEN
+        IF TG_OP <> 'INSERT' THEN
+            INSERT INTO outbox_events (source_table, operation, warehouse_gln, delivery_date)
+            VALUES (source, TG_OP, OLD.warehouse_gln, OLD.delivery_date);
+        END IF;
+        IF TG_OP <> 'DELETE' AND (TG_OP = 'INSERT'
+            OR NEW.warehouse_gln IS DISTINCT FROM OLD.warehouse_gln
+            OR NEW.delivery_date IS DISTINCT FROM OLD.delivery_date) THEN
+            INSERT INTO outbox_events (source_table, operation, warehouse_gln, delivery_date)
+            VALUES (source, TG_OP, NEW.warehouse_gln, NEW.delivery_date);
+        END IF;
+    ELSIF source IN ('order_items', 'pallets') THEN
+        IF TG_OP = 'DELETE' THEN
+            SELECT o.warehouse_gln INTO gln FROM orders o WHERE o.id = OLD.order_id AND o.delivery_date = OLD.delivery_date;
+            INSERT INTO outbox_events (source_table, operation, warehouse_gln, delivery_date, pallet_id)
+            VALUES (source, TG_OP, gln, OLD.delivery_date, CASE WHEN source = 'pallets' THEN OLD.id END);
+        ELSE
+            SELECT o.warehouse_gln INTO gln FROM orders o WHERE o.id = NEW.order_id AND o.delivery_date = NEW.delivery_date;
+            INSERT INTO outbox_events (source_table, operation, warehouse_gln, delivery_date, pallet_id)
+            VALUES (source, TG_OP, gln, NEW.delivery_date, CASE WHEN source = 'pallets' THEN NEW.id END);
+        END IF;
+    ELSIF source = 'pallet_items' THEN
+        IF TG_OP = 'DELETE' THEN
+            INSERT INTO outbox_events (source_table, operation, delivery_date, pallet_id)
+            VALUES (source, TG_OP, OLD.delivery_date, OLD.pallet_id);
+        ELSE
+            INSERT INTO outbox_events (source_table, operation, delivery_date, pallet_id)
+            VALUES (source, TG_OP, NEW.delivery_date, NEW.pallet_id);
+        END IF;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER orders_outbox
+    AFTER INSERT OR UPDATE OR DELETE
+    ON orders
+    FOR EACH ROW
+EXECUTE FUNCTION enqueue_outbox_event('orders');
+
+CREATE TRIGGER order_items_outbox
+    AFTER INSERT OR UPDATE OR DELETE
+    ON order_items
+    FOR EACH ROW
+EXECUTE FUNCTION enqueue_outbox_event('order_items');
+
+CREATE TRIGGER pallets_outbox
+    AFTER INSERT OR UPDATE OR DELETE
+    ON pallets
+    FOR EACH ROW
+EXECUTE FUNCTION enqueue_outbox_event('pallets');
+
+CREATE TRIGGER pallet_items_outbox
+    AFTER INSERT OR UPDATE OR DELETE
+    ON pallet_items
+    FOR EACH ROW
+EXECUTE FUNCTION enqueue_outbox_event('pallet_items');
@@ -0,0 +1,48 @@
+-- Очередь фоновых задач и файлы задач
+
+CREATE TABLE jobs
+(
+    id           BIGSERIAL PRIMARY KEY,
+    job_type     VARCHAR(50)             NOT NULL,
+    payload      TEXT,
+    status       VARCHAR(20)             NOT NULL DEFAULT 'queued'
+        CHECK (status IN ('queued', 'running', 'done', 'failed')),
+    attempts     INTEGER                 NOT NULL DEFAULT 0,
+    max_attempts INTEGER                 NOT NULL DEFAULT 5 CHECK (max_attempts > 0),
+    run_after    TIMESTAMP DEFAULT NOW() NOT NULL,
+    locked_by    VARCHAR(100),
+    locked_until TIMESTAMP,
+    heartbeat_at TIMESTAMP,
+    last_error   TEXT,
+    result       TEXT,
+    created_at   TIMESTAMP DEFAULT NOW() NOT NULL,
+    updated_at   TIMESTAMP DEFAULT NOW() NOT NULL,
+    finished_at  TIMESTAMP
+);
+
+COMMENT ON TABLE jobs IS 'Очередь фоновых задач: импорт, планирование, выгрузки';
+COMMENT ON COLUMN jobs.locked_until IS 'Окончание аренды: после него задача считается брошенной и возвращается в очередь';
+
+-- Выбор готовых к запуску задач и подсчет выполняющихся по типу
+CREATE INDEX idx_jobs_queued ON jobs (job_type, run_after, id) WHERE status = 'queued';
+CREATE INDEX idx_jobs_running ON jobs (job_type, locked_until) WHERE status = 'running';
+CREATE INDEX idx_jobs_finished ON jobs (finished_at) WHERE status IN ('done', 'failed');
+
+-- Файлы задач: входные (загруженный XLSX) и результаты (отчеты, выгрузки)
+CREATE TABLE job_files
+(
+    job_id       BIGINT                  NOT NULL REFERENCES jobs (id) ON DELETE CASCADE,
+    name         VARCHAR(100)            NOT NULL,
+    content_type VARCHAR(100)            NOT NULL,
+    content      BYTEA                   NOT NULL,
+    created_at   TIMESTAMP DEFAULT NOW() NOT NULL,
+    PRIMARY KEY (job_id, name)
+);
+
+COMMENT ON TABLE job_files IS 'Входные и выходные файлы фоновых задач';
+
+CREATE TRIGGER update_jobs_modtime
+    BEFORE UPDATE
+    ON jobs
+    FOR EACH ROW
+EXECUTE FUNCTION update_modified_column();
@@ -0,0 +1,3 @@
+-- Версия сводки за период для условных GET (ETag / Last-Modified) считается по индексу без чтения таблицы
+DROP INDEX IF EXISTS idx_warehouse_daily_summaries_date;
+CREATE INDEX idx_warehouse_daily_summaries_date ON warehouse_daily_summaries (delivery_date) INCLUDE (updated_at);
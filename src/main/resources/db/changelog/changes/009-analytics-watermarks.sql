@@ -0,0 +1,3 @@
+-- Догрузка изменений в снимок продаж выбирает заказы и позиции по updated_at
+CREATE INDEX idx_orders_updated_at ON orders (updated_at);
+CREATE INDEX idx_order_items_updated_at ON order_items (updated_at);
@@ -0,0 +1,30 @@
+-- Рейсы: паллеты дня доставки, распределённые по машинам в пределах региона складов
+CREATE TABLE shipments
+(
+    id             SERIAL PRIMARY KEY,
+    delivery_date  DATE                    NOT NULL,
+    region         VARCHAR(100)            NOT NULL,
+    vehicle_number INTEGER                 NOT NULL,
+    pallet_count   INTEGER                 NOT NULL,
+    total_weight   DOUBLE PRECISION        NOT NULL,
+    created_at     TIMESTAMP DEFAULT NOW() NOT NULL,
+    UNIQUE (delivery_date, region, vehicle_number)
+);
+
+COMMENT ON TABLE shipments IS 'Рейсы: машины дня доставки по регионам складов';
+COMMENT ON COLUMN shipments.total_weight IS 'Расчётный вес паллет: количество × упаковочный коэффициент';
+
+-- Паллеты секционированы и уходят в архив целыми секциями, поэтому внешнего ключа на pallets нет
+CREATE TABLE shipment_pallets
+(
+    shipment_id   INTEGER          NOT NULL REFERENCES shipments (id) ON DELETE CASCADE,
+    pallet_id     INTEGER          NOT NULL,
+    delivery_date DATE             NOT NULL,
+    load_order    INTEGER          NOT NULL,
+    weight        DOUBLE PRECISION NOT NULL,
+    PRIMARY KEY (pallet_id, delivery_date)
+);
+
+COMMENT ON TABLE shipment_pallets IS 'Паллеты в машинах рейсов с порядком погрузки';
+
+CREATE INDEX idx_shipment_pallets_shipment ON shipment_pallets (shipment_id);
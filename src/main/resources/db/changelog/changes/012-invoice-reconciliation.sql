@@ -0,0 +1,44 @@
+ALTER TABLE invoices
+    ADD COLUMN order_number VARCHAR(50),
+    ADD COLUMN amount       DECIMAL(12, 2) CHECK (amount >= 0);
+
+COMMENT ON COLUMN invoices.order_number IS 'Номер заказа, указанный в счете (для сверки счетов без ссылки на заказ)';
+COMMENT ON COLUMN invoices.amount IS 'Сумма счета';
+
+CREATE INDEX idx_invoices_order_delivery_date ON invoices (order_delivery_date) WHERE is_deleted = false;
+
+-- Сверка счетов с заказами за период доставки: запуск и найденные расхождения
+CREATE TABLE invoice_reconciliations
+(
+    id          BIGSERIAL PRIMARY KEY,
+    period_from DATE                    NOT NULL,
+    period_to   DATE                    NOT NULL,
+    orders      INTEGER                 NOT NULL,
+    invoices    INTEGER                 NOT NULL,
+    issues      INTEGER                 NOT NULL,
+    created_at  TIMESTAMP DEFAULT NOW() NOT NULL
+);
+
+COMMENT ON TABLE invoice_reconciliations IS 'Запуски сверки счетов с заказами';
+
+CREATE INDEX idx_invoice_reconciliations_period ON invoice_reconciliations (period_from, period_to);
+
+-- Заказы и счета уходят в архив вместе с секциями, поэтому внешних ключей на них нет
+CREATE TABLE invoice_reconciliation_issues
+(
+    reconciliation_id   BIGINT      NOT NULL REFERENCES invoice_reconciliations (id) ON DELETE CASCADE,
+    issue               VARCHAR(20) NOT NULL
+        CHECK (issue IN ('missing', 'duplicate', 'late', 'amount_mismatch', 'inn_mismatch', 'unmatched')),
+    order_id            INTEGER,
+    order_delivery_date DATE,
+    order_number        VARCHAR(50),
+    invoice_id          INTEGER,
+    invoice_number      VARCHAR(50),
+    counteragent_inn    VARCHAR(12),
+    order_amount        DECIMAL(12, 2),
+    invoice_amount      DECIMAL(12, 2)
+);
+
+COMMENT ON TABLE invoice_reconciliation_issues IS 'Расхождения сверки: нет счета, повторный счет, счет после доставки, расхождение суммы или контрагента, счет без заказа';
+
+CREATE INDEX idx_invoice_reconciliation_issues_run ON invoice_reconciliation_issues (reconciliation_id, issue);
@@ -0,0 +1,31 @@
+-- Окно нумерации паллет по естественному ключу заказа: отбор по номеру и датам заказа
+-- проталкивается под оконную функцию, и лист одного заказа не требует вычислять представление целиком
+CREATE OR REPLACE VIEW packing_slip_view AS
+SELECT o.number                                            AS order_number,
+       o.order_date,
+       o.delivery_date,
+       o.pallet_count                                      AS total_pallets,
+       w.gln                                               AS warehouse_gln,
+       w.address                                           AS warehouse_address,
+       w.region                                            AS warehouse_region,
+       inv.number                                          AS invoice_number,
+       inv.issue_date                                      AS invoice_date,
+       p.id                                                AS pallet_id,
+       DENSE_RANK() OVER (PARTITION BY o.number, o.order_date, o.delivery_date ORDER BY p.id) AS pallet_number,
+       prod.name                                           AS product_name,
+       prod.internal_barcode                               AS product_barcode,
+       prod.internal_sku                                   AS product_sku,
+       pg.name                                             AS product_group,
+       pi.quantity                                         AS quantity_on_pallet,
+       oi.unit_price                                       AS product_price,
+       (pi.quantity * oi.unit_price)                       AS total_price
+FROM orders o
+         JOIN warehouses w ON o.warehouse_gln = w.gln
+         LEFT JOIN invoices inv ON o.id = inv.order_id
+         JOIN order_items oi ON o.id = oi.order_id AND o.delivery_date = oi.delivery_date
+         JOIN pallet_items pi ON oi.id = pi.order_item_id AND oi.delivery_date = pi.delivery_date
+         JOIN pallets p ON pi.pallet_id = p.id AND pi.delivery_date = p.delivery_date
+         JOIN products prod ON oi.product_id = prod.id
+         JOIN product_groups pg ON prod.group_id = pg.id
+WHERE o.is_deleted = false
+  AND p.is_deleted = false;
@@ -0,0 +1,67 @@
+CREATE OR REPLACE FUNCTION enqueue_outbox_event()
+    RETURNS TRIGGER AS
+$$
+DECLARE
+    source TEXT := TG_ARGV[0];
+    gln    VARCHAR(13);
+BEGIN
+    -- Архивация заказов удаляет строки, не меняя производных данных: сводки за архивные даты сохраняются
+    IF current_setting('tehnoseti.archiving', true) = 'on' THEN
+        RETURN NULL;
+    END IF;
+    IF source = 'orders' THEN
+        IF TG_OP <> 'INSERT' THEN
+            INSERT INTO outbox_events (source_table, operation, warehouse_gln, delivery_date)
+            VALUES (source, TG_OP, OLD.warehouse_gln, OLD.delivery_date);
+        END IF;
+        IF TG_OP <> 'DELETE' AND (TG_OP = 'INSERT'
+            OR NEW.warehouse_gln IS DISTINCT FROM OLD.warehouse_gln
+            OR NEW.delivery_date IS DISTINCT FROM OLD.delivery_date) THEN
+            INSERT INTO outbox_events (source_table, operation, warehouse_gln, delivery_date)
+            VALUES (source, TG_OP, NEW.warehouse_gln, NEW.delivery_date);
+        END IF;
+    ELSIF source IN ('order_items', 'pallets') THEN
+        IF TG_OP = 'DELETE' THEN
+            SELECT o.warehouse_gln INTO gln FROM orders o WHERE o.id = OLD.order_id AND o.delivery_date = OLD.delivery_date;
+            INSERT INTO outbox_events (source_table, operation, warehouse_gln, delivery_date, pallet_id)
+            VALUES (source, TG_OP, gln, OLD.delivery_date, CASE WHEN source = 'pallets' THEN OLD.id END);
+        ELSE
+            SELECT o.warehouse_gln INTO gln FROM orders o WHERE o.id = NEW.order_id AND o.delivery_date = NEW.delivery_date;
+            INSERT INTO outbox_events (source_table, operation, warehouse_gln, delivery_date, pallet_id)
+            VALUES (source, TG_OP, gln, NEW.delivery_date, CASE WHEN source = 'pallets' THEN NEW.id END);
+        END IF;
+    ELSIF source = 'pallet_items' THEN
+        IF TG_OP = 'DELETE' THEN
+            INSERT INTO outbox_events (source_table, operation, delivery_date, pallet_id)
+            VALUES (source, TG_OP, OLD.delivery_date, OLD.pallet_id);
+        ELSE
+            INSERT INTO outbox_events (source_table, operation, delivery_date, pallet_id)
+            VALUES (source, TG_OP, NEW.delivery_date, NEW.pallet_id);
+        END IF;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Указатель архива заказов: заказ, файл дня доставки и сжатый блок внутри файла
+CREATE TABLE order_archive_index
+(
+    order_id         INTEGER                 NOT NULL PRIMARY KEY,
+    delivery_date    DATE                    NOT NULL,
+    number           VARCHAR(50)             NOT NULL,
+    order_date       DATE                    NOT NULL,
+    counteragent_inn VARCHAR(12),
+    warehouse_gln    VARCHAR(13),
+    pallet_count     INTEGER                 NOT NULL,
+    file             VARCHAR(100)            NOT NULL,
+    block_offset     BIGINT                  NOT NULL,
+    block_length     INTEGER                 NOT NULL,
+    archived_at      TIMESTAMP DEFAULT NOW() NOT NULL
+);
+
+COMMENT ON TABLE order_archive_index IS 'Заказы, перенесенные в файловый архив: где лежит запись заказа';
+COMMENT ON COLUMN order_archive_index.file IS 'Файл архива относительно каталога архива (gzip из независимых блоков, внутри NDJSON)';
+COMMENT ON COLUMN order_archive_index.block_offset IS 'Смещение сжатого блока с заказом в файле';
+
+CREATE INDEX idx_order_archive_index_number ON order_archive_index (number);
+CREATE INDEX idx_order_archive_index_delivery_date ON order_archive_index (delivery_date);
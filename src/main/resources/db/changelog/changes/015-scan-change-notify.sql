@@ -0,0 +1,63 @@
+-- Уведомление экземпляров приложения об изменении состава или раскладки заказа.
+-- Полезная нагрузка - id заказа; одинаковые уведомления в одной транзакции PostgreSQL схлопывает,
+-- поэтому на заказ приходится одно уведомление независимо от числа изменённых строк.
+CREATE OR REPLACE FUNCTION notify_scan_change()
+    RETURNS TRIGGER AS
+$$
+DECLARE
+    source TEXT := TG_ARGV[0];
+    new_id INTEGER;
+    old_id INTEGER;
+BEGIN
+    -- Архивные заказы не сканируются, а рабочие наборы по ним вытесняются по простою
+    IF current_setting('tehnoseti.archiving', true) = 'on' THEN
+        RETURN NULL;
+    END IF;
+    IF source = 'orders' THEN
+        IF TG_OP <> 'INSERT' THEN
+            old_id := OLD.id;
+        END IF;
+    ELSIF source = 'order_items' THEN
+        IF TG_OP <> 'INSERT' THEN
+            old_id := OLD.order_id;
+        END IF;
+        IF TG_OP <> 'DELETE' THEN
+            new_id := NEW.order_id;
+        END IF;
+    ELSIF source = 'pallet_items' THEN
+        IF TG_OP <> 'INSERT' THEN
+            SELECT oi.order_id INTO old_id FROM order_items oi
+            WHERE oi.id = OLD.order_item_id AND oi.delivery_date = OLD.delivery_date;
+        END IF;
+        IF TG_OP <> 'DELETE' THEN
+            SELECT oi.order_id INTO new_id FROM order_items oi
+            WHERE oi.id = NEW.order_item_id AND oi.delivery_date = NEW.delivery_date;
+        END IF;
+    END IF;
+    IF old_id IS NOT NULL THEN
+        PERFORM pg_notify('scan_working_set_changed', old_id::TEXT);
+    END IF;
+    IF new_id IS NOT NULL AND new_id IS DISTINCT FROM old_id THEN
+        PERFORM pg_notify('scan_working_set_changed', new_id::TEXT);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER orders_scan_notify
+    AFTER UPDATE OR DELETE
+    ON orders
+    FOR EACH ROW
+EXECUTE FUNCTION notify_scan_change('orders');
+
+CREATE TRIGGER order_items_scan_notify
+    AFTER INSERT OR UPDATE OR DELETE
+    ON order_items
+    FOR EACH ROW
+EXECUTE FUNCTION notify_scan_change('order_items');
+
+CREATE TRIGGER pallet_items_scan_notify
+    AFTER INSERT OR UPDATE OR DELETE
+    ON pallet_items
+    FOR EACH ROW
+EXECUTE FUNCTION notify_scan_change('pallet_items');
@@ -0,0 +1,19 @@
+-- Позиции мягко удалённого заказа, снятые со сборных паллет, которые остались у других заказов.
+-- Хранятся до восстановления заказа (возвращаются на паллету) или до окончательного удаления позиции.
+CREATE TABLE detached_pallet_items
+(
+    pallet_id     INTEGER                 NOT NULL,
+    order_item_id INTEGER                 NOT NULL,
+    delivery_date DATE                    NOT NULL,
+    order_id      INTEGER                 NOT NULL,
+    quantity      INTEGER                 NOT NULL CHECK (quantity > 0),
+    detached_at   TIMESTAMP DEFAULT NOW() NOT NULL,
+    PRIMARY KEY (pallet_id, order_item_id, delivery_date),
+    FOREIGN KEY (pallet_id, delivery_date) REFERENCES pallets (id, delivery_date) ON DELETE CASCADE,
+    FOREIGN KEY (order_item_id, delivery_date) REFERENCES order_items (id, delivery_date) ON DELETE CASCADE
+);
+
+COMMENT ON TABLE detached_pallet_items IS 'Раскладка мягко удалённых заказов на сборных паллетах для восстановления';
+
+CREATE INDEX idx_detached_pallet_items_order ON detached_pallet_items (order_id);
+CREATE INDEX idx_detached_pallet_items_order_item ON detached_pallet_items (order_item_id, delivery_date);
@@ -0,0 +1,62 @@
+-- Мягкое удаление и восстановление паллеты меняет количество, размещённое по заказам:
+-- рабочие наборы сканирования всех заказов на паллете должны перечитаться.
+CREATE OR REPLACE FUNCTION notify_scan_change()
+    RETURNS TRIGGER AS
+$$
+DECLARE
+    source TEXT := TG_ARGV[0];
+    new_id INTEGER;
+    old_id INTEGER;
+BEGIN
+    -- Архивные заказы не сканируются, а рабочие наборы по ним вытесняются по простою
+    IF current_setting('tehnoseti.archiving', true) = 'on' THEN
+        RETURN NULL;
+    END IF;
+    IF source = 'orders' THEN
+        IF TG_OP <> 'INSERT' THEN
+            old_id := OLD.id;
+        END IF;
+    ELSIF source = 'order_items' THEN
+        IF TG_OP <> 'INSERT' THEN
+            old_id := OLD.order_id;
+        END IF;
+        IF TG_OP <> 'DELETE' THEN
+            new_id := NEW.order_id;
+        END IF;
+    ELSIF source = 'pallets' THEN
+        -- Удаление и восстановление паллеты меняет размещённое количество всех заказов на ней (сборная паллета)
+        FOR new_id IN SELECT DISTINCT oi.order_id
+                      FROM pallet_items pi
+                               JOIN order_items oi ON oi.id = pi.order_item_id AND oi.delivery_date = pi.delivery_date
+                      WHERE pi.pallet_id = NEW.id
+                        AND pi.delivery_date = NEW.delivery_date
+            LOOP
+                PERFORM pg_notify('scan_working_set_changed', new_id::TEXT);
+            END LOOP;
+        RETURN NULL;
+    ELSIF source = 'pallet_items' THEN
+        IF TG_OP <> 'INSERT' THEN
+            SELECT oi.order_id INTO old_id FROM order_items oi
+            WHERE oi.id = OLD.order_item_id AND oi.delivery_date = OLD.delivery_date;
+        END IF;
+        IF TG_OP <> 'DELETE' THEN
+            SELECT oi.order_id INTO new_id FROM order_items oi
+            WHERE oi.id = NEW.order_item_id AND oi.delivery_date = NEW.delivery_date;
+        END IF;
+    END IF;
+    IF old_id IS NOT NULL THEN
+        PERFORM pg_notify('scan_working_set_changed', old_id::TEXT);
+    END IF;
+    IF new_id IS NOT NULL AND new_id IS DISTINCT FROM old_id THEN
+        PERFORM pg_notify('scan_working_set_changed', new_id::TEXT);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER pallets_scan_notify
+    AFTER UPDATE OF is_deleted
+    ON pallets
+    FOR EACH ROW
+    WHEN (OLD.is_deleted IS DISTINCT FROM NEW.is_deleted)
+EXECUTE FUNCTION notify_scan_change('pallets');
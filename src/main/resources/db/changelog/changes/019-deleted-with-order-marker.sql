@@ -0,0 +1,33 @@
+-- Отметка строк, удалённых каскадом вместе с заказом: восстановление заказа возвращает именно их,
+-- не полагаясь на совпадение updated_at с заказом (любое позднее изменение строки его ломает)
+ALTER TABLE order_items
+    ADD COLUMN deleted_with_order BOOLEAN DEFAULT false NOT NULL;
+ALTER TABLE pallets
+    ADD COLUMN deleted_with_order BOOLEAN DEFAULT false NOT NULL;
+
+COMMENT ON COLUMN order_items.deleted_with_order IS 'Позиция удалена вместе с заказом и восстанавливается вместе с ним';
+COMMENT ON COLUMN pallets.deleted_with_order IS 'Паллета удалена вместе с заказом и восстанавливается вместе с ним';
+
+-- Восстановленная строка (любым путём) больше не числится удалённой вместе с заказом
+CREATE OR REPLACE FUNCTION clear_deleted_with_order()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    IF NEW.is_deleted = false THEN
+        NEW.deleted_with_order = false;
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER order_items_clear_deleted_with_order
+    BEFORE UPDATE OF is_deleted
+    ON order_items
+    FOR EACH ROW
+EXECUTE FUNCTION clear_deleted_with_order();
+
+CREATE TRIGGER pallets_clear_deleted_with_order
+    BEFORE UPDATE OF is_deleted
+    ON pallets
+    FOR EACH ROW
+EXECUTE FUNCTION clear_deleted_with_order();
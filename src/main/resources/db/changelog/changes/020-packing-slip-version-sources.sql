@@ -0,0 +1,46 @@
+-- Источники версии упаковочного листа: наименования и группы товаров, состав паллет
+
+ALTER TABLE product_groups
+    ADD COLUMN updated_at TIMESTAMP DEFAULT NOW() NOT NULL;
+
+COMMENT ON COLUMN product_groups.updated_at IS 'Время последнего изменения группы (входит в версию упаковочного листа)';
+
+CREATE TRIGGER update_product_groups_modtime
+    BEFORE UPDATE
+    ON product_groups
+    FOR EACH ROW
+EXECUTE FUNCTION update_modified_column();
+
+-- Изменение состава паллеты поднимает updated_at паллеты (один раз за транзакцию):
+-- версия упаковочного листа видит раскладку сразу, не дожидаясь пересчёта pallet_aggregates
+CREATE OR REPLACE FUNCTION touch_pallet()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    -- Архивация удаляет паллеты вместе с составом
+    IF current_setting('tehnoseti.archiving', true) = 'on' THEN
+        RETURN NULL;
+    END IF;
+    IF TG_OP <> 'INSERT' THEN
+        UPDATE pallets
+        SET updated_at = NOW()
+        WHERE id = OLD.pallet_id
+          AND delivery_date = OLD.delivery_date
+          AND updated_at < NOW();
+    END IF;
+    IF TG_OP <> 'DELETE' THEN
+        UPDATE pallets
+        SET updated_at = NOW()
+        WHERE id = NEW.pallet_id
+          AND delivery_date = NEW.delivery_date
+          AND updated_at < NOW();
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER pallet_items_touch_pallet
+    AFTER INSERT OR UPDATE OR DELETE
+    ON pallet_items
+    FOR EACH ROW
+EXECUTE FUNCTION touch_pallet();
@@ -3,6 +3,9 @@ DROP SCHEMA IF EXISTS logistics CASCADE;
 CREATE SCHEMA logistics;
 SET search_path TO logistics;
 
+-- Триграммный поиск для нечеткого сопоставления названий товаров
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
 -- Функция для обновления временных меток
 CREATE OR REPLACE FUNCTION update_modified_column()
     RETURNS TRIGGER AS
@@ -16,12 +19,14 @@ $$ LANGUAGE plpgsql;
 -- Таблица групп товаров
 CREATE TABLE product_groups
 (
-    id   SERIAL PRIMARY KEY,
-    name VARCHAR(50) NOT NULL UNIQUE CHECK (name IN ('пластик', 'металл', 'ПНД'))
+    id         SERIAL PRIMARY KEY,
+    name       VARCHAR(50)             NOT NULL UNIQUE CHECK (name IN ('пластик', 'металл', 'ПНД')),
+    updated_at TIMESTAMP DEFAULT NOW() NOT NULL
 );
 
 COMMENT ON TABLE product_groups IS 'Группы товаров для классификации';
 COMMENT ON COLUMN product_groups.name IS 'Название группы товаров';
+COMMENT ON COLUMN product_groups.updated_at IS 'Время последнего изменения группы (входит в версию упаковочного листа)';
 
 -- Таблица контрагентов
 CREATE TABLE counteragents
@@ -70,10 +75,27 @@ CREATE TABLE products
 COMMENT ON TABLE products IS 'Товарная номенклатура';
 COMMENT ON COLUMN products.packing_coefficient IS 'Упаковочный коэффициент для расчета мест на паллете';
 
+-- Внешние коды товаров в разрезе контрагентов (у каждой сети свои коды)
+CREATE TABLE counteragent_product_codes
+(
+    id               SERIAL PRIMARY KEY,
+    counteragent_inn VARCHAR(12)             NOT NULL REFERENCES counteragents (inn) ON DELETE CASCADE,
+    external_code    VARCHAR(50)             NOT NULL,
+    product_id       INTEGER                 NOT NULL REFERENCES products (id) ON DELETE CASCADE,
+    created_at       TIMESTAMP DEFAULT NOW() NOT NULL,
+    updated_at       TIMESTAMP DEFAULT NOW() NOT NULL,
+    UNIQUE (counteragent_inn, external_code)
+);
+
+COMMENT ON TABLE counteragent_product_codes IS 'Сопоставление кодов товаров контрагентов с номенклатурой';
+
+-- Заказы, позиции, паллеты и содержимое паллет секционированы помесячно по дате доставки.
+-- Ключ секционирования (delivery_date) входит во все первичные и внешние ключи этих таблиц.
+
 -- Таблица заказов
 CREATE TABLE orders
 (
-    id               SERIAL PRIMARY KEY,
+    id               SERIAL,
     number           VARCHAR(50)             NOT NULL,
     order_date       DATE                    NOT NULL,
     delivery_date    DATE                    NOT NULL,
@@ -83,8 +105,9 @@ CREATE TABLE orders
     created_at       TIMESTAMP DEFAULT NOW() NOT NULL,
     updated_at       TIMESTAMP DEFAULT NOW() NOT NULL,
     is_deleted       BOOLEAN   DEFAULT false NOT NULL,
-    UNIQUE (number, order_date)
-);
+    PRIMARY KEY (id, delivery_date),
+    UNIQUE (number, order_date, delivery_date)
+) PARTITION BY RANGE (delivery_date);
 
 COMMENT ON TABLE orders IS 'Заказы покупателей';
 COMMENT ON COLUMN orders.pallet_count IS 'Количество паллет в заказе (рассчитывается при создании)';
@@ -92,70 +115,201 @@ COMMENT ON COLUMN orders.pallet_count IS 'Количество паллет в 
 -- Таблица счетов
 CREATE TABLE invoices
 (
-    id               SERIAL PRIMARY KEY,
-    number           VARCHAR(50)             NOT NULL,
-    issue_date       DATE                    NOT NULL,
-    order_id         INTEGER UNIQUE REFERENCES orders (id) ON DELETE CASCADE,
-    counteragent_inn VARCHAR(12) REFERENCES counteragents (inn) ON DELETE RESTRICT,
-    created_at       TIMESTAMP DEFAULT NOW() NOT NULL,
-    updated_at       TIMESTAMP DEFAULT NOW() NOT NULL,
-    is_deleted       BOOLEAN   DEFAULT false NOT NULL,
-    UNIQUE (number, issue_date)
+    id                  SERIAL PRIMARY KEY,
+    number              VARCHAR(50)             NOT NULL,
+    issue_date          DATE                    NOT NULL,
+    order_id            INTEGER UNIQUE,
+    order_delivery_date DATE,
+    counteragent_inn    VARCHAR(12) REFERENCES counteragents (inn) ON DELETE RESTRICT,
+    order_number        VARCHAR(50),
+    amount              DECIMAL(12, 2) CHECK (amount >= 0),
+    created_at          TIMESTAMP DEFAULT NOW() NOT NULL,
+    updated_at          TIMESTAMP DEFAULT NOW() NOT NULL,
+    is_deleted          BOOLEAN   DEFAULT false NOT NULL,
+    UNIQUE (number, issue_date),
+    FOREIGN KEY (order_id, order_delivery_date) REFERENCES orders (id, delivery_date) ON DELETE CASCADE
 );
 
 COMMENT ON TABLE invoices IS 'Счета к заказам';
 COMMENT ON COLUMN invoices.order_id IS 'Ссылка на заказ (1:1 отношение)';
+COMMENT ON COLUMN invoices.order_delivery_date IS 'Дата доставки заказа (часть ключа секционированной таблицы orders)';
+COMMENT ON COLUMN invoices.order_number IS 'Номер заказа, указанный в счете (для сверки счетов без ссылки на заказ)';
+COMMENT ON COLUMN invoices.amount IS 'Сумма счета';
 
 -- Таблица товарных позиций в заказах
 CREATE TABLE order_items
 (
-    id          SERIAL PRIMARY KEY,
-    order_id    INTEGER                 NOT NULL REFERENCES orders (id) ON DELETE CASCADE,
-    product_id  INTEGER                 NOT NULL REFERENCES products (id) ON DELETE RESTRICT,
-    quantity    INTEGER                 NOT NULL CHECK (quantity > 0),
-    unit_price  DECIMAL(10, 2)          NOT NULL CHECK (unit_price >= 0),
-    total_price DECIMAL(12, 2) GENERATED ALWAYS AS (quantity * unit_price) STORED,
-    created_at  TIMESTAMP DEFAULT NOW() NOT NULL,
-    updated_at  TIMESTAMP DEFAULT NOW() NOT NULL,
-    is_deleted  BOOLEAN   DEFAULT false NOT NULL
-);
+    id            SERIAL,
+    order_id      INTEGER                 NOT NULL,
+    delivery_date DATE                    NOT NULL,
+    product_id    INTEGER                 NOT NULL REFERENCES products (id) ON DELETE RESTRICT,
+    quantity      INTEGER                 NOT NULL CHECK (quantity > 0),
+    unit_price    DECIMAL(10, 2)          NOT NULL CHECK (unit_price >= 0),
+    total_price   DECIMAL(12, 2) GENERATED ALWAYS AS (quantity * unit_price) STORED,
+    created_at    TIMESTAMP DEFAULT NOW() NOT NULL,
+    updated_at    TIMESTAMP DEFAULT NOW() NOT NULL,
+    is_deleted    BOOLEAN   DEFAULT false NOT NULL,
+    deleted_with_order BOOLEAN DEFAULT false NOT NULL,
+    PRIMARY KEY (id, delivery_date),
+    FOREIGN KEY (order_id, delivery_date) REFERENCES orders (id, delivery_date) ON DELETE CASCADE
+) PARTITION BY RANGE (delivery_date);
 
 COMMENT ON TABLE order_items IS 'Позиции товаров в заказах';
 COMMENT ON COLUMN order_items.total_price IS 'Вычисляемое поле: количество × цена за единицу';
+COMMENT ON COLUMN order_items.delivery_date IS 'Дата доставки заказа (ключ секционирования)';
+COMMENT ON COLUMN order_items.deleted_with_order IS 'Позиция удалена вместе с заказом и восстанавливается вместе с ним';
 
 -- Таблица паллет
 CREATE TABLE pallets
 (
-    id         SERIAL PRIMARY KEY,
-    order_id   INTEGER                 NOT NULL REFERENCES orders (id) ON DELETE CASCADE,
-    created_at TIMESTAMP DEFAULT NOW() NOT NULL,
-    updated_at TIMESTAMP DEFAULT NOW() NOT NULL,
-    is_deleted BOOLEAN   DEFAULT false NOT NULL
-);
+    id            SERIAL,
+    order_id      INTEGER                 NOT NULL,
+    delivery_date DATE                    NOT NULL,
+    created_at    TIMESTAMP DEFAULT NOW() NOT NULL,
+    updated_at    TIMESTAMP DEFAULT NOW() NOT NULL,
+    is_deleted    BOOLEAN   DEFAULT false NOT NULL,
+    deleted_with_order BOOLEAN DEFAULT false NOT NULL,
+    PRIMARY KEY (id, delivery_date),
+    FOREIGN KEY (order_id, delivery_date) REFERENCES orders (id, delivery_date) ON DELETE CASCADE
+) PARTITION BY RANGE (delivery_date);
 
 COMMENT ON TABLE pallets IS 'Паллеты для комплектации заказов';
+COMMENT ON COLUMN pallets.delivery_date IS 'Дата доставки заказа (ключ секционирования)';
+COMMENT ON COLUMN pallets.deleted_with_order IS 'Паллета удалена вместе с заказом и восстанавливается вместе с ним';
+COMMENT ON COLUMN pallets.order_id IS 'Заказ паллеты; на сборной паллете - заказ с наибольшей долей, позиции заказов связаны через pallet_items';
 
 -- Таблица товаров на паллетах
 CREATE TABLE pallet_items
 (
-    pallet_id     INTEGER NOT NULL REFERENCES pallets (id) ON DELETE CASCADE,
-    order_item_id INTEGER NOT NULL REFERENCES order_items (id) ON DELETE RESTRICT,
+    pallet_id     INTEGER NOT NULL,
+    order_item_id INTEGER NOT NULL,
+    delivery_date DATE    NOT NULL,
     quantity      INTEGER NOT NULL CHECK (quantity > 0),
-    PRIMARY KEY (pallet_id, order_item_id)
-);
+    PRIMARY KEY (pallet_id, order_item_id, delivery_date),
+    FOREIGN KEY (pallet_id, delivery_date) REFERENCES pallets (id, delivery_date) ON DELETE CASCADE,
+    FOREIGN KEY (order_item_id, delivery_date) REFERENCES order_items (id, delivery_date) ON DELETE RESTRICT
+) PARTITION BY RANGE (delivery_date);
 
 COMMENT ON TABLE pallet_items IS 'Распределение товарных позиций по паллетам';
+COMMENT ON COLUMN pallet_items.delivery_date IS 'Дата доставки заказа (ключ секционирования)';
+
+-- Создание помесячных секций на p_months месяцев начиная с месяца p_from
+CREATE OR REPLACE FUNCTION ensure_delivery_partitions(p_from DATE, p_months INTEGER)
+    RETURNS INTEGER AS
+$$
+DECLARE
+    tbl          TEXT;
+    month_start  DATE;
+    month_end    DATE;
+    part_name    TEXT;
+    created      INTEGER := 0;
+BEGIN
+    FOREACH tbl IN ARRAY ARRAY ['orders', 'order_items', 'pallets', 'pallet_items']
+        LOOP
+            FOR i IN 0..p_months - 1
+                LOOP
+                    month_start := (date_trunc('month', p_from) + make_interval(months => i))::DATE;
+                    month_end := (month_start + INTERVAL '1 month')::DATE;
+                    part_name := format('%s_%s', tbl, to_char(month_start, 'YYYY_MM'));
+                    IF to_regclass(part_name) IS NULL THEN
+                        EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                                       part_name, tbl, month_start, month_end);
+                        created := created + 1;
+                    END IF;
+                END LOOP;
+        END LOOP;
+    RETURN created;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Отсоединение секций старше p_before и перенос их в архивную схему.
+-- Счета к архивируемым заказам копируются в архив и удаляются, внешние ключи отсоединенных секций снимаются.
+CREATE OR REPLACE FUNCTION detach_delivery_partitions(p_before DATE, p_archive_schema TEXT)
+    RETURNS INTEGER AS
+$$
+DECLARE
+    tbl         TEXT;
+    rec         RECORD;
+    fk          RECORD;
+    month_start DATE;
+    detached    INTEGER := 0;
+BEGIN
+    EXECUTE format('CREATE SCHEMA IF NOT EXISTS %I', p_archive_schema);
+
+    -- Сначала ссылающиеся таблицы, затем orders
+    FOREACH tbl IN ARRAY ARRAY ['pallet_items', 'pallets', 'order_items', 'orders']
+        LOOP
+            FOR rec IN
+                SELECT child.relname AS part_name
+                FROM pg_inherits inh
+                         JOIN pg_class parent ON parent.oid = inh.inhparent
+                         JOIN pg_class child ON child.oid = inh.inhrelid
+                WHERE parent.oid = to_regclass(tbl)
+                  AND child.relname ~ '_\d{4}_\d{2}$'
+                ORDER BY child.relname
+                LOOP
+                    month_start := to_date(right(rec.part_name, 7), 'YYYY_MM');
+                    CONTINUE WHEN month_start + INTERVAL '1 month' > date_trunc('month', p_before);
+
+                    IF tbl = 'orders' THEN
+                        EXECUTE format('CREATE TABLE IF NOT EXISTS %I.%I AS SELECT * FROM invoices WHERE false',
+                                       p_archive_schema, 'invoices_' || right(rec.part_name, 7));
+                        EXECUTE format('INSERT INTO %I.%I SELECT * FROM invoices WHERE order_delivery_date >= %L AND order_delivery_date < %L',
+                                       p_archive_schema, 'invoices_' || right(rec.part_name, 7),
+                                       month_start, month_start + INTERVAL '1 month');
+                        DELETE FROM invoices
+                        WHERE order_delivery_date >= month_start
+                          AND order_delivery_date < month_start + INTERVAL '1 month';
+                    END IF;
+
+                    EXECUTE format('ALTER TABLE %I DETACH PARTITION %I', tbl, rec.part_name);
+                    FOR fk IN
+                        SELECT conname FROM pg_constraint
+                        WHERE conrelid = to_regclass(rec.part_name) AND contype = 'f'
+                        LOOP
+                            EXECUTE format('ALTER TABLE %I DROP CONSTRAINT %I', rec.part_name, fk.conname);
+                        END LOOP;
+                    EXECUTE format('ALTER TABLE %I SET SCHEMA %I', rec.part_name, p_archive_schema);
+                    detached := detached + 1;
+                END LOOP;
+        END LOOP;
+    RETURN detached;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Начальный набор секций: год истории и три месяца вперед
+SELECT ensure_delivery_partitions((date_trunc('month', NOW()) - INTERVAL '12 months')::DATE, 16);
 
 -- Индексы для ускорения запросов
-CREATE INDEX idx_orders_number ON orders (number);
-CREATE INDEX idx_orders_delivery_date ON orders (delivery_date);
-CREATE INDEX idx_invoices_number ON invoices (number);
-CREATE INDEX idx_invoices_issue_date ON invoices (issue_date);
-CREATE INDEX idx_products_barcode ON products (internal_barcode);
+-- Индексы поиска строятся только по активным записям (is_deleted = false)
+CREATE INDEX idx_orders_number ON orders (number) WHERE is_deleted = false;
+CREATE INDEX idx_orders_delivery_date ON orders (delivery_date) WHERE is_deleted = false;
+CREATE INDEX idx_orders_warehouse_delivery ON orders (warehouse_gln, delivery_date) WHERE is_deleted = false;
+CREATE INDEX idx_invoices_number ON invoices (number) WHERE is_deleted = false;
+CREATE INDEX idx_invoices_issue_date ON invoices (issue_date) WHERE is_deleted = false;
+CREATE INDEX idx_invoices_order_delivery_date ON invoices (order_delivery_date) WHERE is_deleted = false;
+CREATE INDEX idx_products_barcode ON products (internal_barcode) WHERE is_deleted = false;
+CREATE INDEX idx_products_external_barcode ON products (external_barcode) WHERE is_deleted = false;
+CREATE INDEX idx_products_external_sku ON products (external_sku) WHERE is_deleted = false;
+CREATE INDEX idx_products_name ON products (name) WHERE is_deleted = false;
+CREATE INDEX idx_products_name_trgm ON products USING gin (name gin_trgm_ops) WHERE is_deleted = false;
+CREATE INDEX idx_products_group ON products (group_id) WHERE is_deleted = false;
+CREATE INDEX idx_counteragent_product_codes_product ON counteragent_product_codes (product_id);
+
+-- Индексы внешних ключей остаются полными: по ним работают каскадные удаления
 CREATE INDEX idx_order_items_order ON order_items (order_id);
 CREATE INDEX idx_pallets_order ON pallets (order_id);
 CREATE INDEX idx_pallet_items_pallet ON pallet_items (pallet_id);
-CREATE INDEX idx_products_group ON products (group_id);
+CREATE INDEX idx_pallet_items_order_item ON pallet_items (order_item_id);
+
+-- Индексы для фоновой очистки мягко удаленных записей
+CREATE INDEX idx_orders_tombstones ON orders (updated_at) WHERE is_deleted = true;
+CREATE INDEX idx_order_items_tombstones ON order_items (updated_at) WHERE is_deleted = true;
+CREATE INDEX idx_pallets_tombstones ON pallets (updated_at) WHERE is_deleted = true;
+
+-- Индексы для догрузки изменений в снимок продаж
+CREATE INDEX idx_orders_updated_at ON orders (updated_at);
+CREATE INDEX idx_order_items_updated_at ON order_items (updated_at);
 
 -- Применение триггеров обновления времени
 CREATE TRIGGER update_counteragents_modtime
@@ -170,12 +324,24 @@ CREATE TRIGGER update_warehouses_modtime
     FOR EACH ROW
 EXECUTE FUNCTION update_modified_column();
 
+CREATE TRIGGER update_product_groups_modtime
+    BEFORE UPDATE
+    ON product_groups
+    FOR EACH ROW
+EXECUTE FUNCTION update_modified_column();
+
 CREATE TRIGGER update_products_modtime
     BEFORE UPDATE
     ON products
     FOR EACH ROW
 EXECUTE FUNCTION update_modified_column();
 
+CREATE TRIGGER update_counteragent_product_codes_modtime
+    BEFORE UPDATE
+    ON counteragent_product_codes
+    FOR EACH ROW
+EXECUTE FUNCTION update_modified_column();
+
 CREATE TRIGGER update_orders_modtime
     BEFORE UPDATE
     ON orders
@@ -200,6 +366,64 @@ CREATE TRIGGER update_pallets_modtime
     FOR EACH ROW
 EXECUTE FUNCTION update_modified_column();
 
+-- Изменение состава паллеты поднимает updated_at паллеты (один раз за транзакцию):
+-- версия упаковочного листа видит раскладку сразу, не дожидаясь пересчёта pallet_aggregates
+CREATE OR REPLACE FUNCTION touch_pallet()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    -- Архивация удаляет паллеты вместе с составом
+    IF current_setting('tehnoseti.archiving', true) = 'on' THEN
+        RETURN NULL;
+    END IF;
+    IF TG_OP <> 'INSERT' THEN
+        UPDATE pallets
+        SET updated_at = NOW()
+        WHERE id = OLD.pallet_id
+          AND delivery_date = OLD.delivery_date
+          AND updated_at < NOW();
+    END IF;
+    IF TG_OP <> 'DELETE' THEN
+        UPDATE pallets
+        SET updated_at = NOW()
+        WHERE id = NEW.pallet_id
+          AND delivery_date = NEW.delivery_date
+          AND updated_at < NOW();
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER pallet_items_touch_pallet
+    AFTER INSERT OR UPDATE OR DELETE
+    ON pallet_items
+    FOR EACH ROW
+EXECUTE FUNCTION touch_pallet();
+
+-- Восстановленная строка (любым путём) больше не числится удалённой вместе с заказом
+CREATE OR REPLACE FUNCTION clear_deleted_with_order()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    IF NEW.is_deleted = false THEN
+        NEW.deleted_with_order = false;
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER order_items_clear_deleted_with_order
+    BEFORE UPDATE OF is_deleted
+    ON order_items
+    FOR EACH ROW
+EXECUTE FUNCTION clear_deleted_with_order();
+
+CREATE TRIGGER pallets_clear_deleted_with_order
+    BEFORE UPDATE OF is_deleted
+    ON pallets
+    FOR EACH ROW
+EXECUTE FUNCTION clear_deleted_with_order();
+
 -- Представление для упаковочных листов
 CREATE OR REPLACE VIEW packing_slip_view AS
 SELECT o.number                                            AS order_number,
@@ -212,7 +436,7 @@ SELECT o.number                                            AS order_number,
        inv.number                                          AS invoice_number,
        inv.issue_date                                      AS invoice_date,
        p.id                                                AS pallet_id,
-       ROW_NUMBER() OVER (PARTITION BY o.id ORDER BY p.id) AS pallet_number,
+       DENSE_RANK() OVER (PARTITION BY o.number, o.order_date, o.delivery_date ORDER BY p.id) AS pallet_number,
        prod.name                                           AS product_name,
        prod.internal_barcode                               AS product_barcode,
        prod.internal_sku                                   AS product_sku,
@@ -222,13 +446,15 @@ SELECT o.number                                            AS order_number,
        (pi.quantity * oi.unit_price)                       AS total_price
 FROM orders o
          JOIN warehouses w ON o.warehouse_gln = w.gln
-         LEFT JOIN invoices inv ON o.id = inv.order_id
-         JOIN pallets p ON o.id = p.order_id
-         JOIN pallet_items pi ON p.id = pi.pallet_id
-         JOIN order_items oi ON pi.order_item_id = oi.id
+         LEFT JOIN invoices inv
+                   ON o.id = inv.order_id AND o.delivery_date = inv.order_delivery_date AND inv.is_deleted = false
+         JOIN order_items oi ON o.id = oi.order_id AND o.delivery_date = oi.delivery_date
+         JOIN pallet_items pi ON oi.id = pi.order_item_id AND oi.delivery_date = pi.delivery_date
+         JOIN pallets p ON pi.pallet_id = p.id AND pi.delivery_date = p.delivery_date
          JOIN products prod ON oi.product_id = prod.id
          JOIN product_groups pg ON prod.group_id = pg.id
 WHERE o.is_deleted = false
+  AND oi.is_deleted = false
   AND p.is_deleted = false;
 
 
@@ -273,7 +499,8 @@ BEGIN
     SELECT oi.quantity
     INTO max_qty
     FROM order_items oi
-    WHERE oi.id = NEW.order_item_id;
+    WHERE oi.id = NEW.order_item_id
+      AND oi.delivery_date = NEW.delivery_date;
 
     IF NEW.quantity > max_qty THEN
         RAISE EXCEPTION 'Количество на паллете (%) превышает заказанное (%)', NEW.quantity, max_qty;
@@ -289,6 +516,362 @@ CREATE TRIGGER pallet_quantity_check
     FOR EACH ROW
 EXECUTE FUNCTION check_pallet_quantity();
 
+-- Сводка по складу и дате доставки (производные данные, пересчитываются асинхронно)
+CREATE TABLE warehouse_daily_summaries
+(
+    warehouse_gln  VARCHAR(13)             NOT NULL,
+    delivery_date  DATE                    NOT NULL,
+    orders_count   INTEGER                 NOT NULL,
+    items_count    INTEGER                 NOT NULL,
+    total_quantity BIGINT                  NOT NULL,
+    total_amount   DECIMAL(14, 2)          NOT NULL,
+    pallet_count   INTEGER                 NOT NULL,
+    updated_at     TIMESTAMP DEFAULT NOW() NOT NULL,
+    PRIMARY KEY (warehouse_gln, delivery_date)
+);
+
+COMMENT ON TABLE warehouse_daily_summaries IS 'Сводная таблица по складам и датам доставки';
+
+CREATE INDEX idx_warehouse_daily_summaries_date ON warehouse_daily_summaries (delivery_date) INCLUDE (updated_at);
+
+-- Агрегаты паллет (производные данные, пересчитываются асинхронно)
+CREATE TABLE pallet_aggregates
+(
+    pallet_id       INTEGER                 NOT NULL,
+    delivery_date   DATE                    NOT NULL,
+    items_count     INTEGER                 NOT NULL,
+    total_quantity  BIGINT                  NOT NULL,
+    total_value     DECIMAL(14, 2)          NOT NULL,
+    occupied_places DOUBLE PRECISION        NOT NULL,
+    updated_at      TIMESTAMP DEFAULT NOW() NOT NULL,
+    PRIMARY KEY (pallet_id, delivery_date)
+);
+
+COMMENT ON TABLE pallet_aggregates IS 'Итоги по паллетам: позиции, количество, стоимость, занятые места';
+
+-- Транзакционный outbox: события изменений пишутся триггерами в той же транзакции
+CREATE TABLE outbox_events
+(
+    id            BIGSERIAL PRIMARY KEY,
+    source_table  VARCHAR(30)             NOT NULL,
+    operation     VARCHAR(10)             NOT NULL,
+    warehouse_gln VARCHAR(13),
+    delivery_date DATE,
+    pallet_id     INTEGER,
+    created_at    TIMESTAMP DEFAULT NOW() NOT NULL
+);
+
+COMMENT ON TABLE outbox_events IS 'Очередь событий изменений для асинхронного пересчета производных данных';
+
+CREATE OR REPLACE FUNCTION enqueue_outbox_event()
+    RETURNS TRIGGER AS
+$$
+DECLARE
+    source TEXT := TG_ARGV[0];
+    gln    VARCHAR(13);
+BEGIN
+    -- Архивация заказов удаляет строки, не меняя производных данных: сводки за архивные даты сохраняются
+    IF current_setting('tehnoseti.archiving', true) = 'on' THEN
+        RETURN NULL;
+    END IF;
+    IF source = 'orders' THEN
+        IF TG_OP <> 'INSERT' THEN
+            INSERT INTO outbox_events (source_table, operation, warehouse_gln, delivery_date)
+            VALUES (source, TG_OP, OLD.warehouse_gln, OLD.delivery_date);
+        END IF;
+        IF TG_OP <> 'DELETE' AND (TG_OP = 'INSERT'
+            OR NEW.warehouse_gln IS DISTINCT FROM OLD.warehouse_gln
+            OR NEW.delivery_date IS DISTINCT FROM OLD.delivery_date) THEN
+            INSERT INTO outbox_events (source_table, operation, warehouse_gln, delivery_date)
+            VALUES (source, TG_OP, NEW.warehouse_gln, NEW.delivery_date);
+        END IF;
+    ELSIF source IN ('order_items', 'pallets') THEN
+        IF TG_OP = 'DELETE' THEN
+            SELECT o.warehouse_gln INTO gln FROM orders o WHERE o.id = OLD.order_id AND o.delivery_date = OLD.delivery_date;
+            INSERT INTO outbox_events (source_table, operation, warehouse_gln, delivery_date, pallet_id)
+            VALUES (source, TG_OP, gln, OLD.delivery_date, CASE WHEN source = 'pallets' THEN OLD.id END);
+        ELSE
+            SELECT o.warehouse_gln INTO gln FROM orders o WHERE o.id = NEW.order_id AND o.delivery_date = NEW.delivery_date;
+            INSERT INTO outbox_events (source_table, operation, warehouse_gln, delivery_date, pallet_id)
+            VALUES (source, TG_OP, gln, NEW.delivery_date, CASE WHEN source = 'pallets' THEN NEW.id END);
+        END IF;
+    ELSIF source = 'pallet_items' THEN
+        IF TG_OP = 'DELETE' THEN
+            INSERT INTO outbox_events (source_table, operation, delivery_date, pallet_id)
+            VALUES (source, TG_OP, OLD.delivery_date, OLD.pallet_id);
+        ELSE
+            INSERT INTO outbox_events (source_table, operation, delivery_date, pallet_id)
+            VALUES (source, TG_OP, NEW.delivery_date, NEW.pallet_id);
+        END IF;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER orders_outbox
+    AFTER INSERT OR UPDATE OR DELETE
+    ON orders
+    FOR EACH ROW
+EXECUTE FUNCTION enqueue_outbox_event('orders');
+
+CREATE TRIGGER order_items_outbox
+    AFTER INSERT OR UPDATE OR DELETE
+    ON order_items
+    FOR EACH ROW
+EXECUTE FUNCTION enqueue_outbox_event('order_items');
+
+CREATE TRIGGER pallets_outbox
+    AFTER INSERT OR UPDATE OR DELETE
+    ON pallets
+    FOR EACH ROW
+EXECUTE FUNCTION enqueue_outbox_event('pallets');
+
+CREATE TRIGGER pallet_items_outbox
+    AFTER INSERT OR UPDATE OR DELETE
+    ON pallet_items
+    FOR EACH ROW
+EXECUTE FUNCTION enqueue_outbox_event('pallet_items');
+
+-- Уведомление экземпляров приложения об изменении состава или раскладки заказа.
+-- Полезная нагрузка - id заказа; одинаковые уведомления в одной транзакции PostgreSQL схлопывает,
+-- поэтому на заказ приходится одно уведомление независимо от числа изменённых строк.
+CREATE OR REPLACE FUNCTION notify_scan_change()
+    RETURNS TRIGGER AS
+$$
+DECLARE
+    source TEXT := TG_ARGV[0];
+    new_id INTEGER;
+    old_id INTEGER;
+BEGIN
+    -- Архивные заказы не сканируются, а рабочие наборы по ним вытесняются по простою
+    IF current_setting('tehnoseti.archiving', true) = 'on' THEN
+        RETURN NULL;
+    END IF;
+    IF source = 'orders' THEN
+        IF TG_OP <> 'INSERT' THEN
+            old_id := OLD.id;
+        END IF;
+    ELSIF source = 'order_items' THEN
+        IF TG_OP <> 'INSERT' THEN
+            old_id := OLD.order_id;
+        END IF;
+        IF TG_OP <> 'DELETE' THEN
+            new_id := NEW.order_id;
+        END IF;
+    ELSIF source = 'pallets' THEN
+        -- Удаление и восстановление паллеты меняет размещённое количество всех заказов на ней (сборная паллета)
+        FOR new_id IN SELECT DISTINCT oi.order_id
+                      FROM pallet_items pi
+                               JOIN order_items oi ON oi.id = pi.order_item_id AND oi.delivery_date = pi.delivery_date
+                      WHERE pi.pallet_id = NEW.id
+                        AND pi.delivery_date = NEW.delivery_date
+            LOOP
+                PERFORM pg_notify('scan_working_set_changed', new_id::TEXT);
+            END LOOP;
+        RETURN NULL;
+    ELSIF source = 'pallet_items' THEN
+        IF TG_OP <> 'INSERT' THEN
+            SELECT oi.order_id INTO old_id FROM order_items oi
+            WHERE oi.id = OLD.order_item_id AND oi.delivery_date = OLD.delivery_date;
+        END IF;
+        IF TG_OP <> 'DELETE' THEN
+            SELECT oi.order_id INTO new_id FROM order_items oi
+            WHERE oi.id = NEW.order_item_id AND oi.delivery_date = NEW.delivery_date;
+        END IF;
+    END IF;
+    IF old_id IS NOT NULL THEN
+        PERFORM pg_notify('scan_working_set_changed', old_id::TEXT);
+    END IF;
+    IF new_id IS NOT NULL AND new_id IS DISTINCT FROM old_id THEN
+        PERFORM pg_notify('scan_working_set_changed', new_id::TEXT);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER orders_scan_notify
+    AFTER UPDATE OR DELETE
+    ON orders
+    FOR EACH ROW
+EXECUTE FUNCTION notify_scan_change('orders');
+
+CREATE TRIGGER order_items_scan_notify
+    AFTER INSERT OR UPDATE OR DELETE
+    ON order_items
+    FOR EACH ROW
+EXECUTE FUNCTION notify_scan_change('order_items');
+
+CREATE TRIGGER pallet_items_scan_notify
+    AFTER INSERT OR UPDATE OR DELETE
+    ON pallet_items
+    FOR EACH ROW
+EXECUTE FUNCTION notify_scan_change('pallet_items');
+
+CREATE TRIGGER pallets_scan_notify
+    AFTER UPDATE OF is_deleted
+    ON pallets
+    FOR EACH ROW
+    WHEN (OLD.is_deleted IS DISTINCT FROM NEW.is_deleted)
+EXECUTE FUNCTION notify_scan_change('pallets');
+
+-- Указатель архива заказов: заказ, файл дня доставки и сжатый блок внутри файла
+CREATE TABLE order_archive_index
+(
+    order_id         INTEGER                 NOT NULL PRIMARY KEY,
+    delivery_date    DATE                    NOT NULL,
+    number           VARCHAR(50)             NOT NULL,
+    order_date       DATE                    NOT NULL,
+    counteragent_inn VARCHAR(12),
+    warehouse_gln    VARCHAR(13),
+    pallet_count     INTEGER                 NOT NULL,
+    file             VARCHAR(100)            NOT NULL,
+    block_offset     BIGINT                  NOT NULL,
+    block_length     INTEGER                 NOT NULL,
+    archived_at      TIMESTAMP DEFAULT NOW() NOT NULL
+);
+
+COMMENT ON TABLE order_archive_index IS 'Заказы, перенесенные в файловый архив: где лежит запись заказа';
+COMMENT ON COLUMN order_archive_index.file IS 'Файл архива относительно каталога архива (gzip из независимых блоков, внутри NDJSON)';
+COMMENT ON COLUMN order_archive_index.block_offset IS 'Смещение сжатого блока с заказом в файле';
+
+CREATE INDEX idx_order_archive_index_number ON order_archive_index (number);
+CREATE INDEX idx_order_archive_index_delivery_date ON order_archive_index (delivery_date);
+
+-- Позиции мягко удалённого заказа, снятые со сборных паллет, которые остались у других заказов.
+-- Хранятся до восстановления заказа (возвращаются на паллету) или до окончательного удаления позиции.
+CREATE TABLE detached_pallet_items
+(
+    pallet_id     INTEGER                 NOT NULL,
+    order_item_id INTEGER                 NOT NULL,
+    delivery_date DATE                    NOT NULL,
+    order_id      INTEGER                 NOT NULL,
+    quantity      INTEGER                 NOT NULL CHECK (quantity > 0),
+    detached_at   TIMESTAMP DEFAULT NOW() NOT NULL,
+    PRIMARY KEY (pallet_id, order_item_id, delivery_date),
+    FOREIGN KEY (pallet_id, delivery_date) REFERENCES pallets (id, delivery_date) ON DELETE CASCADE,
+    FOREIGN KEY (order_item_id, delivery_date) REFERENCES order_items (id, delivery_date) ON DELETE CASCADE
+);
+
+COMMENT ON TABLE detached_pallet_items IS 'Раскладка мягко удалённых заказов на сборных паллетах для восстановления';
+
+CREATE INDEX idx_detached_pallet_items_order ON detached_pallet_items (order_id);
+CREATE INDEX idx_detached_pallet_items_order_item ON detached_pallet_items (order_item_id, delivery_date);
+
+-- Очередь фоновых задач для нескольких экземпляров приложения (захват через FOR UPDATE SKIP LOCKED)
+CREATE TABLE jobs
+(
+    id           BIGSERIAL PRIMARY KEY,
+    job_type     VARCHAR(50)             NOT NULL,
+    payload      TEXT,
+    status       VARCHAR(20)             NOT NULL DEFAULT 'queued'
+        CHECK (status IN ('queued', 'running', 'done', 'failed')),
+    attempts     INTEGER                 NOT NULL DEFAULT 0,
+    max_attempts INTEGER                 NOT NULL DEFAULT 5 CHECK (max_attempts > 0),
+    run_after    TIMESTAMP DEFAULT NOW() NOT NULL,
+    locked_by    VARCHAR(100),
+    locked_until TIMESTAMP,
+    heartbeat_at TIMESTAMP,
+    last_error   TEXT,
+    result       TEXT,
+    created_at   TIMESTAMP DEFAULT NOW() NOT NULL,
+    updated_at   TIMESTAMP DEFAULT NOW() NOT NULL,
+    finished_at  TIMESTAMP
+);
+
+COMMENT ON TABLE jobs IS 'Очередь фоновых задач: импорт, планирование, выгрузки';
+COMMENT ON COLUMN jobs.locked_until IS 'Окончание аренды: после него задача считается брошенной и возвращается в очередь';
+
+-- Выбор готовых к запуску задач и подсчет выполняющихся по типу
+CREATE INDEX idx_jobs_queued ON jobs (job_type, run_after, id) WHERE status = 'queued';
+CREATE INDEX idx_jobs_running ON jobs (job_type, locked_until) WHERE status = 'running';
+CREATE INDEX idx_jobs_finished ON jobs (finished_at) WHERE status IN ('done', 'failed');
+
+-- Файлы задач: входные (загруженный XLSX) и результаты (отчеты, выгрузки)
+CREATE TABLE job_files
+(
+    job_id       BIGINT                  NOT NULL REFERENCES jobs (id) ON DELETE CASCADE,
+    name         VARCHAR(100)            NOT NULL,
+    content_type VARCHAR(100)            NOT NULL,
+    content      BYTEA                   NOT NULL,
+    created_at   TIMESTAMP DEFAULT NOW() NOT NULL,
+    PRIMARY KEY (job_id, name)
+);
+
+COMMENT ON TABLE job_files IS 'Входные и выходные файлы фоновых задач';
+
+CREATE TRIGGER update_jobs_modtime
+    BEFORE UPDATE
+    ON jobs
+    FOR EACH ROW
+EXECUTE FUNCTION update_modified_column();
+
+-- Рейсы: паллеты дня доставки, распределённые по машинам в пределах региона складов
+CREATE TABLE shipments
+(
+    id             SERIAL PRIMARY KEY,
+    delivery_date  DATE                    NOT NULL,
+    region         VARCHAR(100)            NOT NULL,
+    vehicle_number INTEGER                 NOT NULL,
+    pallet_count   INTEGER                 NOT NULL,
+    total_weight   DOUBLE PRECISION        NOT NULL,
+    created_at     TIMESTAMP DEFAULT NOW() NOT NULL,
+    UNIQUE (delivery_date, region, vehicle_number)
+);
+
+COMMENT ON TABLE shipments IS 'Рейсы: машины дня доставки по регионам складов';
+COMMENT ON COLUMN shipments.total_weight IS 'Расчётный вес паллет: количество × упаковочный коэффициент';
+
+-- Паллеты секционированы и уходят в архив целыми секциями, поэтому внешнего ключа на pallets нет
+CREATE TABLE shipment_pallets
+(
+    shipment_id   INTEGER          NOT NULL REFERENCES shipments (id) ON DELETE CASCADE,
+    pallet_id     INTEGER          NOT NULL,
+    delivery_date DATE             NOT NULL,
+    load_order    INTEGER          NOT NULL,
+    weight        DOUBLE PRECISION NOT NULL,
+    PRIMARY KEY (pallet_id, delivery_date)
+);
+
+COMMENT ON TABLE shipment_pallets IS 'Паллеты в машинах рейсов с порядком погрузки';
+
+CREATE INDEX idx_shipment_pallets_shipment ON shipment_pallets (shipment_id);
+
+-- Сверка счетов с заказами за период доставки: запуск и найденные расхождения
+CREATE TABLE invoice_reconciliations
+(
+    id          BIGSERIAL PRIMARY KEY,
+    period_from DATE                    NOT NULL,
+    period_to   DATE                    NOT NULL,
+    orders      INTEGER                 NOT NULL,
+    invoices    INTEGER                 NOT NULL,
+    issues      INTEGER                 NOT NULL,
+    created_at  TIMESTAMP DEFAULT NOW() NOT NULL
+);
+
+COMMENT ON TABLE invoice_reconciliations IS 'Запуски сверки счетов с заказами';
+
+CREATE INDEX idx_invoice_reconciliations_period ON invoice_reconciliations (period_from, period_to);
+
+-- Заказы и счета уходят в архив вместе с секциями, поэтому внешних ключей на них нет
+CREATE TABLE invoice_reconciliation_issues
+(
+    reconciliation_id   BIGINT      NOT NULL REFERENCES invoice_reconciliations (id) ON DELETE CASCADE,
+    issue               VARCHAR(20) NOT NULL
+        CHECK (issue IN ('missing', 'duplicate', 'late', 'amount_mismatch', 'inn_mismatch', 'unmatched')),
+    order_id            INTEGER,
+    order_delivery_date DATE,
+    order_number        VARCHAR(50),
+    invoice_id          INTEGER,
+    invoice_number      VARCHAR(50),
+    counteragent_inn    VARCHAR(12),
+    order_amount        DECIMAL(12, 2),
+    invoice_amount      DECIMAL(12, 2)
+);
+
+COMMENT ON TABLE invoice_reconciliation_issues IS 'Расхождения сверки: нет счета, повторный счет, счет после доставки, расхождение суммы или контрагента, счет без заказа';
+
+CREATE INDEX idx_invoice_reconciliation_issues_run ON invoice_reconciliation_issues (reconciliation_id, issue);
+
 -- Вставка тестовых групп товаров
 INSERT INTO product_groups (name)
 VALUES ('пластик'),
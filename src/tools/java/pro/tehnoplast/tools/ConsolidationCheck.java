@@ -0,0 +1,141 @@
+package pro.tehnoplast.tools;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import pro.tehnoplast.service.pallets.ConsolidationPlan;
+import pro.tehnoplast.service.pallets.PalletConsolidationService;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Проверка сборных паллет на реальных данных: остаток каждой позиции заказа (заказано минус размещено
+ * на паллетах, как в OrderItem.getRemainingQuantity) и размещённое на неудалённых паллетах
+ * не меняются от применения плана. План применяется в транзакции, которая откатывается
+ * (--commit=true оставляет изменения). Плотно уложенный день сборным паллетам выиграть не даёт:
+ * --fragment=N до применения раскладывает части N паллет дня по отдельным паллетам.
+ * Код выхода 1 - остаток хотя бы одной позиции изменился.
+ * <p>
+ * Запуск: {@code java -cp target/tehnoseti-1.0-SNAPSHOT-jar-with-dependencies.jar:target/tehnoseti-1.0-SNAPSHOT-tools.jar
+ * pro.tehnoplast.tools.ConsolidationCheck
+ * --url=jdbc:postgresql://localhost:5432/tehno_seti_db --user=tehno_user --password=...
+ * --date=2027-01-28 [--warehouse=4600000000001] [--fragment=200]}
+ */
+public final class ConsolidationCheck {
+
+    /**
+     * Остаток позиции по всем строкам pallet_items и размещённое на неудалённых паллетах
+     */
+    private static final String REMAINING = """
+            SELECT oi.id,
+                   oi.quantity - COALESCE(SUM(pi.quantity), 0)                                  AS remaining,
+                   COALESCE(SUM(pi.quantity) FILTER (WHERE p.is_deleted = false), 0)            AS placed
+            FROM order_items oi
+                     JOIN orders o ON o.id = oi.order_id AND o.delivery_date = oi.delivery_date
+                     LEFT JOIN pallet_items pi ON pi.order_item_id = oi.id AND pi.delivery_date = oi.delivery_date
+                     LEFT JOIN pallets p ON p.id = pi.pallet_id AND p.delivery_date = pi.delivery_date
+            WHERE oi.delivery_date = ?
+              AND oi.is_deleted = false
+              AND o.is_deleted = false
+              AND (CAST(? AS varchar) IS NULL OR o.warehouse_gln = ?)
+            GROUP BY oi.id, oi.quantity
+            """;
+
+    /**
+     * Части паллет (кроме первой) получают по новой паллете того же заказа
+     */
+    private static final String FRAGMENTS = """
+            CREATE TEMPORARY TABLE consolidation_fragments ON COMMIT DROP AS
+            SELECT pi.pallet_id, pi.order_item_id, p.order_id, nextval(pg_get_serial_sequence('pallets', 'id')) AS new_id
+            FROM (SELECT p.id, p.order_id
+                  FROM pallets p
+                           JOIN orders o ON o.id = p.order_id AND o.delivery_date = p.delivery_date
+                  WHERE p.delivery_date = ?
+                    AND p.is_deleted = false
+                    AND (CAST(? AS varchar) IS NULL OR o.warehouse_gln = ?)
+                    AND (SELECT COUNT(*) FROM pallet_items c WHERE c.pallet_id = p.id AND c.delivery_date = p.delivery_date) > 1
+                  ORDER BY p.id
+                  LIMIT ?) p
+                     JOIN pallet_items pi ON pi.pallet_id = p.id AND pi.delivery_date = ?
+            WHERE pi.order_item_id > (SELECT MIN(f.order_item_id)
+                                      FROM pallet_items f
+                                      WHERE f.pallet_id = p.id
+                                        AND f.delivery_date = ?)
+            """;
+
+    private record Placed(int remaining, int placed) {
+    }
+
+    private ConsolidationCheck() {
+    }
+
+    public static void main(String[] args) {
+        ToolArgs toolArgs = new ToolArgs(args);
+        String url = toolArgs.string("url", "jdbc:postgresql://localhost:5432/tehno_seti_db");
+        String user = toolArgs.string("user", "tehno_user");
+        String password = toolArgs.string("password", System.getenv().getOrDefault("PGPASSWORD", ""));
+        String schema = toolArgs.string("schema", "logistics");
+        LocalDate date = toolArgs.date("date", LocalDate.now().plusDays(1));
+        String warehouse = toolArgs.string("warehouse", null);
+        boolean commit = toolArgs.flag("commit");
+        int fragment = toolArgs.integer("fragment", 0);
+
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url + "?currentSchema=" + schema, user, password);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        PalletConsolidationService consolidation = new PalletConsolidationService(jdbcTemplate, 2000, 4);
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        int changed = transaction.execute(status -> {
+            if (fragment > 0) {
+                fragment(jdbcTemplate, date, warehouse, fragment);
+            }
+            Map<Long, Placed> before = read(jdbcTemplate, date, warehouse);
+            List<ConsolidationPlan> plans = consolidation.apply(date, warehouse);
+            Map<Long, Placed> after = read(jdbcTemplate, date, warehouse);
+            for (ConsolidationPlan plan : plans) {
+                System.out.printf(Locale.ROOT, "%s: паллет %d -> %d%n", plan.warehouseGln(), plan.palletsBefore(),
+                        plan.palletsAfter());
+            }
+            int mismatches = 0;
+            for (Map.Entry<Long, Placed> entry : before.entrySet()) {
+                Placed now = after.get(entry.getKey());
+                if (!Objects.equals(entry.getValue(), now)) {
+                    if (mismatches < 20) {
+                        System.out.printf(Locale.ROOT, "позиция %d: было %s, стало %s%n", entry.getKey(),
+                                entry.getValue(), now);
+                    }
+                    mismatches++;
+                }
+            }
+            System.out.printf(Locale.ROOT, "позиций %d, остаток изменился у %d%n", before.size(), mismatches);
+            if (!commit) {
+                status.setRollbackOnly();
+            }
+            return mismatches;
+        });
+        System.exit(changed == 0 ? 0 : 1);
+    }
+
+    private static void fragment(JdbcTemplate jdbcTemplate, LocalDate date, String warehouse, int pallets) {
+        jdbcTemplate.update(FRAGMENTS, date, warehouse, warehouse, pallets, date, date);
+        int created = jdbcTemplate.update("INSERT INTO pallets (id, order_id, delivery_date) "
+                + "SELECT new_id, order_id, ? FROM consolidation_fragments", date);
+        jdbcTemplate.update("UPDATE pallet_items pi SET pallet_id = f.new_id FROM consolidation_fragments f "
+                + "WHERE pi.pallet_id = f.pallet_id AND pi.order_item_id = f.order_item_id AND pi.delivery_date = ?", date);
+        System.out.printf(Locale.ROOT, "разложено по отдельным паллетам частей: %d%n", created);
+    }
+
+    private static Map<Long, Placed> read(JdbcTemplate jdbcTemplate, LocalDate date, String warehouse) {
+        Map<Long, Placed> placed = new HashMap<>();
+        jdbcTemplate.query(REMAINING, rs -> {
+            placed.put(rs.getLong("id"), new Placed(rs.getInt("remaining"), rs.getInt("placed")));
+        }, date, warehouse, warehouse);
+        return placed;
+    }
+}
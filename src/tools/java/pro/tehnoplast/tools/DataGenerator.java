@@ -0,0 +1,426 @@
+package pro.tehnoplast.tools;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+/**
+ * Детерминированный генератор синтетического набора данных для нагрузочных прогонов:
+ * справочники (контрагенты, склады, товары), заказы с позициями, паллетами и счетами в TSV для COPY
+ * и XLSX-файлы заказов для загрузки через /api/import/orders.
+ * Одинаковые аргументы и --seed дают побайтно одинаковые TSV.
+ * <p>
+ * Запуск: {@code java -cp target/tehnoseti-1.0-SNAPSHOT-jar-with-dependencies.jar:target/tehnoseti-1.0-SNAPSHOT-tools.jar
+ * pro.tehnoplast.tools.DataGenerator
+ * --out=target/synthetic --orders=1000000 --products=20000 --warehouses=2000}
+ * <p>
+ * Ключи синтетических справочников не пересекаются с реальными: ИНН с кодом региона 99,
+ * GLN и штрихкоды из диапазона GS1 для внутреннего обращения (префиксы 291 и 290).
+ * Идентификаторы заказов, позиций, паллет и товаров начинаются с --id-base.
+ */
+@Slf4j
+public final class DataGenerator {
+
+    static final String MANIFEST = "manifest.properties";
+    static final String IMPORT_DIR = "import";
+
+    private static final int[] INN10_WEIGHTS = {2, 4, 10, 3, 5, 9, 4, 6, 8};
+    private static final int[] PACKING_COEFFICIENTS = {1, 2, 4, 5, 6, 10, 12, 20, 24, 50};
+    private static final int PLACES_PER_PALLET = 40;
+    private static final int MAX_ITEMS_PER_ORDER = 20;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final LocalDate EXCEL_EPOCH = LocalDate.of(1899, 12, 30);
+
+    private static final String[] REGIONS = {
+            "Москва", "Московская область", "Санкт-Петербург", "Ленинградская область", "Краснодарский край",
+            "Свердловская область", "Новосибирская область", "Республика Татарстан", "Нижегородская область",
+            "Самарская область", "Ростовская область", "Челябинская область", "Республика Башкортостан",
+            "Пермский край", "Воронежская область", "Красноярский край", "Тюменская область", "Омская область",
+            "Волгоградская область", "Приморский край"};
+    private static final String[] STREETS = {
+            "Промышленная", "Складская", "Заводская", "Логистическая", "Транспортная", "Индустриальная",
+            "Северная", "Южная", "Полевая", "Железнодорожная"};
+    private static final String[] CHAINS = {
+            "Торговая сеть", "Гипермаркет", "Строймаркет", "Дом и сад", "Хозтовары", "Дистрибуция"};
+    private static final String[][] PRODUCTS_BY_GROUP = {
+            {"Ведро пластиковое", "Контейнер пищевой", "Таз пластиковый", "Ящик для хранения", "Канистра",
+                    "Лейка садовая", "Корзина для белья", "Крышка универсальная"},
+            {"Ведро оцинкованное", "Бак металлический", "Таз оцинкованный", "Ящик металлический",
+                    "Корыто оцинкованное", "Лейка оцинкованная"},
+            {"Труба ПНД", "Муфта ПНД", "Отвод ПНД", "Тройник ПНД", "Заглушка ПНД", "Фитинг компрессионный"}};
+    private static final String[] GROUP_NAMES = {"пластик", "металл", "ПНД"};
+    private static final String[][] SIZES_BY_GROUP = {
+            {"1 л", "3 л", "5 л", "10 л", "12 л", "20 л", "50 л"},
+            {"5 л", "10 л", "12 л", "15 л", "20 л", "30 л"},
+            {"20 мм", "25 мм", "32 мм", "40 мм", "50 мм", "63 мм", "110 мм"}};
+    private static final String[] IMPORT_HEADER = {"Номер заказа", "Дата заказа", "Дата доставки", "ИНН",
+            "GLN склада", "Штрихкод", "Количество", "Цена"};
+
+    private final long seed;
+    private final long idBase;
+    private final int counteragents;
+    private final int warehouses;
+    private final int products;
+    private final long orders;
+    private final LocalDate from;
+    private final int days;
+    private final int importFiles;
+    private final int importOrders;
+
+    /**
+     * Базовые цены и упаковочные коэффициенты товаров: нужны при генерации позиций
+     */
+    private final long[] basePrices;
+    private final int[] coefficients;
+
+    DataGenerator(ToolArgs args) {
+        this.seed = args.number("seed", 42);
+        this.idBase = args.number("id-base", 1);
+        this.counteragents = args.integer("counteragents", 1_000);
+        this.warehouses = args.integer("warehouses", 2_000);
+        this.products = args.integer("products", 20_000);
+        this.orders = args.number("orders", 1_000_000);
+        this.from = args.date("from", LocalDate.of(2027, 1, 1));
+        this.days = args.integer("days", 28);
+        this.importFiles = args.integer("import-files", 8);
+        this.importOrders = args.integer("import-orders", 2_000);
+        this.basePrices = new long[products];
+        this.coefficients = new int[products];
+        if (counteragents < 1 || warehouses < 1 || products < MAX_ITEMS_PER_ORDER || orders < 1 || days < 1
+                || counteragents > 9_999_999) {
+            throw new IllegalArgumentException("Недопустимые размеры набора данных");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        ToolArgs toolArgs = new ToolArgs(args);
+        new DataGenerator(toolArgs).generate(toolArgs.path("out", "target/synthetic"));
+    }
+
+    void generate(Path out) throws IOException {
+        long started = System.nanoTime();
+        Files.createDirectories(out.resolve(IMPORT_DIR));
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom dictionaries = root.split();
+        SplittableRandom facts = root.split();
+        SplittableRandom imports = root.split();
+
+        Map<SyntheticTable, Writer> writers = new EnumMap<>(SyntheticTable.class);
+        try {
+            for (SyntheticTable table : SyntheticTable.values()) {
+                Writer writer = new BufferedWriter(
+                        Files.newBufferedWriter(out.resolve(table.fileName()), StandardCharsets.UTF_8), BUFFER_SIZE);
+                writer.write(table.header());
+                writer.write('\n');
+                writers.put(table, writer);
+            }
+            writeDictionaries(dictionaries, writers);
+            long items = writeOrders(facts, writers);
+            log.info("Сгенерировано {} заказов, {} позиций за {} мс", orders, items,
+                    (System.nanoTime() - started) / 1_000_000);
+        } finally {
+            for (Writer writer : writers.values()) {
+                writer.close();
+            }
+        }
+        for (int file = 0; file < importFiles; file++) {
+            writeImportFile(imports, out.resolve(IMPORT_DIR).resolve("orders-%03d.xlsx".formatted(file)), file);
+        }
+        writeManifest(out.resolve(MANIFEST));
+        log.info("Синтетический набор данных записан в {} за {} мс", out.toAbsolutePath(),
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private void writeDictionaries(SplittableRandom random, Map<SyntheticTable, Writer> writers) throws IOException {
+        Writer writer = writers.get(SyntheticTable.COUNTERAGENTS);
+        for (int i = 0; i < counteragents; i++) {
+            writer.append(inn(i)).append('\t')
+                    .append("ООО «").append(CHAINS[i % CHAINS.length]).append(' ').append(String.valueOf(i + 1))
+                    .append("»\n");
+        }
+        writer = writers.get(SyntheticTable.WAREHOUSES);
+        for (int i = 0; i < warehouses; i++) {
+            String region = REGIONS[random.nextInt(REGIONS.length)];
+            writer.append(gln(i)).append('\t')
+                    .append(region).append(", ул. ").append(STREETS[random.nextInt(STREETS.length)])
+                    .append(", д. ").append(String.valueOf(1 + random.nextInt(150)))
+                    .append(", склад ").append(String.valueOf(i + 1)).append('\t')
+                    .append(region).append('\n');
+        }
+        writer = writers.get(SyntheticTable.PRODUCTS);
+        for (int i = 0; i < products; i++) {
+            int group = random.nextInt(GROUP_NAMES.length);
+            String[] names = PRODUCTS_BY_GROUP[group];
+            String[] sizes = SIZES_BY_GROUP[group];
+            coefficients[i] = PACKING_COEFFICIENTS[random.nextInt(PACKING_COEFFICIENTS.length)];
+            // Цены от 20 рублей до нескольких тысяч с длинным хвостом
+            basePrices[i] = Math.round(Math.exp(7.6 + random.nextDouble() * 5.5));
+            writer.append(String.valueOf(idBase + i)).append('\t')
+                    .append(names[random.nextInt(names.length)]).append(' ')
+                    .append(sizes[random.nextInt(sizes.length)]).append(" арт. ").append(String.valueOf(i + 1))
+                    .append('\t')
+                    .append(barcode(i)).append('\t')
+                    .append('\t')
+                    .append(sku(i)).append('\t')
+                    .append('\t')
+                    .append(String.valueOf(coefficients[i])).append('\t')
+                    .append(GROUP_NAMES[group]).append('\n');
+        }
+    }
+
+    /**
+     * Заказы упорядочены по дате доставки, чтобы каждая месячная секция заполнялась подряд
+     */
+    private long writeOrders(SplittableRandom random, Map<SyntheticTable, Writer> writers) throws IOException {
+        Writer orderWriter = writers.get(SyntheticTable.ORDERS);
+        Writer itemWriter = writers.get(SyntheticTable.ORDER_ITEMS);
+        Writer palletWriter = writers.get(SyntheticTable.PALLETS);
+        Writer palletItemWriter = writers.get(SyntheticTable.PALLET_ITEMS);
+        Writer invoiceWriter = writers.get(SyntheticTable.INVOICES);
+        GeneratedOrder order = new GeneratedOrder();
+        long itemId = idBase;
+        long palletId = idBase;
+        for (long i = 0; i < orders; i++) {
+            long orderId = idBase + i;
+            LocalDate deliveryDate = from.plusDays(i * days / orders);
+            nextOrder(random, order, deliveryDate);
+            String delivery = deliveryDate.toString();
+            String number = orderNumber(orderId);
+
+            orderWriter.append(String.valueOf(orderId)).append('\t')
+                    .append(number).append('\t')
+                    .append(order.orderDate.toString()).append('\t')
+                    .append(delivery).append('\t')
+                    .append(inn(order.counteragent)).append('\t')
+                    .append(gln(order.warehouse)).append('\t')
+                    .append(String.valueOf(order.pallets)).append('\n');
+            for (int p = 0; p < order.pallets; p++) {
+                palletWriter.append(String.valueOf(palletId + p)).append('\t')
+                        .append(String.valueOf(orderId)).append('\t')
+                        .append(delivery).append('\n');
+            }
+            for (int k = 0; k < order.items; k++) {
+                itemWriter.append(String.valueOf(itemId)).append('\t')
+                        .append(String.valueOf(orderId)).append('\t')
+                        .append(delivery).append('\t')
+                        .append(String.valueOf(idBase + order.products[k])).append('\t')
+                        .append(String.valueOf(order.quantities[k])).append('\t')
+                        .append(money(order.prices[k])).append('\n');
+                palletItemWriter.append(String.valueOf(palletId + k % order.pallets)).append('\t')
+                        .append(String.valueOf(itemId)).append('\t')
+                        .append(delivery).append('\t')
+                        .append(String.valueOf(order.quantities[k])).append('\n');
+                itemId++;
+            }
+            palletId += order.pallets;
+            writeInvoice(random, invoiceWriter, order, orderId, number, delivery);
+            if ((i + 1) % 100_000 == 0) {
+                log.info("Сгенерировано {} из {} заказов", i + 1, orders);
+            }
+        }
+        return itemId - idBase;
+    }
+
+    /**
+     * Счёт выставляется на 97% заказов; часть счетов намеренно расходится с заказом
+     * (сумма, отсутствие ссылки на заказ), чтобы сверке было что находить
+     */
+    private void writeInvoice(SplittableRandom random, Writer writer, GeneratedOrder order, long orderId,
+                              String number, String delivery) throws IOException {
+        int roll = random.nextInt(100);
+        if (roll >= 97) {
+            return;
+        }
+        long amount = order.amount();
+        if (roll == 0) {
+            amount += 100 + random.nextInt(10_000);
+        }
+        boolean linked = roll != 1;
+        long leadDays = ChronoUnit.DAYS.between(order.orderDate, LocalDate.parse(delivery));
+        writer.append("СФ-").append(String.valueOf(orderId)).append('\t')
+                .append(order.orderDate.plusDays(random.nextLong(leadDays + 1)).toString()).append('\t')
+                .append(linked ? String.valueOf(orderId) : "").append('\t')
+                .append(linked ? delivery : "").append('\t')
+                .append(inn(order.counteragent)).append('\t')
+                .append(number).append('\t')
+                .append(money(amount)).append('\n');
+    }
+
+    /**
+     * XLSX в формате OrderXlsx: заголовок и строки позиций; номера заказов не пересекаются с TSV
+     */
+    private void writeImportFile(SplittableRandom random, Path path, int file) throws IOException {
+        GeneratedOrder order = new GeneratedOrder();
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(500);
+             OutputStream out = Files.newOutputStream(path)) {
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.createDataFormat().getFormat("dd.mm.yyyy"));
+            Sheet sheet = workbook.createSheet("Заказы");
+            Row header = sheet.createRow(0);
+            for (int c = 0; c < IMPORT_HEADER.length; c++) {
+                header.createCell(c).setCellValue(IMPORT_HEADER[c]);
+            }
+            int rowNumber = 1;
+            for (int i = 0; i < importOrders; i++) {
+                LocalDate deliveryDate = from.plusDays(random.nextInt(days));
+                nextOrder(random, order, deliveryDate);
+                String number = "ИМП-%03d-%06d".formatted(file, i + 1);
+                for (int k = 0; k < order.items; k++) {
+                    Row row = sheet.createRow(rowNumber++);
+                    row.createCell(0).setCellValue(number);
+                    dateCell(row, 1, order.orderDate, dateStyle);
+                    dateCell(row, 2, deliveryDate, dateStyle);
+                    row.createCell(3).setCellValue(inn(order.counteragent));
+                    row.createCell(4).setCellValue(gln(order.warehouse));
+                    row.createCell(5).setCellValue(barcode(order.products[k]));
+                    row.createCell(6).setCellValue(order.quantities[k]);
+                    row.createCell(7).setCellValue(order.prices[k] / 100.0);
+                }
+            }
+            workbook.write(out);
+        }
+    }
+
+    private static void dateCell(Row row, int column, LocalDate date, CellStyle style) {
+        Cell cell = row.createCell(column);
+        cell.setCellValue(ChronoUnit.DAYS.between(EXCEL_EPOCH, date));
+        cell.setCellStyle(style);
+    }
+
+    /**
+     * Заполнить заказ: контрагенты и товары выбираются со смещением к началу списка
+     * (немного крупных сетей и ходовых позиций), склад - равномерно
+     */
+    private void nextOrder(SplittableRandom random, GeneratedOrder order, LocalDate deliveryDate) {
+        order.orderDate = deliveryDate.minusDays(1 + random.nextInt(7));
+        order.counteragent = skewed(random, counteragents);
+        order.warehouse = random.nextInt(warehouses);
+        order.items = Math.min(MAX_ITEMS_PER_ORDER, 1 + (int) (-Math.log(1 - random.nextDouble()) * 2.5));
+        int places = 0;
+        for (int k = 0; k < order.items; k++) {
+            int product;
+            do {
+                product = skewed(random, products);
+            } while (order.contains(product, k));
+            int coefficient = coefficients[product];
+            order.products[k] = product;
+            order.quantities[k] = coefficient * (1 + random.nextInt(12));
+            order.prices[k] = basePrices[product] * (90 + random.nextInt(21)) / 100;
+            places += order.quantities[k] / coefficient;
+        }
+        order.pallets = Math.max(1, Math.min(order.items, (places + PLACES_PER_PALLET - 1) / PLACES_PER_PALLET));
+    }
+
+    private static int skewed(SplittableRandom random, int size) {
+        double u = random.nextDouble();
+        return (int) (size * u * u);
+    }
+
+    private void writeManifest(Path path) throws IOException {
+        Properties manifest = new Properties();
+        manifest.setProperty("seed", String.valueOf(seed));
+        manifest.setProperty("id-base", String.valueOf(idBase));
+        manifest.setProperty("counteragents", String.valueOf(counteragents));
+        manifest.setProperty("warehouses", String.valueOf(warehouses));
+        manifest.setProperty("products", String.valueOf(products));
+        manifest.setProperty("orders", String.valueOf(orders));
+        manifest.setProperty("from", from.toString());
+        manifest.setProperty("days", String.valueOf(days));
+        manifest.setProperty("import-files", String.valueOf(importFiles));
+        manifest.setProperty("import-orders", String.valueOf(importOrders));
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            manifest.store(writer, "Синтетический набор данных");
+        }
+    }
+
+    static String orderNumber(long orderId) {
+        return "СИН-%09d".formatted(orderId);
+    }
+
+    static String inn(int index) {
+        char[] digits = "99%07d0".formatted(index + 1).toCharArray();
+        int sum = 0;
+        for (int i = 0; i < INN10_WEIGHTS.length; i++) {
+            sum += (digits[i] - '0') * INN10_WEIGHTS[i];
+        }
+        digits[9] = (char) ('0' + sum % 11 % 10);
+        return new String(digits);
+    }
+
+    static String gln(int index) {
+        return gs1("291%09d".formatted(index + 1));
+    }
+
+    static String barcode(int index) {
+        return gs1("290%09d".formatted(index + 1));
+    }
+
+    static String sku(int index) {
+        return "СИН-%07d".formatted(index + 1);
+    }
+
+    /**
+     * Дописать контрольную цифру GS1 к 12 цифрам
+     */
+    private static String gs1(String body) {
+        int sum = 0;
+        int weight = 3;
+        for (int i = body.length() - 1; i >= 0; i--) {
+            sum += (body.charAt(i) - '0') * weight;
+            weight = 4 - weight;
+        }
+        return body + (10 - sum % 10) % 10;
+    }
+
+    private static String money(long kopecks) {
+        return kopecks / 100 + "." + (kopecks % 100 < 10 ? "0" : "") + kopecks % 100;
+    }
+
+    /**
+     * Переиспользуемый буфер одного заказа
+     */
+    private static final class GeneratedOrder {
+        LocalDate orderDate;
+        int counteragent;
+        int warehouse;
+        int items;
+        int pallets;
+        final int[] products = new int[MAX_ITEMS_PER_ORDER];
+        final int[] quantities = new int[MAX_ITEMS_PER_ORDER];
+        final long[] prices = new long[MAX_ITEMS_PER_ORDER];
+
+        boolean contains(int product, int count) {
+            for (int k = 0; k < count; k++) {
+                if (products[k] == product) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long amount() {
+            long total = 0;
+            for (int k = 0; k < items; k++) {
+                total += quantities[k] * prices[k];
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package pro.tehnoplast.tools;
+
+import pro.tehnoplast.model.Order;
+import pro.tehnoplast.model.OrderItem;
+import pro.tehnoplast.model.Pallet;
+import pro.tehnoplast.model.Product;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Проверка хеширования сущностей: HashSet из --entities экземпляров каждого типа и поиск каждого
+ * по равному, но другому экземпляру (как после повторной загрузки из БД). При вырожденном hashCode
+ * поиск превращается в перебор корзины и прогон на 100 тысячах не завершается за минуты.
+ * Перед замером проверяется, что хеш OrderItem и Pallet не меняется при присвоении id.
+ * Первые --warmup прогонов не выводятся.
+ * <p>
+ * Запуск: {@code java -cp target/tehnoseti-1.0-SNAPSHOT-jar-with-dependencies.jar:target/tehnoseti-1.0-SNAPSHOT-tools.jar
+ * pro.tehnoplast.tools.EntityHashBenchmark
+ * --entities=100000 --warmup=3 --rounds=5}
+ */
+public final class EntityHashBenchmark {
+
+    private static final LocalDate DAY = LocalDate.of(2027, 1, 1);
+
+    private EntityHashBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        ToolArgs toolArgs = new ToolArgs(args);
+        int entities = toolArgs.integer("entities", 100_000);
+        int warmup = toolArgs.integer("warmup", 3);
+        int rounds = toolArgs.integer("rounds", 5);
+        checkPersist("OrderItem", new OrderItem(1L, 1L, 1, BigDecimal.ONE), item -> item.setId(1L));
+        checkPersist("Pallet", new Pallet(1L, DAY), pallet -> pallet.setId(1L));
+        System.out.printf(Locale.ROOT, "%-10s %6s %12s %16s%n", "entity", "round", "build, ms", "contains, ns/op");
+        for (int round = 1 - warmup; round <= rounds; round++) {
+            run("Order", EntityHashBenchmark::order, entities, round);
+            run("OrderItem", EntityHashBenchmark::orderItem, entities, round);
+            run("Pallet", EntityHashBenchmark::pallet, entities, round);
+            run("Product", EntityHashBenchmark::product, entities, round);
+        }
+    }
+
+    private static <T> void run(String name, LongFunction<T> factory, int entities, int round) {
+        List<T> originals = new ArrayList<>(entities);
+        List<T> probes = new ArrayList<>(entities);
+        for (long i = 1; i <= entities; i++) {
+            originals.add(factory.apply(i));
+            probes.add(factory.apply(i));
+        }
+        long started = System.nanoTime();
+        Set<T> set = new HashSet<>();
+        set.addAll(originals);
+        long built = System.nanoTime();
+        int found = 0;
+        for (T probe : probes) {
+            if (set.contains(probe)) {
+                found++;
+            }
+        }
+        long looked = System.nanoTime();
+        if (found != entities || set.size() != entities) {
+            throw new IllegalStateException(name + ": найдено " + found + " из " + entities + ", в наборе " + set.size());
+        }
+        if (round > 0) {
+            System.out.printf(Locale.ROOT, "%-10s %6d %12.1f %16.1f%n", name, round,
+                    (built - started) / 1e6, (double) (looked - built) / entities);
+        }
+    }
+
+    private static Order order(long i) {
+        Order order = new Order();
+        order.setId(i);
+        order.setNumber("SYN-" + i);
+        order.setOrderDate(DAY.minusDays(i % 7));
+        order.setDeliveryDate(DAY.plusDays(i % 28));
+        return order;
+    }
+
+    private static OrderItem orderItem(long i) {
+        OrderItem item = new OrderItem(i / 8, i % 8, 1, BigDecimal.ONE);
+        item.setId(i);
+        return item;
+    }
+
+    private static Pallet pallet(long i) {
+        Pallet pallet = new Pallet(i / 2, DAY);
+        pallet.setId(i);
+        return pallet;
+    }
+
+    /**
+     * Несохранённая сущность кладётся в набор, затем получает id, как при persist,
+     * и должна находиться в наборе по тому же экземпляру
+     */
+    private static <T> void checkPersist(String name, T entity, Consumer<T> persist) {
+        Set<T> set = new HashSet<>();
+        set.add(entity);
+        persist.accept(entity);
+        if (!set.contains(entity)) {
+            throw new IllegalStateException(name + ": после присвоения id сущность не находится в наборе");
+        }
+    }
+
+    private static Product product(long i) {
+        Product product = new Product();
+        product.setId(i);
+        product.setInternalSku("SKU-" + i);
+        return product;
+    }
+}
@@ -0,0 +1,193 @@
+package pro.tehnoplast.tools;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import pro.tehnoplast.model.Counteragent;
+import pro.tehnoplast.model.CounteragentProductCode;
+import pro.tehnoplast.model.Invoice;
+import pro.tehnoplast.model.Order;
+import pro.tehnoplast.model.OrderItem;
+import pro.tehnoplast.model.Pallet;
+import pro.tehnoplast.model.PalletItem;
+import pro.tehnoplast.model.Product;
+import pro.tehnoplast.model.ProductGroup;
+import pro.tehnoplast.model.Warehouse;
+import pro.tehnoplast.model.WarehouseDailySummary;
+import pro.tehnoplast.service.export.CsvCopyExportService;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Сравнение выгрузки позиций заказов в CSV.gz: CsvCopyExportService (COPY ... TO STDOUT) против чтения
+ * тех же строк сущностями через Hibernate (join fetch заказа, товара и счёта, потоковый результат
+ * с очисткой контекста). Обе выгрузки пишутся в счётчик байт, диск не участвует.
+ * Первые --warmup прогонов не выводятся; для каждого прогона - строки, время, строк в секунду,
+ * размер gzip и выделенная память потока (только для JPA, COPY почти не создаёт объектов).
+ * <p>
+ * Запуск: {@code java -cp target/tehnoseti-1.0-SNAPSHOT-jar-with-dependencies.jar:target/tehnoseti-1.0-SNAPSHOT-tools.jar
+ * pro.tehnoplast.tools.ExportBenchmark
+ * --url=jdbc:postgresql://localhost:5432/tehno_seti_db --user=tehno_user --password=...
+ * --from=2027-01-05 --to=2027-01-11 --warmup=1 --rounds=3}
+ */
+public final class ExportBenchmark {
+
+    private static final String JPQL = """
+            SELECT oi FROM OrderItem oi
+                JOIN FETCH oi.order o
+                JOIN FETCH oi.product
+                LEFT JOIN FETCH o.invoice
+            WHERE oi.deliveryDate BETWEEN :from AND :to
+              AND o.isDeleted = false
+            ORDER BY oi.deliveryDate, o.number, oi.id
+            """;
+
+    private static final String HEADER = "order_number,order_date,delivery_date,counteragent_inn,warehouse_gln,"
+            + "internal_sku,internal_barcode,product_name,quantity,unit_price,total_price,invoice_number,invoice_date";
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ExportBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        ToolArgs toolArgs = new ToolArgs(args);
+        String url = toolArgs.string("url", "jdbc:postgresql://localhost:5432/tehno_seti_db");
+        String user = toolArgs.string("user", "tehno_user");
+        String password = toolArgs.string("password", System.getenv().getOrDefault("PGPASSWORD", ""));
+        String schema = toolArgs.string("schema", "logistics");
+        LocalDate from = toolArgs.date("from", LocalDate.now());
+        LocalDate to = toolArgs.date("to", from.plusDays(6));
+        int warmup = toolArgs.integer("warmup", 1);
+        int rounds = toolArgs.integer("rounds", 3);
+
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url + "?currentSchema=" + schema, user, password);
+        CsvCopyExportService copyExport = new CsvCopyExportService(dataSource);
+        try (SessionFactory sessionFactory = sessionFactory(url, user, password, schema)) {
+            System.out.printf(Locale.ROOT, "%-5s %6s %10s %10s %12s %10s %12s%n",
+                    "path", "round", "rows", "seconds", "rows/s", "gzip, MB", "alloc, MB");
+            for (int round = 1 - warmup; round <= rounds; round++) {
+                long allocated = allocatedBytes();
+                long started = System.nanoTime();
+                CountingOutputStream out = new CountingOutputStream();
+                long rows = copyExport.exportOrderItemsCsvGzip(from, to, out);
+                report("copy", round, rows, started, out.count, allocatedBytes() - allocated);
+
+                allocated = allocatedBytes();
+                started = System.nanoTime();
+                out = new CountingOutputStream();
+                rows = exportWithJpa(sessionFactory, from, to, out);
+                report("jpa", round, rows, started, out.count, allocatedBytes() - allocated);
+            }
+        }
+    }
+
+    private static SessionFactory sessionFactory(String url, String user, String password, String schema) {
+        Configuration configuration = new Configuration()
+                .setProperty(AvailableSettings.JAKARTA_JDBC_URL, url)
+                .setProperty(AvailableSettings.JAKARTA_JDBC_USER, user)
+                .setProperty(AvailableSettings.JAKARTA_JDBC_PASSWORD, password)
+                .setProperty(AvailableSettings.DEFAULT_SCHEMA, schema)
+                .setProperty(AvailableSettings.STATEMENT_FETCH_SIZE, FETCH_SIZE);
+        for (Class<?> entity : new Class<?>[]{Counteragent.class, CounteragentProductCode.class, Invoice.class,
+                Order.class, OrderItem.class, Pallet.class, PalletItem.class, Product.class, ProductGroup.class,
+                Warehouse.class, WarehouseDailySummary.class}) {
+            configuration.addAnnotatedClass(entity);
+        }
+        return configuration.buildSessionFactory();
+    }
+
+    /**
+     * Те же колонки и порядок, что у COPY в CsvCopyExportService
+     */
+    private static long exportWithJpa(SessionFactory sessionFactory, LocalDate from, LocalDate to, OutputStream out)
+            throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8), BUFFER_SIZE);
+        long rows = 0;
+        try (Session session = sessionFactory.openSession()) {
+            session.setDefaultReadOnly(true);
+            session.beginTransaction();
+            writer.write(HEADER);
+            writer.write('\n');
+            try (Stream<OrderItem> items = session.createSelectionQuery(JPQL, OrderItem.class)
+                    .setParameter("from", from)
+                    .setParameter("to", to)
+                    .setFetchSize(FETCH_SIZE)
+                    .getResultStream()) {
+                for (OrderItem item : (Iterable<OrderItem>) items::iterator) {
+                    Order order = item.getOrder();
+                    Product product = item.getProduct();
+                    Invoice invoice = order.getInvoice();
+                    writer.write(csv(order.getNumber()) + ',' + order.getOrderDate() + ',' + order.getDeliveryDate()
+                            + ',' + csv(order.getCounteragentInn()) + ',' + csv(order.getWarehouseGln())
+                            + ',' + csv(product.getInternalSku()) + ',' + csv(product.getInternalBarcode())
+                            + ',' + csv(product.getName()) + ',' + item.getQuantity() + ',' + item.getUnitPrice()
+                            + ',' + item.getTotalPrice()
+                            + ',' + (invoice != null ? csv(invoice.getNumber()) : "")
+                            + ',' + (invoice != null ? invoice.getIssueDate() : ""));
+                    writer.write('\n');
+                    if (++rows % FETCH_SIZE == 0) {
+                        session.clear();
+                    }
+                }
+            }
+            session.getTransaction().rollback();
+        }
+        writer.flush();
+        gzip.finish();
+        return rows;
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static void report(String path, int round, long rows, long started, long bytes, long allocated) {
+        if (round <= 0) {
+            return;
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf(Locale.ROOT, "%-5s %6d %10d %10.2f %12.0f %10.1f %12.0f%n",
+                path, round, rows, seconds, rows / seconds, bytes / 1048576.0, allocated / 1048576.0);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package pro.tehnoplast.tools;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Нагрузочный прогон по набору DataGenerator: потоки в замкнутом цикле вызывают сценарии загрузки,
+ * планирования и отчётов по весам --mix и пишут время ответа; в конце - таблица перцентилей по сценариям.
+ * Запросы за время прогрева (--warmup) не учитываются. Нужен только запущенный сервис, сеть наружу не нужна.
+ * <p>
+ * Запуск: {@code java -cp target/tehnoseti-1.0-SNAPSHOT-jar-with-dependencies.jar:target/tehnoseti-1.0-SNAPSHOT-tools.jar
+ * pro.tehnoplast.tools.LoadTest
+ * --url=http://localhost:8080 --data=target/synthetic --threads=8 --duration=5m --warmup=30s}
+ * <p>
+ * Загрузка заказов учитывается дважды: "import" - приём файла в очередь, "import.job" - до завершения задачи.
+ * Код завершения 1, если доля ошибок выше --max-error-rate (по умолчанию 0.01).
+ */
+@Slf4j
+public final class LoadTest {
+
+    private static final String DEFAULT_MIX = "summary:4,summary-xlsx:1,packing-slip:4,packing-slip-xlsx:2,"
+            + "sales:2,consolidation:2,shipments:1,import:1";
+    private static final String XLSX_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+    private static final Pattern JOB_ID = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+    private static final Pattern JOB_STATUS = Pattern.compile("\"status\"\\s*:\\s*\"(\\w+)\"");
+    private static final Pattern PRODUCT_BARCODE = Pattern.compile("\"productBarcode\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Duration JOB_POLL_INTERVAL = Duration.ofMillis(250);
+    private static final Duration JOB_TIMEOUT = Duration.ofMinutes(10);
+    private static final double[] PERCENTILES = {50, 90, 95, 99};
+
+    private final URI base;
+    private final HttpClient client;
+    private final Duration timeout;
+    private final long idBase;
+    private final long orders;
+    private final int warehouses;
+    private final LocalDate from;
+    private final int days;
+    private final List<Path> importFiles;
+    private final AtomicLong nextImport = new AtomicLong();
+    private final Map<String, Latencies> metrics = new ConcurrentHashMap<>();
+    private volatile boolean recording;
+
+    LoadTest(ToolArgs args) throws IOException {
+        Path data = args.path("data", "target/synthetic");
+        Properties manifest = new Properties();
+        try (Reader reader = Files.newBufferedReader(data.resolve(DataGenerator.MANIFEST), StandardCharsets.UTF_8)) {
+            manifest.load(reader);
+        }
+        this.base = URI.create(args.string("url", "http://localhost:8080"));
+        this.timeout = args.duration("timeout", Duration.ofSeconds(120));
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        this.idBase = Long.parseLong(manifest.getProperty("id-base"));
+        this.orders = Long.parseLong(manifest.getProperty("orders"));
+        this.warehouses = Integer.parseInt(manifest.getProperty("warehouses"));
+        this.from = LocalDate.parse(manifest.getProperty("from"));
+        this.days = Integer.parseInt(manifest.getProperty("days"));
+        try (var files = Files.list(data.resolve(DataGenerator.IMPORT_DIR))) {
+            this.importFiles = files.filter(path -> path.toString().endsWith(".xlsx")).sorted().toList();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ToolArgs toolArgs = new ToolArgs(args);
+        LoadTest loadTest = new LoadTest(toolArgs);
+        Map<Scenario, Integer> mix = Scenario.parseMix(toolArgs.string("mix", DEFAULT_MIX));
+        if (mix.containsKey(Scenario.IMPORT) && loadTest.importFiles.isEmpty()) {
+            throw new IllegalStateException("Нет XLSX-файлов для сценария import");
+        }
+        boolean ok = loadTest.run(mix,
+                toolArgs.integer("threads", 8),
+                toolArgs.duration("warmup", Duration.ofSeconds(10)),
+                toolArgs.duration("duration", Duration.ofSeconds(60)),
+                toolArgs.number("seed", 7),
+                Double.parseDouble(toolArgs.string("max-error-rate", "0.01")));
+        String report = toolArgs.string("report", null);
+        if (report != null) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(Path.of(report)), true, StandardCharsets.UTF_8)) {
+                loadTest.printReport(out, toolArgs.duration("duration", Duration.ofSeconds(60)), true);
+            }
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    boolean run(Map<Scenario, Integer> mix, int threads, Duration warmup, Duration duration, long seed,
+                double maxErrorRate) throws InterruptedException {
+        Scenario[] wheel = Scenario.wheel(mix);
+        SplittableRandom root = new SplittableRandom(seed);
+        long warmupEnd = System.nanoTime() + warmup.toNanos();
+        long end = warmupEnd + duration.toNanos();
+        log.info("Нагрузка на {}: {} потоков, прогрев {} с, замер {} с, сценарии {}", base, threads,
+                warmup.toSeconds(), duration.toSeconds(), mix);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom random = root.split();
+            workers.add(executor.submit(() -> {
+                while (System.nanoTime() < end) {
+                    wheel[random.nextInt(wheel.length)].run(this, random);
+                }
+            }));
+        }
+        executor.shutdown();
+        while (System.nanoTime() < warmupEnd) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        recording = true;
+        log.info("Прогрев завершён, идёт замер");
+        if (!executor.awaitTermination(duration.toMillis() + JOB_TIMEOUT.toMillis() + timeout.toMillis(),
+                TimeUnit.MILLISECONDS)) {
+            executor.shutdownNow();
+        }
+        for (Future<?> worker : workers) {
+            try {
+                worker.get(0, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                log.error("Поток нагрузки завершился с ошибкой", e);
+            }
+        }
+
+        printReport(System.out, duration, false);
+        long requests = metrics.values().stream().mapToLong(Latencies::count).sum();
+        long errors = metrics.values().stream().mapToLong(Latencies::errors).sum();
+        return requests > 0 && errors <= requests * maxErrorRate;
+    }
+
+    private void printReport(PrintStream out, Duration duration, boolean tsv) {
+        String format = tsv
+                ? "%s\t%d\t%d\t%.1f\t%.1f\t%.1f\t%.1f\t%.1f\t%.1f%n"
+                : "%-20s %9d %7d %8.1f %8.1f %8.1f %8.1f %8.1f %9.1f%n";
+        out.printf(tsv
+                        ? "%s\t%s\t%s\t%s\t%s\t%s\t%s\t%s\t%s%n"
+                        : "%-20s %9s %7s %8s %8s %8s %8s %8s %9s%n",
+                "scenario", "requests", "errors", "rps", "p50_ms", "p90_ms", "p95_ms", "p99_ms", "max_ms");
+        for (Map.Entry<String, Latencies> entry : new TreeMap<>(metrics).entrySet()) {
+            Latencies latencies = entry.getValue();
+            double[] values = latencies.percentiles(PERCENTILES);
+            out.printf(Locale.ROOT, format, entry.getKey(), latencies.count(), latencies.errors(),
+                    latencies.count() / (double) Math.max(1, duration.toSeconds()),
+                    values[0], values[1], values[2], values[3], latencies.max());
+        }
+    }
+
+    private void record(String metric, long startedNanos, boolean ok) {
+        if (recording) {
+            metrics.computeIfAbsent(metric, key -> new Latencies()).add(System.nanoTime() - startedNanos, ok);
+        }
+    }
+
+    /**
+     * Выполнить запрос и учесть время до получения тела ответа целиком; ошибка сети - тоже ошибка сценария
+     */
+    private HttpResponse<String> send(String metric, HttpRequest.Builder request, boolean keepBody) {
+        long started = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(request.timeout(timeout).build(), keepBody
+                    ? HttpResponse.BodyHandlers.ofString()
+                    : HttpResponse.BodyHandlers.replacing((String) null));
+            record(metric, started, response.statusCode() < 400);
+            return response;
+        } catch (IOException e) {
+            record(metric, started, false);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return HttpRequest.newBuilder(base.resolve(path)).GET();
+    }
+
+    private LocalDate randomDate(SplittableRandom random) {
+        return from.plusDays(random.nextInt(days));
+    }
+
+    private long randomOrderId(SplittableRandom random) {
+        return idBase + random.nextLong(orders);
+    }
+
+    /**
+     * Загрузка XLSX: файлы берутся по кругу, повторная загрузка того же файла проверяет пропуск уже загруженных
+     */
+    private void importOrders(SplittableRandom random) {
+        Path file = importFiles.get((int) (nextImport.getAndIncrement() % importFiles.size()));
+        String boundary = "----tehnoseti" + Long.toHexString(random.nextLong());
+        byte[] content;
+        try {
+            content = Files.readAllBytes(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] head = ("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + file.getFileName() + "\"\r\n"
+                + "Content-Type: " + XLSX_TYPE + "\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+
+        long started = System.nanoTime();
+        HttpResponse<String> accepted = send("import", HttpRequest.newBuilder(base.resolve("/api/import/orders"))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArrays(List.of(head, content, tail))), true);
+        if (accepted == null || accepted.statusCode() != 202) {
+            return;
+        }
+        Matcher id = JOB_ID.matcher(accepted.body());
+        if (!id.find()) {
+            record("import.job", started, false);
+            return;
+        }
+        long deadline = started + JOB_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(JOB_POLL_INTERVAL.toMillis());
+                HttpResponse<String> job = client.send(get("/api/jobs/" + id.group(1)).timeout(timeout).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                Matcher status = JOB_STATUS.matcher(job.body());
+                if (status.find() && (status.group(1).equals("done") || status.group(1).equals("failed"))) {
+                    record("import.job", started, status.group(1).equals("done"));
+                    return;
+                }
+            } catch (IOException e) {
+                record("import.job", started, false);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        record("import.job", started, false);
+    }
+
+    /**
+     * Упаковщик на одном заказе: карточка заказа (не учитывается), затем сканирование каждого товара заказа
+     */
+    private void scanOrder(SplittableRandom random) {
+        String path = "/api/orders/" + randomOrderId(random);
+        HttpResponse<String> order;
+        try {
+            order = client.send(get(path).timeout(timeout).build(),
+                    HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (order.statusCode() != 200) {
+            return;
+        }
+        Matcher barcode = PRODUCT_BARCODE.matcher(order.body());
+        while (barcode.find()) {
+            send("scan", get(path + "/scan/" + barcode.group(1)), false);
+        }
+    }
+
+    /**
+     * Сценарии нагрузки; вес задаётся в --mix как имя:вес через запятую
+     */
+    enum Scenario {
+        SUMMARY("summary") {
+            @Override
+            void run(LoadTest test, SplittableRandom random) {
+                LocalDate date = test.randomDate(random);
+                test.send(key, test.get("/summary?from=%s&to=%s".formatted(date, date.plusDays(6))), false);
+            }
+        },
+        SUMMARY_XLSX("summary-xlsx") {
+            @Override
+            void run(LoadTest test, SplittableRandom random) {
+                LocalDate date = test.randomDate(random);
+                test.send(key, test.get("/summary/xlsx?from=%s&to=%s".formatted(date, date.plusDays(6))), false);
+            }
+        },
+        PACKING_SLIP("packing-slip") {
+            @Override
+            void run(LoadTest test, SplittableRandom random) {
+                test.send(key, test.get("/api/orders/%d/packing-slip".formatted(test.randomOrderId(random))), false);
+            }
+        },
+        PACKING_SLIP_XLSX("packing-slip-xlsx") {
+            @Override
+            void run(LoadTest test, SplittableRandom random) {
+                test.send(key, test.get("/api/orders/%d/packing-slip.xlsx".formatted(test.randomOrderId(random))),
+                        false);
+            }
+        },
+        SALES("sales") {
+            @Override
+            void run(LoadTest test, SplittableRandom random) {
+                LocalDate date = test.randomDate(random);
+                test.send(key, test.get("/api/analytics/sales?groupBy=warehouse,week&from=%s&to=%s"
+                        .formatted(date, date.plusDays(13))), false);
+            }
+        },
+        CONSOLIDATION("consolidation") {
+            @Override
+            void run(LoadTest test, SplittableRandom random) {
+                test.send(key, test.get("/api/pallets/consolidation/%s?warehouse=%s".formatted(
+                        test.randomDate(random), DataGenerator.gln(random.nextInt(test.warehouses)))), false);
+            }
+        },
+        SHIPMENTS("shipments") {
+            @Override
+            void run(LoadTest test, SplittableRandom random) {
+                test.send(key, HttpRequest.newBuilder(test.base.resolve("/api/shipments/" + test.randomDate(random)))
+                        .POST(HttpRequest.BodyPublishers.noBody()), false);
+            }
+        },
+        SCAN("scan") {
+            @Override
+            void run(LoadTest test, SplittableRandom random) {
+                test.scanOrder(random);
+            }
+        },
+        IMPORT("import") {
+            @Override
+            void run(LoadTest test, SplittableRandom random) {
+                test.importOrders(random);
+            }
+        };
+
+        final String key;
+
+        Scenario(String key) {
+            this.key = key;
+        }
+
+        abstract void run(LoadTest test, SplittableRandom random);
+
+        static Map<Scenario, Integer> parseMix(String mix) {
+            Map<Scenario, Integer> weights = new TreeMap<>();
+            for (String part : mix.split(",")) {
+                String[] pair = part.trim().split(":");
+                Scenario scenario = Arrays.stream(values())
+                        .filter(s -> s.key.equals(pair[0]))
+                        .findFirst()
+                        .orElseThrow(() -> new IllegalArgumentException("Неизвестный сценарий: " + pair[0]));
+                int weight = pair.length > 1 ? Integer.parseInt(pair[1]) : 1;
+                if (weight > 0) {
+                    weights.put(scenario, weight);
+                }
+            }
+            if (weights.isEmpty()) {
+                throw new IllegalArgumentException("Не задано ни одного сценария");
+            }
+            return weights;
+        }
+
+        /**
+         * Колесо выбора: сценарий повторён столько раз, каков его вес
+         */
+        static Scenario[] wheel(Map<Scenario, Integer> mix) {
+            List<Scenario> wheel = new ArrayList<>();
+            mix.forEach((scenario, weight) -> {
+                for (int i = 0; i < weight; i++) {
+                    wheel.add(scenario);
+                }
+            });
+            return wheel.toArray(Scenario[]::new);
+        }
+    }
+
+    /**
+     * Все замеры одного сценария в микросекундах; перцентили считаются точно по отсортированному массиву
+     */
+    private static final class Latencies {
+
+        private long[] micros = new long[1024];
+        private int count;
+        private long errors;
+
+        synchronized void add(long nanos, boolean ok) {
+            if (count == micros.length) {
+                micros = Arrays.copyOf(micros, count * 2);
+            }
+            micros[count++] = nanos / 1_000;
+            if (!ok) {
+                errors++;
+            }
+        }
+
+        synchronized long count() {
+            return count;
+        }
+
+        synchronized long errors() {
+            return errors;
+        }
+
+        synchronized double max() {
+            long max = 0;
+            for (int i = 0; i < count; i++) {
+                max = Math.max(max, micros[i]);
+            }
+            return max / 1_000.0;
+        }
+
+        synchronized double[] percentiles(double[] percentiles) {
+            long[] sorted = Arrays.copyOf(micros, count);
+            Arrays.sort(sorted);
+            double[] values = new double[percentiles.length];
+            for (int i = 0; i < percentiles.length && sorted.length > 0; i++) {
+                int rank = (int) Math.ceil(percentiles[i] / 100.0 * sorted.length) - 1;
+                values[i] = sorted[Math.max(0, rank)] / 1_000.0;
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package pro.tehnoplast.tools;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Загрузка набора DataGenerator через COPY ... FROM STDIN одной транзакцией: при любой ошибке база не меняется.
+ * <p>
+ * Если прав хватает, на время загрузки отключаются пользовательские триггеры и проверки внешних ключей
+ * (session_replication_role = replica): набор согласован по построению, а триггеры outbox
+ * дали бы по событию на каждую строку. Сводки по складам и агрегаты паллет затем пересчитываются
+ * одним запросом на всю загрузку. Без прав суперпользователя загрузка идёт с триггерами - медленнее, но верно.
+ * Ключи справочников зависят только от номера записи, поэтому второй синтетический набор в ту же базу не ляжет:
+ * для большего объёма генерируется один набор с нужным --orders.
+ * <p>
+ * Запуск: {@code java -cp target/tehnoseti-1.0-SNAPSHOT-jar-with-dependencies.jar:target/tehnoseti-1.0-SNAPSHOT-tools.jar
+ * pro.tehnoplast.tools.SyntheticDataLoader
+ * --data=target/synthetic --url=jdbc:postgresql://localhost:5432/tehno_seti_db --user=tehno_user --password=...}
+ */
+@Slf4j
+public final class SyntheticDataLoader {
+
+    private static final String COPY = "COPY %s (%s) FROM STDIN WITH (FORMAT CSV, HEADER, DELIMITER E'\\t')";
+
+    private static final String CREATE_PRODUCTS_STAGE = """
+            CREATE TEMP TABLE synthetic_products
+            (
+                id                  INTEGER,
+                name                VARCHAR(255),
+                internal_barcode    VARCHAR(50),
+                external_barcode    VARCHAR(50),
+                internal_sku        VARCHAR(50),
+                external_sku        VARCHAR(50),
+                packing_coefficient DOUBLE PRECISION,
+                group_name          VARCHAR(50)
+            ) ON COMMIT DROP
+            """;
+
+    private static final String INSERT_PRODUCTS = """
+            INSERT INTO products (id, name, internal_barcode, external_barcode, internal_sku, external_sku,
+                                  packing_coefficient, group_id)
+            SELECT s.id, s.name, s.internal_barcode, s.external_barcode, s.internal_sku, s.external_sku,
+                   s.packing_coefficient, g.id
+            FROM synthetic_products s
+                     JOIN product_groups g ON g.name = s.group_name
+            """;
+
+    private static final String UPSERT_SUMMARIES = """
+            INSERT INTO warehouse_daily_summaries (warehouse_gln, delivery_date, orders_count, items_count,
+                                                   total_quantity, total_amount, pallet_count, updated_at)
+            SELECT o.warehouse_gln,
+                   o.delivery_date,
+                   COUNT(*),
+                   COALESCE(SUM(items.items_count), 0),
+                   COALESCE(SUM(items.total_quantity), 0),
+                   COALESCE(SUM(items.total_amount), 0),
+                   COALESCE(SUM(pallets.pallet_count), 0),
+                   NOW()
+            FROM orders o
+                     JOIN (SELECT DISTINCT warehouse_gln, delivery_date
+                           FROM orders
+                           WHERE id >= ? AND delivery_date BETWEEN ? AND ?) k
+                          ON k.warehouse_gln = o.warehouse_gln AND k.delivery_date = o.delivery_date
+                     LEFT JOIN (SELECT order_id, delivery_date, COUNT(*) AS items_count,
+                                       SUM(quantity) AS total_quantity, SUM(total_price) AS total_amount
+                                FROM order_items
+                                WHERE is_deleted = false AND delivery_date BETWEEN ? AND ?
+                                GROUP BY order_id, delivery_date) items
+                               ON items.order_id = o.id AND items.delivery_date = o.delivery_date
+                     LEFT JOIN (SELECT order_id, delivery_date, COUNT(*) AS pallet_count
+                                FROM pallets
+                                WHERE is_deleted = false AND delivery_date BETWEEN ? AND ?
+                                GROUP BY order_id, delivery_date) pallets
+                               ON pallets.order_id = o.id AND pallets.delivery_date = o.delivery_date
+            WHERE o.is_deleted = false
+            GROUP BY o.warehouse_gln, o.delivery_date
+            ON CONFLICT (warehouse_gln, delivery_date) DO UPDATE
+                SET orders_count   = EXCLUDED.orders_count,
+                    items_count    = EXCLUDED.items_count,
+                    total_quantity = EXCLUDED.total_quantity,
+                    total_amount   = EXCLUDED.total_amount,
+                    pallet_count   = EXCLUDED.pallet_count,
+                    updated_at     = EXCLUDED.updated_at
+            """;
+
+    private static final String UPSERT_PALLET_AGGREGATES = """
+            INSERT INTO pallet_aggregates (pallet_id, delivery_date, items_count, total_quantity,
+                                           total_value, occupied_places, updated_at)
+            SELECT p.id,
+                   p.delivery_date,
+                   COUNT(pi.order_item_id),
+                   COALESCE(SUM(pi.quantity), 0),
+                   COALESCE(SUM(pi.quantity * oi.unit_price), 0),
+                   COALESCE(SUM(pi.quantity * pr.packing_coefficient), 0),
+                   NOW()
+            FROM pallets p
+                     LEFT JOIN pallet_items pi ON pi.pallet_id = p.id AND pi.delivery_date = p.delivery_date
+                     LEFT JOIN order_items oi ON oi.id = pi.order_item_id AND oi.delivery_date = pi.delivery_date
+                     LEFT JOIN products pr ON pr.id = oi.product_id
+            WHERE p.id >= ? AND p.delivery_date BETWEEN ? AND ?
+            GROUP BY p.id, p.delivery_date
+            ON CONFLICT (pallet_id, delivery_date) DO UPDATE
+                SET items_count     = EXCLUDED.items_count,
+                    total_quantity  = EXCLUDED.total_quantity,
+                    total_value     = EXCLUDED.total_value,
+                    occupied_places = EXCLUDED.occupied_places,
+                    updated_at      = EXCLUDED.updated_at
+            """;
+
+    /**
+     * Таблицы с явными идентификаторами из набора: их последовательности сдвигаются за загруженные id
+     */
+    private static final List<String> SERIAL_TABLES = List.of("products", "orders", "order_items", "pallets");
+
+    public static void main(String[] args) throws IOException, SQLException {
+        ToolArgs toolArgs = new ToolArgs(args);
+        Path data = toolArgs.path("data", "target/synthetic");
+        String url = toolArgs.string("url", "jdbc:postgresql://localhost:5432/tehno_seti_db");
+        Properties credentials = new Properties();
+        credentials.setProperty("user", toolArgs.string("user", "tehno_user"));
+        credentials.setProperty("password", toolArgs.string("password", System.getenv().getOrDefault("PGPASSWORD", "")));
+        try (Connection connection = DriverManager.getConnection(url, credentials)) {
+            load(connection, data, toolArgs.string("schema", "logistics"));
+        }
+    }
+
+    static void load(Connection connection, Path data, String schema) throws IOException, SQLException {
+        long started = System.nanoTime();
+        Properties manifest = new Properties();
+        try (Reader reader = Files.newBufferedReader(data.resolve(DataGenerator.MANIFEST), StandardCharsets.UTF_8)) {
+            manifest.load(reader);
+        }
+        long idBase = Long.parseLong(manifest.getProperty("id-base"));
+        LocalDate from = LocalDate.parse(manifest.getProperty("from"));
+        LocalDate to = from.plusDays(Integer.parseInt(manifest.getProperty("days")) - 1);
+
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET search_path TO " + schema);
+            checkIdBase(statement, idBase);
+            int months = (int) ChronoUnit.MONTHS.between(from.withDayOfMonth(1), to.withDayOfMonth(1)) + 1;
+            try (PreparedStatement partitions = connection.prepareStatement("SELECT ensure_delivery_partitions(?, ?)")) {
+                partitions.setObject(1, from.withDayOfMonth(1));
+                partitions.setInt(2, months);
+                partitions.execute();
+            }
+            boolean replica = disableTriggers(connection, statement);
+
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            for (SyntheticTable table : SyntheticTable.values()) {
+                long tableStarted = System.nanoTime();
+                long rows;
+                if (table == SyntheticTable.PRODUCTS) {
+                    statement.execute(CREATE_PRODUCTS_STAGE);
+                    copy(copyManager, data, table, "synthetic_products");
+                    rows = statement.executeUpdate(INSERT_PRODUCTS);
+                } else {
+                    rows = copy(copyManager, data, table, table.table());
+                }
+                log.info("{}: загружено {} строк за {} мс", table.table(), rows,
+                        (System.nanoTime() - tableStarted) / 1_000_000);
+            }
+
+            // Статистика нужна уже пересчёту: без неё планировщик считает только что заполненные секции пустыми
+            for (SyntheticTable table : SyntheticTable.values()) {
+                statement.execute("ANALYZE " + table.table());
+            }
+            if (replica) {
+                statement.execute("SET LOCAL session_replication_role = origin");
+                recalculateDerivedData(connection, idBase, from, to);
+            }
+            for (String table : SERIAL_TABLES) {
+                statement.execute("SELECT setval(pg_get_serial_sequence('%1$s', 'id'), (SELECT MAX(id) FROM %1$s))"
+                        .formatted(table));
+            }
+            connection.commit();
+        } catch (IOException | SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        }
+
+        log.info("Синтетический набор из {} загружен за {} мс", data.toAbsolutePath(),
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Идентификаторы набора должны начинаться выше уже занятых: первичные ключи секционированных таблиц
+     * включают дату доставки, и повтор id на другую дату COPY не отловит
+     */
+    private static void checkIdBase(Statement statement, long idBase) throws SQLException {
+        for (String table : SERIAL_TABLES) {
+            try (ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)) {
+                rs.next();
+                long max = rs.getLong(1);
+                if (max >= idBase) {
+                    throw new IllegalStateException("В таблице %s уже есть id до %d; сгенерируйте набор с --id-base=%d"
+                            .formatted(table, max, max + 1));
+                }
+            }
+        }
+    }
+
+    private static boolean disableTriggers(Connection connection, Statement statement) throws SQLException {
+        Savepoint savepoint = connection.setSavepoint();
+        try {
+            statement.execute("SET LOCAL session_replication_role = replica");
+            connection.releaseSavepoint(savepoint);
+            return true;
+        } catch (SQLException e) {
+            connection.rollback(savepoint);
+            log.warn("Триггеры не отключены, загрузка пойдёт с ними: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private static void recalculateDerivedData(Connection connection, long idBase, LocalDate from, LocalDate to)
+            throws SQLException {
+        long started = System.nanoTime();
+        try (PreparedStatement summaries = connection.prepareStatement(UPSERT_SUMMARIES);
+             PreparedStatement pallets = connection.prepareStatement(UPSERT_PALLET_AGGREGATES)) {
+            summaries.setLong(1, idBase);
+            for (int i = 0; i < 3; i++) {
+                summaries.setObject(2 + i * 2, from);
+                summaries.setObject(3 + i * 2, to);
+            }
+            int summaryRows = summaries.executeUpdate();
+            pallets.setLong(1, idBase);
+            pallets.setObject(2, from);
+            pallets.setObject(3, to);
+            int palletRows = pallets.executeUpdate();
+            log.info("Пересчитано сводок {}, агрегатов паллет {} за {} мс", summaryRows, palletRows,
+                    (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+
+    private static long copy(CopyManager copyManager, Path data, SyntheticTable table, String target)
+            throws IOException, SQLException {
+        String sql = COPY.formatted(target, String.join(", ", table.columns()));
+        try (Reader reader = Files.newBufferedReader(data.resolve(table.fileName()), StandardCharsets.UTF_8)) {
+            return copyManager.copyIn(sql, reader, 1 << 16);
+        }
+    }
+}
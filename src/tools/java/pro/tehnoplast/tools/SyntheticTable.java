@@ -0,0 +1,50 @@
+package pro.tehnoplast.tools;
+
+import java.util.List;
+
+/**
+ * Файлы синтетического набора данных (TSV в формате COPY ... WITH (FORMAT CSV, HEADER, DELIMITER E'\t'))
+ * в порядке загрузки. Колонки файла совпадают со списком колонок COPY, заголовок файла - с их именами.
+ */
+enum SyntheticTable {
+
+    COUNTERAGENTS("counteragents", List.of("inn", "name")),
+    WAREHOUSES("warehouses", List.of("gln", "address", "region")),
+    /**
+     * Группа товара в файле задана именем: идентификаторы групп в базе не фиксированы,
+     * поэтому товары загружаются через временную таблицу
+     */
+    PRODUCTS("products", List.of("id", "name", "internal_barcode", "external_barcode", "internal_sku",
+            "external_sku", "packing_coefficient", "group_name")),
+    ORDERS("orders", List.of("id", "number", "order_date", "delivery_date", "counteragent_inn", "warehouse_gln",
+            "pallet_count")),
+    ORDER_ITEMS("order_items", List.of("id", "order_id", "delivery_date", "product_id", "quantity", "unit_price")),
+    PALLETS("pallets", List.of("id", "order_id", "delivery_date")),
+    PALLET_ITEMS("pallet_items", List.of("pallet_id", "order_item_id", "delivery_date", "quantity")),
+    INVOICES("invoices", List.of("number", "issue_date", "order_id", "order_delivery_date", "counteragent_inn",
+            "order_number", "amount"));
+
+    private final String table;
+    private final List<String> columns;
+
+    SyntheticTable(String table, List<String> columns) {
+        this.table = table;
+        this.columns = columns;
+    }
+
+    String table() {
+        return table;
+    }
+
+    String fileName() {
+        return table + ".tsv";
+    }
+
+    List<String> columns() {
+        return columns;
+    }
+
+    String header() {
+        return String.join("\t", columns);
+    }
+}